@@ -10,6 +10,12 @@ kotlin {
 	jvmToolchain(21)
 }
 
+dependencies {
+	testImplementation(platform("org.junit:junit-bom:5.11.3"))
+	testImplementation("org.junit.jupiter:junit-jupiter")
+	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
 tasks.withType<Test>().configureEach {
 	useJUnitPlatform()
 
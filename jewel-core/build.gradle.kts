@@ -11,4 +11,5 @@ dependencies {
 
 application {
 	mainClass = "com.slobodanzivanovic.jewel.core.MainKt"
+	applicationDefaultJvmArgs = listOf("--add-modules", "jdk.incubator.vector")
 }
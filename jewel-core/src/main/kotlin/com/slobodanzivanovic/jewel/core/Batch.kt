@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.core
+
+import com.slobodanzivanovic.jewel.util.text.CharsetDetector
+import com.slobodanzivanovic.jewel.util.text.TextReplacer
+import java.io.BufferedWriter
+import java.io.IOException
+import java.io.InputStreamReader
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.io.Reader
+import java.io.UncheckedIOException
+import java.io.Writer
+import java.nio.charset.Charset
+import java.nio.charset.CodingErrorAction
+import java.nio.charset.IllegalCharsetNameException
+import java.nio.charset.UnsupportedCharsetException
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.PosixFileAttributeView
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.regex.PatternSyntaxException
+import kotlin.streams.asSequence
+
+private const val USAGE = """Usage: jewel batch [options] <file or folder>...
+
+Runs text operations over files without opening the editor. Folders are searched
+recursively. Operations are applied to each file in the order they are given.
+
+Operations:
+  --replace <find> <with>          Replace every occurrence of a literal string
+  --replace-regex <regex> <with>   Replace every match of a regular expression;
+                                   the replacement may refer to groups as ${'$'}n
+  --sort-lines                     Sort lines in ascending order
+  --trim-trailing                  Remove spaces and tabs at the end of lines
+
+Options:
+  --ignore-case                    Match replacements case-insensitively
+  --charset <name>                 Read files in this charset instead of detecting it
+  --encoding <name>                Write files in this charset; by default files keep
+                                   the charset they were read in
+  --include <glob>                 Only process files in folders whose name matches
+  --jobs <n>                       Number of files processed at once
+  --dry-run                        Report what would change without writing anything
+"""
+
+/**
+ * The options of one batch run.
+ */
+private class BatchOptions(
+	val operations: List<BatchOperation>,
+	val charset: Charset?,
+	val encoding: Charset?,
+	val include: String?,
+	val jobs: Int,
+	val dryRun: Boolean,
+	val paths: List<Path>,
+)
+
+/**
+ * A text operation applied to every file.
+ */
+private sealed interface BatchOperation {
+	/**
+	 * Whether the operation can be applied to one line at a time, which lets files be streamed
+	 * instead of read into memory.
+	 */
+	val lineLocal: Boolean
+
+	/**
+	 * Applies the operation to [text], whose lines are separated by LF.
+	 *
+	 * @return the new text and the number of changes
+	 */
+	fun apply(text: String): Pair<String, Int>
+
+	class Replace(
+		private val search: String,
+		private val replacement: String,
+		private val regex: Boolean,
+		private val matchCase: Boolean,
+	) : BatchOperation {
+		override val lineLocal = !regex && '\n' !in search && '\r' !in search
+
+		override fun apply(text: String): Pair<String, Int> {
+			val result = TextReplacer.replaceAll(text, search, replacement, matchCase, regex)
+			if (result.count() == 0) {
+				return text to 0
+			}
+			return text.substring(0, result.start()) + result.text() + text.substring(result.end()) to result.count()
+		}
+	}
+
+	object SortLines : BatchOperation {
+		override val lineLocal = false
+
+		override fun apply(text: String): Pair<String, Int> {
+			val trailingNewline = text.endsWith('\n')
+			val lines = (if (trailingNewline) text.dropLast(1) else text).split('\n')
+			val sorted = lines.sorted()
+			val moved = lines.indices.count { lines[it] != sorted[it] }
+			if (moved == 0) {
+				return text to 0
+			}
+			return sorted.joinToString("\n", postfix = if (trailingNewline) "\n" else "") to moved
+		}
+	}
+
+	object TrimTrailing : BatchOperation {
+		override val lineLocal = true
+
+		override fun apply(text: String): Pair<String, Int> {
+			var trimmed = 0
+			val result = StringBuilder(text.length)
+			var start = 0
+			while (start <= text.length) {
+				val end = text.indexOf('\n', start).let { if (it < 0) text.length else it }
+				var contentEnd = end
+				while (contentEnd > start && (text[contentEnd - 1] == ' ' || text[contentEnd - 1] == '\t')) {
+					contentEnd--
+				}
+				if (contentEnd < end) {
+					trimmed++
+				}
+				result.append(text, start, contentEnd)
+				if (end < text.length) {
+					result.append('\n')
+				}
+				start = end + 1
+			}
+			return if (trimmed == 0) text to 0 else result.toString() to trimmed
+		}
+	}
+}
+
+/**
+ * Reads lines and reports the line break that ended each one, so that files with CR, CRLF or mixed
+ * line breaks are written back exactly as they were.
+ */
+private class LineReader(private val reader: Reader) {
+	private val buffer = CharArray(64 * 1024)
+	private val line = StringBuilder()
+	private var position = 0
+	private var limit = 0
+
+	/**
+	 * The line break after the line last returned by [readLine], empty at the end of the file.
+	 */
+	var separator = ""
+		private set
+
+	fun readLine(): String? {
+		line.setLength(0)
+		while (position < limit || fill()) {
+			val start = position
+			while (position < limit && buffer[position] != '\n' && buffer[position] != '\r') {
+				position++
+			}
+			line.append(buffer, start, position - start)
+			if (position < limit) {
+				val c = buffer[position++]
+				separator = when {
+					c == '\n' -> "\n"
+					(position < limit || fill()) && buffer[position] == '\n' -> {
+						position++
+						"\r\n"
+					}
+
+					else -> "\r"
+				}
+				return line.toString()
+			}
+		}
+		separator = ""
+		return if (line.isEmpty()) null else line.toString()
+	}
+
+	private fun fill(): Boolean {
+		limit = maxOf(reader.read(buffer), 0)
+		position = 0
+		return limit > 0
+	}
+}
+
+/**
+ * The outcome for one file.
+ */
+private class BatchResult(val path: Path, val changes: Int, val reencoded: Boolean, val skipped: String?)
+
+/**
+ * Runs `jewel batch`. Neither Swing nor the look and feel is started; files are detected and edited
+ * with the same classes the editor uses, several at a time.
+ *
+ * @return the process exit code: 0 on success, 1 if any file failed, 2 for invalid arguments
+ */
+fun runBatch(args: List<String>): Int {
+	val options = try {
+		parseOptions(args)
+	} catch (e: IllegalArgumentException) {
+		System.err.println("jewel batch: ${e.message}")
+		System.err.print(USAGE)
+		return 2
+	}
+
+	val files = try {
+		collectFiles(options)
+	} catch (e: IOException) {
+		System.err.println("jewel batch: ${e.message}")
+		return 1
+	} catch (e: UncheckedIOException) {
+		System.err.println("jewel batch: ${e.cause?.message}")
+		return 1
+	}
+
+	var failed = false
+	Executors.newFixedThreadPool(options.jobs).use { executor ->
+		val futures = files.map { path -> executor.submit<BatchResult> { process(path, options) } }
+		for ((path, future) in files.zip(futures)) {
+			try {
+				report(future.get(), options.dryRun)
+			} catch (e: ExecutionException) {
+				failed = true
+				System.err.println("$path: ${e.cause?.message ?: e.cause}")
+			}
+		}
+	}
+	return if (failed) 1 else 0
+}
+
+private fun parseOptions(args: List<String>): BatchOptions {
+	val matchCase = "--ignore-case" !in args
+	val operations = mutableListOf<BatchOperation>()
+	val paths = mutableListOf<Path>()
+	var charset: Charset? = null
+	var encoding: Charset? = null
+	var include: String? = null
+	var jobs = Runtime.getRuntime().availableProcessors()
+	var dryRun = false
+
+	var i = 0
+	fun value(option: String): String {
+		require(i + 1 < args.size) { "$option needs a value" }
+		return args[++i]
+	}
+	while (i < args.size) {
+		when (val arg = args[i]) {
+			"--replace" -> operations += BatchOperation.Replace(value(arg), value(arg), regex = false, matchCase = matchCase)
+			"--replace-regex" -> {
+				val regex = value(arg)
+				try {
+					TextReplacer.replaceAll("", regex, "", matchCase, true)
+				} catch (e: PatternSyntaxException) {
+					throw IllegalArgumentException("invalid regular expression: ${e.description}")
+				}
+				operations += BatchOperation.Replace(regex, value(arg), regex = true, matchCase = matchCase)
+			}
+			"--sort-lines" -> operations += BatchOperation.SortLines
+			"--trim-trailing" -> operations += BatchOperation.TrimTrailing
+			"--ignore-case" -> {}
+			"--charset" -> charset = charsetOf(value(arg))
+			"--encoding" -> encoding = charsetOf(value(arg))
+			"--include" -> include = value(arg)
+			"--jobs" -> jobs = value(arg).toIntOrNull()?.takeIf { it > 0 }
+				?: throw IllegalArgumentException("--jobs needs a positive number")
+			"--dry-run" -> dryRun = true
+			else -> {
+				require(!arg.startsWith("--")) { "unknown option $arg" }
+				paths.add(Path.of(arg))
+			}
+		}
+		i++
+	}
+
+	require(operations.isNotEmpty() || encoding != null) { "no operation given" }
+	require(paths.isNotEmpty()) { "no files given" }
+	return BatchOptions(operations, charset, encoding, include, jobs, dryRun, paths)
+}
+
+private fun charsetOf(name: String): Charset = try {
+	Charset.forName(name)
+} catch (e: IllegalCharsetNameException) {
+	throw IllegalArgumentException("unknown charset $name")
+} catch (e: UnsupportedCharsetException) {
+	throw IllegalArgumentException("unknown charset $name")
+}
+
+/**
+ * Expands folders into their regular, non-hidden files, the way "Open All Matching" does.
+ */
+private fun collectFiles(options: BatchOptions): List<Path> {
+	val matcher = options.include?.let { FileSystems.getDefault().getPathMatcher("glob:$it") }
+	return options.paths.flatMap { path ->
+		if (!Files.isDirectory(path)) {
+			listOf(path)
+		} else {
+			Files.walk(path).use { paths ->
+				paths.asSequence()
+					.filter { Files.isRegularFile(it) && !Files.isHidden(it) }
+					.filter { matcher == null || matcher.matches(it.fileName) }
+					.sorted()
+					.toList()
+			}
+		}
+	}
+}
+
+private fun report(result: BatchResult, dryRun: Boolean) {
+	val message = when {
+		result.skipped != null -> "skipped, ${result.skipped}"
+		result.changes == 0 && !result.reencoded -> "unchanged"
+		else -> buildList {
+			if (result.changes > 0) {
+				add(if (result.changes == 1) "1 change" else "${result.changes} changes")
+			}
+			if (result.reencoded) {
+				add("re-encoded")
+			}
+		}.joinToString(", ", postfix = if (dryRun) " (dry run)" else "")
+	}
+	println("${result.path}: $message")
+}
+
+/**
+ * Applies the operations to one file. The result is written to a temporary file next to it, which
+ * then replaces the original, so a failure never leaves a half-written file behind. Symbolic links
+ * are followed, so the file they point to is replaced rather than the link. Bytes that do not fit
+ * the charset fail the file instead of being replaced, and so does an owner that cannot be kept.
+ * A dry run encodes the result without writing it anywhere.
+ */
+private fun process(path: Path, options: BatchOptions): BatchResult {
+	val sample = Files.newInputStream(path).use { it.readNBytes(CharsetDetector.SAMPLE_SIZE) }
+	if (CharsetDetector.isBinary(sample)) {
+		return BatchResult(path, 0, false, "binary file")
+	}
+
+	val detection = CharsetDetector.detect(sample)
+	val charset = options.charset ?: detection.charset()
+	val bomLength = if (detection.charset() == charset) detection.bomLength() else 0
+	val encoding = options.encoding ?: charset
+	val reencoded = encoding != charset
+
+	if (options.dryRun) {
+		val changes = transform(path, charset, bomLength, encoding, options.operations, OutputStream.nullOutputStream())
+		return BatchResult(path, changes, reencoded, null)
+	}
+
+	val target = path.toRealPath()
+	val temp = Files.createTempFile(target.parent, ".${target.fileName}", ".tmp")
+	try {
+		val changes = Files.newOutputStream(temp).use { output ->
+			if (bomLength > 0 && !reencoded) {
+				output.write(sample, 0, bomLength)
+			}
+			transform(target, charset, bomLength, encoding, options.operations, output)
+		}
+
+		if (changes > 0 || reencoded) {
+			copyAttributes(target, temp)
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+		}
+		return BatchResult(path, changes, reencoded, null)
+	} finally {
+		Files.deleteIfExists(temp)
+	}
+}
+
+/**
+ * Writes the result of the operations on a file to [output] in [encoding].
+ *
+ * @return the number of changes
+ */
+private fun transform(
+	path: Path,
+	charset: Charset,
+	bomLength: Int,
+	encoding: Charset,
+	operations: List<BatchOperation>,
+	output: OutputStream,
+): Int {
+	val writer = BufferedWriter(OutputStreamWriter(output, encoding.newEncoder()
+		.onMalformedInput(CodingErrorAction.REPORT)
+		.onUnmappableCharacter(CodingErrorAction.REPORT)))
+	val changes = if (operations.all { it.lineLocal }) {
+		streamLines(path, charset, bomLength, operations, writer)
+	} else {
+		rewriteText(path, charset, bomLength, operations, writer)
+	}
+	writer.flush()
+	return changes
+}
+
+/**
+ * Gives a temporary file the permissions, owner and group of the file it replaces, since temporary
+ * files are created owner-only and belong to the current user.
+ */
+private fun copyAttributes(source: Path, temp: Path) {
+	val sourceView = Files.getFileAttributeView(source, PosixFileAttributeView::class.java) ?: return
+	val tempView = Files.getFileAttributeView(temp, PosixFileAttributeView::class.java) ?: return
+	val attributes = sourceView.readAttributes()
+	val current = tempView.readAttributes()
+	// Changing the owner may clear permission bits, so it goes first.
+	if (attributes.owner() != current.owner()) {
+		tempView.setOwner(attributes.owner())
+	}
+	if (attributes.group() != current.group()) {
+		tempView.setGroup(attributes.group())
+	}
+	tempView.setPermissions(attributes.permissions())
+}
+
+/**
+ * Applies line-local operations while reading, so only one line is in memory at a time.
+ */
+private fun streamLines(path: Path, charset: Charset, bomLength: Int, operations: List<BatchOperation>, writer: Writer): Int {
+	var changes = 0
+	Files.newInputStream(path).use { input ->
+		input.skipNBytes(bomLength.toLong())
+		val lines = LineReader(InputStreamReader(input, strictDecoder(charset)))
+		while (true) {
+			var line = lines.readLine() ?: break
+			for (operation in operations) {
+				val (result, count) = operation.apply(line)
+				line = result
+				changes += count
+			}
+			writer.write(line)
+			writer.write(lines.separator)
+		}
+	}
+	return changes
+}
+
+/**
+ * Applies operations that need the whole text, such as sorting. The operations see the text with LF
+ * breaks; when it is written back, each line ends with the break that the line at the same position
+ * had in the file, so CRLF, CR and mixed files keep their line breaks. Lines beyond the number the
+ * file had end with its most common break.
+ */
+private fun rewriteText(path: Path, charset: Charset, bomLength: Int, operations: List<BatchOperation>, writer: Writer): Int {
+	val content = StringBuilder()
+	val separators = mutableListOf<String>()
+	Files.newInputStream(path).use { input ->
+		input.skipNBytes(bomLength.toLong())
+		val lines = LineReader(InputStreamReader(input, strictDecoder(charset)))
+		while (true) {
+			content.append(lines.readLine() ?: break)
+			if (lines.separator.isNotEmpty()) {
+				content.append('\n')
+				separators += lines.separator
+			}
+		}
+	}
+
+	var text = content.toString()
+	var changes = 0
+	for (operation in operations) {
+		val (result, count) = operation.apply(text)
+		text = result
+		changes += count
+	}
+
+	val common = separators.groupingBy { it }.eachCount().maxByOrNull { it.value }?.key ?: System.lineSeparator()
+	var line = 0
+	var start = 0
+	while (true) {
+		val newline = text.indexOf('\n', start)
+		if (newline < 0) {
+			break
+		}
+		writer.write(text, start, newline - start)
+		writer.write(separators.getOrElse(line++) { common })
+		start = newline + 1
+	}
+	writer.write(text, start, text.length - start)
+	return changes
+}
+
+private fun strictDecoder(charset: Charset) = charset.newDecoder()
+	.onMalformedInput(CodingErrorAction.REPORT)
+	.onUnmappableCharacter(CodingErrorAction.REPORT)
@@ -26,8 +26,14 @@ import javax.swing.JFrame
 import javax.swing.SwingUtilities
 import javax.swing.UIManager
 import javax.swing.UnsupportedLookAndFeelException
+import kotlin.system.exitProcess
+
+fun main(args: Array<String>) {
+	if (args.firstOrNull() == "batch") {
+		System.setProperty("java.awt.headless", "true")
+		exitProcess(runBatch(args.drop(1)))
+	}
 
-fun main() {
 	val platformInfo = PlatformInfo.getInstance()
 
 	platformInfo.logSystemInfo()
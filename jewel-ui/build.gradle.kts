@@ -1,3 +1,7 @@
 plugins {
 	id("buildsrc.convention.jewel.common-conventions")
 }
+
+dependencies {
+	implementation(project(":jewel-util"))
+}
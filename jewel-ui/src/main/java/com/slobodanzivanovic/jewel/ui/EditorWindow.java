@@ -17,8 +17,22 @@
 package com.slobodanzivanovic.jewel.ui;
 
 import com.slobodanzivanovic.jewel.ui.components.CustomFilePicker;
+import com.slobodanzivanovic.jewel.ui.components.DiffView;
+import com.slobodanzivanovic.jewel.ui.components.HexView;
+import com.slobodanzivanovic.jewel.ui.components.OutlinePanel;
+import com.slobodanzivanovic.jewel.ui.components.ReplaceDialog;
 import com.slobodanzivanovic.jewel.ui.components.StatusBar;
 import com.slobodanzivanovic.jewel.ui.components.TextArea;
+import com.slobodanzivanovic.jewel.ui.io.FileDropHandler;
+import com.slobodanzivanovic.jewel.ui.io.FileLoader;
+import com.slobodanzivanovic.jewel.ui.io.FileWatcher;
+import com.slobodanzivanovic.jewel.ui.io.RegionReloader;
+import com.slobodanzivanovic.jewel.ui.text.EditorDocument;
+import com.slobodanzivanovic.jewel.ui.text.WordIndex;
+import com.slobodanzivanovic.jewel.util.cache.FileMetadataCache;
+import com.slobodanzivanovic.jewel.util.text.Rope;
+import com.slobodanzivanovic.jewel.util.text.TextDecoder;
+import com.slobodanzivanovic.jewel.util.text.TextStatistics;
 
 import javax.swing.*;
 import javax.swing.event.CaretEvent;
@@ -27,6 +41,8 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileSystemView;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Caret;
+import javax.swing.text.Element;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
@@ -35,10 +51,12 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class EditorWindow extends JPanel implements Runnable {
 	private static final double SCREEN_WIDTH_RATIO = 0.55;
@@ -46,6 +64,9 @@ public class EditorWindow extends JPanel implements Runnable {
 	private static final int STATUS_BAR_HEIGHT = 25;
 	private static final int TARGET_FPS = 120;
 	private static final long FRAME_TIME = 1000000000 / TARGET_FPS;
+	private static final int SYNC_SELECTION_STATISTICS_LIMIT = 1 << 20;
+	private static final int SELECTION_WORD_COUNT_DELAY = 150;
+	private static final int WORD_COUNT_CHUNK = 1 << 20;
 
 	private final int screenWidth;
 	private final int screenHeight;
@@ -53,12 +74,22 @@ public class EditorWindow extends JPanel implements Runnable {
 	private DefaultTreeModel treeModel;
 	private JTabbedPane tabbedPane;
 	private StatusBar statusBar;
+	private OutlinePanel outlinePanel;
+	private JCheckBoxMenuItem followMenuItem;
+	private JCheckBoxMenuItem softWrapMenuItem;
+	private ReplaceDialog replaceDialog;
 	private final List<TextArea> textAreas;
+	private final FileMetadataCache metadataCache = new FileMetadataCache();
+	private final WordIndex wordIndex = new WordIndex();
+	private FileWatcher fileWatcher;
 	private int tabCounter = 1;
 
 	private Thread editorThread;
 	private volatile boolean running = false;
 	private volatile boolean needsUpdate = false;
+	private final Timer wordCountTimer = new Timer(SELECTION_WORD_COUNT_DELAY, e -> countSelectedWords());
+	private boolean statisticsUpdatePending;
+	private volatile long statisticsRequest;
 	private static long lastFpsCheck = 0;
 	private static int currentFps = 0;
 	private static int totalFrames = 0;
@@ -69,6 +100,12 @@ public class EditorWindow extends JPanel implements Runnable {
 		screenHeight = (int) (screenSize.height * SCREEN_HEIGHT_RATIO);
 
 		textAreas = new ArrayList<>();
+		wordCountTimer.setRepeats(false);
+		try {
+			fileWatcher = new FileWatcher();
+		} catch (IOException ex) {
+			System.err.println("Failed to start file watcher: " + ex.getMessage());
+		}
 		initializeUI();
 	}
 
@@ -86,12 +123,16 @@ public class EditorWindow extends JPanel implements Runnable {
 		JScrollPane treeScrollPane = new JScrollPane(fileTree);
 		treeScrollPane.setPreferredSize(new Dimension(200, screenHeight));
 
+		outlinePanel = new OutlinePanel();
+		JSplitPane sideSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, treeScrollPane, outlinePanel);
+		sideSplitPane.setResizeWeight(0.5);
+
 		tabbedPane = new JTabbedPane();
 		statusBar = new StatusBar();
 
 		tabbedPane.setTabLayoutPolicy(JTabbedPane.SCROLL_TAB_LAYOUT);
 
-		JSplitPane mainSplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, treeScrollPane, tabbedPane);
+		JSplitPane mainSplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, sideSplitPane, tabbedPane);
 		mainSplitPane.setDividerLocation(200);
 
 		add(mainSplitPane, BorderLayout.CENTER);
@@ -163,6 +204,77 @@ public class EditorWindow extends JPanel implements Runnable {
 			}
 		});
 
+		followMenuItem = new JCheckBoxMenuItem("Follow File");
+		followMenuItem.addActionListener(e -> toggleFollow());
+		fileMenu.addSeparator();
+		fileMenu.add(followMenuItem);
+
+		JMenu editMenu = new JMenu("Edit");
+		int editModifier = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+
+		JMenuItem undoMenuItem = new JMenuItem("Undo");
+		undoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, editModifier));
+		undoMenuItem.addActionListener(e -> {
+			TextArea currentTextArea = getCurrentTextArea();
+			if (currentTextArea != null) {
+				currentTextArea.undo();
+			}
+		});
+		editMenu.add(undoMenuItem);
+
+		JMenuItem redoMenuItem = new JMenuItem("Redo");
+		redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, editModifier | InputEvent.SHIFT_DOWN_MASK));
+		redoMenuItem.addActionListener(e -> {
+			TextArea currentTextArea = getCurrentTextArea();
+			if (currentTextArea != null) {
+				currentTextArea.redo();
+			}
+		});
+		editMenu.add(redoMenuItem);
+
+		JMenuItem replaceMenuItem = new JMenuItem("Replace...");
+		replaceMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R, editModifier));
+		replaceMenuItem.addActionListener(e -> showReplaceDialog());
+		editMenu.addSeparator();
+		editMenu.add(replaceMenuItem);
+		menuBar.add(editMenu);
+
+		JMenu viewMenu = new JMenu("View");
+		softWrapMenuItem = new JCheckBoxMenuItem("Soft Wrap");
+		softWrapMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_W, editModifier | InputEvent.ALT_DOWN_MASK));
+		softWrapMenuItem.addActionListener(e -> {
+			TextArea currentTextArea = getCurrentTextArea();
+			if (currentTextArea != null) {
+				currentTextArea.setSoftWrap(softWrapMenuItem.isSelected());
+			}
+		});
+		viewMenu.add(softWrapMenuItem);
+
+		JMenuItem splitHorizontalMenuItem = new JMenuItem("Split Side by Side");
+		splitHorizontalMenuItem.addActionListener(e -> splitCurrentTab(JSplitPane.HORIZONTAL_SPLIT));
+		JMenuItem splitVerticalMenuItem = new JMenuItem("Split Top and Bottom");
+		splitVerticalMenuItem.addActionListener(e -> splitCurrentTab(JSplitPane.VERTICAL_SPLIT));
+		JMenuItem unsplitMenuItem = new JMenuItem("Unsplit");
+		unsplitMenuItem.addActionListener(e -> {
+			TextArea currentTextArea = getCurrentTextArea();
+			if (currentTextArea != null) {
+				currentTextArea.unsplit();
+			}
+		});
+		viewMenu.addSeparator();
+		viewMenu.add(splitHorizontalMenuItem);
+		viewMenu.add(splitVerticalMenuItem);
+		viewMenu.add(unsplitMenuItem);
+
+		JMenuItem compareFileMenuItem = new JMenuItem("Compare with File on Disk");
+		compareFileMenuItem.addActionListener(e -> compareWithFile());
+		JMenuItem compareTabMenuItem = new JMenuItem("Compare with Tab...");
+		compareTabMenuItem.addActionListener(e -> compareWithTab());
+		viewMenu.addSeparator();
+		viewMenu.add(compareFileMenuItem);
+		viewMenu.add(compareTabMenuItem);
+		menuBar.add(viewMenu);
+
 		KeyStroke openFolderKeyStroke = KeyStroke.getKeyStroke(KeyEvent.VK_O, openFolderModifier);
 		inputMap.put(openFolderKeyStroke, "openFolder");
 		actionMap.put("openFolder", new AbstractAction() {
@@ -179,12 +291,20 @@ public class EditorWindow extends JPanel implements Runnable {
 			}
 			if (parent != null) {
 				((JFrame) parent).setJMenuBar(menuBar);
+				((JFrame) parent).addWindowListener(new WindowAdapter() {
+					@Override
+					public void windowClosing(WindowEvent e) {
+						textAreas.forEach(EditorWindow.this::saveMetadata);
+					}
+				});
 			}
 		});
 
 		fileTree.addMouseListener(new MouseAdapter() {
 			public void mousePressed(MouseEvent e) {
-				if (e.getClickCount() == 2) {
+				if (e.isPopupTrigger()) {
+					showTreePopup(e);
+				} else if (e.getClickCount() == 2) {
 					TreePath path = fileTree.getPathForLocation(e.getX(), e.getY());
 					if (path != null) {
 						DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
@@ -196,8 +316,18 @@ public class EditorWindow extends JPanel implements Runnable {
 					}
 				}
 			}
+
+			public void mouseReleased(MouseEvent e) {
+				if (e.isPopupTrigger()) {
+					showTreePopup(e);
+				}
+			}
 		});
 
+		FileDropHandler.install(this, this::openFiles);
+		FileDropHandler.install(tabbedPane, this::openFiles);
+		FileDropHandler.install(fileTree, this::openFiles);
+
 		SwingUtilities.invokeLater(() -> getCurrentTextArea().getTextArea().requestFocusInWindow());
 	}
 
@@ -216,6 +346,13 @@ public class EditorWindow extends JPanel implements Runnable {
 		});
 	}
 
+	private void showReplaceDialog() {
+		if (replaceDialog == null) {
+			replaceDialog = new ReplaceDialog((Frame) SwingUtilities.getWindowAncestor(this), this::getCurrentTextArea);
+		}
+		replaceDialog.open();
+	}
+
 	private void loadFolderIntoTree(File folder) {
 		DefaultMutableTreeNode root = new DefaultMutableTreeNode(new FileNode(folder));
 		treeModel.setRoot(root);
@@ -245,58 +382,224 @@ public class EditorWindow extends JPanel implements Runnable {
 		}
 	}
 
+	private void showTreePopup(MouseEvent e) {
+		TreePath path = fileTree.getPathForLocation(e.getX(), e.getY());
+		if (path == null) {
+			return;
+		}
+		fileTree.setSelectionPath(path);
+
+		DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
+		if (!(node.getUserObject() instanceof FileNode(File file))) {
+			return;
+		}
+
+		JPopupMenu popupMenu = new JPopupMenu();
+		if (file.isDirectory()) {
+			JMenuItem openMatchingMenuItem = new JMenuItem("Open All Matching...");
+			openMatchingMenuItem.addActionListener(event -> openAllMatching(file));
+			popupMenu.add(openMatchingMenuItem);
+		} else {
+			JMenuItem openMenuItem = new JMenuItem("Open");
+			openMenuItem.addActionListener(event -> openFileFromTree(file));
+			popupMenu.add(openMenuItem);
+		}
+		popupMenu.show(fileTree, e.getX(), e.getY());
+	}
+
+	private void openAllMatching(File folder) {
+		String glob = JOptionPane.showInputDialog(this, "File name pattern:", "*.*");
+		if (glob == null || glob.isBlank()) {
+			return;
+		}
+
+		FileLoader.findMatching(folder, glob.trim()).whenComplete((files, error) -> {
+			if (error != null) {
+				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Error searching folder: "
+					+ error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+			} else {
+				openFiles(files);
+			}
+		});
+	}
+
 	private void openFileFromTree(File file) {
-		openFileFromPath(file);
+		openFiles(List.of(file));
 	}
 
 	private void openFile(ActionEvent e) {
 		CustomFilePicker filePicker = new CustomFilePicker((Frame) SwingUtilities.getWindowAncestor(this), "Open File");
 		filePicker.setFolderSelectionMode(false);
+		filePicker.setMultiSelectionEnabled(true);
 		filePicker.setVisible(true);
 
 		if (filePicker.isApproved()) {
-			File selectedFile = filePicker.getSelectedFile();
-			if (selectedFile != null && selectedFile.isFile()) {
-				openFileFromPath(selectedFile);
+			openFiles(filePicker.getSelectedFiles());
+		}
+	}
+
+	/**
+	 * Loads the files in parallel off the EDT, then opens all of them in one step on the EDT.
+	 */
+	private void openFiles(List<File> files) {
+		if (files.isEmpty()) {
+			return;
+		}
+		FileLoader.loadAll(files, metadataCache).thenAccept(loaded -> SwingUtilities.invokeLater(() -> addLoadedTabs(loaded)));
+	}
+
+	private void addLoadedTabs(List<FileLoader.LoadedFile> loadedFiles) {
+		List<String> errors = new ArrayList<>();
+		int firstIndex = -1;
+
+		TextArea reusableTab = getCurrentTextArea();
+		if (reusableTab != null && (reusableTab.getFile() != null || reusableTab.getTextArea().getDocument().getLength() > 0)) {
+			reusableTab = null;
+		}
+
+		for (FileLoader.LoadedFile loaded : loadedFiles) {
+			File file = loaded.file();
+			if (loaded.error() != null) {
+				errors.add(file.getName() + ": " + loaded.error().getMessage());
+				continue;
+			}
+
+			Component tab;
+			if (loaded.binary()) {
+				try {
+					tab = new HexView(file.toPath());
+					tabbedPane.addTab(file.getName(), tab);
+				} catch (IOException ex) {
+					errors.add(file.getName() + ": " + ex.getMessage());
+					continue;
+				}
+			} else {
+				TextArea textArea = reusableTab != null ? reusableTab : addTextTab(file.getName());
+				reusableTab = null;
+				loadText(textArea, file, loaded.text(), loaded.metadata());
+				watchFile(textArea);
+				tab = textArea;
+			}
+
+			int index = tabbedPane.indexOfComponent(tab);
+			tabbedPane.setTitleAt(index, file.getName());
+			if (firstIndex == -1) {
+				firstIndex = index;
 			}
 		}
+
+		if (firstIndex != -1) {
+			tabbedPane.setSelectedIndex(firstIndex);
+			updateStatusBarForCurrentTab();
+			outlinePanel.showOutline(getCurrentTextArea());
+		}
+		if (!errors.isEmpty()) {
+			JOptionPane.showMessageDialog(this, "Error reading file:\n"
+				+ String.join("\n", errors), "Error", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	private void loadText(TextArea textArea, File file, TextDecoder.DecodedText decoded, FileMetadataCache.FileMetadata metadata) {
+		JTextArea editor = textArea.getTextArea();
+		editor.setText(decoded.text());
+		editor.setCaretPosition(Math.clamp(metadata.caretPosition(), 0, editor.getDocument().getLength()));
+		textArea.setFile(file);
+		textArea.setCharset(decoded.charset());
+		textArea.setLineSeparator(decoded.lineSeparator());
+		textArea.setMetadata(metadata);
+		textArea.setLoadedLength(decoded.byteCount());
+		textArea.markUnmodified();
+		textArea.discardUndoHistory();
+
+		if (metadata.firstVisibleLine() > 0) {
+			SwingUtilities.invokeLater(() -> textArea.scrollToLine(metadata.firstVisibleLine()));
+		}
 	}
 
-	private void openFileFromPath(File file) {
+	private void watchFile(TextArea textArea) {
+		if (fileWatcher == null) {
+			return;
+		}
+
 		try {
-			String content = Files.readString(file.toPath());
-			TextArea textArea = getCurrentTextArea();
-			if (textArea == null || !textArea.getTextArea().getText().isEmpty()) {
-				createNewTab();
-				textArea = getCurrentTextArea();
+			textArea.setFileWatch(fileWatcher.watch(textArea.getFile().toPath(),
+				() -> SwingUtilities.invokeLater(() -> handleExternalChange(textArea))));
+		} catch (IOException ex) {
+			System.err.println("Failed to watch " + textArea.getFile() + ": " + ex.getMessage());
+		}
+	}
+
+	private void handleExternalChange(TextArea textArea) {
+		File file = textArea.getFile();
+		if (file == null || !file.isFile() || textArea.isFollowing() || !textAreas.contains(textArea)) {
+			return;
+		}
+
+		if (textArea.isModified()) {
+			int choice = JOptionPane.showConfirmDialog(this, file.getName()
+					+ " changed on disk. Reload it and discard your changes?",
+				"File Changed", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+			if (choice != JOptionPane.YES_OPTION) {
+				return;
 			}
-			textArea.getTextArea().setText(content);
-			tabbedPane.setTitleAt(tabbedPane.getSelectedIndex(), file.getName());
+		}
+
+		RegionReloader.reload(textArea).whenComplete((changedRegions, error) -> {
+			if (error != null) {
+				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Error reloading file: "
+					+ error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+			} else if (textArea == getCurrentTextArea()) {
+				SwingUtilities.invokeLater(this::updateStatusBarForCurrentTab);
+			}
+		});
+	}
+
+	private void saveMetadata(TextArea textArea) {
+		FileMetadataCache.FileMetadata metadata = textArea.getMetadata();
+		if (textArea.getFile() == null || metadata == null) {
+			return;
+		}
+
+		try {
+			metadataCache.put(textArea.getFile().toPath(),
+				metadata.withView(textArea.getTextArea().getCaretPosition(), textArea.getFirstVisibleLine()));
 		} catch (IOException ex) {
-			JOptionPane.showMessageDialog(this, "Error reading file: "
-				+ ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			ex.printStackTrace();
 		}
 	}
 
 	private void createNewTab() {
+		TextArea textArea = addTextTab("Untitled-" + tabCounter++);
+
+		tabbedPane.setSelectedIndex(tabbedPane.getTabCount() - 1);
+
+		SwingUtilities.invokeLater(() -> textArea.getTextArea().requestFocusInWindow());
+	}
+
+	private TextArea addTextTab(String title) {
 		TextArea textArea = new TextArea();
 		textAreas.add(textArea);
 
-		String title = "Untitled-" + tabCounter++;
 		tabbedPane.addTab(title, textArea);
 
-		tabbedPane.setSelectedIndex(tabbedPane.getTabCount() - 1);
-
 		setupTextAreaListeners(textArea);
-
-		SwingUtilities.invokeLater(() -> textArea.getTextArea().requestFocusInWindow());
+		textArea.installCompletion(wordIndex);
+		FileDropHandler.install(textArea.getTextArea(), this::openFiles);
+		return textArea;
 	}
 
 	private void closeCurrentTab() {
 		int selectedIndex = tabbedPane.getSelectedIndex();
 		if (selectedIndex != -1) {
+			Component component = tabbedPane.getComponentAt(selectedIndex);
 			tabbedPane.removeTabAt(selectedIndex);
-			textAreas.remove(selectedIndex);
+			if (component instanceof TextArea textArea) {
+				saveMetadata(textArea);
+				textAreas.remove(textArea);
+				textArea.dispose();
+			} else if (component instanceof HexView hexView) {
+				hexView.close();
+			}
 
 			if (tabbedPane.getTabCount() == 0) {
 				createNewTab();
@@ -305,16 +608,19 @@ public class EditorWindow extends JPanel implements Runnable {
 	}
 
 	private void setupTextAreaListeners(TextArea textArea) {
-		textArea.getTextArea().addCaretListener(this::updateStatusBar);
+		textArea.addCaretListener(this::updateStatusBar);
+		textArea.addPropertyChangeListener("textArea", e -> updateStatusBarForCurrentTab());
 		textArea.getTextArea().getDocument().addDocumentListener(new DocumentListener() {
 			@Override
 			public void insertUpdate(DocumentEvent e) {
 				needsUpdate = true;
+				scheduleStatisticsUpdate();
 			}
 
 			@Override
 			public void removeUpdate(DocumentEvent e) {
 				needsUpdate = true;
+				scheduleStatisticsUpdate();
 			}
 
 			@Override
@@ -324,14 +630,131 @@ public class EditorWindow extends JPanel implements Runnable {
 		});
 	}
 
+	private void splitCurrentTab(int orientation) {
+		TextArea currentTextArea = getCurrentTextArea();
+		if (currentTextArea != null) {
+			currentTextArea.split(orientation);
+		}
+	}
+
 	private void handleTabChange(ChangeEvent e) {
 		if (tabbedPane.getSelectedIndex() != -1) {
 			TextArea currentTextArea = getCurrentTextArea();
 			if (currentTextArea != null) {
 				currentTextArea.getTextArea().requestFocusInWindow();
 				updateStatusBarForCurrentTab();
+				updateFollowMenuItem();
+				softWrapMenuItem.setSelected(currentTextArea.isSoftWrap());
 			}
 		}
+		outlinePanel.showOutline(getCurrentTextArea());
+	}
+
+	private void compareWithFile() {
+		TextArea currentTextArea = getCurrentTextArea();
+		if (currentTextArea == null) {
+			return;
+		}
+		if (currentTextArea.getFile() == null) {
+			JOptionPane.showMessageDialog(this, "Only tabs opened from a file can be compared with it.",
+				"Compare", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+
+		File file = currentTextArea.getFile();
+		Rope buffer = currentTextArea.getDocument().getSnapshot().text();
+		CompletableFuture<DiffView> diff = CompletableFuture
+			.supplyAsync(() -> {
+				try {
+					return TextDecoder.decode(file.toPath(), currentTextArea.getCharset()).text();
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}, command -> Thread.ofVirtual().start(command))
+			.thenCompose(disk -> DiffView.compare(file.getName() + " (on disk)", disk,
+				file.getName() + " (editor)", buffer, currentTextArea.getTextArea().getFont()));
+		showDiff(file.getName(), diff);
+	}
+
+	private void compareWithTab() {
+		TextArea currentTextArea = getCurrentTextArea();
+		if (currentTextArea == null) {
+			return;
+		}
+
+		List<String> titles = new ArrayList<>();
+		List<TextArea> others = new ArrayList<>();
+		for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+			if (tabbedPane.getComponentAt(i) instanceof TextArea other && other != currentTextArea) {
+				titles.add(tabbedPane.getTitleAt(i));
+				others.add(other);
+			}
+		}
+		if (others.isEmpty()) {
+			JOptionPane.showMessageDialog(this, "There is no other text tab to compare with.",
+				"Compare", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+
+		Object choice = JOptionPane.showInputDialog(this, "Compare with:", "Compare",
+			JOptionPane.PLAIN_MESSAGE, null, titles.toArray(), titles.getFirst());
+		int index = titles.indexOf(choice);
+		if (index < 0) {
+			return;
+		}
+
+		String title = tabbedPane.getTitleAt(tabbedPane.getSelectedIndex());
+		String otherTitle = titles.get(index);
+		showDiff(title + " vs " + otherTitle, DiffView.compare(title, currentTextArea.getDocument().getSnapshot().text(),
+			otherTitle, others.get(index).getDocument().getSnapshot().text(), currentTextArea.getTextArea().getFont()));
+	}
+
+	private void showDiff(String title, CompletableFuture<DiffView> diff) {
+		diff.whenComplete((diffView, error) -> SwingUtilities.invokeLater(() -> {
+			if (error != null) {
+				Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+				JOptionPane.showMessageDialog(this, "Error comparing: "
+					+ cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(this), "Compare " + title);
+			dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+			dialog.setContentPane(diffView);
+			dialog.setSize(1000, 700);
+			dialog.setLocationRelativeTo(this);
+			dialog.setVisible(true);
+		}));
+	}
+
+	private void toggleFollow() {
+		TextArea currentTextArea = getCurrentTextArea();
+		if (currentTextArea == null) {
+			return;
+		}
+
+		if (currentTextArea.isFollowing()) {
+			currentTextArea.stopFollowing();
+		} else if (currentTextArea.getFile() == null) {
+			JOptionPane.showMessageDialog(this, "Only tabs opened from a file can be followed.",
+				"Follow File", JOptionPane.INFORMATION_MESSAGE);
+		} else {
+			try {
+				currentTextArea.startFollowing(fileWatcher, ex -> {
+					updateFollowMenuItem();
+					JOptionPane.showMessageDialog(this, "Error following file: "
+						+ ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+				});
+			} catch (IOException ex) {
+				JOptionPane.showMessageDialog(this, "Error following file: "
+					+ ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+		updateFollowMenuItem();
+	}
+
+	private void updateFollowMenuItem() {
+		TextArea currentTextArea = getCurrentTextArea();
+		followMenuItem.setSelected(currentTextArea != null && currentTextArea.isFollowing());
 	}
 
 	private void updateStatusBarForCurrentTab() {
@@ -343,6 +766,8 @@ public class EditorWindow extends JPanel implements Runnable {
 				int line = dot == 0 ? 1 : textArea.getLineOfOffset(dot) + 1;
 				int col = dot - textArea.getLineStartOffset(line - 1) + 1;
 				statusBar.updateStatus(line, col);
+				statusBar.updateEncoding(currentTextArea.getCharset(), currentTextArea.getLineSeparator().getDisplayName());
+				updateStatistics(currentTextArea);
 			} catch (BadLocationException ex) {
 				ex.printStackTrace();
 			}
@@ -359,6 +784,7 @@ public class EditorWindow extends JPanel implements Runnable {
 					int line = dot == 0 ? 1 : textArea.getLineOfOffset(dot) + 1;
 					int col = dot - textArea.getLineStartOffset(line - 1) + 1;
 					statusBar.updateStatus(line, col);
+					updateStatistics(currentTextArea);
 				}
 			} catch (BadLocationException ex) {
 				ex.printStackTrace();
@@ -366,9 +792,104 @@ public class EditorWindow extends JPanel implements Runnable {
 		});
 	}
 
+	/**
+	 * Coalesces the statistics updates of all events fired by one edit into a single update.
+	 */
+	private void scheduleStatisticsUpdate() {
+		if (!statisticsUpdatePending) {
+			statisticsUpdatePending = true;
+			SwingUtilities.invokeLater(() -> {
+				statisticsUpdatePending = false;
+				TextArea currentTextArea = getCurrentTextArea();
+				if (currentTextArea != null) {
+					updateStatistics(currentTextArea);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Shows the size of the selection, or of the whole document if nothing is selected. Line and
+	 * character counts come straight from the document; words in large selections are counted off the
+	 * EDT once the selection stops changing.
+	 */
+	private void updateStatistics(TextArea currentTextArea) {
+		EditorDocument document = currentTextArea.getDocument();
+		Element root = document.getDefaultRootElement();
+		Caret caret = currentTextArea.getTextArea().getCaret();
+		int start = Math.min(caret.getDot(), caret.getMark());
+		int end = Math.max(caret.getDot(), caret.getMark());
+		statisticsRequest++;
+		wordCountTimer.stop();
+
+		if (start == end) {
+			statusBar.updateStatistics(root.getElementCount(), document.getWordCount(), document.getLength());
+			return;
+		}
+
+		int lines = root.getElementIndex(end) - root.getElementIndex(start) + 1;
+		if (end - start <= SYNC_SELECTION_STATISTICS_LIMIT) {
+			try {
+				statusBar.updateSelection(lines, document.countWords(start, end), end - start);
+			} catch (BadLocationException ex) {
+				ex.printStackTrace();
+			}
+			return;
+		}
+
+		statusBar.updateSelection(lines, -1, end - start);
+		wordCountTimer.start();
+	}
+
+	/**
+	 * Counts the words of the current large selection off the EDT. The count is dropped as soon as
+	 * the statistics are updated again, e.g. because the selection grew.
+	 */
+	private void countSelectedWords() {
+		TextArea currentTextArea = getCurrentTextArea();
+		if (currentTextArea == null) {
+			return;
+		}
+		EditorDocument document = currentTextArea.getDocument();
+		Element root = document.getDefaultRootElement();
+		Caret caret = currentTextArea.getTextArea().getCaret();
+		int start = Math.min(caret.getDot(), caret.getMark());
+		int end = Math.max(caret.getDot(), caret.getMark());
+		int lines = root.getElementIndex(end) - root.getElementIndex(start) + 1;
+		long request = statisticsRequest;
+		CharSequence text = document.getSnapshot().text();
+
+		CompletableFuture
+			.supplyAsync(() -> countWordStarts(text, start, Math.min(end, text.length()), request),
+				command -> Thread.ofVirtual().start(command))
+			.thenAcceptAsync(words -> {
+				if (words >= 0 && statisticsRequest == request) {
+					statusBar.updateSelection(lines, words, end - start);
+				}
+			}, SwingUtilities::invokeLater);
+	}
+
+	/**
+	 * Counts the word starts in a range a chunk at a time.
+	 *
+	 * @return the count, or -1 if a newer statistics request was made meanwhile
+	 */
+	private int countWordStarts(CharSequence text, int start, int end, long request) {
+		int words = 0;
+		char previous = TextStatistics.TEXT_START;
+		for (int from = start; from < end; from += WORD_COUNT_CHUNK) {
+			if (statisticsRequest != request) {
+				return -1;
+			}
+			int to = Math.min(from + WORD_COUNT_CHUNK, end);
+			words += TextStatistics.countWordStarts(text, from, to, previous);
+			previous = text.charAt(to - 1);
+		}
+		return words;
+	}
+
 	public TextArea getCurrentTextArea() {
-		int selectedIndex = tabbedPane.getSelectedIndex();
-		return selectedIndex != -1 ? textAreas.get(selectedIndex) : null;
+		return tabbedPane.getSelectedComponent() instanceof TextArea textArea ? textArea : null;
 	}
 
 	public void startEditorThread() {
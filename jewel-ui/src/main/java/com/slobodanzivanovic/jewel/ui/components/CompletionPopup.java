@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.components;
+
+import com.slobodanzivanovic.jewel.ui.text.WordIndex;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * Completes the word before the caret with words from a {@link WordIndex}.
+ * <p>
+ * Ctrl+Space opens the list, or completes right away if there is only one suggestion. While the list
+ * is open it follows the typed prefix; Up and Down select, Enter or Tab accept and Escape closes it.
+ * The text area keeps the focus the whole time.
+ * </p>
+ */
+public class CompletionPopup {
+	private static final int MAX_SUGGESTIONS = 12;
+	private static final int VISIBLE_ROWS = 8;
+
+	private final EditorTextArea textArea;
+	private final WordIndex index;
+	private final JPopupMenu popup = new JPopupMenu();
+	private final DefaultListModel<String> suggestions = new DefaultListModel<>();
+	private final JList<String> list = new JList<>(suggestions);
+	private int prefixStart;
+
+	public CompletionPopup(EditorTextArea textArea, WordIndex index) {
+		this.textArea = textArea;
+		this.index = index;
+
+		list.setFocusable(false);
+		list.setFont(textArea.getFont());
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				accept();
+			}
+		});
+		JScrollPane scrollPane = new JScrollPane(list);
+		scrollPane.setBorder(null);
+		popup.setFocusable(false);
+		popup.add(scrollPane);
+
+		textArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, InputEvent.CTRL_DOWN_MASK), "complete-word");
+		textArea.getActionMap().put("complete-word", new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				refresh(true);
+			}
+		});
+		textArea.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if (popup.isVisible()) {
+					handleKey(e);
+				}
+			}
+		});
+		textArea.addCaretListener(e -> {
+			if (popup.isVisible()) {
+				SwingUtilities.invokeLater(() -> refresh(false));
+			}
+		});
+		textArea.addFocusListener(new FocusAdapter() {
+			@Override
+			public void focusLost(FocusEvent e) {
+				popup.setVisible(false);
+			}
+		});
+	}
+
+	private void handleKey(KeyEvent e) {
+		switch (e.getKeyCode()) {
+			case KeyEvent.VK_DOWN -> select(list.getSelectedIndex() + 1);
+			case KeyEvent.VK_UP -> select(list.getSelectedIndex() - 1);
+			case KeyEvent.VK_ENTER, KeyEvent.VK_TAB -> accept();
+			case KeyEvent.VK_ESCAPE -> popup.setVisible(false);
+			default -> {
+				return;
+			}
+		}
+		e.consume();
+	}
+
+	private void select(int row) {
+		int count = suggestions.size();
+		int selected = (row + count) % count;
+		list.setSelectedIndex(selected);
+		list.ensureIndexIsVisible(selected);
+	}
+
+	/**
+	 * Looks up the word before the caret and shows its completions, or hides the list if there are none.
+	 */
+	private void refresh(boolean completeSingle) {
+		int caret = textArea.getCaretPosition();
+		String prefix = textArea.getSelectionStart() == textArea.getSelectionEnd() ? prefixBefore(caret) : "";
+		List<String> words = prefix.isEmpty() ? List.of() : index.complete(prefix, MAX_SUGGESTIONS);
+		if (words.isEmpty()) {
+			popup.setVisible(false);
+			return;
+		}
+		if (completeSingle && words.size() == 1) {
+			insert(words.getFirst());
+			return;
+		}
+
+		suggestions.clear();
+		suggestions.addAll(words);
+		list.setVisibleRowCount(Math.min(words.size(), VISIBLE_ROWS));
+		list.setSelectedIndex(0);
+		if (popup.isVisible()) {
+			popup.pack();
+			return;
+		}
+		try {
+			Rectangle2D bounds = textArea.modelToView2D(prefixStart);
+			if (bounds != null) {
+				popup.show(textArea, (int) bounds.getX(), (int) bounds.getMaxY());
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private String prefixBefore(int caret) {
+		Document document = textArea.getDocument();
+		int windowStart = Math.max(0, caret - WordIndex.MAX_WORD_LENGTH);
+		try {
+			String window = document.getText(windowStart, caret - windowStart);
+			int start = window.length();
+			while (start > 0 && WordIndex.isWordChar(window.charAt(start - 1))) {
+				start--;
+			}
+			prefixStart = windowStart + start;
+			return window.substring(start);
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			return "";
+		}
+	}
+
+	private void accept() {
+		String word = list.getSelectedValue();
+		popup.setVisible(false);
+		if (word != null) {
+			insert(word);
+		}
+	}
+
+	private void insert(String word) {
+		int caret = textArea.getCaretPosition();
+		int typed = caret - prefixStart;
+		if (typed < 0 || typed > word.length()) {
+			return;
+		}
+		try {
+			textArea.getDocument().insertString(caret, word.substring(typed), null);
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+}
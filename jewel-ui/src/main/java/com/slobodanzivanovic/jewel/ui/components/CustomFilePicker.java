@@ -16,6 +16,8 @@
 
 package com.slobodanzivanovic.jewel.ui.components;
 
+import com.slobodanzivanovic.jewel.util.text.TextDecoder;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.TreeExpansionEvent;
@@ -25,13 +27,15 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
+import javax.swing.tree.TreeSelectionModel;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.io.File;
-import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class CustomFilePicker extends JDialog {
 	private JTree fileTree;
@@ -112,6 +116,12 @@ public class CustomFilePicker extends JDialog {
 		openButton.setText(folderMode ? "Open Folder" : "Open File");
 	}
 
+	public void setMultiSelectionEnabled(boolean enabled) {
+		fileTree.getSelectionModel().setSelectionMode(enabled
+			? TreeSelectionModel.DISCONTIGUOUS_TREE_SELECTION
+			: TreeSelectionModel.SINGLE_TREE_SELECTION);
+	}
+
 	private void initComponents() {
 		DefaultMutableTreeNode root = new DefaultMutableTreeNode();
 		treeModel = new DefaultTreeModel(root);
@@ -119,6 +129,7 @@ public class CustomFilePicker extends JDialog {
 		fileTree.setCellRenderer(new FileTreeCellRenderer());
 		fileTree.setRootVisible(false);
 		fileTree.setShowsRootHandles(true);
+		fileTree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
 
 		pathField = new JTextField();
 		pathField.setEditable(false);
@@ -191,7 +202,7 @@ public class CustomFilePicker extends JDialog {
 				if (folderSelectionMode) {
 					openButton.setEnabled(file.isDirectory());
 				} else {
-					openButton.setEnabled(file.isFile());
+					openButton.setEnabled(!getSelectedFiles().isEmpty());
 				}
 			}
 		});
@@ -282,8 +293,7 @@ public class CustomFilePicker extends JDialog {
 			// Preview files < 1MB
 		} else if (file.isFile() && file.length() < 1024 * 1024) {
 			try {
-				String content = Files.readString(file.toPath());
-				previewText.setText(content);
+				previewText.setText(TextDecoder.decode(file.toPath()).text());
 				previewText.setCaretPosition(0);
 			} catch (Exception e) {
 				previewText.setText("Cannot preview this file.");
@@ -326,6 +336,27 @@ public class CustomFilePicker extends JDialog {
 		return selectedFile;
 	}
 
+	/**
+	 * Returns every selected file that matches the selection mode. Without multi-selection this
+	 * is at most the single selected file.
+	 */
+	public List<File> getSelectedFiles() {
+		List<File> files = new ArrayList<>();
+		TreePath[] paths = fileTree.getSelectionPaths();
+		if (paths == null) {
+			return files;
+		}
+
+		for (TreePath path : paths) {
+			DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
+			if (node.getUserObject() instanceof FileNode(File file)
+				&& (folderSelectionMode ? file.isDirectory() : file.isFile())) {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
 	public boolean isApproved() {
 		return approved;
 	}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.components;
+
+import com.slobodanzivanovic.jewel.util.text.LineDiff;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-only side-by-side view of the differences between two texts.
+ * <p>
+ * The texts are split, hashed and diffed off the EDT by {@link LineDiff}, then laid out as aligned
+ * rows: unchanged lines face each other and the shorter side of a changed region is padded with
+ * filler rows. Both sides only paint the rows inside their clip and share one vertical and one
+ * horizontal scroll model, so they always scroll together no matter how large the texts are.
+ * </p>
+ */
+public class DiffView extends JPanel {
+	private static final Color DELETED_COLOR = new Color(255, 80, 80, 60);
+	private static final Color INSERTED_COLOR = new Color(80, 200, 80, 60);
+	private static final Color CHANGED_COLOR = new Color(80, 140, 255, 50);
+	private static final Color FILLER_COLOR = new Color(128, 128, 128, 40);
+	private static final Color CURRENT_COLOR = new Color(80, 140, 255, 160);
+	private static final int TAB_SIZE = 4;
+	private static final int CONTEXT_ROWS = 3;
+	private static final int PADDING = 6;
+
+	private static final byte EQUAL = 0;
+	private static final byte CHANGED = 1;
+	private static final byte DELETED = 2;
+	private static final byte INSERTED = 3;
+
+	private final Alignment alignment;
+	private final Side leftSide;
+	private final Side rightSide;
+	private final JScrollPane leftScrollPane;
+	private final JLabel summaryLabel = new JLabel();
+	private int currentHunk = -1;
+
+	/**
+	 * The rows of both sides. A row holds a line index per side, or -1 where that side has a filler row.
+	 */
+	private record Alignment(LineDiff.Lines oldLines, LineDiff.Lines newLines, int[] left, int[] right,
+							 byte[] kinds, int[] hunkRows, int leftColumns, int rightColumns) {
+
+		static Alignment of(LineDiff.Lines oldLines, LineDiff.Lines newLines, List<LineDiff.Hunk> hunks) {
+			int rowCount = oldLines.count();
+			for (LineDiff.Hunk hunk : hunks) {
+				int deleted = hunk.oldEnd() - hunk.oldStart();
+				int inserted = hunk.newEnd() - hunk.newStart();
+				rowCount += Math.max(0, inserted - deleted);
+			}
+
+			int[] left = new int[rowCount];
+			int[] right = new int[rowCount];
+			byte[] kinds = new byte[rowCount];
+			int[] hunkRows = new int[hunks.size()];
+			int row = 0;
+			int oldLine = 0;
+			int newLine = 0;
+			for (int h = 0; h <= hunks.size(); h++) {
+				LineDiff.Hunk hunk = h < hunks.size() ? hunks.get(h) : null;
+				int equalEnd = hunk != null ? hunk.oldStart() : oldLines.count();
+				while (oldLine < equalEnd) {
+					left[row] = oldLine++;
+					right[row] = newLine++;
+					row++;
+				}
+				if (hunk == null) {
+					break;
+				}
+
+				int deleted = hunk.oldEnd() - hunk.oldStart();
+				int inserted = hunk.newEnd() - hunk.newStart();
+				byte kind = deleted == 0 ? INSERTED : inserted == 0 ? DELETED : CHANGED;
+				hunkRows[h] = row;
+				for (int i = 0; i < Math.max(deleted, inserted); i++) {
+					left[row] = i < deleted ? oldLine + i : -1;
+					right[row] = i < inserted ? newLine + i : -1;
+					kinds[row] = kind;
+					row++;
+				}
+				oldLine = hunk.oldEnd();
+				newLine = hunk.newEnd();
+			}
+			return new Alignment(oldLines, newLines, left, right, kinds, hunkRows,
+				maxColumns(oldLines), maxColumns(newLines));
+		}
+
+		int rowCount() {
+			return kinds.length;
+		}
+
+		private static int maxColumns(LineDiff.Lines lines) {
+			CharSequence text = lines.text();
+			int max = 0;
+			for (int line = 0; line < lines.count(); line++) {
+				int column = 0;
+				for (int i = lines.start(line); i < lines.end(line); i++) {
+					char c = text.charAt(i);
+					column = c == '\t' ? (column / TAB_SIZE + 1) * TAB_SIZE : c == '\n' || c == '\r' ? column : column + 1;
+				}
+				max = Math.max(max, column);
+			}
+			return max;
+		}
+	}
+
+	private DiffView(String leftTitle, String rightTitle, Alignment alignment, Font font) {
+		this.alignment = alignment;
+		setLayout(new BorderLayout());
+
+		leftSide = new Side(alignment.oldLines(), alignment.left(), DELETED_COLOR, font);
+		rightSide = new Side(alignment.newLines(), alignment.right(), INSERTED_COLOR, font);
+		leftScrollPane = createScrollPane(leftSide);
+		JScrollPane rightScrollPane = createScrollPane(rightSide);
+		rightScrollPane.getVerticalScrollBar().setModel(leftScrollPane.getVerticalScrollBar().getModel());
+		rightScrollPane.getHorizontalScrollBar().setModel(leftScrollPane.getHorizontalScrollBar().getModel());
+
+		JPanel titles = new JPanel(new GridLayout(1, 2));
+		titles.add(createTitle(leftTitle));
+		titles.add(createTitle(rightTitle));
+
+		JPanel sides = new JPanel(new GridLayout(1, 2));
+		sides.add(leftScrollPane);
+		sides.add(rightScrollPane);
+
+		JPanel header = new JPanel(new BorderLayout());
+		header.add(createToolBar(), BorderLayout.NORTH);
+		header.add(titles, BorderLayout.SOUTH);
+		add(header, BorderLayout.NORTH);
+		add(sides, BorderLayout.CENTER);
+		updateSummary();
+	}
+
+	/**
+	 * Diffs two texts off the EDT and creates the view on the EDT once the diff is done.
+	 * The texts must not change while the diff is running.
+	 *
+	 * @return the view, completed on the EDT
+	 */
+	public static CompletableFuture<DiffView> compare(String leftTitle, CharSequence left,
+													  String rightTitle, CharSequence right, Font font) {
+		return CompletableFuture
+			.supplyAsync(() -> {
+				LineDiff.Lines oldLines = LineDiff.split(left);
+				LineDiff.Lines newLines = LineDiff.split(right);
+				return Alignment.of(oldLines, newLines, LineDiff.diff(oldLines, newLines));
+			}, command -> Thread.ofVirtual().start(command))
+			.thenApplyAsync(alignment -> new DiffView(leftTitle, rightTitle, alignment, font), SwingUtilities::invokeLater);
+	}
+
+	/**
+	 * Returns the number of changed regions.
+	 */
+	public int getChangeCount() {
+		return alignment.hunkRows().length;
+	}
+
+	public void nextChange() {
+		if (currentHunk < getChangeCount() - 1) {
+			showHunk(currentHunk + 1);
+		}
+	}
+
+	public void previousChange() {
+		if (currentHunk > 0) {
+			showHunk(currentHunk - 1);
+		}
+	}
+
+	private void showHunk(int hunk) {
+		currentHunk = hunk;
+		int lineHeight = leftSide.lineHeight;
+		int row = Math.max(0, alignment.hunkRows()[hunk] - CONTEXT_ROWS);
+		JViewport viewport = leftScrollPane.getViewport();
+		int maxY = Math.max(0, leftSide.getPreferredSize().height - viewport.getExtentSize().height);
+		viewport.setViewPosition(new Point(0, Math.min(row * lineHeight, maxY)));
+		leftSide.repaint();
+		rightSide.repaint();
+		updateSummary();
+	}
+
+	private void updateSummary() {
+		int count = getChangeCount();
+		if (count == 0) {
+			summaryLabel.setText("No differences");
+		} else if (currentHunk < 0) {
+			summaryLabel.setText(count == 1 ? "1 change" : count + " changes");
+		} else {
+			summaryLabel.setText("Change " + (currentHunk + 1) + " of " + count);
+		}
+	}
+
+	private JComponent createToolBar() {
+		JButton previousButton = new JButton("Previous");
+		previousButton.setToolTipText("Previous change (Shift+F7)");
+		previousButton.addActionListener(e -> previousChange());
+		JButton nextButton = new JButton("Next");
+		nextButton.setToolTipText("Next change (F7)");
+		nextButton.addActionListener(e -> nextChange());
+
+		bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_F7, 0), "diffNextChange", this::nextChange);
+		bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_F7, InputEvent.SHIFT_DOWN_MASK), "diffPreviousChange", this::previousChange);
+
+		JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		toolBar.add(previousButton);
+		toolBar.add(nextButton);
+		toolBar.add(summaryLabel);
+		return toolBar;
+	}
+
+	private void bindKey(KeyStroke keyStroke, String name, Runnable action) {
+		getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(keyStroke, name);
+		getActionMap().put(name, new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				action.run();
+			}
+		});
+	}
+
+	private static JLabel createTitle(String title) {
+		JLabel label = new JLabel(title);
+		label.setBorder(BorderFactory.createEmptyBorder(2, PADDING, 2, PADDING));
+		return label;
+	}
+
+	private JScrollPane createScrollPane(Side side) {
+		JScrollPane scrollPane = new JScrollPane(side);
+		scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+		scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
+		scrollPane.setRowHeaderView(new Gutter(side));
+		scrollPane.getVerticalScrollBar().setUnitIncrement(side.lineHeight * 3);
+		scrollPane.getVerticalScrollBar().setBlockIncrement(side.lineHeight * 15);
+		scrollPane.getHorizontalScrollBar().setUnitIncrement(side.charWidth * 4);
+		return scrollPane;
+	}
+
+	private int firstRow(Rectangle clip, int lineHeight) {
+		return Math.max(0, clip.y / lineHeight);
+	}
+
+	private int lastRow(Rectangle clip, int lineHeight) {
+		return Math.min(alignment.rowCount() - 1, (clip.y + clip.height) / lineHeight);
+	}
+
+	/**
+	 * One side of the view. Lines are drawn with tabs expanded, and only the columns inside the clip.
+	 */
+	private class Side extends JComponent {
+		private final LineDiff.Lines lines;
+		private final int[] rowLines;
+		private final Color ownColor;
+		private final int lineHeight;
+		private final int charWidth;
+		private char[] buffer = new char[256];
+
+		Side(LineDiff.Lines lines, int[] rowLines, Color ownColor, Font font) {
+			this.lines = lines;
+			this.rowLines = rowLines;
+			this.ownColor = ownColor;
+			setFont(font);
+			setOpaque(true);
+			setBackground(UIManager.getColor("TextArea.background"));
+			setForeground(UIManager.getColor("TextArea.foreground"));
+			FontMetrics metrics = getFontMetrics(font);
+			lineHeight = metrics.getHeight();
+			charWidth = metrics.charWidth('m');
+		}
+
+		@Override
+		public Dimension getPreferredSize() {
+			int columns = Math.max(alignment.leftColumns(), alignment.rightColumns());
+			return new Dimension(columns * charWidth + 2 * PADDING, alignment.rowCount() * lineHeight);
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			Graphics2D g2d = (Graphics2D) g;
+			Rectangle clip = g2d.getClipBounds();
+			g2d.setColor(getBackground());
+			g2d.fillRect(clip.x, clip.y, clip.width, clip.height);
+			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+			int ascent = g2d.getFontMetrics().getAscent();
+			int firstColumn = Math.max(0, (clip.x - PADDING) / charWidth);
+			int lastColumn = (clip.x + clip.width - PADDING) / charWidth + 1;
+			for (int row = firstRow(clip, lineHeight); row <= lastRow(clip, lineHeight); row++) {
+				int y = row * lineHeight;
+				Color background = rowBackground(row);
+				if (background != null) {
+					g2d.setColor(background);
+					g2d.fillRect(clip.x, y, clip.width, lineHeight);
+				}
+				int line = rowLines[row];
+				if (line < 0) {
+					continue;
+				}
+				int length = expand(line, firstColumn, lastColumn);
+				if (length > 0) {
+					g2d.setColor(getForeground());
+					g2d.drawChars(buffer, 0, length, PADDING + firstColumn * charWidth, y + ascent);
+				}
+			}
+
+			if (currentHunk >= 0) {
+				int start = alignment.hunkRows()[currentHunk];
+				int end = start;
+				// Adjacent hunks are merged, so every hunk ends at the next unchanged row.
+				while (end < alignment.rowCount() && alignment.kinds()[end] != EQUAL) {
+					end++;
+				}
+				g2d.setColor(CURRENT_COLOR);
+				g2d.fillRect(clip.x, start * lineHeight, clip.width, 1);
+				g2d.fillRect(clip.x, end * lineHeight - 1, clip.width, 1);
+			}
+		}
+
+		private Color rowBackground(int row) {
+			if (alignment.kinds()[row] == EQUAL) {
+				return null;
+			}
+			if (rowLines[row] < 0) {
+				return FILLER_COLOR;
+			}
+			return alignment.kinds()[row] == CHANGED ? CHANGED_COLOR : ownColor;
+		}
+
+		/**
+		 * Expands the columns {@code [firstColumn, lastColumn)} of a line into {@link #buffer}.
+		 *
+		 * @return the number of characters written
+		 */
+		private int expand(int line, int firstColumn, int lastColumn) {
+			CharSequence text = lines.text();
+			if (buffer.length < lastColumn - firstColumn) {
+				buffer = new char[lastColumn - firstColumn];
+			}
+			int length = 0;
+			int column = 0;
+			for (int i = lines.start(line); i < lines.end(line) && column < lastColumn; i++) {
+				char c = text.charAt(i);
+				if (c == '\n' || c == '\r') {
+					break;
+				}
+				int next = c == '\t' ? (column / TAB_SIZE + 1) * TAB_SIZE : column + 1;
+				for (int col = Math.max(column, firstColumn); col < Math.min(next, lastColumn); col++) {
+					buffer[length++] = c == '\t' ? ' ' : c;
+				}
+				column = next;
+			}
+			return length;
+		}
+	}
+
+	/**
+	 * Line numbers of one side, left empty for filler rows.
+	 */
+	private class Gutter extends JComponent {
+		private final Side side;
+
+		Gutter(Side side) {
+			this.side = side;
+			setFont(side.getFont());
+			setOpaque(true);
+			setBackground(side.getBackground());
+			setForeground(Color.GRAY);
+		}
+
+		@Override
+		public Dimension getPreferredSize() {
+			int digits = Math.max(3, String.valueOf(side.lines.count()).length());
+			return new Dimension(digits * side.charWidth + 2 * PADDING, side.getPreferredSize().height);
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			Graphics2D g2d = (Graphics2D) g;
+			Rectangle clip = g2d.getClipBounds();
+			g2d.setColor(getBackground());
+			g2d.fillRect(clip.x, clip.y, clip.width, clip.height);
+			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g2d.setColor(getForeground());
+
+			FontMetrics metrics = g2d.getFontMetrics();
+			int lineHeight = side.lineHeight;
+			for (int row = firstRow(clip, lineHeight); row <= lastRow(clip, lineHeight); row++) {
+				int line = side.rowLines[row];
+				if (line >= 0) {
+					String number = String.valueOf(line + 1);
+					int x = getWidth() - PADDING - metrics.stringWidth(number);
+					g2d.drawString(number, x, row * lineHeight + metrics.getAscent());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,1068 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.components;
+
+import com.slobodanzivanovic.jewel.ui.text.BracketMatcher;
+import com.slobodanzivanovic.jewel.ui.text.ChunkedInsert;
+import com.slobodanzivanovic.jewel.ui.text.EditorDocument;
+import com.slobodanzivanovic.jewel.ui.text.EditorTextAreaUI;
+import com.slobodanzivanovic.jewel.ui.text.FoldModel;
+import com.slobodanzivanovic.jewel.ui.text.FoldRegions;
+import com.slobodanzivanovic.jewel.ui.text.MarkerStore;
+import com.slobodanzivanovic.jewel.ui.text.MultiCaret;
+import com.slobodanzivanovic.jewel.ui.text.OccurrenceHighlighter;
+import com.slobodanzivanovic.jewel.ui.text.TextSelection;
+import com.slobodanzivanovic.jewel.ui.text.WrapModel;
+import com.slobodanzivanovic.jewel.util.text.Rope;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.*;
+import java.awt.*;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The text component of an editor tab, with support for multiple carets, code folding and soft wrap.
+ * <p>
+ * While more than one caret is active the Swing caret is hidden and every caret and selection is
+ * painted here, only for the rows inside the clip. Typing, deleting, moving and clipboard actions
+ * are redirected to the {@link MultiCaret} and the affected rows are repainted in one request.
+ * Alt-dragging selects a rectangular block, represented as one caret per row, so block edits and
+ * clipboard actions take the same path.
+ * </p>
+ * <p>
+ * Collapsed regions of the {@link FoldModel} are left out by the view, and expand again as soon as
+ * the caret moves into them. The bracket next to the caret and its match are highlighted by a
+ * {@link BracketMatcher}, and the other occurrences of the word at the caret by an
+ * {@link OccurrenceHighlighter}.
+ * </p>
+ * <p>
+ * Markers of the {@link MarkerStore}, such as bookmarks and search hits, are painted below the
+ * text for the rows inside the clip only.
+ * </p>
+ * <p>
+ * With line wrap turned on, long lines are soft-wrapped by a {@link WrapModel} and folding is
+ * switched off. When the model lays out rows above the visible area, the view is scrolled so that
+ * the text at the top stays in place.
+ * </p>
+ */
+public class EditorTextArea extends JTextArea {
+	private static final String[] MULTI_CARET_ACTIONS = {
+		DefaultEditorKit.deletePrevCharAction, DefaultEditorKit.deleteNextCharAction,
+		DefaultEditorKit.insertBreakAction, DefaultEditorKit.insertTabAction,
+		DefaultEditorKit.backwardAction, DefaultEditorKit.forwardAction,
+		DefaultEditorKit.upAction, DefaultEditorKit.downAction,
+		DefaultEditorKit.beginLineAction, DefaultEditorKit.endLineAction,
+		DefaultEditorKit.selectionBackwardAction, DefaultEditorKit.selectionForwardAction,
+		DefaultEditorKit.selectionUpAction, DefaultEditorKit.selectionDownAction,
+		DefaultEditorKit.selectionBeginLineAction, DefaultEditorKit.selectionEndLineAction
+	};
+
+	private final EditorDocument document;
+	private final MultiCaret multiCaret;
+	private final FoldRegions foldRegions;
+	private FoldModel foldModel;
+	private WrapModel wrapModel;
+	private final BracketMatcher bracketMatcher;
+	private final OccurrenceHighlighter occurrenceHighlighter;
+	private final MarkerStore markerStore;
+	private final ChangeListener markerListener = e -> repaint();
+	private int paintedStart;
+	private int paintedEnd;
+	private BlockSelection block;
+	private ChunkedInsert pendingPaste;
+
+	public EditorTextArea(EditorDocument document) {
+		this(document, new FoldRegions(document), new BracketMatcher(document), new OccurrenceHighlighter(document),
+			new MarkerStore(document));
+	}
+
+	/**
+	 * Creates another view of the document of {@code source}. The views share the markers, the
+	 * foldable regions and the indexes behind bracket matching and occurrence highlighting; carets,
+	 * collapsed folds, wrapping and scrolling are their own.
+	 */
+	public EditorTextArea(EditorTextArea source) {
+		this(source.document, source.foldRegions, source.bracketMatcher, source.occurrenceHighlighter,
+			source.markerStore);
+		setFont(source.getFont());
+		setLineWrap(source.getLineWrap());
+	}
+
+	private EditorTextArea(EditorDocument document, FoldRegions foldRegions, BracketMatcher bracketMatcher,
+						   OccurrenceHighlighter occurrenceHighlighter, MarkerStore markerStore) {
+		super(document);
+		this.document = document;
+		this.foldRegions = foldRegions;
+		this.bracketMatcher = bracketMatcher;
+		this.occurrenceHighlighter = occurrenceHighlighter;
+		this.markerStore = markerStore;
+		multiCaret = new MultiCaret(document);
+		multiCaret.addChangeListener(e -> caretsChanged());
+		markerStore.addChangeListener(markerListener);
+		foldModel = new FoldModel(document, foldRegions);
+		foldModel.addChangeListener(e -> foldsChanged());
+		wrapModel = new WrapModel(document, this::getTopRow);
+		wrapModel.addChangeListener(e -> wrapChanged());
+
+		setCaret(new EditorCaret());
+		setHighlighter(new EditorHighlighter());
+		installMultiCaretActions();
+		installFoldActions();
+		updateUI();
+		addCaretListener(e -> {
+			if (foldModel.hasHiddenLines()) {
+				foldModel.expandAround(e.getDot());
+			}
+		});
+		bracketMatcher.install(this);
+		occurrenceHighlighter.install(this);
+	}
+
+	/**
+	 * Detaches this view from its document, e.g. when a split view is closed. The document and
+	 * whatever this view shared with others stay in use.
+	 */
+	public void dispose() {
+		if (pendingPaste != null) {
+			pendingPaste.cancel();
+		}
+		bracketMatcher.uninstall(this);
+		occurrenceHighlighter.uninstall(this);
+		markerStore.removeChangeListener(markerListener);
+		foldModel.dispose();
+		document.removeDocumentListener(wrapModel);
+		document.removeDocumentListener(multiCaret);
+		// Uninstalling the UI removes the listeners of the view, caret and highlighter.
+		setUI(null);
+	}
+
+	@Override
+	public void updateUI() {
+		// JTextArea calls this before the fold model exists.
+		if (foldModel == null) {
+			super.updateUI();
+			return;
+		}
+		setUI(new EditorTextAreaUI(foldModel, wrapModel));
+		installTypedAction();
+		// The view and the caret map offsets through the fold and wrap models while handling an
+		// edit, so they have to see every edit first. Document listeners are notified last-added first.
+		document.removeDocumentListener(foldModel);
+		document.removeDocumentListener(wrapModel);
+		document.addDocumentListener(wrapModel);
+		document.addDocumentListener(foldModel);
+		invalidate();
+	}
+
+	public MultiCaret getMultiCaret() {
+		return multiCaret;
+	}
+
+	public FoldModel getFoldModel() {
+		return foldModel;
+	}
+
+	public WrapModel getWrapModel() {
+		return wrapModel;
+	}
+
+	/**
+	 * Turns soft wrap on or off. Collapsed regions are expanded first, since folding only applies
+	 * to unwrapped lines.
+	 */
+	@Override
+	public void setLineWrap(boolean wrap) {
+		if (wrap && foldModel != null) {
+			foldModel.expandAll();
+		}
+		if (!wrap && wrapModel != null) {
+			wrapModel.reset();
+		}
+		super.setLineWrap(wrap);
+	}
+
+	public BracketMatcher getBracketMatcher() {
+		return bracketMatcher;
+	}
+
+	public MarkerStore getMarkerStore() {
+		return markerStore;
+	}
+
+	/**
+	 * Adds a caret, starting multi-caret mode from the current Swing caret if needed.
+	 */
+	public void addCaret(int dot, int mark) {
+		if (multiCaret.getCount() == 0) {
+			multiCaret.set(new int[]{getCaret().getDot(), dot}, new int[]{getCaret().getMark(), mark}, 2);
+		} else {
+			multiCaret.add(dot, mark);
+		}
+		if (multiCaret.isActive()) {
+			moveSwingCaret(dot, mark);
+		}
+	}
+
+	public void clearCarets() {
+		multiCaret.clear();
+	}
+
+	/**
+	 * Selects the word at the caret, or adds a caret on the next occurrence of the selection.
+	 */
+	public void addNextOccurrence() {
+		try {
+			int start = getSelectionStart();
+			int end = getSelectionEnd();
+			if (start == end) {
+				int wordStart = Utilities.getWordStart(this, start);
+				int wordEnd = Utilities.getWordEnd(this, start);
+				if (wordStart < wordEnd) {
+					select(wordStart, wordEnd);
+				}
+				return;
+			}
+
+			// Search the rope from the last caret on instead of copying the whole text on every press.
+			Rope text = document.getSnapshot().text();
+			String needle = text.subSequence(start, end).toString();
+			int from = multiCaret.isActive() ? multiCaret.getEnd(multiCaret.getCount() - 1) : end;
+			int match = text.indexOf(needle, from);
+			if (match < 0) {
+				match = text.indexOf(needle, 0);
+			}
+			if (match >= 0) {
+				addCaret(match + needle.length(), match);
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Adds a caret on the line above the first caret or below the last one, in the same column.
+	 */
+	public void addCaretOnAdjacentLine(boolean below) {
+		int dot;
+		if (multiCaret.isActive()) {
+			dot = below ? multiCaret.getDot(multiCaret.getCount() - 1) : multiCaret.getDot(0);
+		} else {
+			dot = getCaretPosition();
+		}
+		int target = verticalTarget(dot, below ? 1 : -1);
+		if (target != dot) {
+			addCaret(target, target);
+		}
+	}
+
+	@Override
+	public void copy() {
+		if (multiCaret.isActive()) {
+			copySelections();
+		} else {
+			copySelection();
+		}
+	}
+
+	@Override
+	public void cut() {
+		if (multiCaret.isActive()) {
+			if (copySelections()) {
+				runEdit(() -> multiCaret.insert(""));
+			}
+		} else if (isEditable() && isEnabled() && copySelection()) {
+			replaceSelection("");
+		}
+	}
+
+	@Override
+	public void paste() {
+		if (!multiCaret.isActive()) {
+			CharSequence large = largeClipboardText();
+			if (large != null) {
+				pasteInChunks(large);
+			} else {
+				super.paste();
+			}
+			return;
+		}
+
+		String text;
+		try {
+			text = (String) getToolkit().getSystemClipboard().getData(DataFlavor.stringFlavor);
+		} catch (UnsupportedFlavorException | IOException | IllegalStateException ex) {
+			UIManager.getLookAndFeel().provideErrorFeedback(this);
+			return;
+		}
+
+		String normalized = text.replace("\r\n", "\n");
+		String[] lines = normalized.split("\n", -1);
+		if (lines.length == multiCaret.getCount()) {
+			runEdit(() -> multiCaret.insert(lines));
+		} else {
+			runEdit(() -> multiCaret.insert(normalized));
+		}
+	}
+
+	/**
+	 * Returns the clipboard text if it is long enough to be pasted in chunks, otherwise null.
+	 */
+	private CharSequence largeClipboardText() {
+		Clipboard clipboard = getToolkit().getSystemClipboard();
+		try {
+			CharSequence text;
+			if (clipboard.isDataFlavorAvailable(TextSelection.CHAR_SEQUENCE_FLAVOR)) {
+				// Copied in this editor, so the rope can be pasted without building a string.
+				text = (CharSequence) clipboard.getData(TextSelection.CHAR_SEQUENCE_FLAVOR);
+			} else if (clipboard.isDataFlavorAvailable(DataFlavor.stringFlavor)
+				// File lists are opened by the transfer handler, not pasted.
+				&& !clipboard.isDataFlavorAvailable(DataFlavor.javaFileListFlavor)) {
+				text = (String) clipboard.getData(DataFlavor.stringFlavor);
+			} else {
+				return null;
+			}
+			return text.length() >= ChunkedInsert.THRESHOLD ? text : null;
+		} catch (UnsupportedFlavorException | IOException | IllegalStateException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns false while a paste is being inserted into the document, from this view or another
+	 * one, so that no edit lands in the middle of it.
+	 */
+	@Override
+	public boolean isEditable() {
+		// The document is still null while the superclass constructor runs.
+		return super.isEditable() && (document == null || !document.isInsertPending());
+	}
+
+	/**
+	 * Replaces the selection with a large text without blocking the EDT. The first chunk shows up
+	 * right away and the rest is inserted over the following frames, as a single undoable edit. Every
+	 * view of the document is read-only until the last chunk is in.
+	 */
+	private void pasteInChunks(CharSequence text) {
+		if (!isEditable() || !isEnabled()) {
+			UIManager.getLookAndFeel().provideErrorFeedback(this);
+			return;
+		}
+
+		int start = getSelectionStart();
+		try {
+			pendingPaste = ChunkedInsert.start(document, start, getSelectionEnd() - start, text);
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			return;
+		}
+
+		setCaretPosition(start);
+		pendingPaste.getCompletion().thenAccept(end -> {
+			pendingPaste = null;
+			setCaretPosition(end);
+		});
+	}
+
+	@Override
+	protected void processMouseEvent(MouseEvent e) {
+		if (e.getID() == MouseEvent.MOUSE_PRESSED && SwingUtilities.isLeftMouseButton(e)) {
+			int shortcut = getToolkit().getMenuShortcutKeyMaskEx();
+			if ((e.getModifiersEx() & shortcut) != 0) {
+				int offset = viewToModel2D(e.getPoint());
+				addCaret(offset, offset);
+				requestFocusInWindow();
+				e.consume();
+				return;
+			}
+			clearCarets();
+			if ((e.getModifiersEx() & InputEvent.ALT_DOWN_MASK) != 0) {
+				int line = lineAt(e.getPoint());
+				block = new BlockSelection(line, columnAt(e.getPoint(), line));
+				selectBlock(e.getPoint());
+				requestFocusInWindow();
+				e.consume();
+				return;
+			}
+		} else if (e.getID() == MouseEvent.MOUSE_RELEASED && block != null) {
+			block = null;
+			e.consume();
+			return;
+		}
+		super.processMouseEvent(e);
+	}
+
+	@Override
+	protected void processMouseMotionEvent(MouseEvent e) {
+		if (e.getID() == MouseEvent.MOUSE_DRAGGED && block != null) {
+			selectBlock(e.getPoint());
+			scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+			e.consume();
+			return;
+		}
+		super.processMouseMotionEvent(e);
+	}
+
+	/**
+	 * Selects the block between the anchor of the current drag and the given point, as one caret
+	 * per row. Rows shorter than the block get a caret at their end.
+	 */
+	private void selectBlock(Point lead) {
+		int leadLine = lineAt(lead);
+		try {
+			block.extend(leadLine, columnAt(lead, leadLine));
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			return;
+		}
+		multiCaret.set(block.dots, block.marks, block.rows);
+	}
+
+	/**
+	 * The rows of a block being dragged out. Each drag event only reads the lines that joined the
+	 * block since the previous one, and the rows it keeps only move their dot when the lead column
+	 * changed.
+	 */
+	private final class BlockSelection {
+		private final int anchorLine;
+		private final int anchorColumn;
+		private long version = -1;
+		private int firstLine;
+		private int rows;
+		private int leadColumn;
+		private int[] starts = new int[0];
+		private int[] lengths = new int[0];
+		private boolean[] tabs = new boolean[0];
+		private int[] marks = new int[0];
+		private int[] dots = new int[0];
+		private final Segment text = new Segment();
+
+		BlockSelection(int anchorLine, int anchorColumn) {
+			this.anchorLine = anchorLine;
+			this.anchorColumn = anchorColumn;
+		}
+
+		void extend(int leadLine, int newLeadColumn) throws BadLocationException {
+			long newVersion = document.getSnapshot().version();
+			if (newVersion != version) {
+				// The lines moved since the last drag event, so none of the rows can be kept.
+				version = newVersion;
+				rows = 0;
+			}
+
+			int newFirstLine = Math.min(anchorLine, leadLine);
+			int newRows = Math.abs(leadLine - anchorLine) + 1;
+			int[] newStarts = new int[newRows];
+			int[] newLengths = new int[newRows];
+			boolean[] newTabs = new boolean[newRows];
+			int[] newMarks = new int[newRows];
+			int[] newDots = new int[newRows];
+
+			// Both blocks contain the anchor line, so the rows they share are one run.
+			int keptFirst = Math.max(firstLine, newFirstLine);
+			int keptEnd = Math.min(firstLine + rows, newFirstLine + newRows);
+			if (keptFirst < keptEnd) {
+				int from = keptFirst - firstLine;
+				int to = keptFirst - newFirstLine;
+				int count = keptEnd - keptFirst;
+				System.arraycopy(starts, from, newStarts, to, count);
+				System.arraycopy(lengths, from, newLengths, to, count);
+				System.arraycopy(tabs, from, newTabs, to, count);
+				System.arraycopy(marks, from, newMarks, to, count);
+				System.arraycopy(dots, from, newDots, to, count);
+			} else {
+				keptFirst = keptEnd = newFirstLine;
+			}
+
+			Element root = document.getDefaultRootElement();
+			int tabSize = getTabSize();
+			for (int row = 0; row < newRows; row++) {
+				int line = newFirstLine + row;
+				boolean kept = line >= keptFirst && line < keptEnd;
+				if (kept && newLeadColumn == leadColumn) {
+					continue;
+				}
+				if (kept && !newTabs[row]) {
+					newDots[row] = newStarts[row] + Math.min(newLeadColumn, newLengths[row]);
+					continue;
+				}
+
+				if (kept) {
+					document.getText(newStarts[row], newLengths[row], text);
+				} else {
+					Element element = root.getElement(line);
+					newStarts[row] = element.getStartOffset();
+					newLengths[row] = Math.min(element.getEndOffset() - 1, document.getLength()) - newStarts[row];
+					document.getText(newStarts[row], newLengths[row], text);
+					newTabs[row] = hasTab(text);
+					newMarks[row] = newStarts[row] + offsetOfColumn(text, anchorColumn, tabSize);
+				}
+				newDots[row] = newStarts[row] + offsetOfColumn(text, newLeadColumn, tabSize);
+			}
+
+			firstLine = newFirstLine;
+			rows = newRows;
+			leadColumn = newLeadColumn;
+			starts = newStarts;
+			lengths = newLengths;
+			tabs = newTabs;
+			marks = newMarks;
+			dots = newDots;
+		}
+	}
+
+	private int lineAt(Point point) {
+		return document.getDefaultRootElement().getElementIndex(viewToModel2D(point));
+	}
+
+	/**
+	 * Returns the visual column under a point, counting tabs as their width and allowing columns
+	 * past the end of the line.
+	 */
+	private int columnAt(Point point, int lineIndex) {
+		Element line = document.getDefaultRootElement().getElement(lineIndex);
+		int start = line.getStartOffset();
+		int end = Math.min(line.getEndOffset() - 1, document.getLength());
+		int offset = Math.clamp(viewToModel2D(point), start, end);
+
+		Segment text = new Segment();
+		try {
+			document.getText(start, offset - start, text);
+			int column = columnOf(text, getTabSize());
+			if (offset == end) {
+				Rectangle2D lineEnd = modelToView2D(end);
+				if (lineEnd != null && point.x > lineEnd.getX()) {
+					column += (int) Math.round((point.x - lineEnd.getX()) / getColumnWidth());
+				}
+			}
+			return column;
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			return 0;
+		}
+	}
+
+	private static int columnOf(Segment text, int tabSize) {
+		int column = 0;
+		for (int i = 0; i < text.count; i++) {
+			column = text.array[text.offset + i] == '\t' ? (column / tabSize + 1) * tabSize : column + 1;
+		}
+		return column;
+	}
+
+	private static boolean hasTab(Segment text) {
+		for (int i = 0; i < text.count; i++) {
+			if (text.array[text.offset + i] == '\t') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int offsetOfColumn(Segment text, int targetColumn, int tabSize) {
+		int column = 0;
+		for (int i = 0; i < text.count; i++) {
+			int next = text.array[text.offset + i] == '\t' ? (column / tabSize + 1) * tabSize : column + 1;
+			if (next > targetColumn) {
+				return i;
+			}
+			column = next;
+		}
+		return text.count;
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		if (multiCaret.isActive()) {
+			paintCarets(g);
+		}
+	}
+
+	private void installMultiCaretActions() {
+		ActionMap actionMap = getActionMap();
+		for (String name : MULTI_CARET_ACTIONS) {
+			Action original = actionMap.get(name);
+			if (original != null) {
+				actionMap.put(name, new MultiCaretAction(name, original));
+			}
+		}
+
+		int shortcut = getToolkit().getMenuShortcutKeyMaskEx();
+		InputMap inputMap = getInputMap();
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_D, shortcut), "add-next-occurrence");
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, shortcut | InputEvent.ALT_DOWN_MASK), "add-caret-above");
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, shortcut | InputEvent.ALT_DOWN_MASK), "add-caret-below");
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "clear-carets");
+		actionMap.put("add-next-occurrence", action(this::addNextOccurrence));
+		actionMap.put("add-caret-above", action(() -> addCaretOnAdjacentLine(false)));
+		actionMap.put("add-caret-below", action(() -> addCaretOnAdjacentLine(true)));
+		actionMap.put("clear-carets", action(this::clearCarets));
+	}
+
+	/**
+	 * Installs the typing action for multiple carets. The UI replaces the keymap whenever it is
+	 * installed, so this runs again after every UI change.
+	 */
+	private void installTypedAction() {
+		Keymap keymap = addKeymap(null, getKeymap());
+		Action typedAction = keymap.getDefaultAction();
+		keymap.setDefaultAction(new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (!multiCaret.isActive()) {
+					typedAction.actionPerformed(e);
+					return;
+				}
+				String content = e.getActionCommand();
+				int modifiers = e.getModifiers();
+				if (content != null && !content.isEmpty() && isEditable()
+					&& (modifiers & (ActionEvent.CTRL_MASK | ActionEvent.META_MASK)) == 0) {
+					char c = content.charAt(0);
+					if (c >= 0x20 && c != 0x7F) {
+						runEdit(() -> multiCaret.insert(content));
+					}
+				}
+			}
+		});
+		setKeymap(keymap);
+	}
+
+	private void installFoldActions() {
+		int shortcut = getToolkit().getMenuShortcutKeyMaskEx();
+		InputMap inputMap = getInputMap();
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_OPEN_BRACKET, shortcut | InputEvent.SHIFT_DOWN_MASK), "fold");
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_CLOSE_BRACKET, shortcut | InputEvent.SHIFT_DOWN_MASK), "unfold");
+		ActionMap actionMap = getActionMap();
+		actionMap.put("fold", action(() -> {
+			if (!getLineWrap()) {
+				foldModel.collapse(getCaretPosition());
+			}
+		}));
+		actionMap.put("unfold", action(() -> foldModel.expand(getCaretPosition())));
+
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_BACK_SLASH, shortcut | InputEvent.SHIFT_DOWN_MASK), "jump-to-matching-bracket");
+		actionMap.put("jump-to-matching-bracket", action(() -> bracketMatcher.jumpToMatch(this)));
+
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F2, shortcut), "toggle-bookmark");
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F2, 0), "next-bookmark");
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F2, InputEvent.SHIFT_DOWN_MASK), "previous-bookmark");
+		actionMap.put("toggle-bookmark", action(this::toggleBookmark));
+		actionMap.put("next-bookmark", action(() -> jumpToBookmark(true)));
+		actionMap.put("previous-bookmark", action(() -> jumpToBookmark(false)));
+	}
+
+	/**
+	 * Removes the bookmarks on the caret line, or adds one at its start if there are none.
+	 */
+	private void toggleBookmark() {
+		Element line = document.getDefaultRootElement().getElement(
+			document.getDefaultRootElement().getElementIndex(getCaretPosition()));
+		List<Integer> starts = new ArrayList<>();
+		List<MarkerStore.Marker> bookmarks = new ArrayList<>();
+		markerStore.forEachOverlapping(line.getStartOffset(), line.getEndOffset() - 1, (start, end, marker) -> {
+			if (marker.getType() == MarkerStore.Type.BOOKMARK) {
+				starts.add(start);
+				bookmarks.add(marker);
+			}
+		});
+		if (bookmarks.isEmpty()) {
+			markerStore.add(MarkerStore.Type.BOOKMARK, line.getStartOffset(), line.getStartOffset(), null);
+		}
+		for (int i = 0; i < bookmarks.size(); i++) {
+			markerStore.remove(starts.get(i), bookmarks.get(i));
+		}
+	}
+
+	/**
+	 * Moves the caret to the next or previous bookmark, wrapping around at the end of the document.
+	 */
+	private void jumpToBookmark(boolean forward) {
+		Element root = document.getDefaultRootElement();
+		Element line = root.getElement(root.getElementIndex(getCaretPosition()));
+		int target;
+		if (forward) {
+			target = markerStore.nextStart(MarkerStore.Type.BOOKMARK, line.getEndOffset());
+			if (target < 0) {
+				target = markerStore.nextStart(MarkerStore.Type.BOOKMARK, 0);
+			}
+		} else {
+			target = markerStore.previousStart(MarkerStore.Type.BOOKMARK, line.getStartOffset() - 1);
+			if (target < 0) {
+				target = markerStore.previousStart(MarkerStore.Type.BOOKMARK, Integer.MAX_VALUE);
+			}
+		}
+		if (target < 0) {
+			UIManager.getLookAndFeel().provideErrorFeedback(this);
+			return;
+		}
+		setCaretPosition(Math.min(target, document.getLength()));
+	}
+
+	private void foldsChanged() {
+		revalidate();
+		repaint();
+	}
+
+	private void wrapChanged() {
+		revalidate();
+		repaint();
+		int anchorRow = wrapModel.takeAnchorRow();
+		JScrollPane scrollPane = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, this);
+		if (anchorRow < 0 || scrollPane == null) {
+			return;
+		}
+
+		Rectangle visible = getVisibleRect();
+		int rowHeight = getRowHeight();
+		int top = getInsets().top;
+		int y = top + anchorRow * rowHeight + Math.max(0, visible.y - top) % rowHeight;
+		// Lay out right away, so the new height is known before moving the viewport.
+		scrollPane.validate();
+		y = Math.clamp(y, 0, Math.max(0, getHeight() - visible.height));
+		scrollPane.getViewport().setViewPosition(new Point(visible.x, y));
+	}
+
+	private int getTopRow() {
+		int rowHeight = getRowHeight();
+		return rowHeight <= 0 ? 0 : Math.max(0, getVisibleRect().y - getInsets().top) / rowHeight;
+	}
+
+	private static Action action(Runnable runnable) {
+		return new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				runnable.run();
+			}
+		};
+	}
+
+	private void runMultiCaretAction(String name) {
+		switch (name) {
+			case DefaultEditorKit.deletePrevCharAction -> runEdit(() -> multiCaret.delete(false));
+			case DefaultEditorKit.deleteNextCharAction -> runEdit(() -> multiCaret.delete(true));
+			case DefaultEditorKit.insertBreakAction -> runEdit(() -> multiCaret.insert("\n"));
+			case DefaultEditorKit.insertTabAction -> runEdit(() -> multiCaret.insert("\t"));
+			case DefaultEditorKit.backwardAction -> moveCarets(dot -> dot - 1, false);
+			case DefaultEditorKit.forwardAction -> moveCarets(dot -> dot + 1, false);
+			case DefaultEditorKit.upAction -> moveCarets(dot -> verticalTarget(dot, -1), false);
+			case DefaultEditorKit.downAction -> moveCarets(dot -> verticalTarget(dot, 1), false);
+			case DefaultEditorKit.beginLineAction -> moveCarets(this::lineStart, false);
+			case DefaultEditorKit.endLineAction -> moveCarets(this::lineEnd, false);
+			case DefaultEditorKit.selectionBackwardAction -> moveCarets(dot -> dot - 1, true);
+			case DefaultEditorKit.selectionForwardAction -> moveCarets(dot -> dot + 1, true);
+			case DefaultEditorKit.selectionUpAction -> moveCarets(dot -> verticalTarget(dot, -1), true);
+			case DefaultEditorKit.selectionDownAction -> moveCarets(dot -> verticalTarget(dot, 1), true);
+			case DefaultEditorKit.selectionBeginLineAction -> moveCarets(this::lineStart, true);
+			case DefaultEditorKit.selectionEndLineAction -> moveCarets(this::lineEnd, true);
+			default -> {
+			}
+		}
+	}
+
+	private interface Edit {
+		void run() throws BadLocationException;
+	}
+
+	private void runEdit(Edit edit) {
+		if (!isEditable()) {
+			UIManager.getLookAndFeel().provideErrorFeedback(this);
+			return;
+		}
+		try {
+			edit.run();
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private void moveCarets(IntUnaryOperator target, boolean select) {
+		multiCaret.move(target, select);
+	}
+
+	private int lineStart(int offset) {
+		Element root = document.getDefaultRootElement();
+		return root.getElement(root.getElementIndex(offset)).getStartOffset();
+	}
+
+	private int lineEnd(int offset) {
+		Element root = document.getDefaultRootElement();
+		Element line = root.getElement(root.getElementIndex(offset));
+		return Math.min(line.getEndOffset() - 1, document.getLength());
+	}
+
+	/**
+	 * Returns the offset in the same column a number of lines away, clamped to the line length.
+	 */
+	private int verticalTarget(int offset, int lines) {
+		Element root = document.getDefaultRootElement();
+		int line = root.getElementIndex(offset);
+		int targetLine = Math.clamp(line + lines, 0, root.getElementCount() - 1);
+		if (targetLine == line) {
+			return offset;
+		}
+		int column = offset - root.getElement(line).getStartOffset();
+		Element target = root.getElement(targetLine);
+		return Math.min(target.getStartOffset() + column, Math.min(target.getEndOffset() - 1, document.getLength()));
+	}
+
+	/**
+	 * Puts the selection on the clipboard as a slice of the current snapshot, so nothing is copied
+	 * until the text is pasted somewhere.
+	 *
+	 * @return false if there is no selection
+	 */
+	private boolean copySelection() {
+		int start = getSelectionStart();
+		int end = getSelectionEnd();
+		if (start == end) {
+			return false;
+		}
+		TextSelection selection = new TextSelection(document.getSnapshot().text().subSequence(start, end));
+		getToolkit().getSystemClipboard().setContents(selection, selection);
+		return true;
+	}
+
+	private boolean copySelections() {
+		Rope snapshot = document.getSnapshot().text();
+		Rope separator = Rope.of("\n");
+		Rope text = Rope.EMPTY;
+		for (int i = 0; i < multiCaret.getCount(); i++) {
+			if (i > 0) {
+				text = text.concat(separator);
+			}
+			text = text.concat(snapshot.subSequence(multiCaret.getStart(i), multiCaret.getEnd(i)));
+		}
+		TextSelection selection = new TextSelection(text);
+		getToolkit().getSystemClipboard().setContents(selection, selection);
+		return true;
+	}
+
+	private void caretsChanged() {
+		int count = multiCaret.getCount();
+		if (count > 1) {
+			getCaret().setSelectionVisible(false);
+			int last = count - 1;
+			if (getCaretPosition() != multiCaret.getDot(last) || getCaret().getMark() != multiCaret.getMark(last)) {
+				moveSwingCaret(multiCaret.getDot(last), multiCaret.getMark(last));
+			}
+		} else if (count == 1) {
+			// The carets collapsed into one, hand it back to the Swing caret.
+			moveSwingCaret(multiCaret.getDot(0), multiCaret.getMark(0));
+			multiCaret.clear();
+			return;
+		} else {
+			getCaret().setSelectionVisible(hasFocus());
+		}
+
+		int start = count > 0 ? multiCaret.getStart(0) : paintedStart;
+		int end = count > 0 ? multiCaret.getEnd(count - 1) : paintedEnd;
+		repaintOffsets(Math.min(start, paintedStart), Math.max(end, paintedEnd));
+		paintedStart = start;
+		paintedEnd = end;
+	}
+
+	private void moveSwingCaret(int dot, int mark) {
+		Caret caret = getCaret();
+		caret.setDot(mark);
+		caret.moveDot(dot);
+	}
+
+	/**
+	 * Repaints the visible rows between two offsets with a single request.
+	 */
+	private void repaintOffsets(int from, int to) {
+		int length = document.getLength();
+		try {
+			Rectangle2D first = modelToView2D(Math.clamp(from, 0, length));
+			Rectangle2D last = modelToView2D(Math.clamp(to, 0, length));
+			if (first == null || last == null) {
+				return;
+			}
+			Rectangle dirty = new Rectangle(0, (int) first.getY(), getWidth(),
+				(int) (last.getMaxY() - first.getY()) + 1);
+			Rectangle visible = dirty.intersection(getVisibleRect());
+			if (!visible.isEmpty()) {
+				repaint(visible);
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private void paintCarets(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		int from = viewToModel2D(new Point(0, clip.y));
+		int to = lineEnd(viewToModel2D(new Point(clip.x + clip.width, clip.y + clip.height)));
+
+		g.setColor(getCaretColor());
+		try {
+			for (int i = multiCaret.indexAtOrAfter(from); i < multiCaret.getCount(); i++) {
+				int dot = multiCaret.getDot(i);
+				if (multiCaret.getStart(i) > to) {
+					break;
+				}
+				if (dot >= from && dot <= to) {
+					Rectangle2D bounds = modelToView2D(dot);
+					g.fillRect((int) bounds.getX(), (int) bounds.getY(), 2, (int) bounds.getHeight());
+				}
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Paints the selections of all carets below the text, limited to the rows inside the clip.
+	 */
+	private void paintSelections(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		int from = viewToModel2D(new Point(0, clip.y));
+		int to = lineEnd(viewToModel2D(new Point(clip.x + clip.width, clip.y + clip.height)));
+
+		g.setColor(getSelectionColor());
+		try {
+			for (int i = multiCaret.indexAtOrAfter(from); i < multiCaret.getCount(); i++) {
+				int start = Math.max(multiCaret.getStart(i), from);
+				int end = Math.min(multiCaret.getEnd(i), to);
+				if (multiCaret.getStart(i) > to) {
+					break;
+				}
+				if (start < end) {
+					fillRange(g, start, end);
+				}
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Paints the backgrounds of the markers inside the clip below the text.
+	 */
+	private void paintMarkers(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		int from = viewToModel2D(new Point(0, clip.y));
+		int to = lineEnd(viewToModel2D(new Point(clip.x + clip.width, clip.y + clip.height)));
+
+		markerStore.forEachOverlapping(from, to + 1, (start, end, marker) -> {
+			Color color = marker.getType().getTextColor();
+			if (color == null || start == end) {
+				return;
+			}
+			g.setColor(color);
+			try {
+				fillRange(g, Math.max(start, from), Math.min(end, to));
+			} catch (BadLocationException ex) {
+				ex.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Fills the background of a range, line by line. A range reaching past the end of a line is
+	 * filled to the right edge.
+	 */
+	private void fillRange(Graphics g, int start, int end) throws BadLocationException {
+		Element root = document.getDefaultRootElement();
+		Insets insets = getInsets();
+		for (int line = root.getElementIndex(start); line <= root.getElementIndex(end); line++) {
+			Element element = root.getElement(line);
+			int lineStart = Math.max(start, element.getStartOffset());
+			int lineEnd = Math.min(end, element.getEndOffset() - 1);
+			Rectangle2D left = modelToView2D(lineStart);
+			Rectangle2D right = modelToView2D(lineEnd);
+			int x0 = (int) left.getX();
+			int x1 = end >= element.getEndOffset() ? getWidth() - insets.right : (int) right.getX();
+			int y0 = (int) left.getY();
+			int y1 = (int) right.getY();
+			int height = (int) left.getHeight();
+			if (y0 == y1) {
+				g.fillRect(x0, y0, Math.max(x1 - x0, 1), height);
+			} else {
+				// The line is soft-wrapped: fill to the right edge, the rows between, then up to the end.
+				int rightEdge = getWidth() - insets.right;
+				g.fillRect(x0, y0, Math.max(rightEdge - x0, 1), height);
+				g.fillRect(insets.left, y0 + height, rightEdge - insets.left, y1 - y0 - height);
+				g.fillRect(insets.left, y1, Math.max(x1 - insets.left, 1), height);
+			}
+		}
+	}
+
+	private final class MultiCaretAction extends AbstractAction {
+		private final String name;
+		private final Action original;
+
+		private MultiCaretAction(String name, Action original) {
+			super(name);
+			this.name = name;
+			this.original = original;
+		}
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (multiCaret.isActive()) {
+				runMultiCaretAction(name);
+			} else {
+				original.actionPerformed(e);
+			}
+		}
+	}
+
+	/**
+	 * The Swing caret, hidden together with its selection while multiple carets are painted.
+	 */
+	private final class EditorCaret extends DefaultCaret {
+		@Override
+		public void paint(Graphics g) {
+			if (!multiCaret.isActive()) {
+				super.paint(g);
+			}
+		}
+
+		@Override
+		public void setSelectionVisible(boolean visible) {
+			super.setSelectionVisible(visible && !multiCaret.isActive());
+		}
+	}
+
+	/**
+	 * Paints the markers and the multi-caret selections right after the regular highlights, below
+	 * the text.
+	 */
+	private final class EditorHighlighter extends DefaultHighlighter {
+		@Override
+		public void paint(Graphics g) {
+			super.paint(g);
+			paintMarkers(g);
+			if (multiCaret.isActive()) {
+				paintSelections(g);
+			}
+		}
+	}
+}
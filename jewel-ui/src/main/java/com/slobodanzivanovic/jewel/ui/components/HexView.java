@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.components;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyEvent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Read-only hex viewer for binary files of any size.
+ * <p>
+ * The file is never decoded as a whole. Bytes are read from a small cache of memory-mapped pages, and
+ * since every row holds a fixed number of bytes the offset of any row is computed arithmetically.
+ * Painting a frame therefore only touches the rows that are visible, no matter how large the file is.
+ * </p>
+ */
+public class HexView extends JPanel implements Closeable {
+	private static final int BYTES_PER_ROW = 16;
+	private static final long PAGE_SIZE = 16L * 1024 * 1024;
+	private static final int MAX_CACHED_PAGES = 8;
+	private static final int PADDING = 6;
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private final Path path;
+	private final FileChannel channel;
+	private final long fileSize;
+	private final long rowCount;
+	private final int offsetDigits;
+	private final Map<Long, MappedByteBuffer> pageCache;
+	private final HexCanvas canvas;
+	private final JScrollBar scrollBar;
+
+	public HexView(Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.fileSize = channel.size();
+		this.rowCount = (fileSize + BYTES_PER_ROW - 1) / BYTES_PER_ROW;
+		this.offsetDigits = Math.max(8, (64 - Long.numberOfLeadingZeros(Math.max(1, fileSize - 1)) + 3) / 4);
+		this.pageCache = new LinkedHashMap<>(MAX_CACHED_PAGES, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+				return size() > MAX_CACHED_PAGES;
+			}
+		};
+
+		setLayout(new BorderLayout());
+		canvas = new HexCanvas();
+		scrollBar = new JScrollBar(JScrollBar.VERTICAL, 0, 1, 0, (int) Math.min(Integer.MAX_VALUE, Math.max(1, rowCount)));
+		scrollBar.addAdjustmentListener(e -> canvas.repaint());
+
+		add(canvas, BorderLayout.CENTER);
+		add(scrollBar, BorderLayout.EAST);
+
+		canvas.addMouseWheelListener(e -> scrollBar.setValue(scrollBar.getValue() + e.getUnitsToScroll()));
+		canvas.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				updateScrollBar();
+			}
+		});
+		installKeyBindings();
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public void close() {
+		pageCache.clear();
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private void installKeyBindings() {
+		canvas.setFocusable(true);
+		bindScroll(KeyEvent.VK_UP, "hexLineUp", () -> -1);
+		bindScroll(KeyEvent.VK_DOWN, "hexLineDown", () -> 1);
+		bindScroll(KeyEvent.VK_PAGE_UP, "hexPageUp", () -> -visibleRows());
+		bindScroll(KeyEvent.VK_PAGE_DOWN, "hexPageDown", () -> visibleRows());
+		bindScroll(KeyEvent.VK_HOME, "hexHome", () -> -scrollBar.getValue());
+		bindScroll(KeyEvent.VK_END, "hexEnd", () -> scrollBar.getMaximum());
+	}
+
+	private void bindScroll(int keyCode, String name, IntSupplier delta) {
+		canvas.getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(keyCode, 0), name);
+		canvas.getActionMap().put(name, new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				scrollBar.setValue(scrollBar.getValue() + delta.getAsInt());
+			}
+		});
+	}
+
+	private void updateScrollBar() {
+		int rows = visibleRows();
+		scrollBar.setVisibleAmount(rows);
+		scrollBar.setBlockIncrement(rows);
+		canvas.repaint();
+	}
+
+	private int visibleRows() {
+		int lineHeight = canvas.getFontMetrics(canvas.getFont()).getHeight();
+		return Math.max(1, canvas.getHeight() / lineHeight);
+	}
+
+	private MappedByteBuffer pageFor(long offset) {
+		long pageIndex = offset / PAGE_SIZE;
+		return pageCache.computeIfAbsent(pageIndex, index -> {
+			long start = index * PAGE_SIZE;
+			try {
+				return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(PAGE_SIZE, fileSize - start));
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+	}
+
+	/**
+	 * Formats one row into {@code line}, returning the number of characters written.
+	 */
+	private int formatRow(long row, char[] line) {
+		long offset = row * BYTES_PER_ROW;
+		int count = (int) Math.min(BYTES_PER_ROW, fileSize - offset);
+		MappedByteBuffer page = pageFor(offset);
+		int pageOffset = (int) (offset % PAGE_SIZE);
+
+		int pos = 0;
+		for (int shift = (offsetDigits - 1) * 4; shift >= 0; shift -= 4) {
+			line[pos++] = HEX_DIGITS[(int) ((offset >>> shift) & 0xF)];
+		}
+		line[pos++] = ' ';
+		line[pos++] = ' ';
+
+		int asciiStart = pos + BYTES_PER_ROW * 3 + 1;
+		for (int i = 0; i < BYTES_PER_ROW; i++) {
+			if (i < count) {
+				int b = page.get(pageOffset + i) & 0xFF;
+				line[pos++] = HEX_DIGITS[b >>> 4];
+				line[pos++] = HEX_DIGITS[b & 0xF];
+				line[asciiStart + i] = b >= 0x20 && b < 0x7F ? (char) b : '.';
+			} else {
+				line[pos++] = ' ';
+				line[pos++] = ' ';
+				line[asciiStart + i] = ' ';
+			}
+			line[pos++] = i == BYTES_PER_ROW / 2 - 1 ? '-' : ' ';
+		}
+		line[pos] = ' ';
+		return asciiStart + BYTES_PER_ROW;
+	}
+
+	private class HexCanvas extends JComponent {
+		private final char[] line = new char[32 + BYTES_PER_ROW * 4 + 8];
+
+		HexCanvas() {
+			setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+			setOpaque(true);
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			Graphics2D g2d = (Graphics2D) g;
+			g2d.setColor(HexView.this.getBackground());
+			g2d.fillRect(0, 0, getWidth(), getHeight());
+			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g2d.setColor(HexView.this.getForeground());
+
+			FontMetrics metrics = g2d.getFontMetrics();
+			int lineHeight = metrics.getHeight();
+			Rectangle clip = g2d.getClipBounds();
+			long firstRow = scrollBar.getValue();
+			int firstVisible = Math.max(0, clip.y / lineHeight);
+			int lastVisible = (clip.y + clip.height) / lineHeight;
+
+			for (int i = firstVisible; i <= lastVisible; i++) {
+				long row = firstRow + i;
+				if (row >= rowCount) {
+					break;
+				}
+				int length = formatRow(row, line);
+				g2d.drawChars(line, 0, length, PADDING, i * lineHeight + metrics.getAscent());
+			}
+		}
+	}
+}
@@ -16,21 +16,43 @@
 
 package com.slobodanzivanovic.jewel.ui.components;
 
+import com.slobodanzivanovic.jewel.ui.text.FoldModel;
+import com.slobodanzivanovic.jewel.ui.text.MarkerStore;
+
 import javax.swing.*;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
+/**
+ * The gutter of an editor tab: numbers of the visible lines, toggles for foldable regions and a
+ * stripe for lines with markers.
+ * <p>
+ * Only the rows inside the clip are painted, so lines hidden by collapsed regions cost nothing.
+ * </p>
+ */
 public class LineNumbers extends JPanel {
-	private final JTextArea textArea;
+	private final EditorTextArea textArea;
 	private final int padding = 15;
+	private final int markerWidth = 3;
 
-	public LineNumbers(JTextArea textArea) {
+	public LineNumbers(EditorTextArea textArea) {
 		this.textArea = textArea;
 		setBackground(textArea.getBackground());
 		setForeground(textArea.getForeground());
 		setFont(textArea.getFont());
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				if (SwingUtilities.isLeftMouseButton(e) && e.getX() < padding && !textArea.getLineWrap()) {
+					toggleFold(e.getY());
+				}
+			}
+		});
 	}
 
 	public void setScrollPane(JScrollPane scrollPane) {
@@ -60,19 +82,23 @@ public class LineNumbers extends JPanel {
 		super.paintComponent(g);
 		Graphics2D g2d = (Graphics2D) g;
 		g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
 		Rectangle clip = g2d.getClipBounds();
 		int fontHeight = g2d.getFontMetrics().getHeight();
-		int startOffset = textArea.viewToModel2D(new Point(0, clip.y));
-		int endOffset = textArea.viewToModel2D(new Point(0, clip.y + clip.height));
+		FoldModel folds = textArea.getFoldModel();
+		MarkerStore markers = textArea.getMarkerStore();
+		Element root = textArea.getDocument().getDefaultRootElement();
+		int startLine = root.getElementIndex(textArea.viewToModel2D(new Point(0, clip.y)));
+		int endLine = root.getElementIndex(textArea.viewToModel2D(new Point(0, clip.y + clip.height)));
+		int startRow = folds.rowForLine(startLine);
+		int endRow = folds.rowForLine(endLine);
 
 		try {
-			int startLine = textArea.getLineOfOffset(startOffset);
-			int endLine = textArea.getLineOfOffset(endOffset);
-
-			for (int line = startLine; line <= endLine; line++) {
+			for (int row = startRow; row <= endRow; row++) {
+				int line = folds.lineForRow(row);
 				String lineNumber = String.valueOf(line + 1);
-				int yText = textArea.modelToView2D(textArea.getLineStartOffset(line)).getBounds().y;
+				int yText = textArea.modelToView2D(root.getElement(line).getStartOffset()).getBounds().y;
 				// TODO: we will have problem with this prob
 				int y = yText + fontHeight - 4;
 
@@ -80,12 +106,63 @@ public class LineNumbers extends JPanel {
 				int x = padding + (getWidth() - 2 * padding - stringWidth) / 2;
 
 				g2d.drawString(lineNumber, x, y);
+
+				FoldModel.FoldState state = folds.getFoldState(line);
+				if (state != FoldModel.FoldState.NONE && !textArea.getLineWrap()) {
+					paintFoldToggle(g2d, state == FoldModel.FoldState.COLLAPSED, yText, fontHeight);
+				}
+
+				Color markerColor = markerColor(markers, root.getElement(line));
+				if (markerColor != null) {
+					g2d.setColor(markerColor);
+					g2d.fillRect(getWidth() - markerWidth, yText, markerWidth, fontHeight);
+					g2d.setColor(getForeground());
+				}
 			}
 		} catch (BadLocationException ex) {
 			ex.printStackTrace();
 		}
 	}
 
+	/**
+	 * Returns the gutter color of the last marker type on a line, or null if it has no marker
+	 * shown in the gutter.
+	 */
+	private static Color markerColor(MarkerStore markers, Element line) {
+		Color[] color = new Color[1];
+		markers.forEachOverlapping(line.getStartOffset(), line.getEndOffset() - 1, (start, end, marker) -> {
+			if (marker.getType().getGutterColor() != null) {
+				color[0] = marker.getType().getGutterColor();
+			}
+		});
+		return color[0];
+	}
+
+	/**
+	 * Paints a triangle pointing right for a collapsed region and down for an expanded one.
+	 */
+	private void paintFoldToggle(Graphics2D g2d, boolean collapsed, int y, int height) {
+		int size = Math.max(4, height / 3);
+		int x = (padding - size) / 2;
+		int top = y + (height - size) / 2;
+		Polygon triangle = new Polygon();
+		if (collapsed) {
+			triangle.addPoint(x, top);
+			triangle.addPoint(x + size, top + size / 2);
+			triangle.addPoint(x, top + size);
+		} else {
+			triangle.addPoint(x, top);
+			triangle.addPoint(x + size, top);
+			triangle.addPoint(x + size / 2, top + size);
+		}
+		g2d.fillPolygon(triangle);
+	}
+
+	private void toggleFold(int y) {
+		int offset = textArea.viewToModel2D(new Point(0, y));
+		textArea.getFoldModel().toggle(textArea.getDocument().getDefaultRootElement().getElementIndex(offset));
+	}
+
 	public void refresh() {
 		revalidate();
 		repaint();
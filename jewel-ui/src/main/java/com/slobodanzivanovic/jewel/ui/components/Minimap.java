@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.components;
+
+import com.slobodanzivanovic.jewel.ui.text.EditorDocument;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A downscaled overview of the document next to the editor.
+ * <p>
+ * Every line becomes one pixel row and every character one pixel. The overview is cut into tiles
+ * of up to {@link #TILE_LINES} lines that are rendered on a background thread and kept in a small
+ * cache, so painting and scrolling only copy cached images. Edits within a line redraw that line in
+ * its tile right away. Edits that add or remove lines re-render only the tile they touch; the tiles
+ * below keep their images and just move by the number of lines added or removed. Lines no tile
+ * covers any more get new tiles when they are painted.
+ * </p>
+ */
+public class Minimap extends JComponent {
+	private static final int LINE_HEIGHT = 2;
+	private static final int TILE_LINES = 256;
+	private static final int MAX_TILES = 32;
+	private static final int WIDTH = 100;
+
+	private final EditorTextArea textArea;
+	private final EditorDocument document;
+	private final JScrollPane scrollPane;
+	private final TreeMap<Integer, Tile> tiles = new TreeMap<>();
+	private long paintCount;
+	private int ink;
+	private final DocumentListener documentListener = new DocumentListener() {
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			documentChanged(e);
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			documentChanged(e);
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+	};
+
+	/**
+	 * A cached tile covering the lines {@code [first, first + lines)}. It is stale when its content
+	 * changed after the image was rendered.
+	 */
+	private static final class Tile {
+		private int first;
+		private int lines;
+		private BufferedImage image;
+		private int version;
+		private int renderedVersion = -1;
+		private boolean rendering;
+		private long lastPainted;
+
+		private Tile(int first, int lines) {
+			this.first = first;
+			this.lines = lines;
+		}
+
+		private boolean isStale() {
+			return renderedVersion != version;
+		}
+
+		private boolean contains(int line) {
+			return line >= first && line < first + lines;
+		}
+	}
+
+	public Minimap(EditorTextArea textArea, JScrollPane scrollPane) {
+		this.textArea = textArea;
+		this.document = (EditorDocument) textArea.getDocument();
+		this.scrollPane = scrollPane;
+		setPreferredSize(new Dimension(WIDTH, 0));
+		updateColors();
+
+		scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> repaint());
+		document.addDocumentListener(documentListener);
+
+		MouseAdapter scroller = new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				if (SwingUtilities.isLeftMouseButton(e)) {
+					centerOn(e.getY());
+				}
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if (SwingUtilities.isLeftMouseButton(e)) {
+					centerOn(e.getY());
+				}
+			}
+		};
+		addMouseListener(scroller);
+		addMouseMotionListener(scroller);
+	}
+
+	/**
+	 * Stops following the document, e.g. when a split view is closed.
+	 */
+	public void dispose() {
+		document.removeDocumentListener(documentListener);
+		tiles.clear();
+	}
+
+	@Override
+	public void updateUI() {
+		super.updateUI();
+		if (textArea != null) {
+			updateColors();
+			tiles.clear();
+			repaint();
+		}
+	}
+
+	private void updateColors() {
+		Color foreground = textArea.getForeground();
+		ink = new Color(foreground.getRed(), foreground.getGreen(), foreground.getBlue(), 150).getRGB();
+		setBackground(textArea.getBackground());
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		g.setColor(getBackground());
+		Rectangle clip = g.getClipBounds();
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		int lineCount = document.getDefaultRootElement().getElementCount();
+		int top = scrollTop(lineCount);
+		int lastLine = Math.min((top + clip.y + clip.height) / LINE_HEIGHT, lineCount - 1);
+		paintCount++;
+		for (int line = (top + clip.y) / LINE_HEIGHT; line <= lastLine; ) {
+			Tile tile = tileAt(line, lineCount);
+			tile.lastPainted = paintCount;
+			if (tile.isStale() && !tile.rendering) {
+				render(tile);
+			}
+			if (tile.image != null) {
+				g.drawImage(tile.image, 0, tile.first * LINE_HEIGHT - top, null);
+			}
+			line = tile.first + tile.lines;
+		}
+		evictTiles();
+		paintViewport(g, top);
+	}
+
+	/**
+	 * Returns the tile covering a line, creating one for the lines up to the next tile if there is none.
+	 */
+	private Tile tileAt(int line, int lineCount) {
+		Map.Entry<Integer, Tile> floor = tiles.floorEntry(line);
+		if (floor != null && floor.getValue().contains(line)) {
+			return floor.getValue();
+		}
+		Integer next = tiles.higherKey(line);
+		Tile tile = new Tile(line, Math.min(TILE_LINES, (next == null ? lineCount : next) - line));
+		tiles.put(line, tile);
+		return tile;
+	}
+
+	/**
+	 * Drops the tiles painted longest ago once there are more than {@link #MAX_TILES}.
+	 */
+	private void evictTiles() {
+		while (tiles.size() > MAX_TILES) {
+			Tile oldest = null;
+			for (Tile tile : tiles.values()) {
+				if (oldest == null || tile.lastPainted < oldest.lastPainted) {
+					oldest = tile;
+				}
+			}
+			tiles.remove(oldest.first);
+		}
+	}
+
+	/**
+	 * Shades the lines that are visible in the editor.
+	 */
+	private void paintViewport(Graphics g, int top) {
+		Rectangle visible = textArea.getVisibleRect();
+		Element root = document.getDefaultRootElement();
+		int firstLine = root.getElementIndex(textArea.viewToModel2D(visible.getLocation()));
+		int lastLine = root.getElementIndex(textArea.viewToModel2D(new Point(visible.x, visible.y + visible.height)));
+		int y = firstLine * LINE_HEIGHT - top;
+		int height = Math.max((lastLine - firstLine + 1) * LINE_HEIGHT, LINE_HEIGHT);
+
+		Color foreground = textArea.getForeground();
+		g.setColor(new Color(foreground.getRed(), foreground.getGreen(), foreground.getBlue(), 28));
+		g.fillRect(0, y, getWidth(), height);
+	}
+
+	/**
+	 * Returns how far the overview is scrolled. When it is taller than the component it scrolls in
+	 * proportion to the editor.
+	 */
+	private int scrollTop(int lineCount) {
+		int overflow = lineCount * LINE_HEIGHT - getHeight();
+		JScrollBar bar = scrollPane.getVerticalScrollBar();
+		int range = bar.getMaximum() - bar.getVisibleAmount() - bar.getMinimum();
+		if (overflow <= 0 || range <= 0) {
+			return 0;
+		}
+		return (int) ((long) overflow * (bar.getValue() - bar.getMinimum()) / range);
+	}
+
+	private void centerOn(int y) {
+		Element root = document.getDefaultRootElement();
+		int line = Math.clamp((y + scrollTop(root.getElementCount())) / LINE_HEIGHT, 0, root.getElementCount() - 1);
+		try {
+			Rectangle2D bounds = textArea.modelToView2D(root.getElement(line).getStartOffset());
+			if (bounds != null) {
+				Rectangle visible = textArea.getVisibleRect();
+				int target = (int) bounds.getCenterY() - visible.height / 2;
+				scrollPane.getVerticalScrollBar().setValue(target);
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private void documentChanged(DocumentEvent e) {
+		Element root = document.getDefaultRootElement();
+		int line = root.getElementIndex(e.getOffset());
+		if (e.getChange(root) == null) {
+			redrawLine(line);
+			return;
+		}
+
+		// Lines were added or removed: the tile holding the edit is rendered again, the ones below
+		// only move. Tiles whose first line was removed are dropped.
+		DocumentEvent.ElementChange change = e.getChange(root);
+		int delta = change.getChildrenAdded().length - change.getChildrenRemoved().length;
+		List<Tile> kept = new ArrayList<>(tiles.size());
+		for (Tile tile : tiles.values()) {
+			if (tile.first > line) {
+				tile.first += delta;
+				if (tile.first <= line) {
+					continue;
+				}
+				if (tile.rendering) {
+					// The render may read the lines before or after they moved.
+					tile.version++;
+				}
+			} else if (tile.contains(line)) {
+				tile.lines = Math.clamp(tile.lines + delta, line - tile.first + 1, TILE_LINES);
+				tile.version++;
+			}
+			kept.add(tile);
+		}
+		tiles.clear();
+		for (Tile tile : kept) {
+			tiles.put(tile.first, tile);
+		}
+		repaint();
+	}
+
+	/**
+	 * Redraws one line inside its cached tile.
+	 */
+	private void redrawLine(int line) {
+		Map.Entry<Integer, Tile> entry = tiles.floorEntry(line);
+		if (entry == null || !entry.getValue().contains(line)) {
+			return;
+		}
+		Tile tile = entry.getValue();
+		if (tile.isStale() || tile.rendering) {
+			// A render is pending or running and may not see this edit, render again.
+			tile.version++;
+			repaint();
+			return;
+		}
+
+		int[] pixels = ((DataBufferInt) tile.image.getRaster().getDataBuffer()).getData();
+		int row = line - tile.first;
+		Arrays.fill(pixels, row * LINE_HEIGHT * WIDTH, (row * LINE_HEIGHT + 1) * WIDTH, 0);
+		drawLine(document, document.getDefaultRootElement().getElement(line), row, pixels, ink, textArea.getTabSize(), new Segment());
+
+		int y = line * LINE_HEIGHT - scrollTop(document.getDefaultRootElement().getElementCount());
+		repaint(0, y, getWidth(), LINE_HEIGHT);
+	}
+
+	private void render(Tile tile) {
+		tile.rendering = true;
+		int version = tile.version;
+		int first = tile.first;
+		int lines = tile.lines;
+		int color = ink;
+		int tabSize = textArea.getTabSize();
+
+		CompletableFuture
+			.supplyAsync(() -> renderTile(document, first, lines, color, tabSize), command -> Thread.ofVirtual().start(command))
+			.whenCompleteAsync((image, ex) -> {
+				try {
+					if (ex != null) {
+						// Leave the tile stale without repainting, which would only fail again.
+						ex.printStackTrace();
+						return;
+					}
+					if (tile.version == version) {
+						tile.image = image;
+						tile.renderedVersion = version;
+					}
+				} finally {
+					tile.rendering = false;
+				}
+				repaint();
+			}, SwingUtilities::invokeLater);
+	}
+
+	/**
+	 * Renders the lines of one tile. Runs off the EDT under the document's read lock.
+	 */
+	private static BufferedImage renderTile(EditorDocument document, int first, int lines, int color, int tabSize) {
+		BufferedImage image = new BufferedImage(WIDTH, lines * LINE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		document.render(() -> {
+			Element root = document.getDefaultRootElement();
+			int last = Math.min(first + lines, root.getElementCount());
+			Segment text = new Segment();
+			for (int line = first; line < last; line++) {
+				drawLine(document, root.getElement(line), line - first, pixels, color, tabSize, text);
+			}
+		});
+		return image;
+	}
+
+	private static void drawLine(EditorDocument document, Element line, int row, int[] pixels, int color, int tabSize, Segment text) {
+		int start = line.getStartOffset();
+		int end = Math.min(line.getEndOffset() - 1, document.getLength());
+		try {
+			document.getText(start, Math.min(end - start, WIDTH * 2), text);
+		} catch (BadLocationException ex) {
+			return;
+		}
+
+		int offset = row * LINE_HEIGHT * WIDTH;
+		int column = 0;
+		for (int i = 0; i < text.count && column < WIDTH; i++) {
+			char c = text.array[text.offset + i];
+			if (c == '\t') {
+				column = (column / tabSize + 1) * tabSize;
+				continue;
+			}
+			if (!Character.isWhitespace(c)) {
+				pixels[offset + column] = color;
+			}
+			column++;
+		}
+	}
+}
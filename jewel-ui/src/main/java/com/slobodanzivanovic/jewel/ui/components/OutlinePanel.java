@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.components;
+
+import com.slobodanzivanovic.jewel.ui.text.OutlineModel;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * Shows the outline of the current tab. Clicking an item moves the caret to it.
+ */
+public class OutlinePanel extends JPanel {
+	private static final DefaultTreeModel EMPTY_MODEL = new DefaultTreeModel(new DefaultMutableTreeNode());
+
+	private final JTree tree;
+	private final JLabel placeholder;
+	private OutlineModel outline;
+	private TextArea textArea;
+
+	public OutlinePanel() {
+		setLayout(new BorderLayout());
+
+		tree = new JTree(EMPTY_MODEL);
+		tree.setRootVisible(false);
+		tree.setShowsRootHandles(true);
+		tree.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				TreePath path = tree.getPathForLocation(e.getX(), e.getY());
+				if (path != null) {
+					navigate(path);
+				}
+			}
+		});
+		tree.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "navigate");
+		tree.getActionMap().put("navigate", new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				TreePath path = tree.getSelectionPath();
+				if (path != null) {
+					navigate(path);
+				}
+			}
+		});
+
+		placeholder = new JLabel("No outline for this file", SwingConstants.CENTER);
+		placeholder.setEnabled(false);
+
+		add(new JScrollPane(tree), BorderLayout.CENTER);
+		add(placeholder, BorderLayout.NORTH);
+	}
+
+	/**
+	 * Shows the outline of a tab.
+	 *
+	 * @param textArea the tab, or null to show nothing
+	 */
+	public void showOutline(TextArea textArea) {
+		OutlineModel outline = textArea == null ? null : textArea.getOutline();
+		if (outline == this.outline && textArea == this.textArea) {
+			return;
+		}
+		this.outline = outline;
+		this.textArea = textArea;
+		tree.setModel(outline == null ? EMPTY_MODEL : outline.getTreeModel());
+		placeholder.setVisible(outline == null);
+	}
+
+	private void navigate(TreePath path) {
+		if (outline == null) {
+			return;
+		}
+		JTextArea editor = textArea.getTextArea();
+		int offset = Math.min(outline.getStartOffset((DefaultMutableTreeNode) path.getLastPathComponent()),
+			editor.getDocument().getLength());
+		editor.setCaretPosition(offset);
+		try {
+			textArea.scrollToLine(editor.getLineOfOffset(offset));
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+		editor.requestFocusInWindow();
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.components;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.util.function.Supplier;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A small non-modal dialog that replaces all matches in the current tab.
+ */
+public class ReplaceDialog extends JDialog {
+	private final Supplier<TextArea> target;
+	private final JTextField searchField = new JTextField(24);
+	private final JTextField replaceField = new JTextField(24);
+	private final JCheckBox matchCaseBox = new JCheckBox("Match case");
+	private final JCheckBox regexBox = new JCheckBox("Regular expression");
+	private final JButton replaceAllButton = new JButton("Replace All");
+	private final JLabel statusLabel = new JLabel(" ");
+
+	public ReplaceDialog(Frame parent, Supplier<TextArea> target) {
+		super(parent, "Replace", false);
+		this.target = target;
+
+		JPanel fields = new JPanel(new GridBagLayout());
+		fields.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+		GridBagConstraints c = new GridBagConstraints();
+		c.insets = new Insets(2, 2, 2, 2);
+		c.anchor = GridBagConstraints.WEST;
+
+		c.gridx = 0;
+		c.gridy = 0;
+		fields.add(new JLabel("Find:"), c);
+		c.gridy = 1;
+		fields.add(new JLabel("Replace with:"), c);
+
+		c.gridx = 1;
+		c.gridy = 0;
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.weightx = 1;
+		fields.add(searchField, c);
+		c.gridy = 1;
+		fields.add(replaceField, c);
+
+		JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+		options.add(matchCaseBox);
+		options.add(regexBox);
+		c.gridy = 2;
+		fields.add(options, c);
+
+		JPanel buttons = new JPanel(new BorderLayout());
+		buttons.setBorder(BorderFactory.createEmptyBorder(0, 10, 10, 10));
+		buttons.add(statusLabel, BorderLayout.CENTER);
+		buttons.add(replaceAllButton, BorderLayout.EAST);
+
+		add(fields, BorderLayout.CENTER);
+		add(buttons, BorderLayout.SOUTH);
+
+		replaceAllButton.addActionListener(e -> replaceAll());
+		getRootPane().setDefaultButton(replaceAllButton);
+		getRootPane().registerKeyboardAction(e -> setVisible(false),
+			KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+		pack();
+		setLocationRelativeTo(parent);
+	}
+
+	/**
+	 * Shows the dialog, pre-filling the search field with the selection of the current tab.
+	 */
+	public void open() {
+		TextArea textArea = target.get();
+		if (textArea != null) {
+			String selection = textArea.getTextArea().getSelectedText();
+			if (selection != null && !selection.isEmpty() && selection.indexOf('\n') < 0) {
+				searchField.setText(selection);
+			}
+		}
+		statusLabel.setText(" ");
+		setVisible(true);
+		searchField.requestFocusInWindow();
+		searchField.selectAll();
+	}
+
+	private void replaceAll() {
+		TextArea textArea = target.get();
+		String search = searchField.getText();
+		if (textArea == null || search.isEmpty()) {
+			return;
+		}
+
+		replaceAllButton.setEnabled(false);
+		statusLabel.setText("Replacing...");
+		textArea.replaceAll(search, replaceField.getText(), matchCaseBox.isSelected(), regexBox.isSelected())
+			.whenComplete((count, error) -> SwingUtilities.invokeLater(() -> {
+				replaceAllButton.setEnabled(true);
+				if (error != null) {
+					Throwable cause = error.getCause() != null ? error.getCause() : error;
+					statusLabel.setText(cause instanceof PatternSyntaxException syntax
+						? "Invalid pattern: " + syntax.getDescription()
+						: "Error: " + cause.getMessage());
+				} else if (count < 0) {
+					statusLabel.setText("The text changed, try again");
+				} else {
+					statusLabel.setText(count == 1 ? "1 match replaced" : count + " matches replaced");
+				}
+			}));
+	}
+}
@@ -18,30 +18,77 @@ package com.slobodanzivanovic.jewel.ui.components;
 
 import javax.swing.*;
 import java.awt.*;
+import java.nio.charset.Charset;
 
 public class StatusBar extends JPanel {
 	private static final int PADDING = 10;
 
+	private final JLabel statisticsLabel;
 	private final JLabel positionLabel;
+	private final JLabel encodingLabel;
+	private final JLabel lineSeparatorLabel;
 	private final JLabel fpsLabel;
 
 	public StatusBar() {
 		setLayout(new BorderLayout());
 
+		statisticsLabel = new JLabel("1 line, 0 words, 0 chars");
+		statisticsLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, PADDING));
+
 		positionLabel = new JLabel("Line 1, Column 1");
 		positionLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, PADDING));
 
+		encodingLabel = new JLabel("UTF-8");
+		encodingLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, PADDING));
+
+		lineSeparatorLabel = new JLabel("LF");
+		lineSeparatorLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, PADDING));
+
+		JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+		rightPanel.setOpaque(false);
+		rightPanel.add(statisticsLabel);
+		rightPanel.add(lineSeparatorLabel);
+		rightPanel.add(encodingLabel);
+		rightPanel.add(positionLabel);
+
 		fpsLabel = new JLabel("FPS 0");
 		fpsLabel.setBorder(BorderFactory.createEmptyBorder(0, PADDING, 0, 0));
 
 		add(fpsLabel, BorderLayout.WEST);
-		add(positionLabel, BorderLayout.EAST);
+		add(rightPanel, BorderLayout.EAST);
 	}
 
 	public void updateStatus(int line, int col) {
 		positionLabel.setText("Line " + line + ", Column " + col);
 	}
 
+	public void updateStatistics(int lines, int words, int characters) {
+		statisticsLabel.setText(describe(lines, words, characters));
+	}
+
+	/**
+	 * Shows the size of the selection instead of the document.
+	 *
+	 * @param words the number of selected words, or -1 while they are still being counted
+	 */
+	public void updateSelection(int lines, int words, int characters) {
+		statisticsLabel.setText("Selected " + describe(lines, words, characters));
+	}
+
+	private static String describe(int lines, int words, int characters) {
+		return plural(lines, "line") + ", " + (words < 0 ? "\u2026 words" : plural(words, "word")) + ", "
+			+ plural(characters, "char");
+	}
+
+	private static String plural(int count, String noun) {
+		return String.format("%,d %s%s", count, noun, count == 1 ? "" : "s");
+	}
+
+	public void updateEncoding(Charset charset, String lineSeparator) {
+		encodingLabel.setText(charset.displayName());
+		lineSeparatorLabel.setText(lineSeparator);
+	}
+
 	public void updateFps(int fps) {
 		fpsLabel.setText("FPS " + fps);
 	}
@@ -16,45 +16,164 @@
 
 package com.slobodanzivanovic.jewel.ui.components;
 
+import com.slobodanzivanovic.jewel.ui.io.FileFollower;
+import com.slobodanzivanovic.jewel.ui.io.FileWatcher;
+import com.slobodanzivanovic.jewel.ui.text.EditorDocument;
+import com.slobodanzivanovic.jewel.ui.text.OutlineModel;
+import com.slobodanzivanovic.jewel.ui.text.WordIndex;
+import com.slobodanzivanovic.jewel.util.cache.FileMetadataCache;
+import com.slobodanzivanovic.jewel.util.text.LineSeparator;
+import com.slobodanzivanovic.jewel.util.text.OutlineParser;
+import com.slobodanzivanovic.jewel.util.text.Rope;
+import com.slobodanzivanovic.jewel.util.text.TextReplacer;
+
 import javax.swing.*;
+import javax.swing.event.CaretListener;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
-import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultCaret;
+import javax.swing.text.Element;
 import javax.swing.text.PlainDocument;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+/**
+ * An editor tab: one document, shown in one pane or split into two.
+ * <p>
+ * Every pane is a separate {@link EditorTextArea} on the same {@link EditorDocument}, with its own
+ * caret, folds and scroll position. Edits are applied once to the shared document, and the views
+ * share its line structure, markers and highlighting indexes, so a split costs no second copy of the
+ * text. {@link #getTextArea()} returns the pane that last had the focus.
+ * </p>
+ */
 public class TextArea extends JPanel {
-	private final JTextArea textArea;
-	private final LineNumbers lineNumbers;
 	private static final int BUFFER_SIZE = 10000000;
 
+	private final EditorDocument document;
+	private final UndoManager undoManager = new UndoManager();
+	private final List<Pane> panes = new ArrayList<>();
+	private final List<CaretListener> caretListeners = new ArrayList<>();
+	private EditorTextArea textArea;
+
+	private File file;
+	private Charset charset = StandardCharsets.UTF_8;
+	private LineSeparator lineSeparator = LineSeparator.fromCounts(0, 0, 0);
+	private FileMetadataCache.FileMetadata metadata;
+	private long loadedLength;
+	private FileFollower follower;
+	private Closeable fileWatch;
+	private WordIndex wordIndex;
+	private OutlineModel outline;
+	private long modificationCount;
+	private long unmodifiedCount;
+
+	/**
+	 * One view of the document with its gutter, scroll pane and minimap.
+	 */
+	private final class Pane extends JPanel {
+		private final EditorTextArea view;
+		private final LineNumbers lineNumbers;
+		private final Minimap minimap;
+		private final ChangeListener markerListener;
+
+		private Pane(EditorTextArea view) {
+			super(new BorderLayout());
+			this.view = view;
+			configureTextArea(view);
+			configureUndo(view);
+			lineNumbers = new LineNumbers(view);
+			view.getFoldModel().addChangeListener(e -> lineNumbers.refresh());
+			view.getWrapModel().addChangeListener(e -> lineNumbers.refresh());
+			markerListener = e -> lineNumbers.repaint();
+			view.getMarkerStore().addChangeListener(markerListener);
+			JScrollPane scrollPane = createOptimizedScrollPane(view, lineNumbers);
+			minimap = new Minimap(view, scrollPane);
+			add(scrollPane, BorderLayout.CENTER);
+			add(minimap, BorderLayout.EAST);
+
+			for (CaretListener listener : caretListeners) {
+				view.addCaretListener(listener);
+			}
+			view.addFocusListener(new FocusAdapter() {
+				@Override
+				public void focusGained(FocusEvent e) {
+					setActiveView(view);
+				}
+			});
+		}
+
+		private void dispose() {
+			minimap.dispose();
+			view.getMarkerStore().removeChangeListener(markerListener);
+			view.dispose();
+		}
+	}
+
 	public TextArea() {
 		setLayout(new BorderLayout());
-		textArea = new JTextArea();
-		configureTextArea();
-		lineNumbers = new LineNumbers(textArea);
-		JScrollPane scrollPane = createOptimizedScrollPane();
-		add(scrollPane, BorderLayout.CENTER);
+		document = new EditorDocument();
+		document.putProperty(PlainDocument.tabSizeAttribute, 4);
+		document.putProperty("BUFFER_SIZE_DEFAULT", BUFFER_SIZE);
+		document.addUndoableEditListener(undoManager);
+		textArea = new EditorTextArea(document);
+		Pane pane = new Pane(textArea);
+		panes.add(pane);
+		add(pane, BorderLayout.CENTER);
 		addEfficientDocumentListener();
 	}
 
-	private void configureTextArea() {
+	private static void configureTextArea(EditorTextArea textArea) {
 		textArea.setLineWrap(false);
 		textArea.setWrapStyleWord(false);
 		textArea.setMargin(new Insets(0, 2, 0, 2));
 		textArea.setBorder(BorderFactory.createEmptyBorder());
-		textArea.getDocument().putProperty(PlainDocument.tabSizeAttribute, 4);
-
-		if (textArea.getDocument() instanceof AbstractDocument doc) {
-			doc.putProperty("BUFFER_SIZE_DEFAULT", BUFFER_SIZE);
-		}
 
 		DefaultCaret caret = (DefaultCaret) textArea.getCaret();
 		caret.setUpdatePolicy(DefaultCaret.UPDATE_WHEN_ON_EDT);
 	}
 
-	private JScrollPane createOptimizedScrollPane() {
+	private void configureUndo(EditorTextArea textArea) {
+		int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+		InputMap inputMap = textArea.getInputMap();
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut), "undo");
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut | InputEvent.SHIFT_DOWN_MASK), "redo");
+		inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut), "redo");
+
+		ActionMap actionMap = textArea.getActionMap();
+		actionMap.put("undo", new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				undo();
+			}
+		});
+		actionMap.put("redo", new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				redo();
+			}
+		});
+	}
+
+	private static JScrollPane createOptimizedScrollPane(EditorTextArea textArea, LineNumbers lineNumbers) {
 		JScrollPane scrollPane = new JScrollPane(textArea) {
 			@Override
 			public void paint(Graphics g) {
@@ -79,25 +198,403 @@ public class TextArea extends JPanel {
 	}
 
 	private void addEfficientDocumentListener() {
-		textArea.getDocument().addDocumentListener(new DocumentListener() {
+		document.addDocumentListener(new DocumentListener() {
 			@Override
 			public void insertUpdate(DocumentEvent e) {
-				SwingUtilities.invokeLater(lineNumbers::refresh);
+				edited(false);
+				SwingUtilities.invokeLater(TextArea.this::refreshLineNumbers);
 			}
 
 			@Override
 			public void removeUpdate(DocumentEvent e) {
-				SwingUtilities.invokeLater(lineNumbers::refresh);
+				edited(true);
+				SwingUtilities.invokeLater(TextArea.this::refreshLineNumbers);
 			}
 
 			@Override
 			public void changedUpdate(DocumentEvent e) {
-				SwingUtilities.invokeLater(lineNumbers::refresh);
+				SwingUtilities.invokeLater(TextArea.this::refreshLineNumbers);
 			}
 		});
 	}
 
-	public JTextArea getTextArea() {
+	private void edited(boolean removal) {
+		boolean modified = isModified();
+		modificationCount++;
+		if (document.isUntrackedEdit()) {
+			// Text a followed file appended is not an unsaved change. Trimming its head moves the
+			// text the undo history refers to, so that history is gone.
+			if (!modified) {
+				markUnmodified();
+			}
+			if (removal) {
+				discardUndoHistory();
+			}
+		}
+	}
+
+	private void refreshLineNumbers() {
+		for (Pane pane : panes) {
+			pane.lineNumbers.refresh();
+		}
+	}
+
+	/**
+	 * Returns the view that last had the focus.
+	 */
+	public EditorTextArea getTextArea() {
 		return textArea;
 	}
+
+	/**
+	 * Returns the views of the document, one per pane.
+	 */
+	public List<EditorTextArea> getViews() {
+		return panes.stream().map(pane -> pane.view).toList();
+	}
+
+	private void setActiveView(EditorTextArea view) {
+		EditorTextArea old = textArea;
+		textArea = view;
+		firePropertyChange("textArea", old, view);
+	}
+
+	/**
+	 * Registers a caret listener with every view of this tab, including views added later by a split.
+	 */
+	public void addCaretListener(CaretListener listener) {
+		caretListeners.add(listener);
+		for (Pane pane : panes) {
+			pane.view.addCaretListener(listener);
+		}
+	}
+
+	public boolean isSplit() {
+		return panes.size() > 1;
+	}
+
+	/**
+	 * Shows the document in a second pane, or changes the orientation of the current split.
+	 *
+	 * @param orientation {@link JSplitPane#HORIZONTAL_SPLIT} for side by side,
+	 *                    {@link JSplitPane#VERTICAL_SPLIT} for one above the other
+	 */
+	public void split(int orientation) {
+		if (isSplit()) {
+			JSplitPane splitPane = (JSplitPane) getComponent(0);
+			splitPane.setOrientation(orientation);
+			splitPane.setDividerLocation(0.5);
+			return;
+		}
+
+		EditorTextArea source = textArea;
+		EditorTextArea view = new EditorTextArea(panes.getFirst().view);
+		view.setTransferHandler(panes.getFirst().view.getTransferHandler());
+		Pane pane = new Pane(view);
+		if (wordIndex != null) {
+			new CompletionPopup(view, wordIndex);
+		}
+		panes.add(pane);
+
+		int firstLine = getFirstVisibleLine();
+		removeAll();
+		JSplitPane splitPane = new JSplitPane(orientation, panes.get(0), pane);
+		splitPane.setResizeWeight(0.5);
+		splitPane.setBorder(null);
+		add(splitPane, BorderLayout.CENTER);
+		revalidate();
+
+		view.setCaretPosition(source.getCaretPosition());
+		SwingUtilities.invokeLater(() -> {
+			splitPane.setDividerLocation(0.5);
+			setActiveView(view);
+			scrollToLine(firstLine);
+			view.requestFocusInWindow();
+		});
+	}
+
+	/**
+	 * Closes the second pane. If it had the focus, the first pane takes over its caret and scroll
+	 * position.
+	 */
+	public void unsplit() {
+		if (!isSplit()) {
+			return;
+		}
+		Pane first = panes.get(0);
+		Pane second = panes.remove(1);
+		boolean secondActive = textArea == second.view;
+		int caret = textArea.getCaretPosition();
+		int firstLine = getFirstVisibleLine();
+
+		removeAll();
+		add(first, BorderLayout.CENTER);
+		revalidate();
+		repaint();
+		second.dispose();
+
+		setActiveView(first.view);
+		if (secondActive) {
+			first.view.setCaretPosition(caret);
+			SwingUtilities.invokeLater(() -> scrollToLine(firstLine));
+		}
+		first.view.requestFocusInWindow();
+	}
+
+	public EditorDocument getDocument() {
+		return document;
+	}
+
+	/**
+	 * Feeds the words of this tab into a shared index and offers completions from it on Ctrl+Space.
+	 */
+	public void installCompletion(WordIndex wordIndex) {
+		this.wordIndex = wordIndex;
+		wordIndex.attach(document);
+		for (Pane pane : panes) {
+			new CompletionPopup(pane.view, wordIndex);
+		}
+	}
+
+	/**
+	 * Returns the outline of this tab, or null if the type of its file has none.
+	 * The outline is created on first use and kept up to date from then on.
+	 */
+	public OutlineModel getOutline() {
+		OutlineParser.Language language = file == null ? null : OutlineParser.Language.forFileName(file.getName());
+		if (outline != null && outline.getLanguage() != language) {
+			outline.dispose();
+			outline = null;
+		}
+		if (outline == null && language != null) {
+			outline = new OutlineModel(document, language);
+		}
+		return outline;
+	}
+
+	public boolean isSoftWrap() {
+		return textArea.getLineWrap();
+	}
+
+	/**
+	 * Wraps long lines at the width of the tab instead of scrolling horizontally.
+	 */
+	public void setSoftWrap(boolean softWrap) {
+		for (Pane pane : panes) {
+			pane.view.setLineWrap(softWrap);
+			pane.lineNumbers.refresh();
+		}
+	}
+
+	/**
+	 * Undoes the last edit. A paste still being inserted is stopped first, so the part inserted so
+	 * far is what gets undone.
+	 */
+	public void undo() {
+		document.cancelPendingInsert();
+		try {
+			if (undoManager.canUndo()) {
+				undoManager.undo();
+			}
+		} catch (CannotUndoException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	public void redo() {
+		document.cancelPendingInsert();
+		try {
+			if (undoManager.canRedo()) {
+				undoManager.redo();
+			}
+		} catch (CannotRedoException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forgets all undoable edits, e.g. after the content was replaced by a freshly loaded file.
+	 */
+	public void discardUndoHistory() {
+		undoManager.discardAllEdits();
+	}
+
+	/**
+	 * Replaces every match in the document. The matches and the new text are computed off the EDT,
+	 * then applied as one edit that is undone in a single step. Must be called on the EDT.
+	 *
+	 * @return the number of replaced matches, or -1 if the document was edited meanwhile
+	 */
+	public CompletableFuture<Integer> replaceAll(String search, String replacement, boolean matchCase, boolean regex) {
+		Rope text = document.getSnapshot().text();
+		long expectedCount = modificationCount;
+
+		return CompletableFuture
+			.supplyAsync(() -> TextReplacer.replaceAll(text.toCharArray(), search, replacement, matchCase, regex),
+				command -> Thread.ofVirtual().start(command))
+			.thenApplyAsync(result -> {
+				if (modificationCount != expectedCount) {
+					return -1;
+				}
+				if (result.count() > 0) {
+					int caret = textArea.getCaretPosition();
+					try {
+						document.replaceAsSingleEdit(result.start(), result.end() - result.start(), result.text());
+					} catch (BadLocationException ex) {
+						throw new IllegalStateException("Document does not match the searched text", ex);
+					}
+					textArea.setCaretPosition(Math.min(caret, document.getLength()));
+				}
+				return result.count();
+			}, SwingUtilities::invokeLater);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public void setFile(File file) {
+		stopFollowing();
+		setFileWatch(null);
+		this.file = file;
+	}
+
+	/**
+	 * Sets the handle that watches the file of this tab for changes on disk.
+	 * The previous handle, if any, is closed.
+	 */
+	public void setFileWatch(Closeable fileWatch) {
+		if (this.fileWatch != null) {
+			try {
+				this.fileWatch.close();
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+		this.fileWatch = fileWatch;
+	}
+
+	/**
+	 * Returns a counter that grows with every insert or removal in the document.
+	 */
+	public long getModificationCount() {
+		return modificationCount;
+	}
+
+	/**
+	 * Returns whether the document was edited since it was last loaded from disk.
+	 */
+	public boolean isModified() {
+		return modificationCount != unmodifiedCount;
+	}
+
+	public void markUnmodified() {
+		unmodifiedCount = modificationCount;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	public LineSeparator getLineSeparator() {
+		return lineSeparator;
+	}
+
+	public void setLineSeparator(LineSeparator lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Returns the metadata of the file as it was loaded from disk, or null for unsaved tabs.
+	 */
+	public FileMetadataCache.FileMetadata getMetadata() {
+		return metadata;
+	}
+
+	public void setMetadata(FileMetadataCache.FileMetadata metadata) {
+		this.metadata = metadata;
+	}
+
+	/**
+	 * Sets the number of bytes of the file the document holds, where following the file starts.
+	 */
+	public void setLoadedLength(long loadedLength) {
+		this.loadedLength = loadedLength;
+	}
+
+	/**
+	 * Returns the index of the line at the top of the visible area.
+	 */
+	public int getFirstVisibleLine() {
+		int offset = textArea.viewToModel2D(textArea.getVisibleRect().getLocation());
+		return textArea.getDocument().getDefaultRootElement().getElementIndex(offset);
+	}
+
+	/**
+	 * Scrolls so that the given line is at the top of the visible area.
+	 */
+	public void scrollToLine(int line) {
+		Element root = textArea.getDocument().getDefaultRootElement();
+		int index = Math.clamp(line, 0, root.getElementCount() - 1);
+		try {
+			Rectangle2D lineBounds = textArea.modelToView2D(root.getElement(index).getStartOffset());
+			if (lineBounds != null) {
+				Rectangle visible = textArea.getVisibleRect();
+				textArea.scrollRectToVisible(new Rectangle(visible.x, (int) lineBounds.getY(), 1, visible.height));
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	public boolean isFollowing() {
+		return follower != null && follower.isRunning();
+	}
+
+	/**
+	 * Follows the file from where it was loaded or last followed to. Read errors stop following and
+	 * are passed to {@code errorHandler} on the EDT.
+	 */
+	public void startFollowing(FileWatcher watcher, Consumer<IOException> errorHandler) throws IOException {
+		if (file == null || isFollowing()) {
+			return;
+		}
+		if (watcher == null) {
+			throw new IOException("File watching is not available");
+		}
+		// A follower stopped by an error still knows how far it got.
+		stopFollowing();
+		follower = new FileFollower(file.toPath(), document, this::getViews, charset, watcher, errorHandler);
+		follower.start(loadedLength);
+	}
+
+	public void stopFollowing() {
+		if (follower != null) {
+			follower.close();
+			loadedLength = follower.getPosition();
+			follower = null;
+		}
+	}
+
+	/**
+	 * Releases the views, follower, file watch, outline and indexed words of this tab once it is closed.
+	 */
+	public void dispose() {
+		for (Pane pane : panes) {
+			pane.dispose();
+		}
+		stopFollowing();
+		setFileWatch(null);
+		if (wordIndex != null) {
+			wordIndex.detach(document);
+		}
+		if (outline != null) {
+			outline.dispose();
+			outline = null;
+		}
+	}
 }
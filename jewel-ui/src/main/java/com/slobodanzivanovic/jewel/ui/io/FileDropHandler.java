@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.io;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Position;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.event.InputEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Accepts files dropped onto a component and hands them to a consumer.
+ * <p>
+ * Everything else is delegated to the component's original handler, if any, so text components
+ * keep their own copy, paste and text drag and drop.
+ * </p>
+ * <p>
+ * Swing asks the installed handler, this one, for the transferable when a drag starts and tells it
+ * when the drag ended. The matching methods of the delegate are protected, so the transferable is
+ * obtained by letting the delegate copy into a private clipboard, and the text of a moved selection
+ * is removed here, like the text handler would.
+ * </p>
+ */
+public class FileDropHandler extends TransferHandler {
+	private final TransferHandler delegate;
+	private final Consumer<List<File>> consumer;
+	private Transferable dragged;
+	private JTextComponent dragSource;
+	private Position dragStart;
+	private Position dragEnd;
+
+	public FileDropHandler(TransferHandler delegate, Consumer<List<File>> consumer) {
+		this.delegate = delegate;
+		this.consumer = consumer;
+	}
+
+	public static void install(JComponent component, Consumer<List<File>> consumer) {
+		component.setTransferHandler(new FileDropHandler(component.getTransferHandler(), consumer));
+	}
+
+	@Override
+	public boolean canImport(TransferSupport support) {
+		if (support.isDataFlavorSupported(DataFlavor.javaFileListFlavor)) {
+			return true;
+		}
+		return delegate != null && delegate.canImport(support);
+	}
+
+	@Override
+	public boolean importData(TransferSupport support) {
+		if (!support.isDataFlavorSupported(DataFlavor.javaFileListFlavor)) {
+			if (isDropOntoDraggedText(support)) {
+				// Dropping a selection onto itself changes nothing, and it must not be removed either.
+				dragSource = null;
+				return true;
+			}
+			return delegate != null && delegate.importData(support);
+		}
+
+		try {
+			@SuppressWarnings("unchecked")
+			List<File> files = (List<File>) support.getTransferable().getTransferData(DataFlavor.javaFileListFlavor);
+			List<File> regularFiles = files.stream().filter(File::isFile).toList();
+			if (regularFiles.isEmpty()) {
+				return false;
+			}
+			consumer.accept(regularFiles);
+			return true;
+		} catch (UnsupportedFlavorException | IOException ex) {
+			ex.printStackTrace();
+			return false;
+		}
+	}
+
+	@Override
+	protected Transferable createTransferable(JComponent c) {
+		if (delegate == null) {
+			return null;
+		}
+
+		Clipboard clipboard = new Clipboard("drag");
+		delegate.exportToClipboard(c, clipboard, COPY);
+		dragged = clipboard.getContents(null);
+		dragSource = null;
+		if (dragged != null && c instanceof JTextComponent text && text.getSelectionStart() < text.getSelectionEnd()) {
+			try {
+				dragStart = text.getDocument().createPosition(text.getSelectionStart());
+				dragEnd = text.getDocument().createPosition(text.getSelectionEnd());
+				dragSource = text;
+			} catch (BadLocationException ex) {
+				ex.printStackTrace();
+			}
+		}
+		return dragged;
+	}
+
+	@Override
+	protected void exportDone(JComponent source, Transferable data, int action) {
+		if (action == MOVE && data != null && data == dragged && source == dragSource && dragSource.isEditable()) {
+			int start = dragStart.getOffset();
+			int end = dragEnd.getOffset();
+			if (start < end) {
+				try {
+					dragSource.getDocument().remove(start, end - start);
+				} catch (BadLocationException ex) {
+					ex.printStackTrace();
+				}
+			}
+		}
+		dragged = null;
+		dragSource = null;
+	}
+
+	private boolean isDropOntoDraggedText(TransferSupport support) {
+		if (!support.isDrop() || dragSource == null || support.getComponent() != dragSource
+			|| !(support.getDropLocation() instanceof JTextComponent.DropLocation location)) {
+			return false;
+		}
+		return location.getIndex() >= dragStart.getOffset() && location.getIndex() <= dragEnd.getOffset();
+	}
+
+	@Override
+	public int getSourceActions(JComponent c) {
+		return delegate != null ? delegate.getSourceActions(c) : NONE;
+	}
+
+	@Override
+	public void exportAsDrag(JComponent comp, InputEvent e, int action) {
+		if (delegate != null) {
+			delegate.exportAsDrag(comp, e, action);
+		}
+	}
+
+	@Override
+	public void exportToClipboard(JComponent comp, Clipboard clip, int action) throws IllegalStateException {
+		if (delegate != null) {
+			delegate.exportToClipboard(comp, clip, action);
+		}
+	}
+
+	@Override
+	public Icon getVisualRepresentation(Transferable t) {
+		return delegate != null ? delegate.getVisualRepresentation(t) : null;
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.io;
+
+import com.slobodanzivanovic.jewel.ui.text.EditorDocument;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import javax.swing.text.Element;
+import java.awt.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Tails a growing file into a document.
+ * <p>
+ * Changes are reported by a shared {@link FileWatcher}. Only bytes appended since the last read are
+ * fetched, using positioned reads on a {@link FileChannel}.
+ * Decoded text is buffered off the EDT with its line breaks normalized to LF, and flushed into the
+ * document in one insert per batch interval. Every view of the document that is pinned to the bottom
+ * keeps scrolling with the new content, and the head of the document is trimmed so that at most
+ * {@code maxLines} lines are retained. These are untracked edits: they cannot be undone and do not
+ * count as unsaved changes.
+ * </p>
+ * <p>
+ * If the file cannot be read, following stops and the error is passed to the error handler on the EDT.
+ * </p>
+ */
+public class FileFollower implements Closeable {
+	public static final int DEFAULT_MAX_LINES = 100_000;
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int BATCH_INTERVAL_MS = 100;
+
+	private final Path path;
+	private final EditorDocument document;
+	private final Supplier<List<? extends JTextArea>> views;
+	private final FileWatcher watcher;
+	private final int maxLines;
+	private final Consumer<IOException> errorHandler;
+	private final CharsetDecoder decoder;
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	private final CharBuffer charBuffer = CharBuffer.allocate(READ_BUFFER_SIZE);
+	private final StringBuilder pending = new StringBuilder();
+	private final Timer flushTimer;
+
+	private Closeable registration;
+	private volatile boolean running;
+	private long position;
+	private boolean carriedCr;
+
+	public FileFollower(Path path, EditorDocument document, Supplier<List<? extends JTextArea>> views,
+						Charset charset, FileWatcher watcher, Consumer<IOException> errorHandler) {
+		this(path, document, views, charset, watcher, errorHandler, DEFAULT_MAX_LINES);
+	}
+
+	/**
+	 * @param views returns the current views of the document, which are scrolled along with it
+	 */
+	public FileFollower(Path path, EditorDocument document, Supplier<List<? extends JTextArea>> views,
+						Charset charset, FileWatcher watcher, Consumer<IOException> errorHandler, int maxLines) {
+		this.path = path.toAbsolutePath();
+		this.document = document;
+		this.views = views;
+		this.watcher = watcher;
+		this.maxLines = maxLines;
+		this.errorHandler = errorHandler;
+		this.decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.flushTimer = new Timer(BATCH_INTERVAL_MS, e -> flush());
+		this.flushTimer.setCoalesce(true);
+	}
+
+	/**
+	 * Starts following the file. Bytes from {@code position} on are read right away, so nothing
+	 * appended since the document was loaded is missed.
+	 *
+	 * @param position the number of bytes of the file the document already holds
+	 * @throws IOException if the file cannot be watched
+	 */
+	public void start(long position) throws IOException {
+		if (running) {
+			return;
+		}
+
+		this.position = position;
+		running = true;
+		registration = watcher.watch(path, this::onChange);
+		flushTimer.start();
+		Thread.ofVirtual().start(this::onChange);
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the number of bytes of the file read so far.
+	 */
+	public synchronized long getPosition() {
+		return position;
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		flushTimer.stop();
+		if (registration != null) {
+			try {
+				registration.close();
+			} catch (IOException ex) {
+				errorHandler.accept(ex);
+			}
+			registration = null;
+		}
+	}
+
+	private synchronized void onChange() {
+		try {
+			readAppended();
+		} catch (IOException e) {
+			SwingUtilities.invokeLater(() -> {
+				if (running) {
+					close();
+					errorHandler.accept(e);
+				}
+			});
+		}
+	}
+
+	private void readAppended() throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < position) {
+				// The file was truncated or rotated, start over from its beginning.
+				position = 0;
+				decoder.reset();
+				readBuffer.clear();
+				carriedCr = false;
+			}
+
+			while (running && position < size) {
+				int read = channel.read(readBuffer, position);
+				if (read <= 0) {
+					break;
+				}
+				position += read;
+				decodeBuffered();
+			}
+		}
+	}
+
+	private void decodeBuffered() {
+		readBuffer.flip();
+		StringBuilder decoded = new StringBuilder();
+		while (true) {
+			charBuffer.clear();
+			decoder.decode(readBuffer, charBuffer, false);
+			charBuffer.flip();
+			if (!charBuffer.hasRemaining()) {
+				break;
+			}
+			decoded.append(charBuffer);
+		}
+		// Keep an incomplete trailing sequence around for the next read.
+		readBuffer.compact();
+
+		if (!decoded.isEmpty()) {
+			CharSequence text = normalizeLineBreaks(decoded);
+			synchronized (pending) {
+				pending.append(text);
+			}
+		}
+	}
+
+	/**
+	 * Turns CRLF and lone CR line breaks into LF, the way a paste is normalized. A CR at the end of
+	 * the decoded text is held back until the next read shows whether an LF follows it.
+	 */
+	private CharSequence normalizeLineBreaks(StringBuilder decoded) {
+		if (!carriedCr && decoded.indexOf("\r") < 0) {
+			return decoded;
+		}
+
+		StringBuilder normalized = new StringBuilder(decoded.length() + 1);
+		int i = 0;
+		if (carriedCr) {
+			carriedCr = false;
+			normalized.append('\n');
+			if (decoded.charAt(0) == '\n') {
+				i++;
+			}
+		}
+		for (; i < decoded.length(); i++) {
+			char c = decoded.charAt(i);
+			if (c != '\r') {
+				normalized.append(c);
+			} else if (i + 1 == decoded.length()) {
+				carriedCr = true;
+			} else if (decoded.charAt(i + 1) != '\n') {
+				normalized.append('\n');
+			}
+		}
+		return normalized;
+	}
+
+	private void flush() {
+		String text;
+		synchronized (pending) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			text = pending.toString();
+			pending.setLength(0);
+		}
+
+		List<? extends JTextArea> targets = views.get();
+		int[] updatePolicies = new int[targets.size()];
+		boolean[] pinned = new boolean[targets.size()];
+		for (int i = 0; i < targets.size(); i++) {
+			DefaultCaret caret = (DefaultCaret) targets.get(i).getCaret();
+			updatePolicies[i] = caret.getUpdatePolicy();
+			pinned[i] = isPinnedToBottom(targets.get(i));
+			caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+		}
+
+		try {
+			int removedLines;
+			document.beginUntrackedEdit();
+			try {
+				document.insertString(document.getLength(), text, null);
+				removedLines = trimHead();
+			} finally {
+				document.endUntrackedEdit();
+			}
+
+			for (int i = 0; i < targets.size(); i++) {
+				if (pinned[i]) {
+					targets.get(i).setCaretPosition(document.getLength());
+				} else if (removedLines > 0) {
+					keepViewAnchored(targets.get(i), removedLines);
+				}
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		} finally {
+			for (int i = 0; i < targets.size(); i++) {
+				((DefaultCaret) targets.get(i).getCaret()).setUpdatePolicy(updatePolicies[i]);
+			}
+		}
+	}
+
+	private int trimHead() throws BadLocationException {
+		Element root = document.getDefaultRootElement();
+		int excess = root.getElementCount() - maxLines;
+		if (excess <= 0) {
+			return 0;
+		}
+
+		int end = root.getElement(excess).getStartOffset();
+		document.remove(0, end);
+		return excess;
+	}
+
+	private static boolean isPinnedToBottom(JTextArea textArea) {
+		Rectangle visible = textArea.getVisibleRect();
+		int lineHeight = textArea.getFontMetrics(textArea.getFont()).getHeight();
+		return visible.y + visible.height >= textArea.getHeight() - lineHeight;
+	}
+
+	private static void keepViewAnchored(JTextArea textArea, int removedLines) {
+		JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, textArea);
+		if (viewport == null) {
+			return;
+		}
+
+		int lineHeight = textArea.getFontMetrics(textArea.getFont()).getHeight();
+		Point viewPosition = viewport.getViewPosition();
+		viewPosition.y = Math.max(0, viewPosition.y - removedLines * lineHeight);
+		viewport.setViewPosition(viewPosition);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.io;
+
+import com.slobodanzivanovic.jewel.util.cache.FileMetadataCache;
+import com.slobodanzivanovic.jewel.util.text.CharsetDetector;
+import com.slobodanzivanovic.jewel.util.text.TextDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Reads and decodes files off the EDT.
+ * <p>
+ * Every file gets its own virtual thread, so a batch takes about as long as its largest file.
+ * The returned future completes once all files are loaded, letting the caller create all tabs in
+ * a single step on the EDT. Files with a valid entry in the {@link FileMetadataCache} are decoded
+ * with their cached charset, skipping detection, and reopen at their last caret and scroll position;
+ * they are otherwise decoded in full like any other file.
+ * </p>
+ */
+public final class FileLoader {
+
+	private FileLoader() {
+	}
+
+	/**
+	 * The outcome of loading one file. Text files have {@code text} and {@code metadata} set and
+	 * failed loads have {@code error} set, while binary files have none of them.
+	 */
+	public record LoadedFile(File file, TextDecoder.DecodedText text, FileMetadataCache.FileMetadata metadata,
+							 boolean binary, IOException error) {
+	}
+
+	public static CompletableFuture<List<LoadedFile>> loadAll(List<File> files, FileMetadataCache cache) {
+		CompletableFuture<List<LoadedFile>> result = new CompletableFuture<>();
+		Thread.ofVirtual().name("jewel-file-loader").start(() -> {
+			List<Future<LoadedFile>> futures;
+			try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				futures = files.stream()
+					.map(file -> executor.submit(() -> load(file, cache)))
+					.toList();
+			}
+			List<LoadedFile> loaded = new ArrayList<>(files.size());
+			for (int i = 0; i < files.size(); i++) {
+				loaded.add(outcome(files.get(i), futures.get(i)));
+			}
+			result.complete(loaded);
+		});
+		return result;
+	}
+
+	/**
+	 * Collects the regular, non-hidden files below a folder whose name matches a glob pattern.
+	 *
+	 * @param folder the folder to search
+	 * @param glob   a file name pattern such as {@code *.java}
+	 * @return the matching files, in path order
+	 */
+	public static CompletableFuture<List<File>> findMatching(File folder, String glob) {
+		CompletableFuture<List<File>> result = new CompletableFuture<>();
+		Thread.ofVirtual().name("jewel-file-matcher").start(() -> {
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+			try (Stream<Path> paths = Files.walk(folder.toPath())) {
+				result.complete(paths
+					.filter(Files::isRegularFile)
+					.filter(path -> matcher.matches(path.getFileName()))
+					.map(Path::toFile)
+					.filter(file -> !file.isHidden())
+					.sorted()
+					.toList());
+			} catch (IOException | UncheckedIOException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Turns a load that failed unexpectedly into an error of that file alone.
+	 */
+	private static LoadedFile outcome(File file, Future<LoadedFile> future) {
+		return switch (future.state()) {
+			case SUCCESS -> future.resultNow();
+			case FAILED -> new LoadedFile(file, null, null, false, new IOException(future.exceptionNow().toString(), future.exceptionNow()));
+			case CANCELLED, RUNNING -> new LoadedFile(file, null, null, false, new IOException("Loading was cancelled"));
+		};
+	}
+
+	private static LoadedFile load(File file, FileMetadataCache cache) {
+		try {
+			Path path = file.toPath();
+			Optional<FileMetadataCache.FileMetadata> cached = cache.get(path);
+			if (cached.isEmpty() && CharsetDetector.isBinary(path)) {
+				return new LoadedFile(file, null, null, true, null);
+			}
+
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			TextDecoder.DecodedText text = TextDecoder.decode(path, cached.map(FileMetadataCache.FileMetadata::charset).orElse(null));
+			FileMetadataCache.FileMetadata metadata = cached.orElseGet(() -> FileMetadataCache.describe(
+				attributes.size(), attributes.lastModifiedTime().toMillis(), text));
+			return new LoadedFile(file, text, metadata, false, null);
+		} catch (IOException e) {
+			return new LoadedFile(file, null, null, false, e);
+		} catch (UncheckedIOException e) {
+			return new LoadedFile(file, null, null, false, e.getCause());
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches files for changes made on disk.
+ * <p>
+ * One {@link WatchService} and one daemon thread serve every watched file. The parent directory of
+ * each file is registered once, and any event (or a poll timeout, since some platforms only poll
+ * for changes) triggers a cheap size and modification time check of the watched files. Listeners
+ * run on the watcher thread and are only notified when those attributes actually changed.
+ * </p>
+ */
+public class FileWatcher implements Closeable {
+	private static final long POLL_INTERVAL_MS = 500;
+
+	private final WatchService watchService;
+	private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+	private final Map<Path, WatchKey> directoryKeys = new HashMap<>();
+	private final Map<Path, Integer> directoryUsers = new HashMap<>();
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	public FileWatcher() throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+		thread = Thread.ofPlatform()
+			.name("jewel-file-watcher")
+			.daemon(true)
+			.start(this::run);
+	}
+
+	/**
+	 * Starts watching a file.
+	 *
+	 * @param path     the file to watch
+	 * @param listener called on the watcher thread after the file changed on disk
+	 * @return a handle that stops watching when closed
+	 * @throws IOException if the parent directory cannot be watched
+	 */
+	public Closeable watch(Path path, Runnable listener) throws IOException {
+		Path file = path.toAbsolutePath();
+		Path directory = file.getParent();
+
+		synchronized (directoryKeys) {
+			if (!directoryKeys.containsKey(directory)) {
+				directoryKeys.put(directory, directory.register(watchService,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE));
+			}
+			directoryUsers.merge(directory, 1, Integer::sum);
+		}
+
+		Registration registration = new Registration(file, listener);
+		registrations.add(registration);
+		return () -> unwatch(registration);
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		thread.interrupt();
+		registrations.clear();
+		watchService.close();
+	}
+
+	private void unwatch(Registration registration) {
+		if (!registrations.remove(registration)) {
+			return;
+		}
+
+		Path directory = registration.path.getParent();
+		synchronized (directoryKeys) {
+			if (directoryUsers.merge(directory, -1, Integer::sum) <= 0) {
+				directoryUsers.remove(directory);
+				WatchKey key = directoryKeys.remove(directory);
+				if (key != null) {
+					key.cancel();
+				}
+			}
+		}
+	}
+
+	private void run() {
+		while (running) {
+			try {
+				WatchKey key = watchService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					key.pollEvents();
+					key.reset();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ClosedWatchServiceException e) {
+				return;
+			}
+
+			for (Registration registration : registrations) {
+				registration.checkForChange();
+			}
+		}
+	}
+
+	private static final class Registration {
+		private final Path path;
+		private final Runnable listener;
+		private long size;
+		private long lastModified;
+
+		private Registration(Path path, Runnable listener) {
+			this.path = path;
+			this.listener = listener;
+			readAttributes();
+		}
+
+		private boolean readAttributes() {
+			long previousSize = size;
+			long previousLastModified = lastModified;
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				size = attributes.size();
+				lastModified = attributes.lastModifiedTime().toMillis();
+			} catch (IOException e) {
+				size = -1;
+				lastModified = -1;
+			}
+			return size != previousSize || lastModified != previousLastModified;
+		}
+
+		private void checkForChange() {
+			if (!readAttributes()) {
+				return;
+			}
+			try {
+				listener.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.text.BracketIndex;
+
+import javax.swing.*;
+import javax.swing.event.CaretListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Position;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Highlights the bracket matching the one at the caret.
+ * <p>
+ * Matching runs on a {@link BracketIndex}, built once off the EDT and then patched on every edit by
+ * shifting the brackets after it and scanning only the edited lines, so a caret move costs
+ * O(log n) no matter how large or deeply nested the document is. The lines are read from a snapshot
+ * of the document without copying them. Very large edits, such as loading a file, drop the index and
+ * build it again in the background. Edits made while it is being built are replayed onto the new
+ * index, so typing does not restart the build; only another very large edit does, once the running
+ * build is done.
+ * </p>
+ * <p>
+ * One matcher serves every view of a document; each installed view gets its own highlights.
+ * </p>
+ */
+public class BracketMatcher implements DocumentListener {
+	private static final int RESCAN_LIMIT = 1 << 20;
+	private static final Color MATCH_COLOR = new Color(0x80, 0x80, 0x80, 80);
+	private static final Color MISMATCH_COLOR = new Color(0xE0, 0x40, 0x40, 110);
+
+	private static final class View {
+		private final JTextComponent textComponent;
+		private final Object[] highlights = new Object[2];
+		private CaretListener caretListener;
+
+		private View(JTextComponent textComponent) {
+			this.textComponent = textComponent;
+		}
+	}
+
+	/**
+	 * An edit made while the index was being built. The positions track the edited range through the
+	 * edits after it, so its lines can be scanned once the index is there.
+	 */
+	private record PendingEdit(int offset, int length, boolean inserted, Position start, Position end) {
+	}
+
+	private final EditorDocument document;
+	private final List<View> views = new ArrayList<>();
+	private BracketIndex index;
+	private boolean building;
+	private boolean rebuild;
+	private List<PendingEdit> pendingEdits = new ArrayList<>();
+
+	public BracketMatcher(EditorDocument document) {
+		this.document = document;
+		document.addDocumentListener(this);
+		build();
+	}
+
+	/**
+	 * Starts highlighting the brackets at the caret of a view of the document.
+	 */
+	public void install(JTextComponent textComponent) {
+		View view = new View(textComponent);
+		view.caretListener = e -> updateHighlights(view);
+		textComponent.addCaretListener(view.caretListener);
+		views.add(view);
+		updateHighlights(view);
+	}
+
+	/**
+	 * Stops highlighting in a view and removes its highlights.
+	 */
+	public void uninstall(JTextComponent textComponent) {
+		views.removeIf(view -> {
+			if (view.textComponent != textComponent) {
+				return false;
+			}
+			clearHighlights(view);
+			textComponent.removeCaretListener(view.caretListener);
+			return true;
+		});
+	}
+
+	/**
+	 * Moves the caret of a view to the bracket matching the one next to it. A caret after a
+	 * bracket moves after its match, a caret before a bracket moves before it.
+	 */
+	public void jumpToMatch(JTextComponent textComponent) {
+		int dot = textComponent.getCaretPosition();
+		int bracket = bracketAt(dot);
+		int match = bracket < 0 ? -1 : index.findMatch(bracket);
+		if (match < 0) {
+			UIManager.getLookAndFeel().provideErrorFeedback(textComponent);
+			return;
+		}
+		textComponent.setCaretPosition(bracket < dot ? match + 1 : match);
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		if (e.getLength() > RESCAN_LIMIT) {
+			build();
+			return;
+		}
+		changed(e.getOffset(), e.getLength(), true);
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		changed(e.getOffset(), e.getLength(), false);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	private void changed(int offset, int length, boolean inserted) {
+		int end = inserted ? offset + length : offset;
+		if (index != null) {
+			apply(offset, length, inserted);
+			rescanLines(offset, end);
+		} else if (building && !rebuild) {
+			try {
+				pendingEdits.add(new PendingEdit(offset, length, inserted, document.createPosition(offset), document.createPosition(end)));
+			} catch (BadLocationException ex) {
+				ex.printStackTrace();
+				rebuild = true;
+			}
+		}
+	}
+
+	private void apply(int offset, int length, boolean inserted) {
+		if (inserted) {
+			index.insertUpdate(offset, length);
+		} else {
+			index.removeUpdate(offset, length);
+		}
+	}
+
+	/**
+	 * Scans the lines of {@code [from, to]} again, reading them from the snapshot's leaves.
+	 */
+	private void rescanLines(int from, int to) {
+		Element root = document.getDefaultRootElement();
+		int start = root.getElement(root.getElementIndex(from)).getStartOffset();
+		int end = Math.min(root.getElement(root.getElementIndex(to)).getEndOffset(), document.getLength());
+		index.rescan(start, end, document.getSnapshot().text().subSequence(start, end));
+	}
+
+	private void build() {
+		index = null;
+		for (View view : views) {
+			clearHighlights(view);
+		}
+		if (building) {
+			// Start over once the running build is done, not for every edit in between.
+			rebuild = true;
+			return;
+		}
+
+		CharSequence text = document.getSnapshot().text();
+		building = true;
+		rebuild = false;
+		pendingEdits = new ArrayList<>();
+		CompletableFuture
+			.supplyAsync(() -> BracketIndex.build(text), command -> Thread.ofVirtual().start(command))
+			.whenCompleteAsync((built, ex) -> {
+				building = false;
+				List<PendingEdit> edits = pendingEdits;
+				pendingEdits = new ArrayList<>();
+				if (ex != null) {
+					ex.printStackTrace();
+				} else if (rebuild) {
+					build();
+				} else {
+					adopt(built, edits);
+				}
+			}, SwingUtilities::invokeLater);
+	}
+
+	/**
+	 * Takes over a built index and catches it up with the edits made since its snapshot: first their
+	 * shifts in order, then their lines as they are now.
+	 */
+	private void adopt(BracketIndex built, List<PendingEdit> edits) {
+		index = built;
+		for (PendingEdit edit : edits) {
+			apply(edit.offset(), edit.length(), edit.inserted());
+		}
+		for (PendingEdit edit : edits) {
+			rescanLines(edit.start().getOffset(), edit.end().getOffset());
+		}
+		for (View view : views) {
+			updateHighlights(view);
+		}
+	}
+
+	/**
+	 * Returns the offset of the bracket right before the caret, or else right after it, or -1.
+	 */
+	private int bracketAt(int dot) {
+		if (index == null) {
+			return -1;
+		}
+		try {
+			if (dot > 0 && BracketIndex.isBracket(document.getText(dot - 1, 1).charAt(0))) {
+				return dot - 1;
+			}
+			if (dot < document.getLength() && BracketIndex.isBracket(document.getText(dot, 1).charAt(0))) {
+				return dot;
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+		return -1;
+	}
+
+	private void updateHighlights(View view) {
+		clearHighlights(view);
+		int bracket = bracketAt(view.textComponent.getCaretPosition());
+		int match = bracket < 0 ? -1 : index.findMatch(bracket);
+		if (match < 0) {
+			return;
+		}
+
+		try {
+			char first = document.getText(Math.min(bracket, match), 1).charAt(0);
+			char second = document.getText(Math.max(bracket, match), 1).charAt(0);
+			Color color = BracketIndex.isPair(first, second) ? MATCH_COLOR : MISMATCH_COLOR;
+			Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(color);
+			Highlighter highlighter = view.textComponent.getHighlighter();
+			view.highlights[0] = highlighter.addHighlight(bracket, bracket + 1, painter);
+			view.highlights[1] = highlighter.addHighlight(match, match + 1, painter);
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private static void clearHighlights(View view) {
+		Highlighter highlighter = view.textComponent.getHighlighter();
+		for (int i = 0; i < view.highlights.length; i++) {
+			if (view.highlights[i] != null) {
+				highlighter.removeHighlight(view.highlights[i]);
+				view.highlights[i] = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Inserts a large text into a document in chunks spread over many EDT events.
+ * <p>
+ * A single {@code insertString} of a huge text blocks the EDT while the document builds an element
+ * for every new line and every listener catches up. Here the first chunk is inserted right away, so
+ * the start of the text shows up immediately, and the rest follows from a timer: each tick inserts
+ * chunks until it has used its frame budget, leaving the EDT free for painting and input in between.
+ * The chunk size adapts to how long an insertion actually takes.
+ * </p>
+ * <p>
+ * All chunks belong to one compound edit, so the whole insertion is undone in one step. The document
+ * knows about the running insertion: its views are read-only until it is done, and any other edit,
+ * undo or redo of the document cancels it first. Line breaks
+ * are normalized to LF like a regular paste does, and chunks end after a line break where possible,
+ * never between CR and LF or inside a surrogate pair.
+ * </p>
+ */
+public final class ChunkedInsert {
+	/**
+	 * Texts at least this long are worth inserting in chunks.
+	 */
+	public static final int THRESHOLD = 1024 * 1024;
+
+	private static final long FRAME_BUDGET_NANOS = 8_000_000;
+	private static final int FIRST_CHUNK = 64 * 1024;
+	private static final int MIN_CHUNK = 16 * 1024;
+	private static final int MAX_CHUNK = 4 * 1024 * 1024;
+
+	private final EditorDocument document;
+	private final CharSequence text;
+	private final Timer timer = new Timer(1, e -> insertChunks());
+	private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+	private Position end;
+	private int consumed;
+	private int chunkSize = 256 * 1024;
+
+	private ChunkedInsert(EditorDocument document, CharSequence text) {
+		this.document = document;
+		this.text = text;
+	}
+
+	/**
+	 * Replaces a region of the document with a text, inserting all but its first chunk later. Must
+	 * be called on the EDT.
+	 *
+	 * @param document the document
+	 * @param offset   the start of the region
+	 * @param length   the length of the region
+	 * @param text     the new content of the region, which must not change while it is inserted
+	 * @return the running insertion
+	 * @throws BadLocationException if the region is not inside the document
+	 */
+	public static ChunkedInsert start(EditorDocument document, int offset, int length, CharSequence text) throws BadLocationException {
+		ChunkedInsert insert = new ChunkedInsert(document, text);
+		document.beginCompoundEdit();
+		try {
+			String first = insert.nextChunk(FIRST_CHUNK);
+			document.replace(offset, length, first, null);
+			// Inserting at a position moves it past the inserted text, so it always marks the end.
+			insert.end = document.createPosition(offset + first.length());
+		} catch (BadLocationException ex) {
+			document.endCompoundEdit();
+			throw ex;
+		}
+
+		if (insert.consumed == text.length()) {
+			insert.finish();
+		} else {
+			document.setPendingInsert(insert);
+			insert.timer.start();
+		}
+		return insert;
+	}
+
+	/**
+	 * Completes on the EDT with the end offset of the inserted text once the last chunk is in.
+	 */
+	public CompletableFuture<Integer> getCompletion() {
+		return completion;
+	}
+
+	/**
+	 * Stops inserting. The chunks inserted so far stay, as one undoable edit.
+	 */
+	public void cancel() {
+		if (!completion.isDone()) {
+			consumed = text.length();
+			finish();
+		}
+	}
+
+	private void insertChunks() {
+		long tickStart = System.nanoTime();
+		try {
+			while (consumed < text.length() && System.nanoTime() - tickStart < FRAME_BUDGET_NANOS) {
+				long start = System.nanoTime();
+				document.insertChunk(end.getOffset(), nextChunk(chunkSize));
+				long elapsed = System.nanoTime() - start;
+				if (elapsed > FRAME_BUDGET_NANOS / 2) {
+					chunkSize = Math.max(MIN_CHUNK, chunkSize / 2);
+				} else if (elapsed < FRAME_BUDGET_NANOS / 8) {
+					chunkSize = Math.min(MAX_CHUNK, chunkSize * 2);
+				}
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			consumed = text.length();
+		}
+
+		if (consumed == text.length()) {
+			finish();
+		}
+	}
+
+	private void finish() {
+		timer.stop();
+		document.setPendingInsert(null);
+		document.endCompoundEdit();
+		completion.complete(end.getOffset());
+	}
+
+	private String nextChunk(int size) {
+		int from = consumed;
+		int to = Math.min(text.length(), from + size);
+		if (to < text.length()) {
+			int newline = lastLineBreak(from + size / 2, to);
+			if (newline >= 0) {
+				to = newline + 1;
+			} else if (text.charAt(to - 1) == '\r' || Character.isHighSurrogate(text.charAt(to - 1))) {
+				to--;
+			}
+		}
+		consumed = to;
+		return normalize(from, to);
+	}
+
+	private int lastLineBreak(int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (text.charAt(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private String normalize(int from, int to) {
+		int cr = from;
+		while (cr < to && text.charAt(cr) != '\r') {
+			cr++;
+		}
+		if (cr == to) {
+			return text.subSequence(from, to).toString();
+		}
+
+		StringBuilder normalized = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+			if (c != '\r') {
+				normalized.append(c);
+			} else if (i + 1 >= to || text.charAt(i + 1) != '\n') {
+				normalized.append('\n');
+			}
+		}
+		return normalized.toString();
+	}
+}
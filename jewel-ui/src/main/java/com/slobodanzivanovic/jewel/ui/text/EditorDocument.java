@@ -0,0 +1,864 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.text.Rope;
+import com.slobodanzivanovic.jewel.util.text.TextScanner;
+import com.slobodanzivanovic.jewel.util.text.TextStatistics;
+
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The document behind every editor tab.
+ * <p>
+ * Edits made between {@link #beginCompoundEdit()} and {@link #endCompoundEdit()} are collected and
+ * reported to undo listeners as a single edit, so a multi-step change is undone in one step.
+ * Compound edits may be nested; only the outermost one is reported.
+ * </p>
+ * <p>
+ * Edits made between {@link #beginUntrackedEdit()} and {@link #endUntrackedEdit()} are not the
+ * user's, e.g. text a followed file appended. They are not reported to undo listeners at all, and
+ * document listeners can tell them apart with {@link #isUntrackedEdit()}.
+ * </p>
+ * <p>
+ * While a {@link ChunkedInsert} is running, its compound edit stays open across many events. Any
+ * other edit, compound edit, undo or redo made meanwhile, from whichever view, first
+ * {@link #cancelPendingInsert() cancels} it, so nothing is mixed into the insertion or applied
+ * underneath it.
+ * </p>
+ * <p>
+ * The number of words is kept up to date by the content itself, which looks only at the edited
+ * characters and the one after them. Undo and redo go through the content as well, so the count
+ * never needs a rescan of the document. For the same reason, {@link ContentObserver}s are notified by
+ * the content, while removed text can still be read.
+ * </p>
+ * <p>
+ * The text is kept in a persistent {@link Rope}, so background work such as parsing, searching or
+ * saving can take a {@link #getSnapshot() snapshot} and read it without holding the read lock, which
+ * would otherwise block the next edit on the EDT.
+ * </p>
+ */
+public class EditorDocument extends PlainDocument {
+	// Package-private property keys of AbstractDocument.
+	private static final String I18N_PROPERTY = "i18n";
+	private static final String MULTI_BYTE_PROPERTY = "multiByte";
+
+	private final EditorContent content;
+	private CompoundEdit compoundEdit;
+	private int compoundDepth;
+	private int untrackedDepth;
+	private ChunkedInsert pendingInsert;
+
+	public EditorDocument() {
+		this(new EditorContent());
+	}
+
+	private EditorDocument(EditorContent content) {
+		super(content);
+		this.content = content;
+	}
+
+	/**
+	 * Observes every change of the text, including undo and redo. Both methods are called with the
+	 * write lock held: {@code contentChanging} before the text changes, so the text about to be
+	 * removed can still be read, and {@code contentChanged} right after, before any document event
+	 * is fired. Observers must only read the text, never modify the document.
+	 */
+	public interface ContentObserver {
+		/**
+		 * @param offset   the start of the change
+		 * @param removed  the number of characters about to be removed at {@code offset}
+		 * @param inserted the number of characters about to be inserted at {@code offset}
+		 */
+		void contentChanging(int offset, int removed, int inserted);
+
+		void contentChanged(int offset, int removed, int inserted);
+	}
+
+	public void addContentObserver(ContentObserver observer) {
+		content.observers.add(observer);
+	}
+
+	public void removeContentObserver(ContentObserver observer) {
+		content.observers.remove(observer);
+	}
+
+	/**
+	 * An immutable version of the document text.
+	 *
+	 * @param text    the text, which stays the same however the document is edited afterwards
+	 * @param version the number of changes made to the document before this version, counting undo
+	 *                and redo; two snapshots with the same version have the same text
+	 */
+	public record Snapshot(Rope text, long version) {
+	}
+
+	/**
+	 * Returns the current text as an immutable snapshot, in constant time and without locking. May be
+	 * called from any thread; the snapshot can be read for as long as needed while edits continue.
+	 */
+	public Snapshot getSnapshot() {
+		return content.snapshot();
+	}
+
+	/**
+	 * Returns the number of words in the document.
+	 */
+	public int getWordCount() {
+		return content.wordCount;
+	}
+
+	/**
+	 * Counts the words that start inside a range; a word cut by the start of the range is counted too.
+	 * May be called off the EDT while holding the read lock, e.g. from {@link #render(Runnable)}.
+	 *
+	 * @param start the start of the range
+	 * @param end   the end of the range, exclusive
+	 * @return the number of words in the range
+	 * @throws BadLocationException if the range is not inside the document
+	 */
+	public int countWords(int start, int end) throws BadLocationException {
+		return content.countWordStarts(start, end, TextStatistics.TEXT_START, new Segment());
+	}
+
+	/**
+	 * Returns whether a {@link ChunkedInsert} is still inserting into this document. Views of the
+	 * document are read-only meanwhile.
+	 */
+	public boolean isInsertPending() {
+		return pendingInsert != null;
+	}
+
+	/**
+	 * Stops a running {@link ChunkedInsert}. The text it inserted so far stays, as one undoable edit,
+	 * and offsets are not changed. Must be called on the EDT, e.g. before undo or redo.
+	 */
+	public void cancelPendingInsert() {
+		if (pendingInsert != null) {
+			pendingInsert.cancel();
+		}
+	}
+
+	void setPendingInsert(ChunkedInsert insert) {
+		pendingInsert = insert;
+	}
+
+	/**
+	 * Inserts a chunk of the running {@link ChunkedInsert}, which must not cancel itself.
+	 */
+	void insertChunk(int offset, String text) throws BadLocationException {
+		super.insertString(offset, text, null);
+	}
+
+	@Override
+	public void insertString(int offs, String str, AttributeSet a) throws BadLocationException {
+		cancelPendingInsert();
+		super.insertString(offs, str, a);
+	}
+
+	@Override
+	public void remove(int offs, int len) throws BadLocationException {
+		cancelPendingInsert();
+		super.remove(offs, len);
+	}
+
+	@Override
+	public void replace(int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+		cancelPendingInsert();
+		super.replace(offset, length, text, attrs);
+	}
+
+	/**
+	 * Starts collecting edits into one undoable edit. Must be called on the EDT.
+	 */
+	public void beginCompoundEdit() {
+		cancelPendingInsert();
+		if (compoundDepth++ == 0) {
+			compoundEdit = new CompoundEdit();
+		}
+	}
+
+	/**
+	 * Finishes the edit started by the matching {@link #beginCompoundEdit()}.
+	 */
+	public void endCompoundEdit() {
+		if (compoundDepth == 0 || --compoundDepth > 0) {
+			return;
+		}
+
+		CompoundEdit edit = compoundEdit;
+		compoundEdit = null;
+		edit.end();
+		if (edit.isSignificant()) {
+			super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+		}
+	}
+
+	/**
+	 * Starts edits that cannot be undone and are not the user's. Must be called on the EDT.
+	 */
+	public void beginUntrackedEdit() {
+		untrackedDepth++;
+	}
+
+	/**
+	 * Finishes the edits started by the matching {@link #beginUntrackedEdit()}.
+	 */
+	public void endUntrackedEdit() {
+		if (untrackedDepth > 0) {
+			untrackedDepth--;
+		}
+	}
+
+	/**
+	 * Returns whether the edit being made is untracked. Meant for document listeners.
+	 */
+	public boolean isUntrackedEdit() {
+		return untrackedDepth > 0;
+	}
+
+	/**
+	 * Replaces a region of the document as one undoable edit.
+	 * <p>
+	 * Unlike separate calls to {@link #remove} and {@link #insertString}, this fires exactly one
+	 * removal and one insertion event regardless of how much text changes.
+	 * </p>
+	 *
+	 * @param offset the start of the region
+	 * @param length the length of the region
+	 * @param text   the new content of the region
+	 * @throws BadLocationException if the region is not inside the document
+	 */
+	public void replaceAsSingleEdit(int offset, int length, String text) throws BadLocationException {
+		beginCompoundEdit();
+		try {
+			replace(offset, length, text, null);
+		} finally {
+			endCompoundEdit();
+		}
+	}
+
+	@Override
+	protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+		if (untrackedDepth > 0) {
+			return;
+		}
+		if (compoundEdit != null) {
+			compoundEdit.addEdit(e.getEdit());
+		} else {
+			super.fireUndoableEditUpdate(e);
+		}
+	}
+
+	/**
+	 * Updates the line map after an insertion the way {@link PlainDocument} does, but finds the line
+	 * breaks with {@link TextScanner} in the chunks of the rope. The inherited version copies the
+	 * inserted text into one array and checks it a character at a time, then copies and checks it
+	 * again for characters above 255. Composed text and bidirectional documents still go through it.
+	 */
+	@Override
+	protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+		if (attr != null || Boolean.TRUE.equals(getProperty(I18N_PROPERTY))) {
+			super.insertUpdate(chng, attr);
+			return;
+		}
+
+		BranchElement lineMap = (BranchElement) getDefaultRootElement();
+		int offset = chng.getOffset();
+		int length = chng.getLength();
+		if (offset > 0) {
+			offset--;
+			length++;
+		}
+		int index = lineMap.getElementIndex(offset);
+		Element line = lineMap.getElement(index);
+		LineBreaks breaks = new LineBreaks(lineMap, offset, line.getStartOffset(),
+			!Boolean.TRUE.equals(getProperty(MULTI_BYTE_PROPERTY)));
+		content.snapshot().text().forEachChunk(offset, offset + length, breaks);
+
+		if (!breaks.lines.isEmpty()) {
+			List<Element> removed = new ArrayList<>(2);
+			removed.add(line);
+			int end = line.getEndOffset();
+			if (offset + length == end && breaks.lineStart != end && index + 1 < lineMap.getElementCount()) {
+				Element next = lineMap.getElement(index + 1);
+				removed.add(next);
+				end = next.getEndOffset();
+			}
+			if (breaks.lineStart < end) {
+				breaks.lines.add(createLeafElement(lineMap, null, breaks.lineStart, end));
+			}
+			Element[] addedLines = breaks.lines.toArray(new Element[0]);
+			Element[] removedLines = removed.toArray(new Element[0]);
+			chng.addEdit(new ElementEdit(lineMap, index, removedLines, addedLines));
+			lineMap.replace(index, removedLines.length, addedLines);
+		}
+		if (breaks.multiByte) {
+			putProperty(MULTI_BYTE_PROPERTY, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Collects the lines ended by the breaks in the visited text, and whether it contains a character
+	 * above 255 if {@code checkMultiByte} was set.
+	 */
+	private final class LineBreaks implements Rope.ChunkVisitor {
+		private final Element lineMap;
+		private final List<Element> lines = new ArrayList<>();
+		private final boolean checkMultiByte;
+		private int chunkStart;
+		private int lineStart;
+		private boolean multiByte;
+
+		LineBreaks(Element lineMap, int offset, int lineStart, boolean checkMultiByte) {
+			this.lineMap = lineMap;
+			this.chunkStart = offset;
+			this.lineStart = lineStart;
+			this.checkMultiByte = checkMultiByte;
+		}
+
+		@Override
+		public boolean visit(char[] chars, int from, int to) {
+			for (int i = TextScanner.indexOf(chars, from, to, '\n'); i >= 0; i = TextScanner.indexOf(chars, i + 1, to, '\n')) {
+				int lineEnd = chunkStart + i - from + 1;
+				lines.add(createLeafElement(lineMap, null, lineStart, lineEnd));
+				lineStart = lineEnd;
+			}
+			if (checkMultiByte && !multiByte) {
+				for (int i = TextScanner.indexOfNonAscii(chars, from, to); i >= 0 && i < to && !multiByte; i++) {
+					multiByte = chars[i] > 255;
+				}
+			}
+			chunkStart += to - from;
+			return true;
+		}
+	}
+
+	/**
+	 * Document content kept in a {@link Rope}. Besides the text, it keeps the word count and the
+	 * positions, and notifies observers on every insertion and removal.
+	 * <p>
+	 * Every change replaces the rope and publishes it together with a new version number, so
+	 * {@link #getSnapshot()} never has to copy or lock anything. The newline that Swing expects at the
+	 * end of the content is not part of the rope; reads past the text return it.
+	 * </p>
+	 * <p>
+	 * Positions are tracked the way {@code GapContent} does it, with a virtual gap at the offset of the
+	 * last edit: marks before the gap store their offset, marks after it their offset plus the gap
+	 * size. An edit at the gap only moves the gap boundaries, and moving the gap touches only the marks
+	 * it passes. The marks themselves are kept sorted in an array with a gap of its own, so positions
+	 * created while typing are inserted without moving the rest.
+	 * </p>
+	 */
+	private static final class EditorContent implements AbstractDocument.Content {
+		private static final int GAP_SIZE = 1 << 28;
+		private static final char[] NEWLINE = {'\n'};
+
+		private final List<ContentObserver> observers = new CopyOnWriteArrayList<>();
+		private final Segment segment = new Segment();
+		private final ReferenceQueue<EditorPosition> unusedQueue = new ReferenceQueue<>();
+		private volatile Snapshot snapshot = new Snapshot(Rope.EMPTY, 0);
+		private int wordCount;
+
+		private int gapStart;
+		private int gapEnd = GAP_SIZE;
+		private Mark[] marks = new Mark[16];
+		private int markGapStart;
+		private int markGapEnd = marks.length;
+		private int unusedMarks;
+		private int nextMark;
+
+		private static final class Mark extends WeakReference<EditorPosition> {
+			private int index;
+
+			Mark(EditorPosition position, ReferenceQueue<EditorPosition> queue, int index) {
+				super(position, queue);
+				this.index = index;
+			}
+		}
+
+		private final class EditorPosition implements Position {
+			private Mark mark;
+
+			@Override
+			public int getOffset() {
+				return offset(mark.index);
+			}
+
+			@Override
+			public String toString() {
+				return Integer.toString(getOffset());
+			}
+		}
+
+		/**
+		 * The offset a position had before a removal, so that undoing the removal can put it back.
+		 */
+		private record UndoPosition(Mark mark, int offset) {
+		}
+
+		Snapshot snapshot() {
+			return snapshot;
+		}
+
+		@Override
+		public int length() {
+			return snapshot.text().length() + 1;
+		}
+
+		@Override
+		public UndoableEdit insertString(int where, String str) throws BadLocationException {
+			Snapshot current = snapshot;
+			if (where < 0 || where > current.text().length()) {
+				throw new BadLocationException("Invalid insert", length());
+			}
+			for (ContentObserver observer : observers) {
+				observer.contentChanging(where, 0, str.length());
+			}
+			boolean wasWordStart = isWordStart(where);
+			snapshot = new Snapshot(current.text().insert(where, str), current.version() + 1);
+			insertMarks(where, str.length());
+			wordCount += countWordStarts(where, where + str.length() + 1, previous(where), segment);
+			if (wasWordStart) {
+				wordCount--;
+			}
+			for (ContentObserver observer : observers) {
+				observer.contentChanged(where, 0, str.length());
+			}
+			return new InsertUndo(where, str.length());
+		}
+
+		@Override
+		public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+			Snapshot current = snapshot;
+			if (where < 0 || nitems < 0 || where + nitems > current.text().length()) {
+				throw new BadLocationException("Invalid remove", length() + 1);
+			}
+			for (ContentObserver observer : observers) {
+				observer.contentChanging(where, nitems, 0);
+			}
+			UndoableEdit edit = new RemoveUndo(where, getString(where, nitems));
+			wordCount -= countWordStarts(where, where + nitems + 1, previous(where), segment);
+			snapshot = new Snapshot(current.text().remove(where, where + nitems), current.version() + 1);
+			removeMarks(where, nitems);
+			if (isWordStart(where)) {
+				wordCount++;
+			}
+			for (ContentObserver observer : observers) {
+				observer.contentChanged(where, nitems, 0);
+			}
+			return edit;
+		}
+
+		@Override
+		public String getString(int where, int len) throws BadLocationException {
+			Segment text = new Segment();
+			getChars(where, len, text);
+			return new String(text.array, text.offset, text.count);
+		}
+
+		@Override
+		public void getChars(int where, int len, Segment txt) throws BadLocationException {
+			Rope text = snapshot.text();
+			if (where < 0 || len < 0 || where + len > text.length() + 1) {
+				throw new BadLocationException("Invalid location", text.length() + 2);
+			}
+			int end = Math.min(where + len, text.length());
+			if (where == text.length() || (where == end && len == 0)) {
+				txt.array = NEWLINE;
+				txt.offset = 0;
+				txt.count = len;
+				return;
+			}
+			text.forEachChunk(where, end, (chars, from, to) -> {
+				if (to - from == len || txt.isPartialReturn()) {
+					txt.array = chars;
+					txt.offset = from;
+					txt.count = to - from;
+				} else {
+					char[] copy = new char[len];
+					text.getChars(where, end, copy, 0);
+					if (end < where + len) {
+						copy[len - 1] = '\n';
+					}
+					txt.array = copy;
+					txt.offset = 0;
+					txt.count = len;
+				}
+				return false;
+			});
+		}
+
+		@Override
+		public Position createPosition(int offset) throws BadLocationException {
+			while (unusedQueue.poll() != null) {
+				unusedMarks++;
+			}
+			if (unusedMarks > Math.max(64, markCount() / 2)) {
+				removeUnusedMarks();
+			}
+
+			int index = offset < gapStart || offset == 0 && gapStart == 0 ? offset : offset + gapEnd - gapStart;
+			// Loading or replacing text creates the positions of every new line in order, so check right
+			// after the last created mark first.
+			int count = markCount();
+			int sortIndex = follows(nextMark, index, count) ? nextMark : findIndex(index);
+			if (sortIndex < count) {
+				Mark mark = mark(sortIndex);
+				EditorPosition position = mark.get();
+				if (mark.index == index && position != null) {
+					return position;
+				}
+			}
+			EditorPosition position = new EditorPosition();
+			position.mark = new Mark(position, unusedQueue, index);
+			insertMark(sortIndex, position.mark);
+			nextMark = sortIndex + 1;
+			return position;
+		}
+
+		/**
+		 * Returns whether {@code i} is the sort index of a new mark with the given index.
+		 */
+		private boolean follows(int i, int index, int count) {
+			return i <= count && (i == 0 || mark(i - 1).index < index) && (i == count || mark(i).index >= index);
+		}
+
+		private char previous(int where) throws BadLocationException {
+			return where == 0 ? TextStatistics.TEXT_START : getString(where - 1, 1).charAt(0);
+		}
+
+		private boolean isWordStart(int where) throws BadLocationException {
+			return where < length() && TextStatistics.isWordStart(previous(where), getString(where, 1).charAt(0));
+		}
+
+		/**
+		 * Counts word starts in {@code [start, end)}, clipped to the content, without copying it.
+		 */
+		int countWordStarts(int start, int end, char previous, Segment segment) throws BadLocationException {
+			int count = 0;
+			int offset = start;
+			int limit = Math.min(end, length());
+			segment.setPartialReturn(true);
+			while (offset < limit) {
+				getChars(offset, limit - offset, segment);
+				count += TextStatistics.countWordStarts(segment, 0, segment.count, previous);
+				previous = segment.array[segment.offset + segment.count - 1];
+				offset += segment.count;
+			}
+			return count;
+		}
+
+		private int offset(int index) {
+			return index < gapEnd ? index : index - (gapEnd - gapStart);
+		}
+
+		private void insertMarks(int where, int length) {
+			shiftGap(where);
+			if (gapEnd - gapStart <= length) {
+				// Out of virtual gap after ~GAP_SIZE inserted characters: widen it again.
+				int grow = GAP_SIZE + length;
+				for (int i = findIndex(gapEnd), n = markCount(); i < n; i++) {
+					mark(i).index += grow;
+				}
+				gapEnd += grow;
+			}
+			gapStart += length;
+		}
+
+		private void removeMarks(int where, int length) {
+			shiftGap(where);
+			int newGapEnd = gapEnd + length;
+			for (int i = findIndex(gapEnd), n = markCount(); i < n; i++) {
+				Mark mark = mark(i);
+				if (mark.index >= newGapEnd) {
+					break;
+				}
+				mark.index = newGapEnd;
+			}
+			gapEnd = newGapEnd;
+			resetMarksAtZero();
+		}
+
+		/**
+		 * Moves the gap to {@code where}. Marks at {@code where} end up after the gap, so text inserted
+		 * there moves them, except at offset 0.
+		 */
+		private void shiftGap(int where) {
+			int gapSize = gapEnd - gapStart;
+			if (where > gapStart) {
+				int limit = where + gapSize;
+				for (int i = findIndex(gapEnd), n = markCount(); i < n; i++) {
+					Mark mark = mark(i);
+					if (mark.index >= limit) {
+						break;
+					}
+					mark.index -= gapSize;
+				}
+			} else if (where < gapStart) {
+				for (int i = findIndex(where), n = markCount(); i < n; i++) {
+					Mark mark = mark(i);
+					if (mark.index >= gapStart) {
+						break;
+					}
+					mark.index += gapSize;
+				}
+			}
+			gapStart = where;
+			gapEnd = where + gapSize;
+			resetMarksAtZero();
+		}
+
+		/**
+		 * Keeps marks at offset 0 before the gap, so that text inserted at the start does not move them.
+		 */
+		private void resetMarksAtZero() {
+			if (gapStart != 0) {
+				return;
+			}
+			for (int i = 0, n = markCount(); i < n; i++) {
+				Mark mark = mark(i);
+				if (mark.index > gapEnd) {
+					break;
+				}
+				mark.index = 0;
+			}
+		}
+
+		/**
+		 * Returns the marks that removing {@code [offset, offset + length)} collapses and inserting the
+		 * text again would not put back. Marks at the end are pushed back there by the insertion, except
+		 * at offset 0. Leaving them out keeps undoing a series of adjacent inserts linear, as marks
+		 * collapsed by the later ones pile up at the end of the earlier ones.
+		 */
+		private List<UndoPosition> positionsInRange(int offset, int length) {
+			List<UndoPosition> positions = new ArrayList<>();
+			int last = offset == 0 ? length : offset + length - 1;
+			for (int i = findOffset(offset), n = markCount(); i < n; i++) {
+				Mark mark = mark(i);
+				int markOffset = offset(mark.index);
+				if (markOffset > last) {
+					break;
+				}
+				positions.add(new UndoPosition(mark, markOffset));
+			}
+			return positions;
+		}
+
+		/**
+		 * Puts positions back where they were before their text was removed. Called right after the
+		 * text was inserted again at {@code offset}.
+		 */
+		private void updateUndoPositions(List<UndoPosition> positions, int offset, int length) {
+			int end = offset + length;
+			// The removal collapsed the positions to offset and the insertion pushed them to its end,
+			// except at offset 0. Find them while the marks are still sorted.
+			int collapsed = offset == 0 ? 0 : gapEnd;
+			int from = findIndex(collapsed);
+			int to = findIndex(collapsed + 1);
+			for (UndoPosition position : positions) {
+				position.mark().index = position.offset() == end ? gapEnd : position.offset();
+			}
+			moveMarkGap(from);
+			int physicalFrom = from + markGapEnd - markGapStart;
+			Arrays.sort(marks, physicalFrom, physicalFrom + to - from, Comparator.comparingInt(mark -> mark.index));
+		}
+
+		private int markCount() {
+			return marks.length - (markGapEnd - markGapStart);
+		}
+
+		private Mark mark(int i) {
+			return i < markGapStart ? marks[i] : marks[i + markGapEnd - markGapStart];
+		}
+
+		/**
+		 * Returns the first mark with an index of at least {@code index}.
+		 */
+		private int findIndex(int index) {
+			int low = 0;
+			int high = markCount();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (mark(middle).index < index) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Returns the first mark with an offset of at least {@code offset}.
+		 */
+		private int findOffset(int offset) {
+			int low = 0;
+			int high = markCount();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (offset(mark(middle).index) < offset) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		private void insertMark(int i, Mark mark) {
+			if (markGapStart == markGapEnd) {
+				Mark[] grown = new Mark[marks.length * 2];
+				int after = marks.length - markGapEnd;
+				System.arraycopy(marks, 0, grown, 0, markGapStart);
+				System.arraycopy(marks, markGapEnd, grown, grown.length - after, after);
+				markGapEnd = grown.length - after;
+				marks = grown;
+			}
+			moveMarkGap(i);
+			marks[markGapStart++] = mark;
+		}
+
+		private void moveMarkGap(int i) {
+			int gapLength = markGapEnd - markGapStart;
+			if (i < markGapStart) {
+				int moved = markGapStart - i;
+				System.arraycopy(marks, i, marks, markGapEnd - moved, moved);
+				Arrays.fill(marks, i, Math.min(markGapStart, markGapEnd - moved), null);
+			} else if (i > markGapStart) {
+				int moved = i - markGapStart;
+				System.arraycopy(marks, markGapEnd, marks, markGapStart, moved);
+				Arrays.fill(marks, Math.max(markGapEnd, i), markGapEnd + moved, null);
+			}
+			markGapStart = i;
+			markGapEnd = i + gapLength;
+		}
+
+		/**
+		 * Drops the marks whose positions are no longer referenced.
+		 */
+		private void removeUnusedMarks() {
+			Mark[] used = new Mark[Math.max(16, Integer.highestOneBit(markCount()) * 2)];
+			int count = 0;
+			for (int i = 0, n = markCount(); i < n; i++) {
+				Mark mark = mark(i);
+				if (mark.get() != null) {
+					used[count++] = mark;
+				}
+			}
+			marks = used;
+			markGapStart = count;
+			markGapEnd = used.length;
+			unusedMarks = 0;
+		}
+
+		private final class InsertUndo extends AbstractUndoableEdit {
+			private final int offset;
+			private final int length;
+			private String string;
+			private List<UndoPosition> positions;
+
+			InsertUndo(int offset, int length) {
+				this.offset = offset;
+				this.length = length;
+			}
+
+			@Override
+			public void undo() throws CannotUndoException {
+				super.undo();
+				try {
+					positions = positionsInRange(offset, length);
+					string = getString(offset, length);
+					remove(offset, length);
+				} catch (BadLocationException ex) {
+					throw new CannotUndoException();
+				}
+			}
+
+			@Override
+			public void redo() throws CannotRedoException {
+				super.redo();
+				try {
+					insertString(offset, string);
+					string = null;
+					updateUndoPositions(positions, offset, length);
+					positions = null;
+				} catch (BadLocationException ex) {
+					throw new CannotRedoException();
+				}
+			}
+		}
+
+		private final class RemoveUndo extends AbstractUndoableEdit {
+			private final int offset;
+			private final int length;
+			private String string;
+			private List<UndoPosition> positions;
+
+			RemoveUndo(int offset, String string) {
+				this.offset = offset;
+				this.length = string.length();
+				this.string = string;
+				this.positions = positionsInRange(offset, length);
+			}
+
+			@Override
+			public void undo() throws CannotUndoException {
+				super.undo();
+				try {
+					insertString(offset, string);
+					updateUndoPositions(positions, offset, length);
+					positions = null;
+					string = null;
+				} catch (BadLocationException ex) {
+					throw new CannotUndoException();
+				}
+			}
+
+			@Override
+			public void redo() throws CannotRedoException {
+				super.redo();
+				try {
+					string = getString(offset, length);
+					positions = positionsInRange(offset, length);
+					remove(offset, length);
+				} catch (BadLocationException ex) {
+					throw new CannotRedoException();
+				}
+			}
+		}
+	}
+}
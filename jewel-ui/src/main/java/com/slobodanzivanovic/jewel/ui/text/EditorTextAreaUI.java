@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import javax.swing.*;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.View;
+
+/**
+ * The UI of the editor text area, which lays out lines with a {@link FoldingView}, or with a
+ * {@link SoftWrapView} while line wrap is on.
+ * <p>
+ * Bidirectional text keeps the views of {@link BasicTextAreaUI}. Folding only applies to unwrapped
+ * lines.
+ * </p>
+ */
+public class EditorTextAreaUI extends BasicTextAreaUI {
+	private final FoldModel foldModel;
+	private final WrapModel wrapModel;
+
+	public EditorTextAreaUI(FoldModel foldModel, WrapModel wrapModel) {
+		this.foldModel = foldModel;
+		this.wrapModel = wrapModel;
+	}
+
+	@Override
+	public View create(Element element) {
+		JTextComponent component = getComponent();
+		Document document = element.getDocument();
+		boolean bidi = Boolean.TRUE.equals(document.getProperty("i18n"));
+		if (component instanceof JTextArea area && !bidi) {
+			return area.getLineWrap() ? new SoftWrapView(element, wrapModel) : new FoldingView(element, foldModel);
+		}
+		return super.create(element);
+	}
+}
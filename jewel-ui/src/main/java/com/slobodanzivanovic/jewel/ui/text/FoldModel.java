@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.ui.text.FoldRegions.Fold;
+import com.slobodanzivanovic.jewel.util.collection.IntervalTree;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Element;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Which {@link FoldRegions foldable regions} of an {@link EditorDocument} are collapsed in one view.
+ * <p>
+ * The regions are shared by every view of the document; each view only keeps its collapsed ones,
+ * in an {@link IntervalTree} of its own that edits move in O(log n). When the regions are found
+ * again, those that still start at the same offset as a collapsed one stay collapsed.
+ * </p>
+ * <p>
+ * A collapsed region keeps its first and last line visible and hides the lines in between. The
+ * hidden lines are kept as sorted, merged ranges with a running count, so mapping between document
+ * lines and visible rows is a binary search over the collapsed regions only. Edits within a line
+ * leave the ranges alone and edits that add or remove lines elsewhere just move the ranges after
+ * them; the ranges are only rebuilt when lines are added or removed inside a collapsed region.
+ * </p>
+ */
+public class FoldModel implements DocumentListener {
+	/**
+	 * What the gutter shows for a line.
+	 */
+	public enum FoldState {
+		NONE, EXPANDED, COLLAPSED
+	}
+
+	private record FoldRange(int start, int end, Fold fold) {
+	}
+
+	private final EditorDocument document;
+	private final FoldRegions regions;
+	private final List<ChangeListener> listeners = new ArrayList<>();
+	private final ChangeListener regionsListener = e -> regionsFound();
+	private IntervalTree<Fold> collapsed = new IntervalTree<>();
+
+	private int[] hiddenFirst = new int[8];
+	private int[] hiddenLast = new int[8];
+	private int[] hiddenBefore = new int[8];
+	private int hiddenRanges;
+	private int hiddenLines;
+	private boolean hiddenValid = true;
+
+	public FoldModel(EditorDocument document, FoldRegions regions) {
+		this.document = document;
+		this.regions = regions;
+		regions.addChangeListener(regionsListener);
+		document.addDocumentListener(this);
+	}
+
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Stops following the document, e.g. when the view it belongs to is closed.
+	 */
+	public void dispose() {
+		regions.removeChangeListener(regionsListener);
+		document.removeDocumentListener(this);
+	}
+
+	/**
+	 * Returns whether any line is hidden by a collapsed region.
+	 */
+	public boolean hasHiddenLines() {
+		ensureHiddenRanges();
+		return hiddenLines > 0;
+	}
+
+	/**
+	 * Returns the number of visible rows.
+	 */
+	public int getRowCount() {
+		ensureHiddenRanges();
+		return lineCount() - hiddenLines;
+	}
+
+	/**
+	 * Returns the visible row of a line. A hidden line maps to the row of the line that folds it.
+	 */
+	public int rowForLine(int line) {
+		ensureHiddenRanges();
+		int range = rangeAtOrBefore(line);
+		if (range < 0) {
+			return line;
+		}
+		if (line <= hiddenLast[range]) {
+			return hiddenFirst[range] - 1 - hiddenBefore[range];
+		}
+		return line - hiddenBefore[range] - (hiddenLast[range] - hiddenFirst[range] + 1);
+	}
+
+	/**
+	 * Returns the line shown in a visible row.
+	 */
+	public int lineForRow(int row) {
+		ensureHiddenRanges();
+		int low = 0;
+		int high = hiddenRanges - 1;
+		int found = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (hiddenFirst[mid] - hiddenBefore[mid] <= row) {
+				found = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		int line = found < 0 ? row : row + hiddenBefore[found] + hiddenLast[found] - hiddenFirst[found] + 1;
+		return Math.clamp(line, 0, lineCount() - 1);
+	}
+
+	public boolean isHidden(int line) {
+		ensureHiddenRanges();
+		int range = rangeAtOrBefore(line);
+		return range >= 0 && line <= hiddenLast[range];
+	}
+
+	/**
+	 * Returns the last line of the run of visible lines that starts at a visible line.
+	 */
+	public int visibleRunEnd(int line) {
+		ensureHiddenRanges();
+		int next = rangeAtOrBefore(line) + 1;
+		return next < hiddenRanges ? hiddenFirst[next] - 1 : lineCount() - 1;
+	}
+
+	/**
+	 * Returns whether the lines right after a line are hidden by a collapsed region.
+	 */
+	public boolean isCollapsedHeader(int line) {
+		ensureHiddenRanges();
+		int range = rangeAtOrBefore(line + 1);
+		return range >= 0 && hiddenFirst[range] == line + 1;
+	}
+
+	public FoldState getFoldState(int line) {
+		FoldRange range = foldStartingOn(line);
+		if (range == null) {
+			return FoldState.NONE;
+		}
+		return isCollapsed(range) ? FoldState.COLLAPSED : FoldState.EXPANDED;
+	}
+
+	/**
+	 * Collapses or expands the region starting on a line.
+	 */
+	public void toggle(int line) {
+		FoldRange range = foldStartingOn(line);
+		if (range != null) {
+			setCollapsed(range, !isCollapsed(range));
+		}
+	}
+
+	/**
+	 * Collapses the region starting on the line of an offset, or else the innermost region that
+	 * contains it.
+	 */
+	public void collapse(int offset) {
+		Element root = document.getDefaultRootElement();
+		int line = root.getElementIndex(offset);
+		FoldRange range = foldStartingOn(line);
+		if (range == null) {
+			FoldRange[] innermost = new FoldRange[1];
+			regions.getRegions().forEachOverlapping(offset, offset, (start, end, fold) -> {
+				if (root.getElementIndex(start) < line && spansLines(start, end)) {
+					innermost[0] = new FoldRange(start, end, fold);
+				}
+			});
+			range = innermost[0];
+		}
+		if (range != null && !isCollapsed(range)) {
+			setCollapsed(range, true);
+		}
+	}
+
+	/**
+	 * Expands the region starting on the line of an offset.
+	 */
+	public void expand(int offset) {
+		FoldRange range = foldStartingOn(document.getDefaultRootElement().getElementIndex(offset));
+		if (range != null && isCollapsed(range)) {
+			setCollapsed(range, false);
+		}
+	}
+
+	/**
+	 * Expands every collapsed region that hides the line of an offset.
+	 *
+	 * @return whether anything was expanded
+	 */
+	public boolean expandAround(int offset) {
+		Element root = document.getDefaultRootElement();
+		int line = root.getElementIndex(offset);
+		List<FoldRange> hiding = new ArrayList<>();
+		collapsed.forEachOverlapping(offset, offset, (start, end, fold) -> {
+			if (root.getElementIndex(start) < line && line < root.getElementIndex(end)) {
+				hiding.add(new FoldRange(start, end, fold));
+			}
+		});
+		for (FoldRange range : hiding) {
+			collapsed.remove(range.start(), range.fold());
+		}
+		if (!hiding.isEmpty()) {
+			changed();
+		}
+		return !hiding.isEmpty();
+	}
+
+	public void expandAll() {
+		if (collapsed.isEmpty()) {
+			return;
+		}
+		collapsed.clear();
+		changed();
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		boolean touchesCollapsed = touchesCollapsed(e.getOffset(), e.getOffset());
+		collapsed.insertUpdate(e.getOffset(), e.getLength());
+		edited(e, touchesCollapsed);
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		boolean touchesCollapsed = touchesCollapsed(e.getOffset(), e.getOffset() + e.getLength() - 1);
+		collapsed.removeUpdate(e.getOffset(), e.getLength());
+		edited(e, touchesCollapsed);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	private boolean touchesCollapsed(int from, int to) {
+		boolean[] touches = new boolean[1];
+		collapsed.forEachOverlapping(from, to, (start, end, fold) -> touches[0] = true);
+		return touches[0];
+	}
+
+	private void edited(DocumentEvent e, boolean touchesCollapsed) {
+		DocumentEvent.ElementChange change = e.getChange(document.getDefaultRootElement());
+		if (change == null) {
+			// No line was added or removed, so every region still covers the same lines.
+			return;
+		}
+		if (touchesCollapsed) {
+			hiddenValid = false;
+			return;
+		}
+		if (!hiddenValid) {
+			return;
+		}
+
+		// Collapsed regions after the edit moved by whole lines, the ones before it did not move.
+		int delta = change.getChildrenAdded().length - change.getChildrenRemoved().length;
+		int line = document.getDefaultRootElement().getElementIndex(e.getOffset());
+		for (int i = rangeAtOrBefore(line) + 1; i < hiddenRanges; i++) {
+			hiddenFirst[i] += delta;
+			hiddenLast[i] += delta;
+		}
+	}
+
+	private boolean isCollapsed(FoldRange range) {
+		boolean[] found = new boolean[1];
+		collapsed.forEachStartingIn(range.start(), range.start() + 1, (start, end, fold) -> found[0] |= fold == range.fold());
+		return found[0];
+	}
+
+	private void setCollapsed(FoldRange range, boolean collapse) {
+		if (collapse) {
+			collapsed.add(range.start(), range.end(), range.fold());
+		} else {
+			collapsed.remove(range.start(), range.fold());
+		}
+		changed();
+	}
+
+	private void changed() {
+		hiddenValid = false;
+		fireChanged();
+	}
+
+	private void fireChanged() {
+		ChangeEvent event = new ChangeEvent(this);
+		for (ChangeListener listener : listeners) {
+			listener.stateChanged(event);
+		}
+	}
+
+	/**
+	 * Returns the outermost region that starts on a line and still hides at least one line.
+	 */
+	private FoldRange foldStartingOn(int line) {
+		Element root = document.getDefaultRootElement();
+		if (line < 0 || line >= root.getElementCount()) {
+			return null;
+		}
+		Element element = root.getElement(line);
+		FoldRange[] outermost = new FoldRange[1];
+		regions.getRegions().forEachStartingIn(element.getStartOffset(), element.getEndOffset(), (start, end, fold) -> {
+			if (spansLines(start, end) && (outermost[0] == null || end > outermost[0].end())) {
+				outermost[0] = new FoldRange(start, end, fold);
+			}
+		});
+		return outermost[0];
+	}
+
+	private boolean spansLines(int start, int end) {
+		Element root = document.getDefaultRootElement();
+		return root.getElementIndex(end) - root.getElementIndex(start) >= 2;
+	}
+
+	private int lineCount() {
+		return document.getDefaultRootElement().getElementCount();
+	}
+
+	/**
+	 * Returns the last hidden range starting at or before a line, or -1.
+	 */
+	private int rangeAtOrBefore(int line) {
+		int index = Arrays.binarySearch(hiddenFirst, 0, hiddenRanges, line);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	private void ensureHiddenRanges() {
+		if (hiddenValid) {
+			return;
+		}
+		hiddenValid = true;
+		hiddenRanges = 0;
+		hiddenLines = 0;
+
+		Element root = document.getDefaultRootElement();
+		// The last line looked up, and the region that last extended the current range.
+		int[] hint = {0};
+		int[] covering = {-1, -1};
+		collapsed.forEach((start, end, fold) -> {
+			if (start >= covering[0] && end <= covering[1]) {
+				// Nested in a region that is already hidden.
+				return;
+			}
+			int headerLine = lineOf(root, start, hint[0]);
+			int closingLine = lineOf(root, end, headerLine);
+			hint[0] = headerLine;
+			int first = headerLine + 1;
+			int last = closingLine - 1;
+			if (last < first) {
+				return;
+			}
+			covering[0] = start;
+			covering[1] = end;
+			if (hiddenRanges > 0 && first <= hiddenLast[hiddenRanges - 1] + 1) {
+				int previousLast = hiddenLast[hiddenRanges - 1];
+				if (last > previousLast) {
+					hiddenLines += last - previousLast;
+					hiddenLast[hiddenRanges - 1] = last;
+				}
+				return;
+			}
+			if (hiddenRanges == hiddenFirst.length) {
+				hiddenFirst = Arrays.copyOf(hiddenFirst, hiddenRanges * 2);
+				hiddenLast = Arrays.copyOf(hiddenLast, hiddenRanges * 2);
+				hiddenBefore = Arrays.copyOf(hiddenBefore, hiddenRanges * 2);
+			}
+			hiddenFirst[hiddenRanges] = first;
+			hiddenLast[hiddenRanges] = last;
+			hiddenBefore[hiddenRanges] = hiddenLines;
+			hiddenLines += last - first + 1;
+			hiddenRanges++;
+		});
+	}
+
+	/**
+	 * Returns the line of an offset at or after {@code fromLine}. Collapsed regions are visited in
+	 * order and are mostly short, so the next few lines are tried before searching all of them.
+	 */
+	private static int lineOf(Element root, int offset, int fromLine) {
+		int limit = Math.min(fromLine + 8, root.getElementCount());
+		for (int line = fromLine; line < limit; line++) {
+			Element element = root.getElement(line);
+			if (offset < element.getStartOffset()) {
+				break;
+			}
+			if (offset < element.getEndOffset()) {
+				return line;
+			}
+		}
+		return root.getElementIndex(offset);
+	}
+
+	/**
+	 * Collapses the regions that were found again where a collapsed region started before. Only
+	 * when the collapsed regions came out exactly the same are the hidden lines unchanged.
+	 */
+	private void regionsFound() {
+		IntervalTree<Fold> all = regions.getRegions();
+		IntervalTree<Fold> found = new IntervalTree<>();
+		boolean[] same = {true};
+		int[] previousStart = {-1};
+		collapsed.forEach((start, end, fold) -> {
+			if (start == previousStart[0]) {
+				return;
+			}
+			previousStart[0] = start;
+			all.forEachStartingIn(start, start + 1, (foundStart, foundEnd, foundFold) -> {
+				found.add(foundStart, foundEnd, foundFold);
+				same[0] &= foundEnd == end;
+			});
+		});
+		boolean sameCollapsed = same[0] && found.size() == collapsed.size();
+		collapsed = found;
+		if (sameCollapsed) {
+			fireChanged();
+		} else {
+			changed();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.collection.IntervalTree;
+import com.slobodanzivanovic.jewel.util.text.FoldRegionFinder;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The foldable regions of an {@link EditorDocument}.
+ * <p>
+ * Regions are offset intervals in an {@link IntervalTree}, so an edit moves them in O(log n)
+ * instead of rescanning the document. The regions themselves are found again off the EDT once
+ * typing pauses, and listeners are told once the new regions are in place.
+ * </p>
+ * <p>
+ * One instance serves every view of a document; which regions are collapsed is up to the
+ * {@link FoldModel} of each view.
+ * </p>
+ */
+public class FoldRegions implements DocumentListener {
+	private static final int RECOMPUTE_DELAY = 500;
+
+	/**
+	 * Identifies a region until the regions are found again.
+	 */
+	static final class Fold {
+	}
+
+	private final EditorDocument document;
+	private final List<ChangeListener> listeners = new ArrayList<>();
+	private final Timer recomputeTimer;
+	private IntervalTree<Fold> regions = new IntervalTree<>();
+	private long editCount;
+
+	public FoldRegions(EditorDocument document) {
+		this.document = document;
+		recomputeTimer = new Timer(RECOMPUTE_DELAY, e -> recompute());
+		recomputeTimer.setRepeats(false);
+		document.addDocumentListener(this);
+		if (document.getLength() > 0) {
+			recomputeTimer.start();
+		}
+	}
+
+	/**
+	 * Adds a listener that is told on the EDT whenever the regions were found again.
+	 */
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeChangeListener(ChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	IntervalTree<Fold> getRegions() {
+		return regions;
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		regions.insertUpdate(e.getOffset(), e.getLength());
+		edited();
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		regions.removeUpdate(e.getOffset(), e.getLength());
+		edited();
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	private void edited() {
+		editCount++;
+		recomputeTimer.restart();
+	}
+
+	private void recompute() {
+		CharSequence text = document.getSnapshot().text();
+		long expectedCount = editCount;
+		CompletableFuture
+			.supplyAsync(() -> findRegions(text), command -> Thread.ofVirtual().start(command))
+			.thenAcceptAsync(found -> {
+				if (editCount != expectedCount) {
+					return;
+				}
+				regions = found;
+				ChangeEvent event = new ChangeEvent(this);
+				for (ChangeListener listener : List.copyOf(listeners)) {
+					listener.stateChanged(event);
+				}
+			}, SwingUtilities::invokeLater)
+			.exceptionally(ex -> {
+				ex.printStackTrace();
+				return null;
+			});
+	}
+
+	private static IntervalTree<Fold> findRegions(CharSequence text) {
+		IntervalTree<Fold> all = new IntervalTree<>();
+		for (FoldRegionFinder.Region region : FoldRegionFinder.find(text)) {
+			all.add(region.start(), region.end(), new Fold());
+		}
+		return all;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainView;
+import javax.swing.text.Position;
+import java.awt.*;
+
+/**
+ * A {@link PlainView} that leaves out the lines hidden by a {@link FoldModel}.
+ * <p>
+ * Every line is mapped to its visible row before it is placed, so painting, hit testing and the
+ * preferred height only ever deal with visible rows. Painting walks the runs of visible lines that
+ * intersect the clip and lets {@link PlainView} paint each run as if it were the whole document,
+ * so a document folded down to a hundred rows paints like a hundred-line document. Without
+ * collapsed regions the view behaves exactly like {@link PlainView}.
+ * </p>
+ */
+public class FoldingView extends PlainView {
+	private static final String PLACEHOLDER = "...";
+
+	private final FoldModel foldModel;
+	private boolean mapLines = true;
+
+	public FoldingView(Element element, FoldModel foldModel) {
+		super(element);
+		this.foldModel = foldModel;
+	}
+
+	@Override
+	public float getPreferredSpan(int axis) {
+		if (axis != Y_AXIS || !foldModel.hasHiddenLines()) {
+			return super.getPreferredSpan(axis);
+		}
+		updateMetrics();
+		return foldModel.getRowCount() * metrics.getHeight();
+	}
+
+	@Override
+	protected Rectangle lineToRect(Shape a, int line) {
+		if (mapLines && foldModel.hasHiddenLines()) {
+			return super.lineToRect(a, foldModel.rowForLine(line));
+		}
+		return super.lineToRect(a, line);
+	}
+
+	@Override
+	public void paint(Graphics g, Shape a) {
+		if (!foldModel.hasHiddenLines()) {
+			super.paint(g, a);
+			return;
+		}
+
+		updateMetrics();
+		Rectangle alloc = a.getBounds();
+		Rectangle clip = g.getClipBounds();
+		int rowHeight = metrics.getHeight();
+		int lineCount = getElement().getElementCount();
+		int firstRow = Math.max(0, (clip.y - alloc.y) / rowHeight);
+		int lastRow = Math.min(foldModel.getRowCount() - 1, (clip.y + clip.height - alloc.y) / rowHeight);
+
+		int row = firstRow;
+		while (row <= lastRow) {
+			int line = foldModel.lineForRow(row);
+			int runEnd = foldModel.visibleRunEnd(line);
+			int paintedRows = Math.min(runEnd - line, lastRow - row) + 1;
+
+			// Paint the run in line space, shifted so that its first line lands on its row.
+			Rectangle lineSpace = new Rectangle(alloc.x, alloc.y + (row - line) * rowHeight,
+				alloc.width, lineCount * rowHeight);
+			Graphics runGraphics = g.create();
+			try {
+				runGraphics.clipRect(clip.x, alloc.y + row * rowHeight, clip.width, paintedRows * rowHeight);
+				mapLines = false;
+				super.paint(runGraphics, lineSpace);
+			} finally {
+				mapLines = true;
+				runGraphics.dispose();
+			}
+
+			if (runEnd - line < paintedRows && foldModel.isCollapsedHeader(runEnd)) {
+				paintPlaceholder(g, a, runEnd);
+			}
+			row += paintedRows;
+		}
+	}
+
+	/**
+	 * Marks a collapsed region at the end of its first line.
+	 */
+	private void paintPlaceholder(Graphics g, Shape a, int line) {
+		Element element = getElement().getElement(line);
+		try {
+			Rectangle end = modelToView(element.getEndOffset() - 1, a, Position.Bias.Forward).getBounds();
+			int padding = metrics.charWidth(' ');
+			int width = metrics.stringWidth(PLACEHOLDER) + padding;
+			int x = end.x + padding;
+
+			Color foreground = getContainer().getForeground();
+			g.setColor(new Color(foreground.getRed(), foreground.getGreen(), foreground.getBlue(), 48));
+			g.fillRoundRect(x, end.y + 1, width, end.height - 2, padding, padding);
+			g.setColor(foreground);
+			g.drawString(PLACEHOLDER, x + padding / 2, end.y + metrics.getAscent());
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	@Override
+	public int viewToModel(float x, float y, Shape a, Position.Bias[] bias) {
+		if (!foldModel.hasHiddenLines()) {
+			return super.viewToModel(x, y, a, bias);
+		}
+
+		updateMetrics();
+		Rectangle alloc = a.getBounds();
+		int rowHeight = metrics.getHeight();
+		if (y < alloc.y || rowHeight <= 0) {
+			return super.viewToModel(x, y, a, bias);
+		}
+		int row = (int) ((y - alloc.y) / rowHeight);
+		if (row >= foldModel.getRowCount()) {
+			bias[0] = Position.Bias.Forward;
+			return getEndOffset() - 1;
+		}
+
+		int line = foldModel.lineForRow(row);
+		Rectangle lineSpace = new Rectangle(alloc.x, alloc.y,
+			alloc.width, getElement().getElementCount() * rowHeight);
+		float lineY = y + (line - row) * rowHeight;
+		mapLines = false;
+		try {
+			return super.viewToModel(x, lineY, lineSpace, bias);
+		} finally {
+			mapLines = true;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.collection.IntervalTree;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranges of an {@link EditorDocument} that follow edits, such as search hits, bookmarks, diff
+ * markers and diagnostics.
+ * <p>
+ * Every {@link Type} is a layer of its own {@link IntervalTree}, so an edit moves the markers after
+ * it with one lazily applied shift per layer instead of one {@link javax.swing.text.Position} per
+ * marker, and a layer can be replaced or cleared at once. Painting only asks for the markers that
+ * overlap the visible rows.
+ * </p>
+ * <p>
+ * Markers are half-open ranges {@code [start, end)}. Text inserted inside a marker extends it, text
+ * inserted at its start or end does not. A marker whose text is removed entirely is dropped, except
+ * for empty markers, which stay where the removed text was.
+ * </p>
+ */
+public class MarkerStore implements DocumentListener {
+
+	/**
+	 * The kind of a marker, which decides how it is painted. Later types are painted on top.
+	 */
+	public enum Type {
+		SEARCH_HIT(new Color(0xE0, 0xC0, 0x40, 90), null),
+		DIFF_INSERTED(null, new Color(0x50, 0xB0, 0x50)),
+		DIFF_CHANGED(null, new Color(0x50, 0x90, 0xD0)),
+		DIFF_DELETED(null, new Color(0xD0, 0x50, 0x50)),
+		BOOKMARK(null, new Color(0x40, 0x80, 0xE0)),
+		WARNING(new Color(0xE0, 0xA0, 0x30, 60), new Color(0xE0, 0xA0, 0x30)),
+		ERROR(new Color(0xE0, 0x40, 0x40, 60), new Color(0xE0, 0x40, 0x40));
+
+		private final Color textColor;
+		private final Color gutterColor;
+
+		Type(Color textColor, Color gutterColor) {
+			this.textColor = textColor;
+			this.gutterColor = gutterColor;
+		}
+
+		/**
+		 * Returns the background of the marked text, or null if the text is not painted.
+		 */
+		public Color getTextColor() {
+			return textColor;
+		}
+
+		/**
+		 * Returns the color of the marked lines in the gutter, or null if the gutter is not painted.
+		 */
+		public Color getGutterColor() {
+			return gutterColor;
+		}
+	}
+
+	/**
+	 * A marker. Its offsets are not stored here since they change with every edit; they are
+	 * passed to {@link Visitor}s instead.
+	 */
+	public static final class Marker {
+		private final Type type;
+		private final String message;
+		private final boolean empty;
+
+		private Marker(Type type, String message, boolean empty) {
+			this.type = type;
+			this.message = message;
+			this.empty = empty;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the text shown for the marker, e.g. a diagnostic, or null.
+		 */
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	/**
+	 * Receives markers, ordered by type and then by start offset.
+	 */
+	@FunctionalInterface
+	public interface Visitor {
+		void visit(int start, int end, Marker marker);
+	}
+
+	// Intervals are closed, so a marker [start, end) is stored as [start, end - 1], and an empty
+	// marker as [start, start].
+	private final Map<Type, IntervalTree<Marker>> layers = new EnumMap<>(Type.class);
+	private final List<ChangeListener> listeners = new ArrayList<>();
+
+	public MarkerStore(EditorDocument document) {
+		for (Type type : Type.values()) {
+			layers.put(type, new IntervalTree<>());
+		}
+		document.addDocumentListener(this);
+	}
+
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeChangeListener(ChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Adds a marker.
+	 *
+	 * @param type    the kind of marker
+	 * @param start   the start offset
+	 * @param end     the end offset, exclusive, not less than {@code start}
+	 * @param message the text shown for the marker, or null
+	 * @return the new marker
+	 */
+	public Marker add(Type type, int start, int end, String message) {
+		Marker marker = new Marker(type, message, end == start);
+		layers.get(type).add(start, Math.max(start, end - 1), marker);
+		fireChanged();
+		return marker;
+	}
+
+	/**
+	 * Removes a marker.
+	 *
+	 * @param start  the current start offset of the marker
+	 * @param marker the marker
+	 * @return whether the marker was found
+	 */
+	public boolean remove(int start, Marker marker) {
+		boolean removed = layers.get(marker.getType()).remove(start, marker);
+		if (removed) {
+			fireChanged();
+		}
+		return removed;
+	}
+
+	/**
+	 * Replaces all markers of a type at once, e.g. with the hits of a new search.
+	 *
+	 * @param type   the kind of marker
+	 * @param starts the start offsets
+	 * @param ends   the end offsets, exclusive
+	 * @param count  the number of markers to take from the arrays
+	 */
+	public void set(Type type, int[] starts, int[] ends, int count) {
+		IntervalTree<Marker> layer = new IntervalTree<>();
+		for (int i = 0; i < count; i++) {
+			layer.add(starts[i], Math.max(starts[i], ends[i] - 1), new Marker(type, null, ends[i] == starts[i]));
+		}
+		layers.put(type, layer);
+		fireChanged();
+	}
+
+	/**
+	 * Removes all markers of a type.
+	 */
+	public void clear(Type type) {
+		if (!layers.get(type).isEmpty()) {
+			layers.get(type).clear();
+			fireChanged();
+		}
+	}
+
+	public int getCount(Type type) {
+		return layers.get(type).size();
+	}
+
+	/**
+	 * Visits the markers that intersect {@code [from, to)}, or that sit at {@code from} if the
+	 * range is empty.
+	 */
+	public void forEachOverlapping(int from, int to, Visitor visitor) {
+		for (Type type : Type.values()) {
+			layers.get(type).forEachOverlapping(from, Math.max(from, to - 1),
+				(start, end, marker) -> visitor.visit(start, marker.empty ? start : end + 1, marker));
+		}
+	}
+
+	/**
+	 * Returns the start of the first marker of a type starting at or after an offset.
+	 *
+	 * @return the start offset, or -1 if there is none
+	 */
+	public int nextStart(Type type, int offset) {
+		return layers.get(type).ceilingStart(offset);
+	}
+
+	/**
+	 * Returns the start of the last marker of a type starting at or before an offset.
+	 *
+	 * @return the start offset, or -1 if there is none
+	 */
+	public int previousStart(Type type, int offset) {
+		return layers.get(type).floorStart(offset);
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		for (IntervalTree<Marker> layer : layers.values()) {
+			if (!layer.isEmpty()) {
+				layer.insertUpdate(e.getOffset(), e.getLength());
+			}
+		}
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		int offset = e.getOffset();
+		int removedEnd = offset + e.getLength();
+		for (IntervalTree<Marker> layer : layers.values()) {
+			if (layer.isEmpty()) {
+				continue;
+			}
+
+			// The tree would keep the first character after the removal in markers whose end was
+			// removed, so those are cut off at the removal instead.
+			List<Integer> cutStarts = new ArrayList<>();
+			List<Marker> cut = new ArrayList<>();
+			layer.forEachOverlapping(offset, removedEnd - 1, (start, end, marker) -> {
+				if (start < offset && end < removedEnd) {
+					cutStarts.add(start);
+					cut.add(marker);
+				}
+			});
+			for (int i = 0; i < cut.size(); i++) {
+				layer.remove(cutStarts.get(i), cut.get(i));
+			}
+
+			for (Marker marker : layer.removeUpdate(offset, e.getLength())) {
+				if (marker.empty) {
+					layer.add(offset, offset, marker);
+				}
+			}
+			for (int i = 0; i < cut.size(); i++) {
+				layer.add(cutStarts.get(i), offset - 1, cut.get(i));
+			}
+		}
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	private void fireChanged() {
+		ChangeEvent event = new ChangeEvent(this);
+		for (ChangeListener listener : listeners) {
+			listener.stateChanged(event);
+		}
+	}
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.text.Rope;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A set of carets, each with an optional selection, over one {@link EditorDocument}.
+ * <p>
+ * Carets are kept as parallel dot and mark arrays, sorted by position and never overlapping.
+ * Typing, deleting and pasting at every caret is turned into a single replace of the span from the
+ * first to the last caret, so N carets cost one undoable edit and one pair of document events
+ * instead of N of each. Edits made by anyone else shift the carets through a document listener.
+ * </p>
+ */
+public class MultiCaret implements DocumentListener {
+	private final EditorDocument document;
+	private final List<ChangeListener> listeners = new ArrayList<>();
+	private int[] dots = new int[8];
+	private int[] marks = new int[8];
+	private int count;
+	private boolean applying;
+
+	public MultiCaret(EditorDocument document) {
+		this.document = document;
+		document.addDocumentListener(this);
+	}
+
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Returns whether there is more than one caret; a single caret is left to the Swing caret.
+	 */
+	public boolean isActive() {
+		return count > 1;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getDot(int index) {
+		return dots[index];
+	}
+
+	public int getMark(int index) {
+		return marks[index];
+	}
+
+	public int getStart(int index) {
+		return Math.min(dots[index], marks[index]);
+	}
+
+	public int getEnd(int index) {
+		return Math.max(dots[index], marks[index]);
+	}
+
+	/**
+	 * Returns the index of the first caret whose selection ends at or after the offset, or
+	 * {@link #getCount()} if there is none.
+	 */
+	public int indexAtOrAfter(int offset) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getEnd(middle) < offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	public void clear() {
+		if (count > 0) {
+			count = 0;
+			fireChanged();
+		}
+	}
+
+	/**
+	 * Adds a caret and merges it with any caret it overlaps.
+	 */
+	public void add(int dot, int mark) {
+		ensureCapacity(count + 1);
+		dots[count] = dot;
+		marks[count] = mark;
+		count++;
+		normalize();
+		fireChanged();
+	}
+
+	/**
+	 * Replaces all carets at once.
+	 *
+	 * @param newDots  the dot of each caret
+	 * @param newMarks the mark of each caret
+	 * @param newCount the number of carets to take from the arrays
+	 */
+	public void set(int[] newDots, int[] newMarks, int newCount) {
+		dots = Arrays.copyOf(newDots, Math.max(newCount, 8));
+		marks = Arrays.copyOf(newMarks, Math.max(newCount, 8));
+		count = newCount;
+		normalize();
+		fireChanged();
+	}
+
+	/**
+	 * Moves every caret. Without {@code select} the selections collapse onto the new positions,
+	 * with it they are extended.
+	 *
+	 * @param target maps the current dot of a caret to its new dot
+	 * @param select whether to keep the marks in place
+	 */
+	public void move(IntUnaryOperator target, boolean select) {
+		int length = document.getLength();
+		for (int i = 0; i < count; i++) {
+			dots[i] = Math.clamp(target.applyAsInt(dots[i]), 0, length);
+			if (!select) {
+				marks[i] = dots[i];
+			}
+		}
+		normalize();
+		fireChanged();
+	}
+
+	/**
+	 * Replaces the selection of every caret with the same text.
+	 */
+	public void insert(String text) throws BadLocationException {
+		String[] texts = new String[count];
+		Arrays.fill(texts, text);
+		insert(texts);
+	}
+
+	/**
+	 * Replaces the selection of each caret with its own text, e.g. one line of a pasted block
+	 * per caret.
+	 *
+	 * @param texts one text per caret, in caret order
+	 */
+	public void insert(String[] texts) throws BadLocationException {
+		int[] starts = new int[count];
+		int[] ends = new int[count];
+		for (int i = 0; i < count; i++) {
+			starts[i] = getStart(i);
+			ends[i] = getEnd(i);
+		}
+		replace(starts, ends, texts);
+	}
+
+	/**
+	 * Deletes the selection of every caret, or the character before or after carets without one.
+	 *
+	 * @param forward whether to delete after the caret instead of before it
+	 */
+	public void delete(boolean forward) throws BadLocationException {
+		int length = document.getLength();
+		int[] starts = new int[count];
+		int[] ends = new int[count];
+		for (int i = 0; i < count; i++) {
+			starts[i] = getStart(i);
+			ends[i] = getEnd(i);
+			if (starts[i] == ends[i]) {
+				if (forward) {
+					ends[i] = Math.min(length, ends[i] + 1);
+				} else {
+					starts[i] = Math.max(0, starts[i] - 1);
+				}
+			}
+		}
+		String[] texts = new String[count];
+		Arrays.fill(texts, "");
+		replace(starts, ends, texts);
+	}
+
+	/**
+	 * Replaces one sorted range per caret and leaves each caret after its replacement text.
+	 * Ranges that overlap their predecessor are trimmed, and everything is applied as one edit.
+	 */
+	public void replace(int[] starts, int[] ends, String[] texts) throws BadLocationException {
+		int n = Math.min(count, starts.length);
+		if (n == 0) {
+			return;
+		}
+
+		boolean changes = false;
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				starts[i] = Math.max(starts[i], ends[i - 1]);
+				ends[i] = Math.max(ends[i], starts[i]);
+			}
+			changes |= starts[i] != ends[i] || !texts[i].isEmpty();
+		}
+		if (!changes) {
+			return;
+		}
+
+		int spanStart = starts[0];
+		int spanEnd = ends[n - 1];
+		int length = spanEnd - spanStart;
+		for (int i = 0; i < n; i++) {
+			length += texts[i].length() - (ends[i] - starts[i]);
+		}
+
+		// Copy the text between the ranges straight out of the snapshot into the new span.
+		Rope text = document.getSnapshot().text();
+		char[] span = new char[length];
+		int previous = spanStart;
+		int position = 0;
+		for (int i = 0; i < n; i++) {
+			text.getChars(previous, starts[i], span, position);
+			position += starts[i] - previous;
+			texts[i].getChars(0, texts[i].length(), span, position);
+			position += texts[i].length();
+			dots[i] = spanStart + position;
+			marks[i] = dots[i];
+			previous = ends[i];
+		}
+		count = n;
+
+		applying = true;
+		try {
+			document.replaceAsSingleEdit(spanStart, spanEnd - spanStart, new String(span));
+		} finally {
+			applying = false;
+		}
+		normalize();
+		fireChanged();
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		if (applying || count == 0) {
+			return;
+		}
+		int offset = e.getOffset();
+		int length = e.getLength();
+		for (int i = 0; i < count; i++) {
+			if (dots[i] >= offset) {
+				dots[i] += length;
+			}
+			if (marks[i] >= offset) {
+				marks[i] += length;
+			}
+		}
+		fireChanged();
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		if (applying || count == 0) {
+			return;
+		}
+		int offset = e.getOffset();
+		int end = offset + e.getLength();
+		for (int i = 0; i < count; i++) {
+			dots[i] = shiftForRemoval(dots[i], offset, end);
+			marks[i] = shiftForRemoval(marks[i], offset, end);
+		}
+		normalize();
+		fireChanged();
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	private static int shiftForRemoval(int position, int offset, int end) {
+		if (position >= end) {
+			return position - (end - offset);
+		}
+		return Math.min(position, offset);
+	}
+
+	/**
+	 * Sorts the carets by start and merges those that overlap or sit on the same position.
+	 */
+	private void normalize() {
+		if (isNormalized()) {
+			return;
+		}
+
+		long[] order = new long[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = (long) getStart(i) << 32 | i;
+		}
+		Arrays.sort(order);
+
+		int[] sortedDots = new int[dots.length];
+		int[] sortedMarks = new int[marks.length];
+		int merged = 0;
+		for (long key : order) {
+			int i = (int) key;
+			int start = getStart(i);
+			if (merged > 0) {
+				int previousStart = Math.min(sortedDots[merged - 1], sortedMarks[merged - 1]);
+				int previousEnd = Math.max(sortedDots[merged - 1], sortedMarks[merged - 1]);
+				if (start < previousEnd || start == previousStart) {
+					int end = Math.max(previousEnd, getEnd(i));
+					boolean backward = sortedDots[merged - 1] < sortedMarks[merged - 1];
+					sortedDots[merged - 1] = backward ? previousStart : end;
+					sortedMarks[merged - 1] = backward ? end : previousStart;
+					continue;
+				}
+			}
+			sortedDots[merged] = dots[i];
+			sortedMarks[merged] = marks[i];
+			merged++;
+		}
+		dots = sortedDots;
+		marks = sortedMarks;
+		count = merged;
+	}
+
+	private boolean isNormalized() {
+		for (int i = 1; i < count; i++) {
+			if (getStart(i) <= getStart(i - 1) || getStart(i) < getEnd(i - 1)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > dots.length) {
+			int newLength = Math.max(capacity, dots.length * 2);
+			dots = Arrays.copyOf(dots, newLength);
+			marks = Arrays.copyOf(marks, newLength);
+		}
+	}
+
+	private void fireChanged() {
+		ChangeEvent event = new ChangeEvent(this);
+		for (ChangeListener listener : listeners) {
+			listener.stateChanged(event);
+		}
+	}
+}
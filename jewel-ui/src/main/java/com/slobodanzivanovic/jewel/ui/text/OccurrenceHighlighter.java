@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.text.OccurrenceIndex;
+import com.slobodanzivanovic.jewel.util.text.Rope;
+
+import javax.swing.*;
+import javax.swing.event.CaretListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Segment;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.ComponentListener;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Highlights every occurrence of the word at the caret.
+ * <p>
+ * Occurrences come from an {@link OccurrenceIndex}. A word is scanned once, off the EDT, the first
+ * time the caret rests on it; after that its occurrences are patched on every edit by looking only
+ * at the text around it, so moving between words already seen costs a lookup. Highlights are only
+ * added for the occurrences in the visible area and are redone when the view scrolls.
+ * </p>
+ * <p>
+ * The index is shared by every view of a document; each installed view has its own word and
+ * highlights.
+ * </p>
+ */
+public class OccurrenceHighlighter implements DocumentListener {
+	private static final int UPDATE_DELAY = 250;
+	private static final int RESCAN_LIMIT = 1 << 20;
+	private static final int MAX_WORD_LENGTH = 100;
+	private static final Color OCCURRENCE_COLOR = new Color(0xE0, 0xC0, 0x40, 70);
+
+	private record ScanResult(int[] offsets, long editCount) {
+	}
+
+	private final class View {
+		private final JTextComponent textComponent;
+		private final List<Object> highlights = new ArrayList<>();
+		private final Timer updateTimer;
+		private final CaretListener caretListener;
+		private final ComponentListener componentListener;
+		private String word;
+
+		private View(JTextComponent textComponent) {
+			this.textComponent = textComponent;
+			updateTimer = new Timer(UPDATE_DELAY, e -> update(this));
+			updateTimer.setRepeats(false);
+			caretListener = e -> updateTimer.restart();
+			// The viewport moves its view to scroll it.
+			componentListener = new ComponentAdapter() {
+				@Override
+				public void componentMoved(ComponentEvent e) {
+					highlightVisible(View.this);
+				}
+
+				@Override
+				public void componentResized(ComponentEvent e) {
+					highlightVisible(View.this);
+				}
+			};
+		}
+	}
+
+	private final EditorDocument document;
+	private final Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(OCCURRENCE_COLOR);
+	private final List<View> views = new ArrayList<>();
+	private final Set<String> scanning = new HashSet<>();
+	private OccurrenceIndex index;
+	// Written on the EDT while the document is locked, read by scans holding the read lock.
+	private volatile long editCount;
+
+	public OccurrenceHighlighter(EditorDocument document) {
+		this.document = document;
+		index = new OccurrenceIndex(document.getLength());
+		document.addDocumentListener(this);
+	}
+
+	/**
+	 * Starts highlighting the occurrences of the word at the caret of a view of the document.
+	 */
+	public void install(JTextComponent textComponent) {
+		View view = new View(textComponent);
+		textComponent.addCaretListener(view.caretListener);
+		textComponent.addComponentListener(view.componentListener);
+		views.add(view);
+	}
+
+	/**
+	 * Stops highlighting in a view and removes its highlights.
+	 */
+	public void uninstall(JTextComponent textComponent) {
+		views.removeIf(view -> {
+			if (view.textComponent != textComponent) {
+				return false;
+			}
+			view.updateTimer.stop();
+			view.word = null;
+			clearHighlights(view);
+			textComponent.removeCaretListener(view.caretListener);
+			textComponent.removeComponentListener(view.componentListener);
+			return true;
+		});
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		editCount++;
+		if (e.getLength() > RESCAN_LIMIT) {
+			index.clear(document.getLength());
+			return;
+		}
+		index.insertUpdate(e.getOffset(), e.getLength());
+		rescan(e.getOffset(), e.getOffset() + e.getLength());
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		editCount++;
+		index.removeUpdate(e.getOffset(), e.getLength());
+		rescan(e.getOffset(), e.getOffset());
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	private void rescan(int from, int to) {
+		int margin = index.margin();
+		if (margin == 0) {
+			return;
+		}
+		int start = Math.max(0, from - margin);
+		int end = Math.min(document.getLength(), to + margin);
+		try {
+			Segment window = new Segment();
+			document.getText(start, end - start, window);
+			index.rescan(from, to, window, start);
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			index.clear(document.getLength());
+		}
+	}
+
+	private void update(View view) {
+		view.word = wordAtCaret(view.textComponent);
+		if (view.word != null && !index.contains(view.word)) {
+			clearHighlights(view);
+			scan(view.word);
+			return;
+		}
+		highlightVisible(view);
+	}
+
+	/**
+	 * Returns the word the caret is in or next to, or null if there is none or text is selected.
+	 */
+	private String wordAtCaret(JTextComponent textComponent) {
+		if (textComponent.getSelectionStart() != textComponent.getSelectionEnd()) {
+			return null;
+		}
+		int dot = textComponent.getCaretPosition();
+		int start = Math.max(0, dot - MAX_WORD_LENGTH);
+		int end = Math.min(document.getLength(), dot + MAX_WORD_LENGTH);
+		Segment text = new Segment();
+		try {
+			document.getText(start, end - start, text);
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			return null;
+		}
+
+		int caret = dot - start;
+		int wordStart = caret;
+		while (wordStart > 0 && OccurrenceIndex.isWordChar(text.charAt(wordStart - 1))) {
+			wordStart--;
+		}
+		int wordEnd = caret;
+		while (wordEnd < text.length() && OccurrenceIndex.isWordChar(text.charAt(wordEnd))) {
+			wordEnd++;
+		}
+		boolean cut = (wordStart == 0 && start > 0) || (wordEnd == text.length() && end < document.getLength());
+		if (wordStart == wordEnd || cut) {
+			return null;
+		}
+		return text.subSequence(wordStart, wordEnd).toString();
+	}
+
+	private void scan(String word) {
+		if (!scanning.add(word)) {
+			return;
+		}
+
+		Rope snapshot = document.getSnapshot().text();
+		long expectedCount = editCount;
+		CompletableFuture
+			.supplyAsync(() -> new ScanResult(OccurrenceIndex.scan(snapshot, word), expectedCount),
+				command -> Thread.ofVirtual().start(command))
+			.thenAcceptAsync(result -> {
+				scanning.remove(word);
+				boolean current = result.editCount() == editCount;
+				if (current) {
+					index.put(word, result.offsets());
+				}
+				for (View view : views) {
+					if (!word.equals(view.word)) {
+						continue;
+					}
+					if (current) {
+						highlightVisible(view);
+					} else {
+						// Edited while scanning; try again once the caret rests.
+						view.updateTimer.restart();
+					}
+				}
+			}, SwingUtilities::invokeLater)
+			.exceptionally(ex -> {
+				SwingUtilities.invokeLater(() -> scanning.remove(word));
+				ex.printStackTrace();
+				return null;
+			});
+	}
+
+	private void highlightVisible(View view) {
+		clearHighlights(view);
+		String word = view.word;
+		if (word == null || index.count(word) < 2) {
+			return;
+		}
+
+		JTextComponent textComponent = view.textComponent;
+		Rectangle visible = textComponent.getVisibleRect();
+		int from = textComponent.viewToModel2D(visible.getLocation());
+		int to = textComponent.viewToModel2D(new Point(visible.x + visible.width, visible.y + visible.height));
+		if (from < 0 || to < 0) {
+			return;
+		}
+		Highlighter highlighter = textComponent.getHighlighter();
+		int length = word.length();
+		index.forEach(word, Math.max(0, from - length), Math.max(from, to) + 1, offset -> {
+			try {
+				view.highlights.add(highlighter.addHighlight(offset, offset + length, painter));
+			} catch (BadLocationException ex) {
+				ex.printStackTrace();
+			}
+		});
+	}
+
+	private static void clearHighlights(View view) {
+		if (view.highlights.isEmpty()) {
+			return;
+		}
+		Highlighter highlighter = view.textComponent.getHighlighter();
+		for (Object highlight : view.highlights) {
+			highlighter.removeHighlight(highlight);
+		}
+		view.highlights.clear();
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.text.OutlineParser;
+import com.slobodanzivanovic.jewel.util.text.Rope;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The outline of an {@link EditorDocument} as a Swing tree model.
+ * <p>
+ * The outline is parsed by {@link OutlineParser} off the EDT. Every node stores its start relative
+ * to its parent, so a changed item only moves its ancestors and their later siblings, never whole
+ * subtrees. While typing, the edited range is collected. Once typing pauses, the smallest item around
+ * it is copied and parsed again on its own; if the edit broke that item's boundaries its parent is
+ * tried next, and the whole document only as a last resort. Results are merged into the existing
+ * nodes with fine-grained tree model events, so the tree keeps its expansion and selection state.
+ * </p>
+ */
+public class OutlineModel implements DocumentListener {
+	private static final int REPARSE_DELAY = 300;
+
+	/**
+	 * The user object of every node.
+	 */
+	public static final class Entry {
+		private OutlineParser.Kind kind;
+		private String name;
+		private int level;
+		private int start;
+		private int length;
+
+		private Entry(OutlineParser.Item item, int base) {
+			set(item, base);
+		}
+
+		private boolean set(OutlineParser.Item item, int base) {
+			boolean renamed = kind != item.kind() || !item.name().equals(name) || level != item.level();
+			kind = item.kind();
+			name = item.name();
+			level = item.level();
+			start = item.start() - base;
+			length = item.end() - item.start();
+			return renamed;
+		}
+
+		private boolean sameShape(OutlineParser.Item item) {
+			return kind == item.kind() && level == item.level() && name.equals(item.name());
+		}
+
+		private OutlineParser.Item shape() {
+			return new OutlineParser.Item(kind, name, level, 0, length, List.of());
+		}
+
+		public OutlineParser.Kind getKind() {
+			return kind;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private final EditorDocument document;
+	private final OutlineParser.Language language;
+	private final DefaultMutableTreeNode root = new DefaultMutableTreeNode();
+	private final DefaultTreeModel treeModel = new DefaultTreeModel(root);
+	private final Timer reparseTimer;
+	private long editCount;
+	private boolean parsed;
+
+	// The edited range since the last applied parse, in current offsets, and the change in length.
+	private int dirtyStart = -1;
+	private int dirtyEnd;
+	private int dirtyDelta;
+
+	public OutlineModel(EditorDocument document, OutlineParser.Language language) {
+		this.document = document;
+		this.language = language;
+		reparseTimer = new Timer(REPARSE_DELAY, e -> reparse());
+		reparseTimer.setRepeats(false);
+		document.addDocumentListener(this);
+		parseAll();
+	}
+
+	public OutlineParser.Language getLanguage() {
+		return language;
+	}
+
+	public DefaultTreeModel getTreeModel() {
+		return treeModel;
+	}
+
+	/**
+	 * Returns the current document offset of the item shown by a node.
+	 */
+	public int getStartOffset(TreeNode node) {
+		int offset = 0;
+		for (TreeNode n = node; n != root && n != null; n = n.getParent()) {
+			offset += ((Entry) ((DefaultMutableTreeNode) n).getUserObject()).start;
+		}
+		if (dirtyStart < 0 || offset < dirtyStart) {
+			return offset;
+		}
+		int dirtyOldEnd = dirtyEnd - dirtyDelta;
+		return offset >= dirtyOldEnd ? offset + dirtyDelta : dirtyStart;
+	}
+
+	public void dispose() {
+		reparseTimer.stop();
+		document.removeDocumentListener(this);
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		int offset = e.getOffset();
+		int end = offset + e.getLength();
+		if (dirtyStart < 0) {
+			dirtyStart = offset;
+			dirtyEnd = end;
+		} else {
+			dirtyStart = Math.min(dirtyStart >= offset ? dirtyStart + e.getLength() : dirtyStart, offset);
+			dirtyEnd = Math.max(dirtyEnd >= offset ? dirtyEnd + e.getLength() : dirtyEnd, end);
+		}
+		dirtyDelta += e.getLength();
+		edited();
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		int offset = e.getOffset();
+		int length = e.getLength();
+		if (dirtyStart < 0) {
+			dirtyStart = offset;
+			dirtyEnd = offset;
+		} else {
+			dirtyStart = Math.min(shiftForRemoval(dirtyStart, offset, length), offset);
+			dirtyEnd = Math.max(shiftForRemoval(dirtyEnd, offset, length), offset);
+		}
+		dirtyDelta -= length;
+		edited();
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	private static int shiftForRemoval(int position, int offset, int length) {
+		if (position <= offset) {
+			return position;
+		}
+		return position >= offset + length ? position - length : offset;
+	}
+
+	private void edited() {
+		editCount++;
+		reparseTimer.restart();
+	}
+
+	private void reparse() {
+		if (!parsed) {
+			parseAll();
+			return;
+		}
+		if (dirtyStart < 0) {
+			return;
+		}
+
+		// Find the items strictly containing the edit, in the offsets they had before it.
+		int oldStart = dirtyStart;
+		int oldEnd = dirtyEnd - dirtyDelta;
+		List<DefaultMutableTreeNode> path = new ArrayList<>();
+		List<Integer> starts = new ArrayList<>();
+		DefaultMutableTreeNode node = root;
+		int base = 0;
+		while (true) {
+			DefaultMutableTreeNode child = childBefore(node, base, oldStart);
+			if (child == null) {
+				break;
+			}
+			Entry entry = (Entry) child.getUserObject();
+			int start = base + entry.start;
+			if (oldEnd >= start + entry.length) {
+				break;
+			}
+			path.add(child);
+			starts.add(start);
+			node = child;
+			base = start;
+		}
+
+		if (path.isEmpty()) {
+			parseAll();
+		} else {
+			reparseItem(path, starts, path.size() - 1);
+		}
+	}
+
+	/**
+	 * Returns the last child that starts before {@code offset}.
+	 */
+	private static DefaultMutableTreeNode childBefore(DefaultMutableTreeNode parent, int base, int offset) {
+		int low = 0;
+		int high = parent.getChildCount() - 1;
+		DefaultMutableTreeNode found = null;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(middle);
+			if (base + ((Entry) child.getUserObject()).start < offset) {
+				found = child;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+
+	private void reparseItem(List<DefaultMutableTreeNode> path, List<Integer> starts, int index) {
+		DefaultMutableTreeNode node = path.get(index);
+		Entry entry = (Entry) node.getUserObject();
+		int start = starts.get(index);
+		Rope snapshot = document.getSnapshot().text();
+		int end = start + entry.length + dirtyDelta;
+		if (start < 0 || end < start || end > snapshot.length()) {
+			parseAll();
+			return;
+		}
+		CharSequence text = snapshot.subSequence(start, end);
+		OutlineParser.Item shape = entry.shape();
+		long expectedCount = editCount;
+
+		CompletableFuture
+			.supplyAsync(() -> OutlineParser.reparse(language, shape, text), command -> Thread.ofVirtual().start(command))
+			.thenAcceptAsync(item -> {
+				if (editCount != expectedCount) {
+					return;
+				}
+				if (item == null) {
+					if (index > 0) {
+						reparseItem(path, starts, index - 1);
+					} else {
+						parseAll();
+					}
+					return;
+				}
+				applyItem(path, index, item);
+			}, SwingUtilities::invokeLater)
+			.exceptionally(ex -> {
+				ex.printStackTrace();
+				return null;
+			});
+	}
+
+	/**
+	 * Merges a reparsed item into its node, then moves everything after it by the length change.
+	 */
+	private void applyItem(List<DefaultMutableTreeNode> path, int index, OutlineParser.Item item) {
+		DefaultMutableTreeNode node = path.get(index);
+		Entry entry = (Entry) node.getUserObject();
+		int start = entry.start;
+		if (entry.set(item, -start)) {
+			treeModel.nodeChanged(node);
+		}
+		patch(node, item.children(), 0);
+
+		for (int i = index; i >= 0; i--) {
+			DefaultMutableTreeNode current = path.get(i);
+			if (i < index) {
+				((Entry) current.getUserObject()).length += dirtyDelta;
+			}
+			DefaultMutableTreeNode parent = (DefaultMutableTreeNode) current.getParent();
+			for (int sibling = parent.getIndex(current) + 1; sibling < parent.getChildCount(); sibling++) {
+				((Entry) ((DefaultMutableTreeNode) parent.getChildAt(sibling)).getUserObject()).start += dirtyDelta;
+			}
+		}
+		dirtyStart = -1;
+		dirtyDelta = 0;
+	}
+
+	private void parseAll() {
+		CharSequence text = document.getSnapshot().text();
+		long expectedCount = editCount;
+
+		CompletableFuture
+			.supplyAsync(() -> OutlineParser.parse(language, text), command -> Thread.ofVirtual().start(command))
+			.thenAcceptAsync(items -> {
+				if (editCount != expectedCount) {
+					return;
+				}
+				patch(root, items, 0);
+				parsed = true;
+				dirtyStart = -1;
+				dirtyDelta = 0;
+			}, SwingUtilities::invokeLater)
+			.exceptionally(ex -> {
+				ex.printStackTrace();
+				return null;
+			});
+	}
+
+	/**
+	 * Makes the children of {@code parent} match {@code items}. Children matching the items at the
+	 * front and the back are kept, the ones in between are updated in place as far as possible,
+	 * and only the rest are removed or inserted.
+	 *
+	 * @param base the offset of {@code parent} in the coordinates of {@code items}
+	 */
+	private void patch(DefaultMutableTreeNode parent, List<OutlineParser.Item> items, int base) {
+		int oldCount = parent.getChildCount();
+		int newCount = items.size();
+		int prefix = 0;
+		while (prefix < oldCount && prefix < newCount && entryAt(parent, prefix).sameShape(items.get(prefix))) {
+			update(parent, prefix, items.get(prefix), base);
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < oldCount - prefix && suffix < newCount - prefix
+			&& entryAt(parent, oldCount - 1 - suffix).sameShape(items.get(newCount - 1 - suffix))) {
+			update(parent, oldCount - 1 - suffix, items.get(newCount - 1 - suffix), base);
+			suffix++;
+		}
+
+		int oldMiddle = oldCount - prefix - suffix;
+		int newMiddle = newCount - prefix - suffix;
+		int paired = Math.min(oldMiddle, newMiddle);
+		for (int i = prefix; i < prefix + paired; i++) {
+			update(parent, i, items.get(i), base);
+		}
+
+		if (oldMiddle > paired) {
+			int[] indices = new int[oldMiddle - paired];
+			Object[] removed = new Object[indices.length];
+			for (int i = indices.length - 1; i >= 0; i--) {
+				indices[i] = prefix + paired + i;
+				removed[i] = parent.getChildAt(indices[i]);
+				parent.remove(indices[i]);
+			}
+			treeModel.nodesWereRemoved(parent, indices, removed);
+		} else if (newMiddle > paired) {
+			int[] indices = new int[newMiddle - paired];
+			for (int i = 0; i < indices.length; i++) {
+				indices[i] = prefix + paired + i;
+				parent.insert(createNode(items.get(indices[i]), base), indices[i]);
+			}
+			treeModel.nodesWereInserted(parent, indices);
+		}
+	}
+
+	private void update(DefaultMutableTreeNode parent, int index, OutlineParser.Item item, int base) {
+		DefaultMutableTreeNode node = (DefaultMutableTreeNode) parent.getChildAt(index);
+		if (((Entry) node.getUserObject()).set(item, base)) {
+			treeModel.nodeChanged(node);
+		}
+		patch(node, item.children(), item.start());
+	}
+
+	private static Entry entryAt(DefaultMutableTreeNode parent, int index) {
+		return (Entry) ((DefaultMutableTreeNode) parent.getChildAt(index)).getUserObject();
+	}
+
+	private static DefaultMutableTreeNode createNode(OutlineParser.Item item, int base) {
+		DefaultMutableTreeNode node = new DefaultMutableTreeNode(new Entry(item, base));
+		for (OutlineParser.Item child : item.children()) {
+			node.add(createNode(child, item.start()));
+		}
+		return node;
+	}
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.text.LineWrapper;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.LayeredHighlighter;
+import javax.swing.text.PlainView;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.Utilities;
+import javax.swing.text.ViewFactory;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A {@link PlainView} that soft-wraps long lines into rows, laid out by a {@link WrapModel}.
+ * <p>
+ * Unlike {@code WrappedPlainView}, which measures every paragraph again on each resize, this view
+ * only hands its width to the model and paints the rows inside the clip. Tab stops are measured
+ * from the start of each row, the same way the model measures them.
+ * </p>
+ */
+public class SoftWrapView extends PlainView {
+	private final WrapModel wrapModel;
+	private int tabBase;
+	private int lastRowCount = -1;
+
+	public SoftWrapView(Element element, WrapModel wrapModel) {
+		super(element);
+		this.wrapModel = wrapModel;
+	}
+
+	@Override
+	public void setSize(float width, float height) {
+		super.setSize(width, height);
+		// Before the host is laid out, its UI asks for the preferred size at an unbounded width.
+		if (getContainer().getWidth() > 0 && width > 0
+			&& wrapModel.setLayout(metrics, tabWidth(), (int) width, visibleRows())) {
+			preferenceChanged(null, false, true);
+		}
+	}
+
+	@Override
+	public float getPreferredSpan(int axis) {
+		updateMetrics();
+		if (axis == X_AXIS) {
+			// Lines wrap at whatever width the view gets.
+			return metrics.charWidth('m');
+		}
+		lastRowCount = wrapModel.getRowCount();
+		return lastRowCount * metrics.getHeight();
+	}
+
+	@Override
+	public float nextTabStop(float x, int tabOffset) {
+		int tabWidth = tabWidth();
+		if (tabWidth == 0) {
+			return x;
+		}
+		return tabBase + ((int) ((x - tabBase) / tabWidth) + 1) * tabWidth;
+	}
+
+	@Override
+	protected Rectangle lineToRect(Shape a, int line) {
+		if (!wrapModel.isActive()) {
+			return super.lineToRect(a, line);
+		}
+		Rectangle alloc = a.getBounds();
+		int rowHeight = metrics.getHeight();
+		int row = wrapModel.rowForLine(line);
+		int rows = wrapModel.rowForLine(line + 1) - row;
+		return new Rectangle(alloc.x, alloc.y + row * rowHeight, alloc.width, Math.max(1, rows) * rowHeight);
+	}
+
+	@Override
+	public void paint(Graphics g, Shape a) {
+		if (!wrapModel.isActive()) {
+			super.paint(g, a);
+			return;
+		}
+
+		updateMetrics();
+		Rectangle alloc = a.getBounds();
+		Rectangle clip = g.getClipBounds();
+		int rowHeight = metrics.getHeight();
+		int firstRow = Math.max(0, (clip.y - alloc.y) / rowHeight);
+		int lastRow = (clip.y + clip.height - alloc.y) / rowHeight;
+		if (wrapModel.wrapRows(firstRow, lastRow - firstRow + 1)) {
+			preferenceChanged(null, false, true);
+		}
+		lastRow = Math.min(lastRow, wrapModel.getRowCount() - 1);
+
+		JTextComponent host = (JTextComponent) getContainer();
+		Highlighter highlighter = host.getHighlighter();
+		LayeredHighlighter layered = highlighter instanceof LayeredHighlighter h ? h : null;
+		Color unselected = host.isEnabled() ? host.getForeground() : host.getDisabledTextColor();
+		Color selected = host.getCaret().isSelectionVisible() && highlighter != null
+			? host.getSelectedTextColor() : unselected;
+		int selectionStart = host.getSelectionStart();
+		int selectionEnd = selected.equals(unselected) ? selectionStart : host.getSelectionEnd();
+		g.setFont(host.getFont());
+		tabBase = alloc.x;
+
+		Element root = getElement();
+		int lineCount = root.getElementCount();
+		int line = wrapModel.lineForRow(firstRow);
+		int row = wrapModel.rowForLine(line);
+		try {
+			for (; line < lineCount && row <= lastRow; line++) {
+				Element element = root.getElement(line);
+				int start = element.getStartOffset();
+				int end = element.getEndOffset() - 1;
+				int[] breaks = wrapModel.getBreaks(line);
+				for (int i = 0; i <= breaks.length && row <= lastRow; i++, row++) {
+					if (row < firstRow) {
+						continue;
+					}
+					int p0 = i == 0 ? start : start + breaks[i - 1];
+					int p1 = i == breaks.length ? end : start + breaks[i];
+					if (layered != null) {
+						int highlightEnd = line == lineCount - 1 && i == breaks.length ? end + 1 : p1;
+						layered.paintLayeredHighlights(g, p0, highlightEnd, a, host, this);
+					}
+					float y = alloc.y + row * rowHeight + metrics.getAscent();
+					paintRow((Graphics2D) g, p0, p1, alloc.x, y, selectionStart, selectionEnd, unselected, selected);
+				}
+			}
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private void paintRow(Graphics2D g, int p0, int p1, float x, float y, int selectionStart, int selectionEnd,
+						  Color unselected, Color selected) throws BadLocationException {
+		int s0 = Math.clamp(selectionStart, p0, p1);
+		int s1 = Math.clamp(selectionEnd, p0, p1);
+		x = drawText(g, p0, s0, x, y, unselected);
+		x = drawText(g, s0, s1, x, y, selected);
+		drawText(g, s1, p1, x, y, unselected);
+	}
+
+	private float drawText(Graphics2D g, int p0, int p1, float x, float y, Color color) throws BadLocationException {
+		if (p0 >= p1) {
+			return x;
+		}
+		Segment text = getLineBuffer();
+		getDocument().getText(p0, p1 - p0, text);
+		g.setColor(color);
+		return Utilities.drawTabbedText(text, x, y, g, this, p0);
+	}
+
+	@Override
+	public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+		if (!wrapModel.isActive()) {
+			return super.modelToView(pos, a, b);
+		}
+		if (pos < 0 || pos > getDocument().getLength() + 1) {
+			throw new BadLocationException("Invalid position", pos);
+		}
+
+		updateMetrics();
+		Rectangle alloc = a.getBounds();
+		Element root = getElement();
+		int line = root.getElementIndex(pos);
+		int start = root.getElement(line).getStartOffset();
+		int[] breaks = wrapModel.getBreaks(line);
+		int rowInLine = LineWrapper.rowOf(breaks, pos - start);
+		// A break belongs to the row it starts, unless the position is biased to the end of the row before.
+		if (b == Position.Bias.Backward && rowInLine > 0 && breaks[rowInLine - 1] == pos - start) {
+			rowInLine--;
+		}
+		int rowStart = rowInLine == 0 ? start : start + breaks[rowInLine - 1];
+
+		Segment text = getLineBuffer();
+		getDocument().getText(rowStart, Math.min(pos, getDocument().getLength()) - rowStart, text);
+		tabBase = alloc.x;
+		float x = Utilities.getTabbedTextWidth(text, metrics, (float) alloc.x, this, rowStart);
+		int rowHeight = metrics.getHeight();
+		int y = alloc.y + (wrapModel.rowForLine(line) + rowInLine) * rowHeight;
+		return new Rectangle2D.Float(alloc.x + x, y, 1, rowHeight);
+	}
+
+	@Override
+	public int viewToModel(float x, float y, Shape a, Position.Bias[] bias) {
+		if (!wrapModel.isActive()) {
+			return super.viewToModel(x, y, a, bias);
+		}
+
+		bias[0] = Position.Bias.Forward;
+		updateMetrics();
+		Rectangle alloc = a.getBounds();
+		int rowHeight = metrics.getHeight();
+		if (y < alloc.y) {
+			return getStartOffset();
+		}
+		int row = (int) ((y - alloc.y) / rowHeight);
+		wrapModel.wrapRows(row, 1);
+		if (row >= wrapModel.getRowCount()) {
+			return getEndOffset() - 1;
+		}
+
+		int line = wrapModel.lineForRow(row);
+		Element element = getElement().getElement(line);
+		int start = element.getStartOffset();
+		int[] breaks = wrapModel.getBreaks(line);
+		int rowInLine = Math.min(row - wrapModel.rowForLine(line), breaks.length);
+		int rowStart = rowInLine == 0 ? start : start + breaks[rowInLine - 1];
+		int rowEnd = rowInLine == breaks.length ? element.getEndOffset() - 1 : start + breaks[rowInLine];
+		if (x < alloc.x) {
+			return rowStart;
+		}
+
+		try {
+			Segment text = getLineBuffer();
+			getDocument().getText(rowStart, rowEnd - rowStart, text);
+			tabBase = alloc.x;
+			int offset = rowStart + Utilities.getTabbedTextOffset(text, metrics, (float) alloc.x, x, this, rowStart, true);
+			if (rowInLine < breaks.length && offset >= rowEnd) {
+				// Past the end of a row that continues below: stay at the end of this row.
+				bias[0] = Position.Bias.Backward;
+				return rowEnd;
+			}
+			return Math.min(offset, rowEnd);
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			return rowStart;
+		}
+	}
+
+	/**
+	 * Skips the search for the widest line that {@link PlainView} runs whenever the font changes,
+	 * which measures the whole document and means nothing once lines wrap.
+	 */
+	@Override
+	protected void updateMetrics() {
+		Component host = getContainer();
+		metrics = host.getFontMetrics(host.getFont());
+	}
+
+	/**
+	 * Repaints the edited line, or everything below it if rows were added or removed.
+	 */
+	@Override
+	protected void updateDamage(DocumentEvent changes, Shape a, ViewFactory f) {
+		Component host = getContainer();
+		Element root = getElement();
+		if (changes.getChange(root) != null || wrapModel.getRowCount() != lastRowCount) {
+			preferenceChanged(null, false, true);
+			host.repaint();
+		} else {
+			int line = root.getElementIndex(changes.getOffset());
+			damageLineRange(line, line, a, host);
+		}
+	}
+
+	private int tabWidth() {
+		return getTabSize() * metrics.charWidth('m');
+	}
+
+	private int visibleRows() {
+		Component host = getContainer();
+		int rowHeight = metrics.getHeight();
+		if (!(host instanceof JTextComponent component) || rowHeight <= 0) {
+			return 1;
+		}
+		return component.getVisibleRect().height / rowHeight + 1;
+	}
+}
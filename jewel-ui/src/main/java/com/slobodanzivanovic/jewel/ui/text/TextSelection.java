@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.text.Rope;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.Reader;
+import java.util.Objects;
+
+/**
+ * Clipboard contents backed by a rope, usually a slice of a document snapshot.
+ * <p>
+ * Unlike {@link StringSelection}, putting a selection on the clipboard copies nothing: the slice
+ * shares the leaves of the snapshot, and the text is only built once an application asks for it.
+ * Applications that accept a {@link Reader} get it streamed chunk by chunk instead of as one string,
+ * and a paste within this JVM can take the rope itself.
+ * </p>
+ */
+public final class TextSelection implements Transferable, ClipboardOwner {
+	/**
+	 * The text as a {@link CharSequence}, only available within this JVM.
+	 */
+	public static final DataFlavor CHAR_SEQUENCE_FLAVOR = new DataFlavor(
+		DataFlavor.javaJVMLocalObjectMimeType + ";class=java.lang.CharSequence", "Text");
+	private static final DataFlavor READER_FLAVOR = new DataFlavor("text/plain;class=java.io.Reader", "Plain Text");
+	private static final DataFlavor[] FLAVORS = {CHAR_SEQUENCE_FLAVOR, READER_FLAVOR, DataFlavor.stringFlavor};
+
+	private final Rope text;
+
+	public TextSelection(Rope text) {
+		this.text = text;
+	}
+
+	@Override
+	public DataFlavor[] getTransferDataFlavors() {
+		return FLAVORS.clone();
+	}
+
+	@Override
+	public boolean isDataFlavorSupported(DataFlavor flavor) {
+		for (DataFlavor supported : FLAVORS) {
+			if (supported.equals(flavor)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+		if (CHAR_SEQUENCE_FLAVOR.equals(flavor)) {
+			return text;
+		}
+		if (READER_FLAVOR.equals(flavor)) {
+			return new RopeReader(text);
+		}
+		if (DataFlavor.stringFlavor.equals(flavor)) {
+			return text.toString();
+		}
+		throw new UnsupportedFlavorException(flavor);
+	}
+
+	@Override
+	public void lostOwnership(Clipboard clipboard, Transferable contents) {
+	}
+
+	/**
+	 * Reads a rope leaf by leaf. The rope never changes, so readers may run on any thread.
+	 */
+	private static final class RopeReader extends Reader {
+		private final Rope text;
+		private int position;
+
+		private RopeReader(Rope text) {
+			this.text = text;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			Objects.checkFromIndexSize(offset, length, buffer.length);
+			if (length == 0) {
+				return 0;
+			}
+			if (position == text.length()) {
+				return -1;
+			}
+			int count = Math.min(length, text.length() - position);
+			text.getChars(position, position + count, buffer, offset);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.min(Math.max(n, 0), text.length() - position);
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
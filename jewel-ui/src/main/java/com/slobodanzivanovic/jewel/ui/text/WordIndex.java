@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.collection.WordTrie;
+import com.slobodanzivanovic.jewel.util.text.Rope;
+
+import javax.swing.*;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The words of all attached documents, in one {@link WordTrie} shared by every tab.
+ * <p>
+ * Documents report each change of their text through a {@link EditorDocument.ContentObserver}.
+ * Before the change, the words touching the changed range are removed from the trie; after it, the
+ * words now covering the same range are added again. Only the edited words are looked at, however
+ * large the document is. The words are read from the {@link EditorDocument#getSnapshot() snapshot} of
+ * the text, so nothing is copied out of the document. Large changes, such as loading a file or closing
+ * its tab, are counted off the EDT into a separate trie that is merged on the EDT. The trie is only
+ * ever modified on the EDT.
+ * </p>
+ * <p>
+ * A word is a run of letters, digits and underscores; runs shorter than {@value #MIN_WORD_LENGTH}
+ * or longer than {@value #MAX_WORD_LENGTH} characters are not indexed.
+ * </p>
+ */
+public class WordIndex {
+	public static final int MIN_WORD_LENGTH = 3;
+	public static final int MAX_WORD_LENGTH = 64;
+	private static final int SYNC_LIMIT = 64 * 1024;
+
+	private final WordTrie trie = new WordTrie();
+	private final Map<EditorDocument, Observer> observers = new IdentityHashMap<>();
+
+	public static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	/**
+	 * Adds the words of a document and keeps following its changes. Must be called on the EDT.
+	 */
+	public void attach(EditorDocument document) {
+		if (observers.containsKey(document)) {
+			return;
+		}
+		Observer observer = new Observer(document);
+		observers.put(document, observer);
+		document.render(() -> {
+			Rope text = document.getSnapshot().text();
+			observer.index(text, 0, text.length(), false, false, 1);
+			document.addContentObserver(observer);
+		});
+	}
+
+	/**
+	 * Removes the words of a document, e.g. once its tab is closed. Must be called on the EDT.
+	 */
+	public void detach(EditorDocument document) {
+		Observer observer = observers.remove(document);
+		if (observer != null) {
+			document.render(() -> {
+				document.removeContentObserver(observer);
+				Rope text = document.getSnapshot().text();
+				observer.index(text, 0, text.length(), false, false, -1);
+			});
+		}
+	}
+
+	/**
+	 * Returns the most frequent words across all attached documents that start with a prefix.
+	 *
+	 * @param prefix the typed part of the word
+	 * @param limit  the largest number of suggestions
+	 * @return the suggestions, most frequent first, never including {@code prefix} itself
+	 */
+	public List<String> complete(String prefix, int limit) {
+		List<String> words = trie.complete(prefix, limit + 1);
+		words.remove(prefix);
+		return words.size() > limit ? words.subList(0, limit) : words;
+	}
+
+	/**
+	 * Returns the number of distinct indexed words.
+	 */
+	public int size() {
+		return trie.size();
+	}
+
+	/**
+	 * Adds the words of {@code [from, to)} to a trie. A run touching {@code from} or {@code to} is
+	 * skipped if the range was cut inside a run longer than {@link #MAX_WORD_LENGTH}.
+	 */
+	private static void scan(CharSequence text, int from, int to, boolean skipFirst, boolean skipLast,
+							 WordTrie into, int delta) {
+		int i = from;
+		while (i < to) {
+			if (!isWordChar(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < to && isWordChar(text.charAt(i))) {
+				i++;
+			}
+			int length = i - start;
+			boolean skip = skipFirst && start == from || skipLast && i == to;
+			if (!skip && length >= MIN_WORD_LENGTH && length <= MAX_WORD_LENGTH) {
+				into.add(text, start, i, delta);
+			}
+		}
+	}
+
+	private final class Observer implements EditorDocument.ContentObserver {
+		private final EditorDocument document;
+		private int regionStart;
+		private int regionTail;
+		private boolean leftCut;
+		private boolean rightCut;
+
+		Observer(EditorDocument document) {
+			this.document = document;
+		}
+
+		@Override
+		public void contentChanging(int offset, int removed, int inserted) {
+			Rope text = document.getSnapshot().text();
+			int end = offset + removed;
+			int windowStart = Math.max(0, offset - MAX_WORD_LENGTH - 1);
+			int start = offset;
+			while (start > windowStart && isWordChar(text.charAt(start - 1))) {
+				start--;
+			}
+			leftCut = start == windowStart && windowStart > 0;
+
+			int windowEnd = Math.min(text.length(), end + MAX_WORD_LENGTH + 1);
+			int stop = end;
+			while (stop < windowEnd && isWordChar(text.charAt(stop))) {
+				stop++;
+			}
+			rightCut = stop == windowEnd && windowEnd < text.length();
+
+			regionStart = start;
+			regionTail = stop - end;
+			index(text, start, stop, leftCut, rightCut, -1);
+		}
+
+		@Override
+		public void contentChanged(int offset, int removed, int inserted) {
+			index(document.getSnapshot().text(), regionStart, offset + inserted + regionTail, leftCut, rightCut, 1);
+		}
+
+		/**
+		 * Adds or removes the words of a range of a snapshot, directly for small ranges on the EDT,
+		 * and otherwise on a virtual thread.
+		 */
+		void index(Rope text, int start, int end, boolean skipFirst, boolean skipLast, int delta) {
+			if (end - start <= SYNC_LIMIT && SwingUtilities.isEventDispatchThread()) {
+				scan(text, start, end, skipFirst, skipLast, trie, delta);
+				return;
+			}
+			CompletableFuture
+				.supplyAsync(() -> {
+					WordTrie words = new WordTrie();
+					scan(text, start, end, skipFirst, skipLast, words, delta);
+					return words;
+				}, command -> Thread.ofVirtual().start(command))
+				.thenAcceptAsync(words -> trie.addAll(words, 1), SwingUtilities::invokeLater);
+		}
+	}
+}
@@ -0,0 +1,682 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import com.slobodanzivanovic.jewel.util.text.LineWrapper;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The soft-wrap layout of an {@link EditorDocument}: where each line breaks into rows.
+ * <p>
+ * A layout belongs to one font, tab width and wrap width, and the last few layouts are cached, so
+ * resizing back and forth or switching fonts reuses the rows that were already computed. Every
+ * line has its own break table, filled on a virtual thread in chunks that start at the first
+ * visible line. Lines that have not been wrapped yet count with an estimate based on their length,
+ * and are wrapped on the EDT as soon as they are painted or hit-tested.
+ * </p>
+ * <p>
+ * Edits only rewrap the lines they touch. Rows are summed in a Fenwick tree, so mapping between
+ * lines and rows is O(log n), and lines are kept in a gap buffer, so adding or removing lines near
+ * the previous edit is O(log n) too. When
+ * rows above the visible area change, the model records the row that should now be at the top, so
+ * the text on screen does not jump while the rest of the document is being laid out.
+ * </p>
+ */
+public class WrapModel implements DocumentListener {
+	private static final int MAX_LAYOUTS = 4;
+	private static final int CHUNK_LINES = 16384;
+	private static final int CHUNK_CHARS = 1 << 20;
+	private static final int SYNC_WRAP_CHARS = 1 << 16;
+
+	/**
+	 * What the breaks of a layout depend on.
+	 *
+	 * @param metrics  The font and how it is rendered
+	 * @param tabWidth Distance between tab stops in pixels
+	 * @param width    Width of a row in pixels
+	 */
+	public record Key(FontMetrics metrics, int tabWidth, int width) {
+	}
+
+	/**
+	 * The rows of every line for one key.
+	 * <p>
+	 * Lines are kept in a gap buffer: the arrays have a gap of unused slots at the last edited line,
+	 * so adding or removing lines there only touches the slots of those lines, and moving the gap
+	 * touches only the lines it passes. The Fenwick tree sums the rows per slot, with empty slots
+	 * counting 0, so it stays valid under all of this through point updates and is only rebuilt when
+	 * the buffer grows or the gap jumps far.
+	 * </p>
+	 */
+	private static final class Layout {
+		private final Key key;
+		private final IntUnaryOperator widths;
+		private final int estimateWidth;
+		private int[][] breaks;
+		private int[] rows;
+		private int[] tree;
+		private int gapStart;
+		private int gapEnd;
+		private int lineCount;
+		private int rowCount;
+		private int unwrapped;
+		private int nextUnwrapped;
+
+		private Layout(Key key, int lineCount) {
+			this.key = key;
+			widths = widthsOf(key.metrics());
+			estimateWidth = Math.max(1, key.metrics().charWidth('n'));
+			breaks = new int[Math.max(16, lineCount)][];
+			rows = new int[breaks.length];
+			this.lineCount = lineCount;
+			gapStart = lineCount;
+			gapEnd = breaks.length;
+			unwrapped = lineCount;
+		}
+
+		private int estimate(int length) {
+			return Math.max(1, (int) Math.ceilDiv((long) length * estimateWidth, key.width()));
+		}
+
+		private int slot(int line) {
+			return line < gapStart ? line : line + gapEnd - gapStart;
+		}
+
+		private int[] breaksOf(int line) {
+			return breaks[slot(line)];
+		}
+
+		private int rowsOf(int line) {
+			return rows[slot(line)];
+		}
+
+		private void wrapped(int line, int[] lineBreaks) {
+			int slot = slot(line);
+			if (breaks[slot] == null) {
+				unwrapped--;
+			}
+			breaks[slot] = lineBreaks;
+			setRows(slot, lineBreaks.length + 1);
+		}
+
+		private void unwrap(int line, int length) {
+			int slot = slot(line);
+			if (breaks[slot] != null) {
+				unwrapped++;
+			}
+			breaks[slot] = null;
+			setRows(slot, estimate(length));
+		}
+
+		private void setRows(int slot, int count) {
+			int delta = count - rows[slot];
+			rows[slot] = count;
+			rowCount += delta;
+			addToTree(slot, delta);
+		}
+
+		/**
+		 * Replaces {@code removed} lines at {@code index} by unwrapped lines of the given lengths.
+		 */
+		private void replace(int index, int removed, int[] lengths) {
+			moveGap(index);
+			for (int slot = gapEnd; slot < gapEnd + removed; slot++) {
+				if (breaks[slot] == null) {
+					unwrapped--;
+				}
+				breaks[slot] = null;
+				setRows(slot, 0);
+			}
+			gapEnd += removed;
+			if (gapEnd - gapStart < lengths.length) {
+				grow(lineCount - removed + lengths.length);
+			}
+			for (int length : lengths) {
+				setRows(gapStart++, estimate(length));
+			}
+			unwrapped += lengths.length;
+			lineCount += lengths.length - removed;
+			if (nextUnwrapped > index) {
+				nextUnwrapped = index;
+			}
+		}
+
+		/**
+		 * Moves the gap to start at {@code line}. Far moves copy the arrays and rebuild the tree
+		 * instead of updating it slot by slot.
+		 */
+		private void moveGap(int line) {
+			int gap = gapEnd - gapStart;
+			int distance = Math.abs(line - gapStart);
+			if (gap == 0) {
+				gapStart = line;
+				gapEnd = line;
+				return;
+			}
+			if (distance > breaks.length >> 4) {
+				if (line < gapStart) {
+					System.arraycopy(breaks, line, breaks, line + gap, distance);
+					System.arraycopy(rows, line, rows, line + gap, distance);
+				} else {
+					System.arraycopy(breaks, gapEnd, breaks, gapStart, distance);
+					System.arraycopy(rows, gapEnd, rows, gapStart, distance);
+				}
+				gapStart = line;
+				gapEnd = line + gap;
+				Arrays.fill(breaks, gapStart, gapEnd, null);
+				Arrays.fill(rows, gapStart, gapEnd, 0);
+				buildTree();
+				return;
+			}
+			while (gapStart > line) {
+				moveSlot(--gapStart, --gapEnd);
+			}
+			while (gapStart < line) {
+				moveSlot(gapEnd++, gapStart++);
+			}
+		}
+
+		private void moveSlot(int from, int to) {
+			breaks[to] = breaks[from];
+			breaks[from] = null;
+			addToTree(from, -rows[from]);
+			addToTree(to, rows[from]);
+			rows[to] = rows[from];
+			rows[from] = 0;
+		}
+
+		private void grow(int minimum) {
+			int capacity = Math.max(minimum + 16, breaks.length + (breaks.length >> 1));
+			int after = breaks.length - gapEnd;
+			int[][] newBreaks = new int[capacity][];
+			int[] newRows = new int[capacity];
+			System.arraycopy(breaks, 0, newBreaks, 0, gapStart);
+			System.arraycopy(rows, 0, newRows, 0, gapStart);
+			System.arraycopy(breaks, gapEnd, newBreaks, capacity - after, after);
+			System.arraycopy(rows, gapEnd, newRows, capacity - after, after);
+			breaks = newBreaks;
+			rows = newRows;
+			gapEnd = capacity - after;
+			buildTree();
+		}
+
+		private void buildTree() {
+			if (tree == null || tree.length != rows.length + 1) {
+				tree = new int[rows.length + 1];
+			}
+			System.arraycopy(rows, 0, tree, 1, rows.length);
+			for (int i = 1; i < tree.length; i++) {
+				int parent = i + (i & -i);
+				if (parent < tree.length) {
+					tree[parent] += tree[i];
+				}
+			}
+		}
+
+		private void addToTree(int slot, int delta) {
+			if (delta != 0) {
+				for (int i = slot + 1; i < tree.length; i += i & -i) {
+					tree[i] += delta;
+				}
+			}
+		}
+
+		private int rowForLine(int line) {
+			int row = 0;
+			for (int i = slot(Math.min(line, lineCount)); i > 0; i -= i & -i) {
+				row += tree[i];
+			}
+			return row;
+		}
+
+		private int lineForRow(int row) {
+			// The last slot whose rows all lie above the row; empty slots never end the descent there.
+			int slot = 0;
+			int remaining = row;
+			for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+				int next = slot + step;
+				if (next < tree.length && tree[next] <= remaining) {
+					slot = next;
+					remaining -= tree[next];
+				}
+			}
+			int line = slot < gapStart ? slot : slot - (gapEnd - gapStart);
+			return Math.max(0, Math.min(line, lineCount - 1));
+		}
+	}
+
+	/**
+	 * A growable list of ints with a gap at the last edited index, so that replacing a few elements
+	 * does not move all the ones after them.
+	 */
+	private static final class IntGapList {
+		private int[] values = new int[16];
+		private int gapStart;
+		private int gapEnd = values.length;
+
+		private int size() {
+			return values.length - (gapEnd - gapStart);
+		}
+
+		private int get(int index) {
+			return values[index < gapStart ? index : index + gapEnd - gapStart];
+		}
+
+		private void add(int value) {
+			replace(size(), 0, new int[] {value});
+		}
+
+		private void replace(int index, int removed, int[] added) {
+			int gap = gapEnd - gapStart;
+			if (index < gapStart) {
+				System.arraycopy(values, index, values, index + gap, gapStart - index);
+			} else {
+				System.arraycopy(values, gapEnd, values, gapStart, index - gapStart);
+			}
+			gapStart = index;
+			gapEnd = index + gap + removed;
+			if (gapEnd - gapStart < added.length) {
+				int capacity = Math.max(size() + added.length + 16, values.length + (values.length >> 1));
+				int after = values.length - gapEnd;
+				int[] grown = new int[capacity];
+				System.arraycopy(values, 0, grown, 0, gapStart);
+				System.arraycopy(values, gapEnd, grown, capacity - after, after);
+				values = grown;
+				gapEnd = capacity - after;
+			}
+			System.arraycopy(added, 0, values, gapStart, added.length);
+			gapStart += added.length;
+		}
+
+		private void set(int index, int value) {
+			values[index < gapStart ? index : index + gapEnd - gapStart] = value;
+		}
+	}
+
+	private final EditorDocument document;
+	private final IntSupplier topRow;
+	private final List<ChangeListener> listeners = new ArrayList<>();
+	private final Map<Key, Layout> layouts = new LinkedHashMap<>(MAX_LAYOUTS, 0.75f, true);
+	private final Segment segment = new Segment();
+	private IntGapList lineLengths;
+	private Layout active;
+	private long editCount;
+	private boolean wrapping;
+	private int anchorRow = -1;
+
+	/**
+	 * @param document the document to lay out
+	 * @param topRow   supplies the row at the top of the visible area
+	 */
+	public WrapModel(EditorDocument document, IntSupplier topRow) {
+		this.document = document;
+		this.topRow = topRow;
+		document.addDocumentListener(this);
+	}
+
+	/**
+	 * Registers a listener notified on the EDT whenever rows changed outside of an edit, i.e. when
+	 * a layout was switched or lines were wrapped in the background.
+	 */
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Returns whether a layout is in use; until then every line is one row.
+	 */
+	public boolean isActive() {
+		return active != null;
+	}
+
+	/**
+	 * Switches to the layout for the given font and width, reusing a cached one if possible. The
+	 * lines at the top of the visible area are wrapped right away, the rest in the background.
+	 *
+	 * @param visibleRows the number of rows that fit into the visible area
+	 * @return whether the layout changed
+	 */
+	public boolean setLayout(FontMetrics metrics, int tabWidth, int width, int visibleRows) {
+		Key key = new Key(metrics, tabWidth, Math.max(1, width));
+		if (active != null && active.key.equals(key)) {
+			return false;
+		}
+
+		Layout previous = active;
+		int topLine = 0;
+		int rowInLine = 0;
+		if (previous != null) {
+			int row = Math.clamp(topRow.getAsInt(), 0, previous.rowCount - 1);
+			topLine = previous.lineForRow(row);
+			rowInLine = row - previous.rowForLine(topLine);
+		}
+
+		Layout layout = layouts.get(key);
+		if (layout == null) {
+			layout = createLayout(key);
+			layouts.put(key, layout);
+			Iterator<Layout> eldest = layouts.values().iterator();
+			while (layouts.size() > MAX_LAYOUTS) {
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		active = layout;
+		layout.nextUnwrapped = topLine;
+		wrapLines(topLine, rowInLine + visibleRows);
+		if (previous != null) {
+			anchorRow = layout.rowForLine(topLine) + Math.min(rowInLine, layout.rowsOf(topLine) - 1);
+		}
+		wrapInBackground();
+		SwingUtilities.invokeLater(this::fireChanged);
+		return true;
+	}
+
+	/**
+	 * Drops all layouts, e.g. when soft wrapping is turned off.
+	 */
+	public void reset() {
+		layouts.clear();
+		lineLengths = null;
+		active = null;
+		anchorRow = -1;
+	}
+
+	/**
+	 * Returns the row that should be at the top of the visible area after the last change, or -1
+	 * if the rows above it did not change, and forgets it.
+	 */
+	public int takeAnchorRow() {
+		int row = anchorRow;
+		anchorRow = -1;
+		return row;
+	}
+
+	public int getRowCount() {
+		return active == null ? document.getDefaultRootElement().getElementCount() : active.rowCount;
+	}
+
+	/**
+	 * Returns the first row of a line.
+	 */
+	public int rowForLine(int line) {
+		return active == null ? line : active.rowForLine(line);
+	}
+
+	/**
+	 * Returns the line shown on a row.
+	 */
+	public int lineForRow(int row) {
+		return active == null ? row : active.lineForRow(Math.max(0, row));
+	}
+
+	/**
+	 * Returns the breaks of a line as computed by {@link LineWrapper#breaks}, wrapping it first if
+	 * that has not happened yet.
+	 */
+	public int[] getBreaks(int line) {
+		if (active == null) {
+			return LineWrapper.NO_BREAKS;
+		}
+		if (active.breaksOf(line) == null) {
+			wrapNow(active, line);
+		}
+		return active.breaksOf(line);
+	}
+
+	/**
+	 * Wraps the lines shown on the given rows, so that painting them does not move anything.
+	 *
+	 * @return whether the row count changed
+	 */
+	public boolean wrapRows(int firstRow, int rowCount) {
+		if (active == null) {
+			return false;
+		}
+		int line = active.lineForRow(Math.max(0, firstRow));
+		return wrapLines(line, firstRow - active.rowForLine(line) + rowCount);
+	}
+
+	private boolean wrapLines(int line, int rowCount) {
+		int before = active.rowCount;
+		int rows = 0;
+		for (int i = line; i < active.lineCount && rows < rowCount; i++) {
+			if (active.breaksOf(i) == null) {
+				wrapNow(active, i);
+			}
+			rows += active.rowsOf(i);
+		}
+		return active.rowCount != before;
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		editCount++;
+		if (!layouts.isEmpty()) {
+			edited(e);
+		}
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		editCount++;
+		if (!layouts.isEmpty()) {
+			edited(e);
+		}
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	private void edited(DocumentEvent e) {
+		Element root = document.getDefaultRootElement();
+		DocumentEvent.ElementChange change = e.getChange(root);
+		int index = change == null ? root.getElementIndex(e.getOffset()) : change.getIndex();
+		int removed = change == null ? 1 : change.getChildrenRemoved().length;
+		int[] lengths = new int[change == null ? 1 : change.getChildrenAdded().length];
+		long total = 0;
+		for (int i = 0; i < lengths.length; i++) {
+			lengths[i] = lineLength(root.getElement(index + i));
+			total += lengths[i];
+		}
+
+		if (change == null) {
+			lineLengths.set(index, lengths[0]);
+		} else {
+			lineLengths.replace(index, removed, lengths);
+		}
+		for (Layout layout : layouts.values()) {
+			if (change == null) {
+				layout.unwrap(index, lengths[0]);
+			} else {
+				layout.replace(index, removed, lengths);
+			}
+		}
+		if (active != null && total <= SYNC_WRAP_CHARS) {
+			for (int i = 0; i < lengths.length; i++) {
+				wrapNow(active, index + i);
+			}
+		}
+		wrapInBackground();
+	}
+
+	private void wrapNow(Layout layout, int line) {
+		Element element = document.getDefaultRootElement().getElement(line);
+		try {
+			document.getText(element.getStartOffset(), lineLength(element), segment);
+			layout.wrapped(line, LineWrapper.breaks(segment, 0, segment.count,
+				layout.widths, layout.key.tabWidth(), layout.key.width()));
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+			layout.wrapped(line, LineWrapper.NO_BREAKS);
+		}
+	}
+
+	/**
+	 * Wraps the next chunk of unwrapped lines of the active layout on a virtual thread, and the
+	 * chunk after it once that is applied, until every line is wrapped.
+	 */
+	private void wrapInBackground() {
+		Layout layout = active;
+		if (wrapping || layout == null || layout.unwrapped == 0) {
+			return;
+		}
+
+		int from = layout.nextUnwrapped;
+		while (from < layout.lineCount && layout.breaksOf(from) != null) {
+			from++;
+		}
+		if (from == layout.lineCount) {
+			from = 0;
+			while (layout.breaksOf(from) != null) {
+				from++;
+			}
+		}
+		int to = from;
+		long chars = 0;
+		while (to < layout.lineCount && to - from < CHUNK_LINES && chars < CHUNK_CHARS) {
+			chars += lineLengths.get(to++);
+		}
+		layout.nextUnwrapped = to;
+
+		int first = from;
+		int end = to;
+		long expectedCount = editCount;
+		wrapping = true;
+		CompletableFuture
+			.supplyAsync(() -> wrapChunk(layout, first, end), command -> Thread.ofVirtual().start(command))
+			.thenAcceptAsync(chunk -> {
+				wrapping = false;
+				if (editCount == expectedCount && layouts.get(layout.key) == layout) {
+					apply(layout, first, chunk);
+				}
+				wrapInBackground();
+			}, SwingUtilities::invokeLater)
+			.exceptionally(ex -> {
+				ex.printStackTrace();
+				return null;
+			});
+	}
+
+	private int[][] wrapChunk(Layout layout, int from, int to) {
+		int[][] chunk = new int[to - from][];
+		Segment text = new Segment();
+		document.render(() -> {
+			Element root = document.getDefaultRootElement();
+			if (root.getElementCount() < to) {
+				return;
+			}
+			try {
+				for (int line = from; line < to; line++) {
+					Element element = root.getElement(line);
+					document.getText(element.getStartOffset(), lineLength(element), text);
+					chunk[line - from] = LineWrapper.breaks(text, 0, text.count,
+						layout.widths, layout.key.tabWidth(), layout.key.width());
+				}
+			} catch (BadLocationException ex) {
+				ex.printStackTrace();
+			}
+		});
+		return chunk;
+	}
+
+	private void apply(Layout layout, int from, int[][] chunk) {
+		boolean visible = layout == active;
+		int row = 0;
+		int topLine = 0;
+		int rowInLine = 0;
+		if (visible) {
+			row = Math.clamp(topRow.getAsInt(), 0, layout.rowCount - 1);
+			topLine = layout.lineForRow(row);
+			rowInLine = row - layout.rowForLine(topLine);
+		}
+
+		for (int i = 0; i < chunk.length; i++) {
+			if (chunk[i] != null && layout.breaksOf(from + i) == null) {
+				layout.wrapped(from + i, chunk[i]);
+			}
+		}
+
+		if (visible) {
+			int newRow = layout.rowForLine(topLine) + Math.min(rowInLine, layout.rowsOf(topLine) - 1);
+			if (newRow != row) {
+				anchorRow = newRow;
+			}
+			fireChanged();
+		}
+	}
+
+	private Layout createLayout(Key key) {
+		if (lineLengths == null) {
+			// The length of every line, so that a new layout is estimated without walking the elements.
+			Element root = document.getDefaultRootElement();
+			lineLengths = new IntGapList();
+			for (int line = 0, count = root.getElementCount(); line < count; line++) {
+				lineLengths.add(lineLength(root.getElement(line)));
+			}
+		}
+		int lineCount = lineLengths.size();
+		Layout layout = new Layout(key, lineCount);
+		for (int line = 0; line < lineCount; line++) {
+			layout.rows[line] = layout.estimate(lineLengths.get(line));
+			layout.rowCount += layout.rows[line];
+		}
+		layout.buildTree();
+		return layout;
+	}
+
+	private void fireChanged() {
+		ChangeEvent event = new ChangeEvent(this);
+		for (ChangeListener listener : listeners) {
+			listener.stateChanged(event);
+		}
+	}
+
+	private static int lineLength(Element line) {
+		return line.getEndOffset() - line.getStartOffset() - 1;
+	}
+
+	/**
+	 * Measures characters through a table for ASCII, which is most of the text in practice.
+	 */
+	private static IntUnaryOperator widthsOf(FontMetrics metrics) {
+		int[] ascii = new int[128];
+		for (int c = 0; c < ascii.length; c++) {
+			ascii[c] = metrics.charWidth(c);
+		}
+		return c -> c < ascii.length ? ascii[c] : metrics.charWidth(c);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.UndoManager;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedInsertTest {
+	private static final String ORIGINAL = "first line\nsecond line\n";
+	private static final String PASTE = "pasted line\r\n".repeat(8 * ChunkedInsert.THRESHOLD / 13 + 1);
+	private static final String NORMALIZED = PASTE.replace("\r\n", "\n");
+
+	private final EditorDocument document = new EditorDocument();
+	private final UndoManager undo = new UndoManager();
+	private ChunkedInsert insert;
+
+	@Test
+	void completesAsOneUndoableEdit() throws Exception {
+		onEdt(() -> {
+			setUp();
+			insert = ChunkedInsert.start(document, 6, 4, PASTE);
+			assertTrue(document.isInsertPending());
+		});
+
+		int end = insert.getCompletion().get(1, TimeUnit.MINUTES);
+
+		onEdt(() -> {
+			assertFalse(document.isInsertPending());
+			assertEquals(6 + NORMALIZED.length(), end);
+			assertEquals("first " + NORMALIZED + "\nsecond line\n", text());
+
+			undo.undo();
+			assertEquals(ORIGINAL, text());
+			assertFalse(undo.canUndo());
+		});
+	}
+
+	@Test
+	void undoesAnInterruptedPaste() throws Exception {
+		onEdt(() -> {
+			setUp();
+			insert = ChunkedInsert.start(document, ORIGINAL.length(), 0, PASTE);
+		});
+		onEdt(() -> {
+			assertTrue(document.isInsertPending());
+			document.cancelPendingInsert();
+			assertFalse(document.isInsertPending());
+			assertTrue(insert.getCompletion().isDone());
+			assertTrue(text().startsWith(ORIGINAL + "pasted line\n"));
+
+			undo.undo();
+			assertEquals(ORIGINAL, text());
+			assertFalse(undo.canUndo());
+		});
+	}
+
+	@Test
+	void clearsRedoHistoryOnceCancelled() throws Exception {
+		onEdt(() -> {
+			setUp();
+			document.insertString(0, "typed", null);
+			undo.undo();
+			assertTrue(undo.canRedo());
+
+			ChunkedInsert.start(document, 0, 0, PASTE);
+			document.cancelPendingInsert();
+			assertFalse(undo.canRedo());
+			assertFalse(text().contains("typed"));
+		});
+	}
+
+	@Test
+	void keepsAnOutsideEditSeparate() throws Exception {
+		onEdt(() -> {
+			setUp();
+			ChunkedInsert.start(document, ORIGINAL.length(), 0, PASTE);
+			document.insertString(0, ">", null);
+			assertFalse(document.isInsertPending());
+			String pasted = text().substring(1);
+
+			undo.undo();
+			assertEquals(pasted, text());
+			undo.undo();
+			assertEquals(ORIGINAL, text());
+			assertFalse(undo.canUndo());
+		});
+	}
+
+	private void setUp() throws BadLocationException {
+		document.insertString(0, ORIGINAL, null);
+		document.addUndoableEditListener(undo);
+	}
+
+	private String text() throws BadLocationException {
+		return document.getText(0, document.getLength());
+	}
+
+	private interface EdtTask {
+		void run() throws BadLocationException;
+	}
+
+	private static void onEdt(EdtTask task) throws Exception {
+		try {
+			SwingUtilities.invokeAndWait(() -> {
+				try {
+					task.run();
+				} catch (BadLocationException ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+		} catch (InvocationTargetException ex) {
+			if (ex.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw ex;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.ui.text;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WrapModelTest {
+	private static final int WIDTH = 120;
+
+	@Test
+	void mapsLinesAndRowsAfterEdits() throws Exception {
+		onEdt(() -> {
+			Random random = new Random(3);
+			EditorDocument document = new EditorDocument();
+			document.insertString(0, randomText(random, 300), null);
+			WrapModel model = new WrapModel(document, () -> 0);
+			model.setLayout(metrics(), 4, WIDTH, 20);
+			assertRows(document, model);
+
+			for (int step = 0; step < 300; step++) {
+				int length = document.getLength();
+				int offset = random.nextInt(length + 1);
+				if (length > 0 && random.nextInt(3) == 0) {
+					document.remove(offset == length ? offset - 1 : offset, Math.min(1 + random.nextInt(200), length - offset));
+				} else {
+					document.insertString(offset, randomText(random, 1 + random.nextInt(random.nextInt(10) == 0 ? 40 : 3)), null);
+				}
+				assertRows(document, model);
+			}
+		});
+	}
+
+	@Test
+	void splitsALineNearTheEndOfAFreshLayout() throws Exception {
+		onEdt(() -> {
+			EditorDocument document = new EditorDocument();
+			document.insertString(0, "word word word\n".repeat(100), null);
+			WrapModel model = new WrapModel(document, () -> 0);
+			model.setLayout(metrics(), 4, WIDTH, 20);
+
+			// A new layout has no free slots, so this moves an empty gap by a few lines.
+			document.insertString(document.getDefaultRootElement().getElement(97).getStartOffset() + 4, "\n", null);
+			assertRows(document, model);
+		});
+	}
+
+	@Test
+	void growsPastItsInitialCapacity() throws Exception {
+		onEdt(() -> {
+			EditorDocument document = new EditorDocument();
+			WrapModel model = new WrapModel(document, () -> 0);
+			model.setLayout(metrics(), 4, WIDTH, 20);
+			for (int i = 0; i < 500; i++) {
+				document.insertString(i % 2 == 0 ? 0 : document.getLength(), "word ".repeat(i % 13) + "\n", null);
+			}
+			assertRows(document, model);
+		});
+	}
+
+	/**
+	 * Wraps every line and checks the row mapping against the sum of the rows of all lines before.
+	 */
+	private static void assertRows(EditorDocument document, WrapModel model) {
+		int lineCount = document.getDefaultRootElement().getElementCount();
+		for (int line = 0; line < lineCount; line++) {
+			model.getBreaks(line);
+		}
+		int row = 0;
+		for (int line = 0; line < lineCount; line++) {
+			assertEquals(row, model.rowForLine(line), "first row of line " + line);
+			int rows = model.getBreaks(line).length + 1;
+			for (int i = 0; i < rows; i++) {
+				assertEquals(line, model.lineForRow(row + i), "line of row " + (row + i));
+			}
+			row += rows;
+		}
+		assertEquals(row, model.getRowCount());
+		assertEquals(row, model.rowForLine(lineCount));
+	}
+
+	private static String randomText(Random random, int lines) {
+		StringBuilder text = new StringBuilder();
+		for (int line = 0; line < lines; line++) {
+			int words = random.nextInt(30);
+			for (int word = 0; word < words; word++) {
+				text.append("w".repeat(1 + random.nextInt(8))).append(random.nextInt(8) == 0 ? '\t' : ' ');
+			}
+			text.append('\n');
+		}
+		return text.toString();
+	}
+
+	private static FontMetrics metrics() {
+		Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+		try {
+			return graphics.getFontMetrics(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		} finally {
+			graphics.dispose();
+		}
+	}
+
+	private interface EdtTask {
+		void run() throws BadLocationException;
+	}
+
+	private static void onEdt(EdtTask task) throws Exception {
+		try {
+			SwingUtilities.invokeAndWait(() -> {
+				try {
+					task.run();
+				} catch (BadLocationException ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+		} catch (InvocationTargetException ex) {
+			if (ex.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw ex;
+		}
+	}
+}
@@ -1,3 +1,41 @@
 plugins {
 	id("buildsrc.convention.jewel.common-conventions")
 }
+
+// TextScanner uses the incubating Vector API when it is available at runtime. Only the vector kernel
+// is compiled against the incubator module, in a source set of its own, so the rest of the module
+// builds without the "using incubating module(s)" warning. That warning cannot be switched off by
+// itself, hence no lint for this one class.
+val vector by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+	options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector", "-Xlint:none"))
+}
+
+tasks.jar {
+	from(vector.output)
+}
+
+sourceSets.test {
+	runtimeClasspath += vector.output
+}
+
+tasks.test {
+	jvmArgs("--add-modules", "jdk.incubator.vector")
+}
+
+// Compares the scalar and the vector scan kernels: ./gradlew :jewel-util:benchmark
+val benchmark by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+	runtimeClasspath += sourceSets.main.get().output + vector.output
+}
+
+tasks.register<JavaExec>("benchmark") {
+	group = "verification"
+	description = "Runs the text scanning benchmark."
+	classpath = benchmark.runtimeClasspath
+	mainClass = "com.slobodanzivanovic.jewel.util.text.TextScannerBenchmark"
+	jvmArgs("--add-modules", "jdk.incubator.vector")
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * Times the scans of {@link TextScanner} against the plain loops they replaced.
+ * <p>
+ * The "before" column runs {@link ScalarScanKernel} directly, the "after" column goes through
+ * {@link TextScanner}, which uses the vector kernel when {@code jdk.incubator.vector} is loaded. Every
+ * scan runs on 64M characters of generated source-like text and reports the median of the timed
+ * rounds after a warm-up. Both columns must return the same result, otherwise the run fails.
+ * </p>
+ * <p>
+ * Run it with {@code ./gradlew :jewel-util:benchmark}; an optional argument sets the text size in
+ * millions of characters.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class TextScannerBenchmark {
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int TIMED_ROUNDS = 15;
+
+	private TextScannerBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		int size = (args.length > 0 ? Integer.parseInt(args[0]) : 64) * 1024 * 1024;
+		char[] chars = generate(size);
+		byte[] bytes = new String(chars).getBytes(StandardCharsets.UTF_8);
+		char[] needle = "interface MissingName".toCharArray();
+		byte[] byteNeedle = new String(needle).getBytes(StandardCharsets.UTF_8);
+		ScalarScanKernel scalar = new ScalarScanKernel();
+
+		System.out.printf("Vector kernel: %s, %d chars%n", TextScanner.isVectorized() ? "yes" : "no", size);
+		System.out.printf("%-28s %10s %10s%n", "scan", "before ms", "after ms");
+		compare("count '\\n' in char[]",
+			() -> scalar.count(chars, 0, chars.length, '\n'),
+			() -> TextScanner.count(chars, 0, chars.length, '\n'));
+		compare("count '\\n' in byte[]",
+			() -> scalar.count(bytes, 0, bytes.length, (byte) '\n'),
+			() -> TextScanner.count(bytes, 0, bytes.length, (byte) '\n'));
+		compare("find missing char",
+			() -> scalar.indexOf(chars, 0, chars.length, '\0'),
+			() -> TextScanner.indexOf(chars, 0, chars.length, '\0'));
+		compare("find non-ASCII byte",
+			() -> scalar.indexOfNonAscii(bytes, 0, bytes.length),
+			() -> TextScanner.indexOfNonAscii(bytes, 0, bytes.length));
+		compare("find missing char[] needle",
+			() -> scalar.indexOf(chars, 0, chars.length, needle),
+			() -> TextScanner.indexOf(chars, 0, chars.length, needle));
+		compare("find missing byte[] needle",
+			() -> scalar.indexOf(bytes, 0, bytes.length, byteNeedle),
+			() -> TextScanner.indexOf(bytes, 0, bytes.length, byteNeedle));
+	}
+
+	private static void compare(String name, IntSupplier before, IntSupplier after) {
+		int expected = before.getAsInt();
+		int actual = after.getAsInt();
+		if (expected != actual) {
+			throw new IllegalStateException(name + ": scalar returned " + expected + ", scanner returned " + actual);
+		}
+		System.out.printf("%-28s %10.2f %10.2f%n", name, median(before), median(after));
+	}
+
+	private static double median(IntSupplier scan) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			scan.getAsInt();
+		}
+		long[] times = new long[TIMED_ROUNDS];
+		for (int i = 0; i < TIMED_ROUNDS; i++) {
+			long start = System.nanoTime();
+			scan.getAsInt();
+			times[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(times);
+		return times[TIMED_ROUNDS / 2] / 1e6;
+	}
+
+	/**
+	 * Builds ASCII lines of identifiers, spaces and punctuation, between 0 and 80 characters long.
+	 */
+	private static char[] generate(int size) {
+		String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_0123456789   (){};.,=+-*/<>\t";
+		Random random = new Random(42);
+		char[] chars = new char[size];
+		int lineEnd = random.nextInt(81);
+		for (int i = 0; i < size; i++) {
+			if (i == lineEnd) {
+				chars[i] = '\n';
+				lineEnd = i + 1 + random.nextInt(81);
+			} else {
+				chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+			}
+		}
+		return chars;
+	}
+}
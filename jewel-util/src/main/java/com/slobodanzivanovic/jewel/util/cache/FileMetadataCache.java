@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.cache;
+
+import com.slobodanzivanovic.jewel.util.platform.PlatformInfo;
+import com.slobodanzivanovic.jewel.util.text.LineSeparator;
+import com.slobodanzivanovic.jewel.util.text.TextDecoder;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * A small on-disk cache of per-file editor metadata, used to restore the view of a file that is
+ * opened again.
+ * <p>
+ * Entries are keyed by the absolute path of a file and are only returned while the file still has
+ * the size and modification time it had when it was loaded, so any change on disk invalidates
+ * them. Each entry holds:
+ * - the detected charset and line separator
+ * - the last caret position and first visible line
+ * </p>
+ * <p>
+ * An entry does not make loading itself faster apart from skipping charset detection: the file is
+ * still decoded and split into lines in full.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public class FileMetadataCache {
+	private static final int MAGIC = 0x4A4D4443;
+	private static final int VERSION = 2;
+	private static final String EXTENSION = ".meta";
+
+	private final Path cacheDirectory;
+
+	/**
+	 * Cached metadata of one file.
+	 *
+	 * @param size            File size in bytes when the file was loaded
+	 * @param lastModified    File modification time in milliseconds when the file was loaded
+	 * @param charset         The charset the file was decoded with
+	 * @param lineSeparator   The line ending style of the file
+	 * @param caretPosition   Last caret offset
+	 * @param firstVisibleLine Last line scrolled to the top of the view
+	 */
+	public record FileMetadata(long size, long lastModified, Charset charset, LineSeparator lineSeparator,
+							   int caretPosition, int firstVisibleLine) {
+
+		/**
+		 * Returns a copy with a different caret position and first visible line.
+		 */
+		public FileMetadata withView(int caretPosition, int firstVisibleLine) {
+			return new FileMetadata(size, lastModified, charset, lineSeparator, caretPosition, firstVisibleLine);
+		}
+	}
+
+	/**
+	 * Creates a cache in the platform-specific cache directory.
+	 */
+	public FileMetadataCache() {
+		this(getSystemCacheDirectory());
+	}
+
+	/**
+	 * Creates a cache in the given directory.
+	 *
+	 * @param cacheDirectory The directory holding the cache entries
+	 */
+	public FileMetadataCache(Path cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Looks up the metadata of a file.
+	 *
+	 * @param path The file
+	 * @return The metadata, or empty if there is no entry or the file changed since it was written
+	 */
+	public Optional<FileMetadata> get(Path path) {
+		Path entry = entryPath(path);
+		if (!Files.isRegularFile(entry)) {
+			return Optional.empty();
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return Optional.empty();
+			}
+			if (!in.readUTF().equals(path.toAbsolutePath().toString())) {
+				return Optional.empty();
+			}
+
+			long size = in.readLong();
+			long lastModified = in.readLong();
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			if (attributes.size() != size || attributes.lastModifiedTime().toMillis() != lastModified) {
+				return Optional.empty();
+			}
+
+			Charset charset = Charset.forName(in.readUTF());
+			LineSeparator lineSeparator = LineSeparator.valueOf(in.readUTF());
+			int caretPosition = in.readInt();
+			int firstVisibleLine = in.readInt();
+
+			return Optional.of(new FileMetadata(size, lastModified, charset, lineSeparator,
+				caretPosition, firstVisibleLine));
+		} catch (IOException | IllegalArgumentException e) {
+			// A corrupt or outdated entry is just a cache miss.
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Describes freshly decoded content, with the caret and view at the start of the file.
+	 * The size and modification time should be read before the content, so that a change made
+	 * while decoding invalidates the entry rather than going unnoticed.
+	 *
+	 * @param size         File size in bytes
+	 * @param lastModified File modification time in milliseconds
+	 * @param decoded      The decoded content of the file
+	 * @return The metadata
+	 */
+	public static FileMetadata describe(long size, long lastModified, TextDecoder.DecodedText decoded) {
+		return new FileMetadata(size, lastModified, decoded.charset(), decoded.lineSeparator(), 0, 0);
+	}
+
+	/**
+	 * Stores the metadata of a file.
+	 *
+	 * @param path     The file
+	 * @param metadata The metadata to store
+	 * @throws IOException If the entry cannot be written
+	 */
+	public void put(Path path, FileMetadata metadata) throws IOException {
+		Files.createDirectories(cacheDirectory);
+
+		Path entry = entryPath(path);
+		Path temp = Files.createTempFile(cacheDirectory, "entry", ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(path.toAbsolutePath().toString());
+			out.writeLong(metadata.size());
+			out.writeLong(metadata.lastModified());
+			out.writeUTF(metadata.charset().name());
+			out.writeUTF(metadata.lineSeparator().name());
+			out.writeInt(metadata.caretPosition());
+			out.writeInt(metadata.firstVisibleLine());
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Returns the directory holding the cache entries.
+	 *
+	 * @return Path to the cache directory
+	 */
+	public Path getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	private Path entryPath(Path path) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(path.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+			return cacheDirectory.resolve(HexFormat.of().formatHex(hash, 0, 16) + EXTENSION);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * Returns the platform-specific cache directory.
+	 * Windows: %LOCALAPPDATA%\Jewel\cache
+	 * macOS: ~/Library/Caches/Jewel
+	 * Linux/Unix: ~/.jewel/cache
+	 *
+	 * @return Path to the system's cache directory
+	 */
+	private static Path getSystemCacheDirectory() {
+		String userHome = System.getProperty("user.home");
+
+		if (PlatformInfo.IS_WINDOWS) {
+			String localAppData = System.getenv("LOCALAPPDATA");
+			return Paths.get(localAppData != null ? localAppData : System.getenv("APPDATA"), "Jewel", "cache");
+		} else if (PlatformInfo.IS_MAC) {
+			return Paths.get(userHome, "Library", "Caches", "Jewel");
+		} else {
+			return Paths.get(userHome, ".jewel", "cache");
+		}
+	}
+}
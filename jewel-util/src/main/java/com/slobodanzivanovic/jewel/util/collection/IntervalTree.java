@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A set of integer intervals that follow text edits.
+ * <p>
+ * Intervals are kept in a treap ordered by start offset, where every node also knows the largest
+ * end offset in its subtree. Inserting or removing text shifts all intervals after the edit by
+ * splitting the treap at the edit offset and tagging the right part with a pending shift, so an
+ * edit costs O(log n) plus the number of intervals that contain the edit position. Shifts are
+ * pushed down lazily whenever a node is visited.
+ * </p>
+ * <p>
+ * Intervals are closed ranges of character offsets, {@code [start, end]}, so an interval with
+ * {@code start == end} covers one character. Both ends behave like document positions: text
+ * inserted at an offset pushes every end at or after it. Instances are not thread-safe.
+ * </p>
+ *
+ * @param <T> The type of the value attached to each interval
+ * @author Slobodan Zivanovic
+ */
+public final class IntervalTree<T> {
+
+	/**
+	 * Receives intervals in ascending start order.
+	 *
+	 * @param <T> The type of the attached values
+	 */
+	@FunctionalInterface
+	public interface Visitor<T> {
+		void visit(int start, int end, T value);
+	}
+
+	private static final class Node<T> {
+		private final T value;
+		private final int priority;
+		private int start;
+		private int end;
+		private int maxEnd;
+		private int shift;
+		private int size;
+		private Node<T> left;
+		private Node<T> right;
+
+		private Node(int start, int end, T value) {
+			this.start = start;
+			this.end = end;
+			this.value = value;
+			this.priority = ThreadLocalRandom.current().nextInt();
+			this.maxEnd = end;
+			this.size = 1;
+		}
+	}
+
+	private Node<T> root;
+	private Node<T> splitLeft;
+	private Node<T> splitRight;
+
+	/**
+	 * Returns the number of intervals.
+	 *
+	 * @return The number of intervals
+	 */
+	public int size() {
+		return root == null ? 0 : root.size;
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	public void clear() {
+		root = null;
+	}
+
+	/**
+	 * Adds an interval.
+	 *
+	 * @param start The start offset
+	 * @param end   The end offset, not less than {@code start}
+	 * @param value The value to attach
+	 */
+	public void add(int start, int end, T value) {
+		if (end < start) {
+			throw new IllegalArgumentException("Interval end " + end + " is before its start " + start);
+		}
+		split(root, start);
+		Node<T> before = splitLeft;
+		Node<T> after = splitRight;
+		root = merge(merge(before, new Node<>(start, end, value)), after);
+	}
+
+	/**
+	 * Removes the interval with the given start and value, compared by identity.
+	 *
+	 * @param start The current start offset of the interval
+	 * @param value The value attached to it
+	 * @return True if the interval was found and removed
+	 */
+	public boolean remove(int start, T value) {
+		split(root, start);
+		Node<T> before = splitLeft;
+		split(splitRight, start + 1);
+		Node<T> same = splitLeft;
+		Node<T> after = splitRight;
+
+		int sizeBefore = same == null ? 0 : same.size;
+		same = removeValue(same, value);
+		boolean removed = (same == null ? 0 : same.size) != sizeBefore;
+		root = merge(merge(before, same), after);
+		return removed;
+	}
+
+	/**
+	 * Updates the intervals for text inserted at an offset. Intervals starting at or after the
+	 * offset move; intervals that start before it and end at or after it grow.
+	 *
+	 * @param offset The offset of the insertion
+	 * @param length The number of inserted characters
+	 */
+	public void insertUpdate(int offset, int length) {
+		split(root, offset);
+		Node<T> before = splitLeft;
+		Node<T> after = splitRight;
+		applyShift(after, length);
+		extendEnds(before, offset, length);
+		root = merge(before, after);
+	}
+
+	/**
+	 * Updates the intervals for text removed from {@code [offset, offset + length)}. Intervals
+	 * after the removed range move back, intervals overlapping it shrink, and intervals lying
+	 * entirely inside it are dropped.
+	 *
+	 * @param offset The offset of the removal
+	 * @param length The number of removed characters
+	 * @return The values of the dropped intervals
+	 */
+	public List<T> removeUpdate(int offset, int length) {
+		int removedEnd = offset + length;
+		split(root, offset);
+		Node<T> before = splitLeft;
+		split(splitRight, removedEnd);
+		Node<T> inside = splitLeft;
+		Node<T> after = splitRight;
+
+		applyShift(after, -length);
+		shrinkEnds(before, offset, removedEnd);
+
+		List<Node<T>> kept = new ArrayList<>();
+		List<T> dropped = new ArrayList<>();
+		collectInside(inside, offset, removedEnd, kept, dropped);
+		Node<T> rebuilt = null;
+		for (Node<T> node : kept) {
+			rebuilt = merge(rebuilt, node);
+		}
+
+		root = merge(merge(before, rebuilt), after);
+		return dropped;
+	}
+
+	/**
+	 * Visits every interval.
+	 *
+	 * @param visitor Receives the intervals in start order
+	 */
+	public void forEach(Visitor<T> visitor) {
+		forEachStartingIn(Integer.MIN_VALUE, Integer.MAX_VALUE, visitor);
+	}
+
+	/**
+	 * Visits the intervals whose start lies in {@code [from, to)}.
+	 *
+	 * @param from    The first start offset to include
+	 * @param to      The first start offset to exclude
+	 * @param visitor Receives the intervals in start order
+	 */
+	public void forEachStartingIn(int from, int to, Visitor<T> visitor) {
+		visitStartingIn(root, from, to, visitor);
+	}
+
+	/**
+	 * Visits the intervals that intersect {@code [from, to]}.
+	 *
+	 * @param from    The start of the range
+	 * @param to      The end of the range, inclusive
+	 * @param visitor Receives the intervals in start order
+	 */
+	public void forEachOverlapping(int from, int to, Visitor<T> visitor) {
+		visitOverlapping(root, from, to, visitor);
+	}
+
+	/**
+	 * Returns the smallest start offset at or after an offset.
+	 *
+	 * @param offset The offset to search from
+	 * @return The start offset, or -1 if no interval starts at or after {@code offset}
+	 */
+	public int ceilingStart(int offset) {
+		int found = -1;
+		Node<T> node = root;
+		while (node != null) {
+			push(node);
+			if (node.start >= offset) {
+				found = node.start;
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the largest start offset at or before an offset.
+	 *
+	 * @param offset The offset to search from
+	 * @return The start offset, or -1 if no interval starts at or before {@code offset}
+	 */
+	public int floorStart(int offset) {
+		int found = -1;
+		Node<T> node = root;
+		while (node != null) {
+			push(node);
+			if (node.start <= offset) {
+				found = node.start;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return found;
+	}
+
+	private void visitStartingIn(Node<T> node, int from, int to, Visitor<T> visitor) {
+		if (node == null) {
+			return;
+		}
+		push(node);
+		if (node.start >= from) {
+			visitStartingIn(node.left, from, to, visitor);
+		}
+		if (node.start >= from && node.start < to) {
+			visitor.visit(node.start, node.end, node.value);
+		}
+		if (node.start < to) {
+			visitStartingIn(node.right, from, to, visitor);
+		}
+	}
+
+	private void visitOverlapping(Node<T> node, int from, int to, Visitor<T> visitor) {
+		if (node == null || node.maxEnd < from) {
+			return;
+		}
+		push(node);
+		visitOverlapping(node.left, from, to, visitor);
+		if (node.start > to) {
+			return;
+		}
+		if (node.end >= from) {
+			visitor.visit(node.start, node.end, node.value);
+		}
+		visitOverlapping(node.right, from, to, visitor);
+	}
+
+	/**
+	 * Splits a subtree into nodes starting before {@code key} ({@link #splitLeft}) and the rest
+	 * ({@link #splitRight}).
+	 */
+	private void split(Node<T> node, int key) {
+		if (node == null) {
+			splitLeft = null;
+			splitRight = null;
+			return;
+		}
+		push(node);
+		if (node.start < key) {
+			split(node.right, key);
+			node.right = splitLeft;
+			update(node);
+			splitLeft = node;
+		} else {
+			split(node.left, key);
+			node.left = splitRight;
+			update(node);
+			splitRight = node;
+		}
+	}
+
+	/**
+	 * Joins two subtrees where every start in {@code a} is at most every start in {@code b}.
+	 */
+	private Node<T> merge(Node<T> a, Node<T> b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			push(a);
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		}
+		push(b);
+		b.left = merge(a, b.left);
+		update(b);
+		return b;
+	}
+
+	private Node<T> removeValue(Node<T> node, T value) {
+		if (node == null) {
+			return null;
+		}
+		push(node);
+		if (node.value == value) {
+			return merge(node.left, node.right);
+		}
+		Node<T> left = removeValue(node.left, value);
+		if (left != node.left) {
+			node.left = left;
+		} else {
+			node.right = removeValue(node.right, value);
+		}
+		update(node);
+		return node;
+	}
+
+	private void extendEnds(Node<T> node, int offset, int delta) {
+		if (node == null || node.maxEnd < offset) {
+			return;
+		}
+		push(node);
+		if (node.end >= offset) {
+			node.end += delta;
+		}
+		extendEnds(node.left, offset, delta);
+		extendEnds(node.right, offset, delta);
+		update(node);
+	}
+
+	private void shrinkEnds(Node<T> node, int offset, int removedEnd) {
+		if (node == null || node.maxEnd < offset) {
+			return;
+		}
+		push(node);
+		if (node.end >= offset) {
+			node.end = node.end >= removedEnd ? node.end - (removedEnd - offset) : offset;
+		}
+		shrinkEnds(node.left, offset, removedEnd);
+		shrinkEnds(node.right, offset, removedEnd);
+		update(node);
+	}
+
+	private void collectInside(Node<T> node, int offset, int removedEnd, List<Node<T>> kept, List<T> dropped) {
+		if (node == null) {
+			return;
+		}
+		push(node);
+		collectInside(node.left, offset, removedEnd, kept, dropped);
+		Node<T> right = node.right;
+
+		if (node.end < removedEnd) {
+			dropped.add(node.value);
+		} else {
+			node.start = offset;
+			node.end -= removedEnd - offset;
+			node.left = null;
+			node.right = null;
+			update(node);
+			kept.add(node);
+		}
+		collectInside(right, offset, removedEnd, kept, dropped);
+	}
+
+	private static <T> void applyShift(Node<T> node, int delta) {
+		if (node != null) {
+			node.start += delta;
+			node.end += delta;
+			node.maxEnd += delta;
+			node.shift += delta;
+		}
+	}
+
+	private static <T> void push(Node<T> node) {
+		if (node.shift != 0) {
+			applyShift(node.left, node.shift);
+			applyShift(node.right, node.shift);
+			node.shift = 0;
+		}
+	}
+
+	private static <T> void update(Node<T> node) {
+		node.size = 1;
+		node.maxEnd = node.end;
+		if (node.left != null) {
+			node.size += node.left.size;
+			node.maxEnd = Math.max(node.maxEnd, node.left.maxEnd);
+		}
+		if (node.right != null) {
+			node.size += node.right.size;
+			node.maxEnd = Math.max(node.maxEnd, node.right.maxEnd);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.collection;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A multiset of words in a prefix trie, answering "most frequent words with this prefix" queries.
+ * <p>
+ * Nodes live in parallel primitive arrays, about 22 bytes each, and nodes whose count drops to zero
+ * are recycled, so the trie only ever holds the words currently present. Every node also knows the
+ * largest count in its subtree. A query walks down the prefix and then searches best-first on that
+ * bound, so it visits little more than the paths to the words it returns, however many words share
+ * the prefix.
+ * </p>
+ * <p>
+ * Counts may become negative for a while, e.g. when removals from one source are applied before the
+ * matching additions; such words are simply not suggested. Instances are not thread-safe.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class WordTrie {
+	private static final int ROOT = 0;
+	private static final int NONE = -1;
+
+	private char[] chars;
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] nextSiblings;
+	private int[] counts;
+	private int[] best;
+	private int allocated;
+	private int freeList = NONE;
+	private int nodeCount;
+	private int wordCount;
+
+	public WordTrie() {
+		chars = new char[64];
+		parents = new int[64];
+		firstChildren = new int[64];
+		nextSiblings = new int[64];
+		counts = new int[64];
+		best = new int[64];
+		allocate(NONE, '\0');
+	}
+
+	/**
+	 * Returns the number of distinct words with a positive count.
+	 */
+	public int size() {
+		return wordCount;
+	}
+
+	/**
+	 * Returns the number of nodes in use, a measure of the memory held by the trie.
+	 */
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Returns the count of a word.
+	 *
+	 * @param word The word to look up
+	 * @return The number of times the word was added minus the number of times it was removed
+	 */
+	public int count(CharSequence word) {
+		int node = find(word);
+		return node == NONE ? 0 : counts[node];
+	}
+
+	/**
+	 * Adds a word to the trie, or removes it if {@code delta} is negative.
+	 *
+	 * @param text  The text containing the word
+	 * @param start Start of the word in {@code text}
+	 * @param end   End of the word in {@code text}, exclusive
+	 * @param delta The change of the word's count
+	 */
+	public void add(CharSequence text, int start, int end, int delta) {
+		if (delta == 0 || start == end) {
+			return;
+		}
+		int node = ROOT;
+		for (int i = start; i < end; i++) {
+			node = child(node, text.charAt(i));
+		}
+
+		int old = counts[node];
+		counts[node] += delta;
+		if (old > 0 != counts[node] > 0) {
+			wordCount += old > 0 ? -1 : 1;
+		}
+		update(node);
+	}
+
+	/**
+	 * Adds every word of another trie, multiplied by {@code sign}.
+	 *
+	 * @param other The trie to add
+	 * @param sign  1 to add the words, -1 to remove them
+	 */
+	public void addAll(WordTrie other, int sign) {
+		char[] path = new char[16];
+		int[] stack = new int[16];
+		int depth = 0;
+		stack[0] = other.firstChildren[ROOT];
+		while (depth >= 0) {
+			int node = stack[depth];
+			if (node == NONE) {
+				depth--;
+				if (depth >= 0) {
+					stack[depth] = other.nextSiblings[stack[depth]];
+				}
+				continue;
+			}
+			if (depth + 1 >= path.length) {
+				path = Arrays.copyOf(path, path.length * 2);
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			path[depth] = other.chars[node];
+			if (other.counts[node] != 0) {
+				add(CharBuffer.wrap(path), 0, depth + 1, other.counts[node] * sign);
+			}
+			stack[++depth] = other.firstChildren[node];
+		}
+	}
+
+	/**
+	 * Returns the most frequent words that start with a prefix, the prefix itself included.
+	 *
+	 * @param prefix The prefix to complete
+	 * @param limit  The largest number of words to return
+	 * @return The words in descending order of their count
+	 */
+	public List<String> complete(CharSequence prefix, int limit) {
+		List<String> result = new ArrayList<>();
+		int start = find(prefix);
+		if (start == NONE || limit <= 0) {
+			return result;
+		}
+
+		// Entries are (bound << 32 | node << 1 | isWord) in a max-heap; a word is emitted when it reaches the top.
+		long[] heap = new long[16];
+		heap[0] = entry(best[start], start, false);
+		int heapSize = 1;
+		while (heapSize > 0 && result.size() < limit) {
+			long top = heap[0];
+			heap[0] = heap[--heapSize];
+			siftDown(heap, heapSize);
+			int node = (int) top >>> 1;
+			if ((top & 1) != 0) {
+				result.add(word(node));
+				continue;
+			}
+			if (counts[node] > 0) {
+				heap = push(heap, heapSize++, entry(counts[node], node, true));
+			}
+			for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+				if (best[child] > 0) {
+					heap = push(heap, heapSize++, entry(best[child], child, false));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static long[] push(long[] heap, int size, long value) {
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		int i = size;
+		while (i > 0 && heap[(i - 1) / 2] < value) {
+			heap[i] = heap[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		heap[i] = value;
+		return heap;
+	}
+
+	private static void siftDown(long[] heap, int size) {
+		long value = heap[0];
+		int i = 0;
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && heap[child + 1] > heap[child]) {
+				child++;
+			}
+			if (heap[child] <= value) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = value;
+	}
+
+	private static long entry(int bound, int node, boolean word) {
+		return (long) bound << 32 | (long) node << 1 | (word ? 1 : 0);
+	}
+
+	private String word(int node) {
+		StringBuilder word = new StringBuilder();
+		for (; node != ROOT; node = parents[node]) {
+			word.append(chars[node]);
+		}
+		return word.reverse().toString();
+	}
+
+	private int find(CharSequence word) {
+		int node = ROOT;
+		for (int i = 0; i < word.length() && node != NONE; i++) {
+			char c = word.charAt(i);
+			int child = firstChildren[node];
+			while (child != NONE && chars[child] != c) {
+				child = nextSiblings[child];
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	private int child(int node, char c) {
+		for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+			if (chars[child] == c) {
+				return child;
+			}
+		}
+		int child = allocate(node, c);
+		nextSiblings[child] = firstChildren[node];
+		firstChildren[node] = child;
+		return child;
+	}
+
+	/**
+	 * Recomputes the subtree bounds on the path to the root after the count of {@code node} changed,
+	 * and recycles nodes that no longer lead to any word.
+	 */
+	private void update(int node) {
+		while (node != ROOT) {
+			int parent = parents[node];
+			if (counts[node] == 0 && firstChildren[node] == NONE) {
+				unlink(parent, node);
+			} else {
+				int bound = Math.max(0, counts[node]);
+				for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+					bound = Math.max(bound, best[child]);
+				}
+				if (bound == best[node]) {
+					return;
+				}
+				best[node] = bound;
+			}
+			node = parent;
+		}
+		int bound = 0;
+		for (int child = firstChildren[ROOT]; child != NONE; child = nextSiblings[child]) {
+			bound = Math.max(bound, best[child]);
+		}
+		best[ROOT] = bound;
+	}
+
+	private void unlink(int parent, int node) {
+		if (firstChildren[parent] == node) {
+			firstChildren[parent] = nextSiblings[node];
+		} else {
+			int previous = firstChildren[parent];
+			while (nextSiblings[previous] != node) {
+				previous = nextSiblings[previous];
+			}
+			nextSiblings[previous] = nextSiblings[node];
+		}
+		nextSiblings[node] = freeList;
+		freeList = node;
+		nodeCount--;
+	}
+
+	private int allocate(int parent, char c) {
+		int node;
+		if (freeList != NONE) {
+			node = freeList;
+			freeList = nextSiblings[node];
+		} else {
+			if (allocated == chars.length) {
+				int capacity = allocated * 2;
+				chars = Arrays.copyOf(chars, capacity);
+				parents = Arrays.copyOf(parents, capacity);
+				firstChildren = Arrays.copyOf(firstChildren, capacity);
+				nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+				counts = Arrays.copyOf(counts, capacity);
+				best = Arrays.copyOf(best, capacity);
+			}
+			node = allocated++;
+		}
+		chars[node] = c;
+		parents[node] = parent;
+		firstChildren[node] = NONE;
+		nextSiblings[node] = NONE;
+		counts[node] = 0;
+		best[node] = 0;
+		nodeCount++;
+		return node;
+	}
+}
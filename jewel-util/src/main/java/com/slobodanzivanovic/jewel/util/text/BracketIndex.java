@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The positions of all brackets in a text, for matching them in O(log n).
+ * <p>
+ * Brackets are kept in a treap ordered by offset. Every opening bracket counts as +1 and every
+ * closing bracket as -1, and each subtree knows the sum of its deltas and the lowest running sum
+ * within it. The match of a bracket is then the nearest bracket at which the running sum returns
+ * to the depth outside it, found by one descent of the tree. Edits shift the brackets after them
+ * with a lazy offset and only the edited lines are scanned again.
+ * </p>
+ * <p>
+ * Brackets inside string literals and {@code //} comments are ignored. Both end at the end of their
+ * line, so a line can always be scanned on its own. Instances are not thread-safe.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class BracketIndex {
+
+	private static final class Node {
+		private final char bracket;
+		private final int delta;
+		private final int priority;
+		private int offset;
+		private int shift;
+		private int size;
+		private int sum;
+		private int minPrefix;
+		private Node left;
+		private Node right;
+
+		private Node(int offset, char bracket) {
+			this.offset = offset;
+			this.bracket = bracket;
+			this.delta = isOpening(bracket) ? 1 : -1;
+			this.priority = ThreadLocalRandom.current().nextInt();
+			update(this);
+		}
+	}
+
+	private Node root;
+	private Node splitLeft;
+	private Node splitRight;
+
+	private BracketIndex() {
+	}
+
+	/**
+	 * Indexes every bracket of a text.
+	 *
+	 * @param text The text to scan
+	 * @return The index
+	 */
+	public static BracketIndex build(CharSequence text) {
+		BracketIndex index = new BracketIndex();
+		index.root = buildTree(text, 0);
+		return index;
+	}
+
+	/**
+	 * Returns whether a character is one of {@code ( [ } ] )} or the braces.
+	 *
+	 * @param c The character to test
+	 * @return True for brackets
+	 */
+	public static boolean isBracket(char c) {
+		return isOpening(c) || c == ')' || c == ']' || c == '}';
+	}
+
+	/**
+	 * Returns whether two brackets form a pair.
+	 *
+	 * @param opening The opening bracket
+	 * @param closing The closing bracket
+	 * @return True if {@code closing} closes {@code opening}
+	 */
+	public static boolean isPair(char opening, char closing) {
+		return opening == '(' && closing == ')' || opening == '[' && closing == ']' || opening == '{' && closing == '}';
+	}
+
+	private static boolean isOpening(char c) {
+		return c == '(' || c == '[' || c == '{';
+	}
+
+	public int size() {
+		return root == null ? 0 : root.size;
+	}
+
+	/**
+	 * Returns the offset of the bracket matching the one at {@code offset}, regardless of its kind.
+	 *
+	 * @param offset The offset of a bracket
+	 * @return The offset of its match, or -1 if there is no indexed bracket at {@code offset} or it
+	 * is unbalanced
+	 */
+	public int findMatch(int offset) {
+		split(root, offset);
+		Node before = splitLeft;
+		split(splitRight, offset + 1);
+		Node bracket = splitLeft;
+		Node after = splitRight;
+
+		int match = -1;
+		if (bracket != null) {
+			if (bracket.delta > 0) {
+				// The first bracket after it where the running sum drops below its own depth.
+				match = firstAtOrBelow(after, -1);
+			} else {
+				// The last bracket before it where the running sum was at most the depth after it.
+				match = matchBackward(before, sum(before) - 1);
+			}
+		}
+		root = merge(merge(before, bracket), after);
+		return match;
+	}
+
+	/**
+	 * Updates the index for text inserted at an offset. The inserted text itself is not scanned, see
+	 * {@link #rescan}.
+	 *
+	 * @param offset The offset of the insertion
+	 * @param length The number of inserted characters
+	 */
+	public void insertUpdate(int offset, int length) {
+		split(root, offset);
+		Node before = splitLeft;
+		Node after = splitRight;
+		applyShift(after, length);
+		root = merge(before, after);
+	}
+
+	/**
+	 * Updates the index for text removed from {@code [offset, offset + length)}.
+	 *
+	 * @param offset The offset of the removal
+	 * @param length The number of removed characters
+	 */
+	public void removeUpdate(int offset, int length) {
+		split(root, offset);
+		Node before = splitLeft;
+		split(splitRight, offset + length);
+		Node after = splitRight;
+		applyShift(after, -length);
+		root = merge(before, after);
+	}
+
+	/**
+	 * Replaces the brackets in {@code [from, to)} with those in {@code text}, which must be the
+	 * current content of that range and consist of whole lines.
+	 *
+	 * @param from The start of the range, at the start of a line
+	 * @param to   The end of the range, at the end of a line
+	 * @param text The content of the range
+	 */
+	public void rescan(int from, int to, CharSequence text) {
+		split(root, from);
+		Node before = splitLeft;
+		split(splitRight, to);
+		Node after = splitRight;
+		root = merge(merge(before, buildTree(text, from)), after);
+	}
+
+	/**
+	 * Scans {@code text} and builds a treap of its brackets in linear time, placing them at
+	 * {@code base} plus their index. A {@link Rope} is scanned leaf by leaf without copying it.
+	 */
+	private static Node buildTree(CharSequence text, int base) {
+		TreeBuilder builder = new TreeBuilder(base);
+		if (text instanceof Rope rope) {
+			rope.forEachChunk(0, rope.length(), builder);
+		} else {
+			for (int i = 0; i < text.length(); i++) {
+				builder.accept(text.charAt(i));
+			}
+		}
+		return builder.finish();
+	}
+
+	/**
+	 * Builds a treap from brackets in offset order. The lexer looks at one character at a time, so a
+	 * text can be fed to it in pieces.
+	 */
+	private static final class TreeBuilder implements Rope.ChunkVisitor {
+		// The right spine of the tree built so far, as a stack.
+		private Node[] spine = new Node[64];
+		private int depth;
+		private int offset;
+		private boolean lineComment;
+		private char quote;
+		private boolean escaped;
+		private boolean slash;
+
+		private TreeBuilder(int base) {
+			this.offset = base;
+		}
+
+		@Override
+		public boolean visit(char[] chars, int from, int to) {
+			for (int i = from; i < to; i++) {
+				accept(chars[i]);
+			}
+			return true;
+		}
+
+		private void accept(char c) {
+			int at = offset++;
+			if (c == '\n') {
+				lineComment = false;
+				quote = 0;
+				escaped = false;
+				slash = false;
+			} else if (lineComment) {
+				return;
+			} else if (quote != 0) {
+				if (escaped) {
+					escaped = false;
+				} else if (c == '\\') {
+					escaped = true;
+				} else if (c == quote) {
+					quote = 0;
+				}
+			} else if (slash && c == '/') {
+				lineComment = true;
+			} else {
+				slash = c == '/';
+				if (c == '"' || c == '\'') {
+					quote = c;
+				} else if (isBracket(c)) {
+					add(new Node(at, c));
+				}
+			}
+		}
+
+		private void add(Node node) {
+			Node last = null;
+			while (depth > 0 && spine[depth - 1].priority < node.priority) {
+				last = spine[--depth];
+				update(last);
+			}
+			node.left = last;
+			if (depth > 0) {
+				spine[depth - 1].right = node;
+			}
+			if (depth == spine.length) {
+				spine = Arrays.copyOf(spine, depth * 2);
+			}
+			spine[depth++] = node;
+		}
+
+		private Node finish() {
+			while (depth > 1) {
+				update(spine[--depth]);
+			}
+			if (depth == 0) {
+				return null;
+			}
+			update(spine[0]);
+			return spine[0];
+		}
+	}
+
+	/**
+	 * Returns the offset of the first node whose running sum, starting from 0, is at most
+	 * {@code threshold}, or -1.
+	 */
+	private static int firstAtOrBelow(Node node, int threshold) {
+		int base = 0;
+		if (node == null || node.minPrefix > threshold) {
+			return -1;
+		}
+		while (node != null) {
+			push(node);
+			if (node.left != null && base + node.left.minPrefix <= threshold) {
+				node = node.left;
+				continue;
+			}
+			int prefix = base + sum(node.left) + node.delta;
+			if (prefix <= threshold) {
+				return node.offset;
+			}
+			base = prefix;
+			node = node.right;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the offset of the bracket in {@code node} that opens the closing bracket right after
+	 * it: the bracket following the last node whose running sum is at most {@code depth}, or the
+	 * first one if the running sum starts out there.
+	 */
+	private int matchBackward(Node node, int depth) {
+		if (node == null) {
+			return -1;
+		}
+		Node last = lastAtOrBelow(node, depth);
+		if (last == null) {
+			return depth >= 0 ? first(node).offset : -1;
+		}
+		Node next = firstAfter(node, last.offset);
+		return next == null ? -1 : next.offset;
+	}
+
+	private static Node lastAtOrBelow(Node node, int threshold) {
+		int base = 0;
+		while (node != null) {
+			push(node);
+			int prefix = base + sum(node.left) + node.delta;
+			if (node.right != null && prefix + node.right.minPrefix <= threshold) {
+				base = prefix;
+				node = node.right;
+			} else if (prefix <= threshold) {
+				return node;
+			} else if (node.left != null && base + node.left.minPrefix <= threshold) {
+				node = node.left;
+			} else {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static Node first(Node node) {
+		push(node);
+		while (node.left != null) {
+			node = node.left;
+			push(node);
+		}
+		return node;
+	}
+
+	private static Node firstAfter(Node node, int offset) {
+		Node result = null;
+		while (node != null) {
+			push(node);
+			if (node.offset > offset) {
+				result = node;
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Splits a subtree into nodes before {@code key} ({@link #splitLeft}) and the rest
+	 * ({@link #splitRight}).
+	 */
+	private void split(Node node, int key) {
+		if (node == null) {
+			splitLeft = null;
+			splitRight = null;
+			return;
+		}
+		push(node);
+		if (node.offset < key) {
+			split(node.right, key);
+			node.right = splitLeft;
+			update(node);
+			splitLeft = node;
+		} else {
+			split(node.left, key);
+			node.left = splitRight;
+			update(node);
+			splitRight = node;
+		}
+	}
+
+	private static Node merge(Node a, Node b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			push(a);
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		}
+		push(b);
+		b.left = merge(a, b.left);
+		update(b);
+		return b;
+	}
+
+	private static int sum(Node node) {
+		return node == null ? 0 : node.sum;
+	}
+
+	private static void applyShift(Node node, int delta) {
+		if (node != null) {
+			node.offset += delta;
+			node.shift += delta;
+		}
+	}
+
+	private static void push(Node node) {
+		if (node.shift != 0) {
+			applyShift(node.left, node.shift);
+			applyShift(node.right, node.shift);
+			node.shift = 0;
+		}
+	}
+
+	private static void update(Node node) {
+		int leftSum = sum(node.left);
+		int self = leftSum + node.delta;
+		node.size = 1;
+		node.sum = self;
+		node.minPrefix = self;
+		if (node.left != null) {
+			node.size += node.left.size;
+			node.minPrefix = Math.min(node.minPrefix, node.left.minPrefix);
+		}
+		if (node.right != null) {
+			node.size += node.right.size;
+			node.sum += node.right.sum;
+			node.minPrefix = Math.min(node.minPrefix, self + node.right.minPrefix);
+		}
+	}
+}
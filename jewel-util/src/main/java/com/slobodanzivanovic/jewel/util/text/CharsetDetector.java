@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Guesses the charset of a text file from its first bytes.
+ * <p>
+ * A byte order mark always wins. Without one, the sample is inspected statistically:
+ * - NUL bytes concentrated on even or odd positions indicate UTF-16
+ * - a sample that is well-formed UTF-8 is treated as UTF-8 (this includes plain ASCII)
+ * - anything else falls back to a single-byte legacy charset
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class CharsetDetector {
+	/**
+	 * Number of bytes from the start of a file that are inspected.
+	 */
+	public static final int SAMPLE_SIZE = 64 * 1024;
+
+	/**
+	 * Number of bytes from the start of a file that are searched for NUL bytes by {@link #isBinary}.
+	 */
+	public static final int BINARY_SAMPLE_SIZE = 8 * 1024;
+
+	private static final Charset UTF_32BE = Charset.forName("UTF-32BE");
+	private static final Charset UTF_32LE = Charset.forName("UTF-32LE");
+	private static final Charset LEGACY = Charset.isSupported("windows-1252")
+		? Charset.forName("windows-1252")
+		: StandardCharsets.ISO_8859_1;
+
+	private static final double UTF_16_NUL_RATIO = 0.3;
+
+	private CharsetDetector() {
+	}
+
+	/**
+	 * The outcome of a detection.
+	 *
+	 * @param charset   The detected charset
+	 * @param bomLength The number of leading bytes taken by a byte order mark, 0 if there is none
+	 */
+	public record Detection(Charset charset, int bomLength) {
+	}
+
+	/**
+	 * Detects the charset of the given sample.
+	 *
+	 * @param sample The first bytes of the content, usually at most {@link #SAMPLE_SIZE} of them
+	 * @return The detected charset and BOM length
+	 */
+	public static Detection detect(ByteBuffer sample) {
+		ByteBuffer bytes = sample.duplicate();
+		int start = bytes.position();
+		int length = Math.min(bytes.remaining(), SAMPLE_SIZE);
+
+		Detection bom = detectBom(bytes, start, length);
+		if (bom != null) {
+			return bom;
+		}
+
+		Charset utf16 = detectUtf16(bytes, start, length);
+		if (utf16 != null) {
+			return new Detection(utf16, 0);
+		}
+
+		if (isWellFormedUtf8(bytes, start, length)) {
+			return new Detection(StandardCharsets.UTF_8, 0);
+		}
+
+		return new Detection(LEGACY, 0);
+	}
+
+	/**
+	 * Detects the charset of the given sample.
+	 *
+	 * @param sample The first bytes of the content
+	 * @return The detected charset and BOM length
+	 */
+	public static Detection detect(byte[] sample) {
+		return detect(ByteBuffer.wrap(sample));
+	}
+
+	/**
+	 * Checks whether content is binary rather than text, by looking for NUL bytes near its beginning.
+	 * UTF-16 and UTF-32 text is full of NULs, so samples starting with a byte order mark or with NULs
+	 * on every other byte are text.
+	 *
+	 * @param sample The first bytes of the content; only the first {@link #BINARY_SAMPLE_SIZE} are inspected
+	 * @return True if the content looks binary
+	 */
+	public static boolean isBinary(byte[] sample) {
+		int length = Math.min(sample.length, BINARY_SAMPLE_SIZE);
+		Detection detection = detect(ByteBuffer.wrap(sample, 0, length));
+		if (detection.bomLength() > 0
+			|| detection.charset().equals(StandardCharsets.UTF_16BE)
+			|| detection.charset().equals(StandardCharsets.UTF_16LE)) {
+			return false;
+		}
+		return TextScanner.indexOf(sample, 0, length, (byte) 0) >= 0;
+	}
+
+	/**
+	 * Checks whether a file is binary rather than text.
+	 *
+	 * @param path The file to check
+	 * @return True if the file looks binary
+	 * @throws IOException If the file cannot be read
+	 * @see #isBinary(byte[])
+	 */
+	public static boolean isBinary(Path path) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			return isBinary(in.readNBytes(BINARY_SAMPLE_SIZE));
+		}
+	}
+
+	/**
+	 * Returns the length of the byte order mark the content starts with, if it is the mark of the
+	 * given charset. The decoders of UTF-16 and UTF-32 without a stated byte order read the mark
+	 * themselves to find the byte order, so no mark is reported for them.
+	 *
+	 * @param content The encoded content, from its position on
+	 * @param charset The charset the content is decoded with
+	 * @return The number of bytes to skip before decoding, 0 if there is no matching mark
+	 */
+	public static int bomLength(ByteBuffer content, Charset charset) {
+		byte[] bom = switch (charset.name()) {
+			case "UTF-8" -> new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+			case "UTF-16BE" -> new byte[]{(byte) 0xFE, (byte) 0xFF};
+			case "UTF-16LE" -> new byte[]{(byte) 0xFF, (byte) 0xFE};
+			case "UTF-32BE" -> new byte[]{0x00, 0x00, (byte) 0xFE, (byte) 0xFF};
+			case "UTF-32LE" -> new byte[]{(byte) 0xFF, (byte) 0xFE, 0x00, 0x00};
+			default -> new byte[0];
+		};
+		if (bom.length == 0 || content.remaining() < bom.length) {
+			return 0;
+		}
+		for (int i = 0; i < bom.length; i++) {
+			if (content.get(content.position() + i) != bom[i]) {
+				return 0;
+			}
+		}
+		return bom.length;
+	}
+
+	private static Detection detectBom(ByteBuffer bytes, int start, int length) {
+		int b0 = length > 0 ? bytes.get(start) & 0xFF : -1;
+		int b1 = length > 1 ? bytes.get(start + 1) & 0xFF : -1;
+		int b2 = length > 2 ? bytes.get(start + 2) & 0xFF : -1;
+		int b3 = length > 3 ? bytes.get(start + 3) & 0xFF : -1;
+
+		if (b0 == 0x00 && b1 == 0x00 && b2 == 0xFE && b3 == 0xFF) {
+			return new Detection(UTF_32BE, 4);
+		}
+		if (b0 == 0xFF && b1 == 0xFE && b2 == 0x00 && b3 == 0x00) {
+			return new Detection(UTF_32LE, 4);
+		}
+		if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+			return new Detection(StandardCharsets.UTF_8, 3);
+		}
+		if (b0 == 0xFE && b1 == 0xFF) {
+			return new Detection(StandardCharsets.UTF_16BE, 2);
+		}
+		if (b0 == 0xFF && b1 == 0xFE) {
+			return new Detection(StandardCharsets.UTF_16LE, 2);
+		}
+		return null;
+	}
+
+	private static Charset detectUtf16(ByteBuffer bytes, int start, int length) {
+		int pairs = length / 2;
+		if (pairs == 0) {
+			return null;
+		}
+
+		int evenNuls = 0;
+		int oddNuls = 0;
+		for (int i = 0; i < pairs * 2; i += 2) {
+			if (bytes.get(start + i) == 0) evenNuls++;
+			if (bytes.get(start + i + 1) == 0) oddNuls++;
+		}
+
+		double evenRatio = (double) evenNuls / pairs;
+		double oddRatio = (double) oddNuls / pairs;
+		if (evenRatio > UTF_16_NUL_RATIO && oddRatio < UTF_16_NUL_RATIO / 10) {
+			return StandardCharsets.UTF_16BE;
+		}
+		if (oddRatio > UTF_16_NUL_RATIO && evenRatio < UTF_16_NUL_RATIO / 10) {
+			return StandardCharsets.UTF_16LE;
+		}
+		return null;
+	}
+
+	private static boolean isWellFormedUtf8(ByteBuffer bytes, int start, int length) {
+		byte[] sample = new byte[length];
+		bytes.get(start, sample);
+
+		int i = 0;
+		while (i < length) {
+			i = TextScanner.indexOfNonAscii(sample, i, length);
+			if (i < 0) {
+				return true;
+			}
+
+			int b = sample[i] & 0xFF;
+			int continuation;
+			if (b >= 0xC2 && b <= 0xDF) {
+				continuation = 1;
+			} else if (b >= 0xE0 && b <= 0xEF) {
+				continuation = 2;
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				continuation = 3;
+			} else {
+				return false;
+			}
+
+			for (int k = 1; k <= continuation; k++) {
+				if (i + k >= length) {
+					// The sample may cut a sequence in half, which says nothing about the rest.
+					return true;
+				}
+				if ((sample[i + k] & 0xC0) != 0x80) {
+					return false;
+				}
+			}
+			i += continuation + 1;
+		}
+		return true;
+	}
+}
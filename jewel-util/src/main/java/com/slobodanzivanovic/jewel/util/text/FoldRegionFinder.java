@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the regions of a text that can be folded.
+ * <p>
+ * Markup, recognised by a leading {@code <}, folds on matching element tags. Anything else folds
+ * on matching {@code {}} and {@code []} pairs, ignoring brackets inside string literals and
+ * C-style line and block comments. Only regions that span at least three lines are
+ * reported, since folding keeps the first and the last line visible, and at most one region starts
+ * on any line: the outermost one.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class FoldRegionFinder {
+
+	private FoldRegionFinder() {
+	}
+
+	/**
+	 * A foldable region.
+	 *
+	 * @param start Offset of the opening bracket or tag
+	 * @param end   Offset of the closing bracket or tag
+	 */
+	public record Region(int start, int end) {
+	}
+
+	/**
+	 * Finds the foldable regions of a text.
+	 *
+	 * @param text The text to scan
+	 * @return The regions, ordered by start offset
+	 */
+	public static List<Region> find(CharSequence text) {
+		Collector collector = new Collector();
+		if (isMarkup(text)) {
+			scanMarkup(text, collector);
+		} else {
+			scanBrackets(text, collector);
+		}
+		return collector.regions();
+	}
+
+	private static boolean isMarkup(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (!Character.isWhitespace(c) && c != '\uFEFF') {
+				return c == '<';
+			}
+		}
+		return false;
+	}
+
+	private static void scanBrackets(CharSequence text, Collector collector) {
+		int length = text.length();
+		int line = 0;
+		OpenStack open = new OpenStack();
+
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '\n' -> line++;
+				case '{', '[' -> open.push(c, i, line);
+				case '}', ']' -> {
+					char opening = c == '}' ? '{' : '[';
+					// Drop unbalanced brackets instead of pairing across them.
+					while (!open.isEmpty() && open.topKind() != opening) {
+						open.pop();
+					}
+					if (!open.isEmpty()) {
+						collector.add(open.topOffset(), open.topLine(), i, line);
+						open.pop();
+					}
+				}
+				case '"', '\'' -> {
+					int closing = skipString(text, i, c);
+					i = closing - 1;
+				}
+				case '/' -> {
+					if (i + 1 < length && text.charAt(i + 1) == '/') {
+						i = skipUntil(text, i + 2, "\n") - 1;
+					} else if (i + 1 < length && text.charAt(i + 1) == '*') {
+						int end = skipUntil(text, i + 2, "*/");
+						line += countLines(text, i, end);
+						i = end - 1;
+					}
+				}
+				default -> {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the offset just past a string literal starting at {@code start}. Unterminated
+	 * literals end at the end of their line.
+	 */
+	private static int skipString(CharSequence text, int start, char quote) {
+		int length = text.length();
+		for (int i = start + 1; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == quote) {
+				return i + 1;
+			} else if (c == '\n') {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	private static void scanMarkup(CharSequence text, Collector collector) {
+		int length = text.length();
+		int line = 0;
+		OpenStack open = new OpenStack();
+		List<String> names = new ArrayList<>();
+
+		int i = 0;
+		while (i < length) {
+			char c = text.charAt(i);
+			if (c == '\n') {
+				line++;
+				i++;
+				continue;
+			}
+			if (c != '<') {
+				i++;
+				continue;
+			}
+
+			int end;
+			if (startsWith(text, i, "<!--")) {
+				end = skipUntil(text, i + 4, "-->");
+			} else if (startsWith(text, i, "<![CDATA[")) {
+				end = skipUntil(text, i + 9, "]]>");
+			} else if (startsWith(text, i, "<?")) {
+				end = skipUntil(text, i + 2, "?>");
+			} else {
+				end = skipTag(text, i);
+				boolean closing = i + 1 < length && text.charAt(i + 1) == '/';
+				boolean declaration = i + 1 < length && text.charAt(i + 1) == '!';
+				boolean selfClosing = end >= 2 && text.charAt(end - 1) == '>' && text.charAt(end - 2) == '/';
+				String name = tagName(text, closing ? i + 2 : i + 1, end);
+
+				if (closing) {
+					int index = names.lastIndexOf(name);
+					if (index >= 0) {
+						while (names.size() > index + 1) {
+							names.removeLast();
+							open.pop();
+						}
+						collector.add(open.topOffset(), open.topLine(), i, line);
+						names.removeLast();
+						open.pop();
+					}
+				} else if (!declaration && !selfClosing && !name.isEmpty()) {
+					names.add(name);
+					open.push('<', i, line);
+				}
+			}
+			line += countLines(text, i, end);
+			i = end;
+		}
+	}
+
+	/**
+	 * Returns the offset just past the tag starting at {@code start}, skipping quoted attribute
+	 * values.
+	 */
+	private static int skipTag(CharSequence text, int start) {
+		int length = text.length();
+		char quote = 0;
+		for (int i = start + 1; i < length; i++) {
+			char c = text.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '>') {
+				return i + 1;
+			}
+		}
+		return length;
+	}
+
+	private static String tagName(CharSequence text, int start, int end) {
+		int i = start;
+		while (i < end) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c) || c == '>' || c == '/') {
+				break;
+			}
+			i++;
+		}
+		return text.subSequence(start, i).toString();
+	}
+
+	private static boolean startsWith(CharSequence text, int offset, String prefix) {
+		if (offset + prefix.length() > text.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (text.charAt(offset + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset just past the next occurrence of {@code terminator}, or the end of the
+	 * text if there is none.
+	 */
+	private static int skipUntil(CharSequence text, int from, String terminator) {
+		int last = text.length() - terminator.length();
+		for (int i = from; i <= last; i++) {
+			if (startsWith(text, i, terminator)) {
+				return i + terminator.length();
+			}
+		}
+		return text.length();
+	}
+
+	private static int countLines(CharSequence text, int from, int to) {
+		int lines = 0;
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) == '\n') {
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * The open brackets or tags, as parallel arrays.
+	 */
+	private static final class OpenStack {
+		private char[] kinds = new char[64];
+		private int[] offsets = new int[64];
+		private int[] lines = new int[64];
+		private int size;
+
+		void push(char kind, int offset, int line) {
+			if (size == kinds.length) {
+				kinds = Arrays.copyOf(kinds, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2);
+				lines = Arrays.copyOf(lines, size * 2);
+			}
+			kinds[size] = kind;
+			offsets[size] = offset;
+			lines[size] = line;
+			size++;
+		}
+
+		void pop() {
+			size--;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		char topKind() {
+			return kinds[size - 1];
+		}
+
+		int topOffset() {
+			return offsets[size - 1];
+		}
+
+		int topLine() {
+			return lines[size - 1];
+		}
+	}
+
+	/**
+	 * Collects regions as they close, innermost first, and keeps the outermost one per line.
+	 */
+	private static final class Collector {
+		private long[] keys = new long[64];
+		private int[] starts = new int[64];
+		private int[] ends = new int[64];
+		private int size;
+
+		void add(int start, int startLine, int end, int endLine) {
+			if (endLine - startLine < 2) {
+				return;
+			}
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+			}
+			keys[size] = ((long) startLine << 32) | size;
+			starts[size] = start;
+			ends[size] = end;
+			size++;
+		}
+
+		List<Region> regions() {
+			long[] sorted = Arrays.copyOf(keys, size);
+			Arrays.sort(sorted);
+
+			List<Region> regions = new ArrayList<>();
+			int i = 0;
+			while (i < size) {
+				int line = (int) (sorted[i] >>> 32);
+				int outermost = (int) sorted[i];
+				for (i++; i < size && (int) (sorted[i] >>> 32) == line; i++) {
+					int index = (int) sorted[i];
+					if (ends[index] > ends[outermost]) {
+						outermost = index;
+					}
+				}
+				regions.add(new Region(starts[outermost], ends[outermost]));
+			}
+			return regions;
+		}
+	}
+}
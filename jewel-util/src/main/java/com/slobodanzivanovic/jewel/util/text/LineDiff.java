@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Computes line-based differences between two texts.
+ * <p>
+ * Lines are hashed to ints up front so that most comparisons are a single int compare; equal
+ * hashes are confirmed against the actual characters. The common prefix and suffix are stripped
+ * before running Myers' O(ND) algorithm on what remains, so a small change in a huge text costs
+ * little more than one pass over it. The linear-space variant is used, which needs memory in
+ * proportion to the input rather than to the square of the number of changes.
+ * </p>
+ * <p>
+ * Large inputs are first split at anchor lines: lines that occur exactly once in both texts, kept
+ * in the longest order both texts agree on. The segments between anchors are diffed in parallel.
+ * A segment that differs in more than {@link #MAX_EDIT_DISTANCE} lines is reported as a single
+ * replaced block.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class LineDiff {
+	/**
+	 * The largest number of inserted plus deleted lines that is searched for a minimal diff of one
+	 * segment.
+	 */
+	public static final int MAX_EDIT_DISTANCE = 2048;
+
+	/**
+	 * Inputs with at least this many differing lines are split at unique lines and diffed in parallel.
+	 */
+	private static final int ANCHOR_THRESHOLD = 8192;
+
+	private LineDiff() {
+	}
+
+	/**
+	 * A changed region: lines {@code [oldStart, oldEnd)} of the old text were replaced by
+	 * lines {@code [newStart, newEnd)} of the new text. Either range may be empty.
+	 */
+	public record Hunk(int oldStart, int oldEnd, int newStart, int newEnd) {
+	}
+
+	/**
+	 * A text split into lines. Every line includes its terminating newline, if it has one.
+	 */
+	public static final class Lines {
+		private final CharSequence text;
+		private final int[] starts;
+		private final int[] hashes;
+
+		private Lines(CharSequence text, int[] starts, int[] hashes) {
+			this.text = text;
+			this.starts = starts;
+			this.hashes = hashes;
+		}
+
+		public int count() {
+			return hashes.length;
+		}
+
+		public int start(int line) {
+			return starts[line];
+		}
+
+		public int end(int line) {
+			return starts[line + 1];
+		}
+
+		public int hash(int line) {
+			return hashes[line];
+		}
+
+		public CharSequence text() {
+			return text;
+		}
+
+		public CharSequence line(int line) {
+			return text.subSequence(start(line), end(line));
+		}
+
+		boolean lineEquals(int line, Lines other, int otherLine) {
+			if (hashes[line] != other.hashes[otherLine]) {
+				return false;
+			}
+			int length = end(line) - start(line);
+			if (length != other.end(otherLine) - other.start(otherLine)) {
+				return false;
+			}
+			int offset = start(line);
+			int otherOffset = other.start(otherLine);
+			for (int i = 0; i < length; i++) {
+				if (text.charAt(offset + i) != other.text.charAt(otherOffset + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Splits a text into hashed lines.
+	 *
+	 * @param text The text to split
+	 * @return The lines of the text
+	 */
+	public static Lines split(CharSequence text) {
+		int length = text.length();
+		int[] starts = new int[16];
+		int[] hashes = new int[16];
+		int count = 0;
+
+		int lineStart = 0;
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			hash = 31 * hash + c;
+			if (c == '\n') {
+				if (count + 1 >= starts.length) {
+					starts = Arrays.copyOf(starts, starts.length * 2);
+					hashes = Arrays.copyOf(hashes, hashes.length * 2);
+				}
+				starts[count] = lineStart;
+				hashes[count++] = hash;
+				lineStart = i + 1;
+				hash = 0;
+			}
+		}
+		if (lineStart < length) {
+			if (count + 1 >= starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+				hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			}
+			starts[count] = lineStart;
+			hashes[count++] = hash;
+		}
+		starts[count] = length;
+
+		return new Lines(text, Arrays.copyOf(starts, count + 1), Arrays.copyOf(hashes, count));
+	}
+
+	/**
+	 * Computes the changed regions between two texts.
+	 *
+	 * @param oldLines The old text
+	 * @param newLines The new text
+	 * @return The changed regions in ascending order, empty if the texts are equal
+	 */
+	public static List<Hunk> diff(Lines oldLines, Lines newLines) {
+		int oldEnd = oldLines.count();
+		int newEnd = newLines.count();
+
+		int prefix = 0;
+		while (prefix < oldEnd && prefix < newEnd && oldLines.lineEquals(prefix, newLines, prefix)) {
+			prefix++;
+		}
+		while (oldEnd > prefix && newEnd > prefix && oldLines.lineEquals(oldEnd - 1, newLines, newEnd - 1)) {
+			oldEnd--;
+			newEnd--;
+		}
+
+		if (prefix == oldEnd && prefix == newEnd) {
+			return List.of();
+		}
+		if (oldEnd - prefix + newEnd - prefix < ANCHOR_THRESHOLD) {
+			List<Hunk> hunks = new ArrayList<>();
+			diffSegment(oldLines, prefix, oldEnd, newLines, prefix, newEnd, hunks);
+			return hunks;
+		}
+
+		// Lines that occur exactly once on both sides are matched up in order, and the segments
+		// between them are diffed independently of each other.
+		int[][] anchors = anchors(oldLines, prefix, oldEnd, newLines, prefix, newEnd);
+		int[] oldBounds = segmentBounds(anchors[0], prefix, oldEnd);
+		int[] newBounds = segmentBounds(anchors[1], prefix, newEnd);
+		return IntStream.range(0, oldBounds.length / 2)
+			.parallel()
+			.mapToObj(i -> {
+				List<Hunk> hunks = new ArrayList<>();
+				diffSegment(oldLines, oldBounds[2 * i], oldBounds[2 * i + 1],
+					newLines, newBounds[2 * i], newBounds[2 * i + 1], hunks);
+				return hunks;
+			})
+			.flatMap(List::stream)
+			.toList();
+	}
+
+	/**
+	 * Returns the ranges between the anchors as pairs of start and end.
+	 */
+	private static int[] segmentBounds(int[] anchors, int from, int to) {
+		int[] bounds = new int[2 * (anchors.length + 1)];
+		int start = from;
+		for (int i = 0; i < anchors.length; i++) {
+			bounds[2 * i] = start;
+			bounds[2 * i + 1] = anchors[i];
+			start = anchors[i] + 1;
+		}
+		bounds[bounds.length - 2] = start;
+		bounds[bounds.length - 1] = to;
+		return bounds;
+	}
+
+	/**
+	 * Finds the lines that occur exactly once in {@code a[aLo, aHi)} and once in {@code b[bLo, bHi)},
+	 * and keeps the longest sequence of them that is in the same order on both sides.
+	 *
+	 * @return The anchor lines of both sides, in ascending order
+	 */
+	private static int[][] anchors(Lines a, int aLo, int aHi, Lines b, int bLo, int bHi) {
+		long[] aUnique = uniqueLines(a, aLo, aHi);
+		long[] bUnique = uniqueLines(b, bLo, bHi);
+
+		// Both are sorted by hash, so the common lines are found by merging them.
+		long[] pairs = new long[Math.min(aUnique.length, bUnique.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < aUnique.length && j < bUnique.length; ) {
+			int aHash = (int) (aUnique[i] >> 32);
+			int bHash = (int) (bUnique[j] >> 32);
+			if (aHash < bHash) {
+				i++;
+			} else if (aHash > bHash) {
+				j++;
+			} else {
+				int aLine = (int) aUnique[i++];
+				int bLine = (int) bUnique[j++];
+				if (a.lineEquals(aLine, b, bLine)) {
+					pairs[count++] = (long) aLine << 32 | bLine;
+				}
+			}
+		}
+		Arrays.sort(pairs, 0, count);
+
+		// Longest increasing subsequence of the new lines, in the order of the old lines.
+		int[] tails = new int[count];
+		int[] previous = new int[count];
+		int length = 0;
+		for (int i = 0; i < count; i++) {
+			int line = (int) pairs[i];
+			int low = 0;
+			int high = length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if ((int) pairs[tails[mid]] < line) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			previous[i] = low > 0 ? tails[low - 1] : -1;
+			tails[low] = i;
+			if (low == length) {
+				length++;
+			}
+		}
+
+		int[] oldAnchors = new int[length];
+		int[] newAnchors = new int[length];
+		for (int i = length - 1, pair = length > 0 ? tails[length - 1] : -1; i >= 0; i--, pair = previous[pair]) {
+			oldAnchors[i] = (int) (pairs[pair] >> 32);
+			newAnchors[i] = (int) pairs[pair];
+		}
+		return new int[][]{oldAnchors, newAnchors};
+	}
+
+	/**
+	 * Returns the lines of {@code lines[lo, hi)} whose hash occurs only once there, as the hash in
+	 * the upper and the line in the lower half of each value, sorted by hash.
+	 */
+	private static long[] uniqueLines(Lines lines, int lo, int hi) {
+		long[] keys = new long[hi - lo];
+		for (int line = lo; line < hi; line++) {
+			keys[line - lo] = (long) lines.hash(line) << 32 | line;
+		}
+		Arrays.sort(keys);
+
+		int count = 0;
+		for (int i = 0; i < keys.length; i++) {
+			int hash = (int) (keys[i] >> 32);
+			boolean unique = (i == 0 || (int) (keys[i - 1] >> 32) != hash)
+				&& (i == keys.length - 1 || (int) (keys[i + 1] >> 32) != hash);
+			if (unique) {
+				keys[count++] = keys[i];
+			}
+		}
+		return Arrays.copyOf(keys, count);
+	}
+
+	/**
+	 * Diffs {@code a[aLo, aHi)} against {@code b[bLo, bHi)}, reporting the whole segment as one
+	 * replaced block if it differs in more than {@link #MAX_EDIT_DISTANCE} lines.
+	 */
+	private static void diffSegment(Lines a, int aLo, int aHi, Lines b, int bLo, int bHi, List<Hunk> out) {
+		int start = out.size();
+		if (!compare(a, aLo, aHi, b, bLo, bHi, MAX_EDIT_DISTANCE, out)) {
+			out.subList(start, out.size()).clear();
+			add(out, new Hunk(aLo, aHi, bLo, bHi));
+		}
+	}
+
+	/**
+	 * Myers' linear-space refinement: finds the middle snake of an optimal path, then recurses on
+	 * the parts before and after it. Only two diagonal frontiers are kept, so memory stays linear
+	 * in the input no matter how many lines differ.
+	 *
+	 * @return false if the segment differs in more than {@code limit} lines
+	 */
+	private static boolean compare(Lines a, int aLo, int aHi, Lines b, int bLo, int bHi, int limit, List<Hunk> out) {
+		while (aLo < aHi && bLo < bHi && a.lineEquals(aLo, b, bLo)) {
+			aLo++;
+			bLo++;
+		}
+		while (aLo < aHi && bLo < bHi && a.lineEquals(aHi - 1, b, bHi - 1)) {
+			aHi--;
+			bHi--;
+		}
+		if (aLo == aHi || bLo == bHi) {
+			if (aLo < aHi || bLo < bHi) {
+				add(out, new Hunk(aLo, aHi, bLo, bHi));
+			}
+			return true;
+		}
+
+		int[] snake = middleSnake(a, aLo, aHi, b, bLo, bHi, limit);
+		if (snake == null) {
+			return false;
+		}
+		return compare(a, aLo, snake[0], b, bLo, snake[1], limit, out)
+			&& compare(a, snake[2], aHi, b, snake[3], bHi, limit, out);
+	}
+
+	/**
+	 * Searches from both ends at once until the paths overlap. Both ranges are non-empty and start
+	 * and end with a differing line.
+	 *
+	 * @return The start and end of the middle snake as {@code {x, y, u, v}}, or null if more than
+	 * {@code limit} lines differ
+	 */
+	private static int[] middleSnake(Lines a, int aLo, int aHi, Lines b, int bLo, int bHi, int limit) {
+		int n = aHi - aLo;
+		int m = bHi - bLo;
+		int delta = n - m;
+		boolean odd = (delta & 1) != 0;
+		int max = Math.min((n + m + 1) / 2, (limit + 1) / 2);
+		int offset = max + 1;
+		// The reverse frontier is indexed by the same diagonals, which are centered on delta.
+		int reverseOffset = offset - delta;
+		int[] forward = new int[2 * max + 3];
+		int[] reverse = new int[2 * max + 3];
+		forward[offset + 1] = 0;
+		reverse[reverseOffset + delta - 1] = n;
+
+		for (int d = 0; d <= max; d++) {
+			for (int k = -d; k <= d; k += 2) {
+				int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+					? forward[offset + k + 1]
+					: forward[offset + k - 1] + 1;
+				int y = x - k;
+				int startX = x;
+				int startY = y;
+				while (x < n && y < m && a.lineEquals(aLo + x, b, bLo + y)) {
+					x++;
+					y++;
+				}
+				forward[offset + k] = x;
+				if (odd && k >= delta - (d - 1) && k <= delta + (d - 1) && x >= reverse[reverseOffset + k]) {
+					return new int[]{aLo + startX, bLo + startY, aLo + x, bLo + y};
+				}
+			}
+
+			for (int k = -d; k <= d; k += 2) {
+				int diagonal = k + delta;
+				int x = k == d || (k != -d && reverse[reverseOffset + diagonal - 1] < reverse[reverseOffset + diagonal + 1])
+					? reverse[reverseOffset + diagonal - 1]
+					: reverse[reverseOffset + diagonal + 1] - 1;
+				int y = x - diagonal;
+				int endX = x;
+				int endY = y;
+				while (x > 0 && y > 0 && a.lineEquals(aLo + x - 1, b, bLo + y - 1)) {
+					x--;
+					y--;
+				}
+				reverse[reverseOffset + diagonal] = x;
+				if (!odd && diagonal >= -d && diagonal <= d && x <= forward[offset + diagonal]) {
+					return new int[]{aLo + x, bLo + y, aLo + endX, bLo + endY};
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Appends a hunk, merging it into the previous one if they touch.
+	 */
+	private static void add(List<Hunk> out, Hunk hunk) {
+		if (!out.isEmpty()) {
+			Hunk last = out.getLast();
+			if (last.oldEnd() == hunk.oldStart() && last.newEnd() == hunk.newStart()) {
+				out.set(out.size() - 1, new Hunk(last.oldStart(), hunk.oldEnd(), last.newStart(), hunk.newEnd()));
+				return;
+			}
+		}
+		out.add(hunk);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+/**
+ * Represents the line ending style of a text file.
+ */
+public enum LineSeparator {
+	LF("LF", "\n"),
+	CRLF("CRLF", "\r\n"),
+	CR("CR", "\r"),
+	MIXED("Mixed", "\n");
+
+	private final String displayName;
+	private final String separator;
+
+	LineSeparator(String displayName, String separator) {
+		this.displayName = displayName;
+		this.separator = separator;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	/**
+	 * Gets the characters written for a line break in this style.
+	 * Mixed files are written with LF.
+	 *
+	 * @return The separator characters
+	 */
+	public String getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Picks the style from the number of line breaks of each kind.
+	 * Files without any line break default to the platform separator.
+	 *
+	 * @param lf   Number of lone LF breaks
+	 * @param crlf Number of CRLF breaks
+	 * @param cr   Number of lone CR breaks
+	 * @return The line separator style
+	 */
+	public static LineSeparator fromCounts(long lf, long crlf, long cr) {
+		int kinds = (lf > 0 ? 1 : 0) + (crlf > 0 ? 1 : 0) + (cr > 0 ? 1 : 0);
+		if (kinds == 0) {
+			return System.lineSeparator().equals("\r\n") ? CRLF : LF;
+		}
+		if (kinds > 1) {
+			return MIXED;
+		}
+		return crlf > 0 ? CRLF : cr > 0 ? CR : LF;
+	}
+}
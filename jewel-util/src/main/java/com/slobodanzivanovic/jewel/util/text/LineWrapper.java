@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Finds where a line of text is broken into rows of a given width.
+ * <p>
+ * Rows break after the last space or tab that fits, and inside a word only when the word alone is
+ * wider than a row. Whitespace at the end of a row is allowed to overhang the width, so a row never
+ * starts with the spaces that separated it from the previous one. Every character is measured once,
+ * plus once more for the part of a word that moves to the next row, so wrapping is linear in the
+ * length of the line and needs no access to a font or a component.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class LineWrapper {
+
+	/**
+	 * The breaks of a line that fits into a single row.
+	 */
+	public static final int[] NO_BREAKS = new int[0];
+
+	private LineWrapper() {
+	}
+
+	/**
+	 * Computes the row breaks of one line.
+	 *
+	 * @param text      The text containing the line
+	 * @param start     Start of the line in {@code text}
+	 * @param end       End of the line in {@code text}, exclusive and without the line separator
+	 * @param widths    The advance of each character; only called for characters other than tabs
+	 * @param tabWidth  Distance between tab stops, measured from the start of each row
+	 * @param wrapWidth Width of a row; at least one character is placed on each row
+	 * @return The offsets, relative to {@code start}, at which the second and later rows begin, in
+	 * ascending order; {@link #NO_BREAKS} if the line fits into one row
+	 */
+	public static int[] breaks(CharSequence text, int start, int end, IntUnaryOperator widths, int tabWidth, int wrapWidth) {
+		int[] breaks = NO_BREAKS;
+		int count = 0;
+		int rowStart = start;
+		int afterSpace = -1;
+		int x = 0;
+
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == '\t' || c == ' ') {
+				x += c == '\t' ? tabAdvance(x, tabWidth) : widths.applyAsInt(c);
+				afterSpace = i + 1;
+				continue;
+			}
+
+			int advance = widths.applyAsInt(c);
+			while (x + advance > wrapWidth && i > rowStart) {
+				rowStart = afterSpace > rowStart ? afterSpace : i;
+				afterSpace = -1;
+				if (count == breaks.length) {
+					breaks = Arrays.copyOf(breaks, Math.max(4, count * 2));
+				}
+				breaks[count++] = rowStart - start;
+				x = measure(text, rowStart, i, widths);
+			}
+			x += advance;
+		}
+		return count == breaks.length ? breaks : Arrays.copyOf(breaks, count);
+	}
+
+	/**
+	 * Returns the index of the row that contains an offset of the line.
+	 *
+	 * @param breaks The breaks of the line as returned by {@link #breaks}
+	 * @param offset An offset relative to the start of the line
+	 * @return The row, starting at 0
+	 */
+	public static int rowOf(int[] breaks, int offset) {
+		int row = Arrays.binarySearch(breaks, offset);
+		return row >= 0 ? row + 1 : -row - 1;
+	}
+
+	private static int tabAdvance(int x, int tabWidth) {
+		return tabWidth <= 0 ? 0 : (x / tabWidth + 1) * tabWidth - x;
+	}
+
+	/**
+	 * Measures the start of a row. The row has no whitespace before {@code end}, or it would have
+	 * been broken there.
+	 */
+	private static int measure(CharSequence text, int start, int end, IntUnaryOperator widths) {
+		int width = 0;
+		for (int i = start; i < end; i++) {
+			width += widths.applyAsInt(text.charAt(i));
+		}
+		return width;
+	}
+}
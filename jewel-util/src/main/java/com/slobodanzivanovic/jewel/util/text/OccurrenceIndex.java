@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * The whole-word occurrences of a few recently used words in a text.
+ * <p>
+ * Words are added lazily, one full scan each, and the least recently used word is dropped once
+ * there are more than {@link #MAX_WORDS}. The offsets of a word are kept sorted in an array with a
+ * gap at the last edit: offsets before the gap are stored as they are, offsets after it relative to
+ * the end of the text. An edit then only moves the gap to its position, so offsets after it follow
+ * the edit without being touched, and typing in one place costs O(log n) per word. Occurrences
+ * around the edit are dropped and found again with {@link #rescan}.
+ * </p>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class OccurrenceIndex {
+	/**
+	 * The number of words whose occurrences are kept.
+	 */
+	public static final int MAX_WORDS = 16;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final class Offsets {
+		private int[] values;
+		private int gapStart;
+		private int gapEnd;
+
+		private Offsets(int[] offsets) {
+			values = offsets;
+			gapStart = offsets.length;
+			gapEnd = offsets.length;
+		}
+
+		private int size() {
+			return values.length - (gapEnd - gapStart);
+		}
+
+		private int get(int index, int length) {
+			return index < gapStart ? values[index] : values[index + gapEnd - gapStart] + length;
+		}
+
+		/**
+		 * Returns the index of the first offset at or after {@code offset}.
+		 */
+		private int lowerBound(int offset, int length) {
+			int low = 0;
+			int high = size();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (get(middle, length) < offset) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		private void moveGap(int index, int length) {
+			while (gapStart > index) {
+				values[--gapEnd] = values[--gapStart] - length;
+			}
+			while (gapStart < index) {
+				values[gapStart++] = values[gapEnd++] + length;
+			}
+		}
+
+		/**
+		 * Removes offsets right after the gap.
+		 */
+		private void delete(int count) {
+			gapEnd += count;
+		}
+
+		/**
+		 * Adds an offset at the gap.
+		 */
+		private void insert(int offset) {
+			if (gapStart == gapEnd) {
+				int[] grown = new int[Math.max(INITIAL_CAPACITY, values.length * 2)];
+				int tail = values.length - gapEnd;
+				System.arraycopy(values, 0, grown, 0, gapStart);
+				System.arraycopy(values, gapEnd, grown, grown.length - tail, tail);
+				gapEnd = grown.length - tail;
+				values = grown;
+			}
+			values[gapStart++] = offset;
+		}
+	}
+
+	private final Map<String, Offsets> words = new LinkedHashMap<>(MAX_WORDS, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Offsets> eldest) {
+			return size() > MAX_WORDS;
+		}
+	};
+	private int length;
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @param length The length of the text
+	 */
+	public OccurrenceIndex(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * Returns whether a character can be part of a word.
+	 *
+	 * @param c The character
+	 * @return True for letters, digits and underscores
+	 */
+	public static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	/**
+	 * Finds every whole-word occurrence of a word. Safe to call off the EDT; the text is searched in
+	 * place, without copying it.
+	 *
+	 * @param text The text to scan
+	 * @param word The word to find
+	 * @return The sorted offsets of the occurrences
+	 */
+	public static int[] scan(Rope text, String word) {
+		int[] offsets = new int[INITIAL_CAPACITY];
+		int count = 0;
+		int wordLength = word.length();
+		for (int match = text.indexOf(word, 0); match >= 0; match = text.indexOf(word, match + 1)) {
+			boolean wholeWord = (match == 0 || !isWordChar(text.charAt(match - 1)))
+				&& (match + wordLength == text.length() || !isWordChar(text.charAt(match + wordLength)));
+			if (wholeWord) {
+				if (count == offsets.length) {
+					offsets = Arrays.copyOf(offsets, count * 2);
+				}
+				offsets[count++] = match;
+			}
+		}
+		return Arrays.copyOf(offsets, count);
+	}
+
+	/**
+	 * Returns whether the occurrences of a word are known.
+	 *
+	 * @param word The word
+	 * @return True if the word was added and not dropped since
+	 */
+	public boolean contains(String word) {
+		return words.containsKey(word);
+	}
+
+	/**
+	 * Adds the occurrences of a word, as found by {@link #scan} in the current text.
+	 *
+	 * @param word    The word
+	 * @param offsets The sorted offsets of its occurrences; the array is kept by the index
+	 */
+	public void put(String word, int[] offsets) {
+		words.put(word, new Offsets(offsets));
+	}
+
+	/**
+	 * Returns the number of occurrences of a word.
+	 *
+	 * @param word The word
+	 * @return The number of occurrences, or -1 if the word is not in the index
+	 */
+	public int count(String word) {
+		Offsets offsets = words.get(word);
+		return offsets == null ? -1 : offsets.size();
+	}
+
+	/**
+	 * Visits the occurrences of a word that start within a range, in order.
+	 *
+	 * @param word    The word
+	 * @param from    The start of the range
+	 * @param to      The end of the range, exclusive
+	 * @param visitor Receives the offset of each occurrence
+	 */
+	public void forEach(String word, int from, int to, IntConsumer visitor) {
+		Offsets offsets = words.get(word);
+		if (offsets == null) {
+			return;
+		}
+		int size = offsets.size();
+		for (int i = offsets.lowerBound(from, length); i < size; i++) {
+			int offset = offsets.get(i, length);
+			if (offset >= to) {
+				break;
+			}
+			visitor.accept(offset);
+		}
+	}
+
+	/**
+	 * Returns how much text on either side of an edit {@link #rescan} needs to see.
+	 *
+	 * @return One more than the length of the longest word, or 0 if the index is empty
+	 */
+	public int margin() {
+		int margin = 0;
+		for (String word : words.keySet()) {
+			margin = Math.max(margin, word.length() + 1);
+		}
+		return margin;
+	}
+
+	/**
+	 * Updates the index for inserted text. Call {@link #rescan} afterwards.
+	 *
+	 * @param offset The offset of the insertion
+	 * @param length The length of the inserted text
+	 */
+	public void insertUpdate(int offset, int length) {
+		for (Offsets offsets : words.values()) {
+			offsets.moveGap(offsets.lowerBound(offset, this.length), this.length);
+		}
+		this.length += length;
+	}
+
+	/**
+	 * Updates the index for removed text. Call {@link #rescan} afterwards.
+	 *
+	 * @param offset The offset of the removal
+	 * @param length The length of the removed text
+	 */
+	public void removeUpdate(int offset, int length) {
+		for (Offsets offsets : words.values()) {
+			int first = offsets.lowerBound(offset, this.length);
+			int end = offsets.lowerBound(offset + length, this.length);
+			offsets.moveGap(first, this.length);
+			offsets.delete(end - first);
+		}
+		this.length -= length;
+	}
+
+	/**
+	 * Finds the occurrences around an edit again.
+	 *
+	 * @param from        The start of the edited range
+	 * @param to          The end of the edited range, equal to {@code from} after a removal
+	 * @param window      The text from at least {@link #margin()} before {@code from} to at least
+	 *                    {@link #margin()} after {@code to}, or to the start and end of the text
+	 * @param windowStart The offset of the window in the text
+	 */
+	public void rescan(int from, int to, CharSequence window, int windowStart) {
+		int windowEnd = windowStart + window.length();
+		for (Map.Entry<String, Offsets> entry : words.entrySet()) {
+			String word = entry.getKey();
+			Offsets offsets = entry.getValue();
+			int wordLength = word.length();
+
+			// Any occurrence touching the edit, including the characters right before and after it.
+			int first = from - wordLength;
+			int last = to;
+			int start = offsets.lowerBound(first, length);
+			int end = offsets.lowerBound(last + 1, length);
+			offsets.moveGap(start, length);
+			offsets.delete(end - start);
+
+			char head = word.charAt(0);
+			int scanEnd = Math.min(last, windowEnd - wordLength);
+			for (int offset = Math.max(first, windowStart); offset <= scanEnd; offset++) {
+				int i = offset - windowStart;
+				if (window.charAt(i) == head && matches(window, i, word)
+					&& (i == 0 || !isWordChar(window.charAt(i - 1)))
+					&& (i + wordLength == window.length() || !isWordChar(window.charAt(i + wordLength)))) {
+					offsets.insert(offset);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets every word, e.g. after an edit too large to rescan.
+	 *
+	 * @param length The length of the text
+	 */
+	public void clear(int length) {
+		words.clear();
+		this.length = length;
+	}
+
+	private static boolean matches(CharSequence window, int index, String word) {
+		for (int i = 1; i < word.length(); i++) {
+			if (window.charAt(index + i) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,733 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Lightweight structural parsers that list the outline of a text: object keys in JSON, elements in
+ * XML and HTML, headings in Markdown and types and methods in Java.
+ * <p>
+ * The parsers never fail. They scan the text once, skip over strings and comments, and report
+ * whatever structure they recognise, so a half-typed document still has an outline. Every
+ * {@link Item} can also be parsed again on its own with {@link #reparse}, which tells whether an
+ * edit inside it left its boundaries intact. If it did, only that item's subtree needs to change.
+ * At most {@link #MAX_ITEMS} items are reported per call.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class OutlineParser {
+	/**
+	 * The largest number of items reported by one call.
+	 */
+	public static final int MAX_ITEMS = 100_000;
+
+	private static final int MAX_NAME_LENGTH = 120;
+	private static final Set<String> VOID_ELEMENTS = Set.of("area", "base", "br", "col", "embed", "hr", "img",
+		"input", "link", "meta", "source", "track", "wbr");
+	private static final Set<String> TYPE_KEYWORDS = Set.of("class", "interface", "enum", "record");
+	private static final Set<String> STATEMENT_KEYWORDS = Set.of("if", "for", "while", "switch", "catch",
+		"synchronized", "try", "do", "else", "return", "new", "throw", "assert");
+
+	private OutlineParser() {
+	}
+
+	/**
+	 * The languages an outline can be parsed for.
+	 */
+	public enum Language {
+		JSON, XML, MARKDOWN, JAVA;
+
+		/**
+		 * Picks the language by file extension.
+		 *
+		 * @param fileName The name of the file
+		 * @return The language, or null if the file has no outline
+		 */
+		public static Language forFileName(String fileName) {
+			int dot = fileName.lastIndexOf('.');
+			String extension = dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+			return switch (extension) {
+				case "json" -> JSON;
+				case "xml", "xsd", "xsl", "xslt", "svg", "html", "htm", "xhtml", "pom" -> XML;
+				case "md", "markdown" -> MARKDOWN;
+				case "java" -> JAVA;
+				default -> null;
+			};
+		}
+	}
+
+	public enum Kind {
+		KEY, ELEMENT, HEADING, TYPE, METHOD
+	}
+
+	/**
+	 * An entry of the outline.
+	 *
+	 * @param kind     What the item is
+	 * @param name     The text shown for the item
+	 * @param level    The level of a heading, 0 for other items
+	 * @param start    Offset of the first character of the item
+	 * @param end      Offset just past the item
+	 * @param children The items nested in this one, ordered by start offset
+	 */
+	public record Item(Kind kind, String name, int level, int start, int end, List<Item> children) {
+	}
+
+	/**
+	 * Parses the outline of a text.
+	 *
+	 * @param language The language of the text
+	 * @param text     The text to parse
+	 * @return The top-level items, ordered by start offset
+	 */
+	public static List<Item> parse(Language language, CharSequence text) {
+		Scan scan = new Scan(text);
+		return switch (language) {
+			case JSON -> scan.json();
+			case XML -> scan.xml();
+			case MARKDOWN -> scan.markdown();
+			case JAVA -> scan.java(false);
+		};
+	}
+
+	/**
+	 * Parses one item again after its text was edited.
+	 *
+	 * @param language The language of the text
+	 * @param item     The item as it was parsed before the edit; its offsets are not used
+	 * @param text     The current text of the item, from its start to its end
+	 * @return The item with offsets relative to {@code text}, or null if the text no longer forms
+	 * exactly one closed item of the same kind, and the parent has to be parsed instead
+	 */
+	public static Item reparse(Language language, Item item, CharSequence text) {
+		Scan scan = new Scan(text);
+		List<Item> items = switch (language) {
+			case JSON -> scan.jsonItem(item.name().startsWith("[") ? item.name() : null);
+			case XML -> scan.xml();
+			case MARKDOWN -> scan.markdown();
+			case JAVA -> scan.java(item.kind() == Kind.METHOD);
+		};
+		if (scan.unbalanced || items.size() != 1) {
+			return null;
+		}
+		Item parsed = items.getFirst();
+		boolean same = parsed.kind() == item.kind() && parsed.level() == item.level()
+			&& parsed.start() == 0 && parsed.end() == text.length();
+		return same ? parsed : null;
+	}
+
+	/**
+	 * The state of one parse.
+	 */
+	private static final class Scan {
+		private final CharSequence text;
+		private final int length;
+		private int pos;
+		private int itemCount;
+		private boolean unbalanced;
+
+		Scan(CharSequence text) {
+			this.text = text;
+			this.length = text.length();
+		}
+
+		private void add(List<Item> items, Kind kind, String name, int level, int start, int end, List<Item> children) {
+			if (itemCount < MAX_ITEMS) {
+				itemCount++;
+				items.add(new Item(kind, name, level, start, end, children));
+			}
+		}
+
+		private static String label(CharSequence text, int start, int end) {
+			String name = text.subSequence(start, Math.min(end, start + MAX_NAME_LENGTH)).toString().strip();
+			return name.isEmpty() ? "\"\"" : name;
+		}
+
+		private boolean startsWith(int offset, String prefix) {
+			if (offset + prefix.length() > length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length(); i++) {
+				if (text.charAt(offset + i) != prefix.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int skipUntil(int from, String terminator) {
+			for (int i = from; i + terminator.length() <= length; i++) {
+				if (startsWith(i, terminator)) {
+					return i + terminator.length();
+				}
+			}
+			unbalanced = true;
+			return length;
+		}
+
+		private void skipWhitespace() {
+			while (pos < length && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		// JSON
+
+		List<Item> json() {
+			List<Item> items = new ArrayList<>();
+			jsonValue(items);
+			return items;
+		}
+
+		/**
+		 * Parses a single member, or a single array element if {@code elementName} is set.
+		 */
+		List<Item> jsonItem(String elementName) {
+			List<Item> items = new ArrayList<>();
+			List<Item> children = new ArrayList<>();
+			if (elementName != null) {
+				char first = length > 0 ? text.charAt(0) : ' ';
+				jsonValue(children);
+				if (first == '{' || first == '[') {
+					add(items, Kind.KEY, elementName, 0, 0, pos, children);
+				}
+			} else if (length > 0 && text.charAt(0) == '"') {
+				String key = jsonString();
+				skipWhitespace();
+				if (pos < length && text.charAt(pos) == ':') {
+					pos++;
+				}
+				jsonValue(children);
+				add(items, Kind.KEY, key, 0, 0, pos, children);
+			}
+			if (pos != length) {
+				unbalanced = true;
+			}
+			return items;
+		}
+
+		private void jsonValue(List<Item> children) {
+			skipWhitespace();
+			if (pos >= length) {
+				return;
+			}
+			char c = text.charAt(pos);
+			if (c == '{') {
+				pos++;
+				jsonMembers(children);
+			} else if (c == '[') {
+				pos++;
+				jsonElements(children);
+			} else if (c == '"') {
+				jsonString();
+			} else {
+				while (pos < length && ",]}:".indexOf(text.charAt(pos)) < 0 && !Character.isWhitespace(text.charAt(pos))) {
+					pos++;
+				}
+			}
+		}
+
+		private void jsonMembers(List<Item> items) {
+			while (true) {
+				skipWhitespace();
+				if (pos >= length) {
+					unbalanced = true;
+					return;
+				}
+				char c = text.charAt(pos);
+				if (c == '}') {
+					pos++;
+					return;
+				}
+				if (c == ']') {
+					// Mismatched; leave it to the enclosing array.
+					unbalanced = true;
+					return;
+				}
+				if (c != '"') {
+					pos++;
+					continue;
+				}
+				int start = pos;
+				String key = jsonString();
+				skipWhitespace();
+				if (pos < length && text.charAt(pos) == ':') {
+					pos++;
+				}
+				List<Item> children = new ArrayList<>();
+				jsonValue(children);
+				add(items, Kind.KEY, key, 0, start, pos, children);
+			}
+		}
+
+		private void jsonElements(List<Item> items) {
+			int index = 0;
+			while (true) {
+				skipWhitespace();
+				if (pos >= length) {
+					unbalanced = true;
+					return;
+				}
+				char c = text.charAt(pos);
+				if (c == ']') {
+					pos++;
+					return;
+				}
+				if (c == '}') {
+					unbalanced = true;
+					return;
+				}
+				if (c == ',') {
+					pos++;
+					index++;
+					continue;
+				}
+				int start = pos;
+				List<Item> children = new ArrayList<>();
+				jsonValue(children);
+				if (c == '{' || c == '[') {
+					add(items, Kind.KEY, "[" + index + "]", 0, start, pos, children);
+				} else if (pos == start) {
+					pos++;
+				}
+			}
+		}
+
+		/**
+		 * Skips the string at {@link #pos} and returns its content as shown in the outline.
+		 */
+		private String jsonString() {
+			int start = ++pos;
+			while (pos < length) {
+				char c = text.charAt(pos);
+				if (c == '\\') {
+					pos += 2;
+				} else if (c == '"' || c == '\n') {
+					break;
+				} else {
+					pos++;
+				}
+			}
+			int end = Math.min(pos, length);
+			if (pos < length && text.charAt(pos) == '"') {
+				pos++;
+			} else {
+				unbalanced = true;
+			}
+			return label(text, start, end);
+		}
+
+		// XML
+
+		private record OpenElement(String tag, String name, int start, List<Item> children) {
+		}
+
+		List<Item> xml() {
+			List<Item> items = new ArrayList<>();
+			List<OpenElement> open = new ArrayList<>();
+			while (pos < length) {
+				if (text.charAt(pos) != '<') {
+					pos++;
+					continue;
+				}
+				int start = pos;
+				if (startsWith(pos, "<!--")) {
+					pos = skipUntil(pos + 4, "-->");
+				} else if (startsWith(pos, "<![CDATA[")) {
+					pos = skipUntil(pos + 9, "]]>");
+				} else if (startsWith(pos, "<?")) {
+					pos = skipUntil(pos + 2, "?>");
+				} else if (startsWith(pos, "<!")) {
+					pos = skipUntil(pos + 2, ">");
+				} else {
+					pos = skipTag(pos);
+					boolean closing = start + 1 < length && text.charAt(start + 1) == '/';
+					String tag = tagName(closing ? start + 2 : start + 1, pos);
+					if (tag.isEmpty()) {
+						continue;
+					}
+					if (closing) {
+						closeElement(open, items, tag);
+					} else if (text.charAt(pos - 1) == '>' && text.charAt(pos - 2) == '/'
+						|| VOID_ELEMENTS.contains(tag.toLowerCase(Locale.ROOT))) {
+						add(children(open, items), Kind.ELEMENT, elementName(tag, start, pos), 0, start, pos, List.of());
+					} else {
+						open.add(new OpenElement(tag, elementName(tag, start, pos), start, new ArrayList<>()));
+					}
+				}
+			}
+			if (!open.isEmpty()) {
+				unbalanced = true;
+				while (!open.isEmpty()) {
+					OpenElement element = open.removeLast();
+					add(children(open, items), Kind.ELEMENT, element.name(), 0, element.start(), length, element.children());
+				}
+			}
+			return items;
+		}
+
+		private void closeElement(List<OpenElement> open, List<Item> items, String tag) {
+			int index = open.size() - 1;
+			while (index >= 0 && !open.get(index).tag().equals(tag)) {
+				index--;
+			}
+			if (index < 0) {
+				unbalanced = true;
+				return;
+			}
+			while (open.size() > index) {
+				OpenElement element = open.removeLast();
+				if (open.size() > index) {
+					// Closed implicitly by an outer end tag.
+					unbalanced = true;
+				}
+				int end = open.size() == index ? pos : pos - tag.length() - 3;
+				add(children(open, items), Kind.ELEMENT, element.name(), 0, element.start(), end, element.children());
+			}
+		}
+
+		private static List<Item> children(List<OpenElement> open, List<Item> items) {
+			return open.isEmpty() ? items : open.getLast().children();
+		}
+
+		private int skipTag(int start) {
+			char quote = 0;
+			for (int i = start + 1; i < length; i++) {
+				char c = text.charAt(i);
+				if (quote != 0) {
+					if (c == quote) {
+						quote = 0;
+					}
+				} else if (c == '"' || c == '\'') {
+					quote = c;
+				} else if (c == '>') {
+					return i + 1;
+				}
+			}
+			unbalanced = true;
+			return length;
+		}
+
+		private String tagName(int start, int end) {
+			int i = start;
+			while (i < end) {
+				char c = text.charAt(i);
+				if (Character.isWhitespace(c) || c == '>' || c == '/') {
+					break;
+				}
+				i++;
+			}
+			return text.subSequence(start, i).toString();
+		}
+
+		/**
+		 * Returns the tag name, followed by the {@code id} attribute if the tag has one.
+		 */
+		private String elementName(String tag, int start, int end) {
+			for (int i = start + tag.length() + 1; i + 4 < end; i++) {
+				if (Character.isWhitespace(text.charAt(i - 1)) && startsWith(i, "id=")) {
+					char quote = text.charAt(i + 3);
+					if (quote == '"' || quote == '\'') {
+						int close = i + 4;
+						while (close < end && text.charAt(close) != quote) {
+							close++;
+						}
+						return tag + "#" + label(text, i + 4, close);
+					}
+				}
+			}
+			return tag;
+		}
+
+		// Markdown
+
+		private record OpenHeading(String name, int level, int start, List<Item> children) {
+		}
+
+		List<Item> markdown() {
+			List<Item> items = new ArrayList<>();
+			List<OpenHeading> open = new ArrayList<>();
+			char fence = 0;
+			int lineStart = 0;
+			while (lineStart < length) {
+				int lineEnd = lineStart;
+				while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+					lineEnd++;
+				}
+				int i = lineStart;
+				while (i < lineEnd && i - lineStart < 3 && text.charAt(i) == ' ') {
+					i++;
+				}
+				if (startsWith(i, "```") || startsWith(i, "~~~")) {
+					char c = text.charAt(i);
+					fence = fence == 0 ? c : fence == c ? 0 : fence;
+				} else if (fence == 0) {
+					int level = 0;
+					while (i + level < lineEnd && text.charAt(i + level) == '#') {
+						level++;
+					}
+					boolean heading = level >= 1 && level <= 6
+						&& (i + level == lineEnd || Character.isWhitespace(text.charAt(i + level)));
+					if (heading) {
+						while (!open.isEmpty() && open.getLast().level() >= level) {
+							closeHeading(open, items, lineStart);
+						}
+						int nameEnd = lineEnd;
+						while (nameEnd > i + level && (text.charAt(nameEnd - 1) == '#' || Character.isWhitespace(text.charAt(nameEnd - 1)))) {
+							nameEnd--;
+						}
+						open.add(new OpenHeading(label(text, i + level, nameEnd), level, lineStart, new ArrayList<>()));
+					}
+				}
+				lineStart = lineEnd + 1;
+			}
+			if (fence != 0) {
+				unbalanced = true;
+			}
+			while (!open.isEmpty()) {
+				closeHeading(open, items, length);
+			}
+			return items;
+		}
+
+		private void closeHeading(List<OpenHeading> open, List<Item> items, int end) {
+			OpenHeading heading = open.removeLast();
+			List<Item> parent = open.isEmpty() ? items : open.getLast().children();
+			add(parent, Kind.HEADING, heading.name(), heading.level(), heading.start(), end, heading.children());
+		}
+
+		// Java
+
+		/**
+		 * A pair of braces. Only types and methods become items; other blocks are only tracked so
+		 * that their braces are matched.
+		 */
+		private static final class Frame {
+			private final Kind kind;
+			private final String name;
+			private final int start;
+			private final List<Item> children = new ArrayList<>();
+			private final Header outer;
+			private boolean enumConstants;
+
+			Frame(Kind kind, String name, int start, Header outer) {
+				this.kind = kind;
+				this.name = name;
+				this.start = start;
+				this.outer = outer;
+			}
+		}
+
+		/**
+		 * What is known about the declaration or statement being scanned.
+		 */
+		private static final class Header {
+			private int start = -1;
+			private String typeKeyword;
+			private String typeName;
+			private boolean expectTypeName;
+			private String methodName;
+			private String lastIdentifier;
+			private boolean afterDot;
+			private boolean assignment;
+			private int parenDepth;
+		}
+
+		List<Item> java(boolean typeBody) {
+			List<Frame> frames = new ArrayList<>();
+			Frame root = new Frame(typeBody ? Kind.TYPE : null, null, 0, null);
+			frames.add(root);
+			Header header = new Header();
+
+			while (pos < length) {
+				char c = text.charAt(pos);
+				if (Character.isWhitespace(c)) {
+					pos++;
+				} else if (c == '/' && startsWith(pos, "//")) {
+					while (pos < length && text.charAt(pos) != '\n') {
+						pos++;
+					}
+				} else if (c == '/' && startsWith(pos, "/*")) {
+					pos = skipUntil(pos + 2, "*/");
+				} else if (c == '"' || c == '\'') {
+					mark(header);
+					header.expectTypeName = false;
+					skipJavaLiteral(c);
+				} else if (c == '@') {
+					mark(header);
+					pos++;
+					skipWhitespace();
+					String name = identifier();
+					if (name.equals("interface")) {
+						header.typeKeyword = "@interface";
+						header.expectTypeName = true;
+					} else {
+						skipWhitespace();
+						if (pos < length && text.charAt(pos) == '(') {
+							skipParentheses();
+						}
+					}
+				} else if (Character.isJavaIdentifierStart(c)) {
+					mark(header);
+					String name = identifier();
+					if (header.expectTypeName) {
+						header.typeName = name;
+						header.expectTypeName = false;
+					} else if (header.parenDepth == 0 && header.typeName == null && !header.afterDot
+						&& TYPE_KEYWORDS.contains(name)) {
+						header.typeKeyword = name;
+						header.expectTypeName = true;
+					}
+					header.lastIdentifier = name;
+					header.afterDot = false;
+				} else if (c == '{') {
+					Frame frame = openFrame(frames.getLast(), header);
+					frames.add(frame);
+					header = new Header();
+					pos++;
+				} else if (c == '}') {
+					if (frames.size() == 1) {
+						unbalanced = true;
+					} else {
+						Frame frame = frames.removeLast();
+						if (frame.kind != null) {
+							add(frames.getLast().children, frame.kind, frame.name, 0, frame.start, pos + 1, frame.children);
+						}
+						header = frame.outer.parenDepth > 0 ? frame.outer : new Header();
+					}
+					pos++;
+				} else if (c == ';' && header.parenDepth == 0) {
+					Frame frame = frames.getLast();
+					if (isMethod(frame, header)) {
+						add(frame.children, Kind.METHOD, header.methodName + "()", 0, header.start, pos + 1, List.of());
+					}
+					frame.enumConstants = false;
+					header = new Header();
+					pos++;
+				} else {
+					mark(header);
+					header.expectTypeName = false;
+					if (c == '.') {
+						header.afterDot = true;
+					} else if (c == '(') {
+						if (header.parenDepth == 0 && header.methodName == null && !header.assignment) {
+							header.methodName = header.lastIdentifier;
+						}
+						header.parenDepth++;
+					} else if (c == ')') {
+						header.parenDepth = Math.max(0, header.parenDepth - 1);
+					} else if (c == '=' && header.parenDepth == 0) {
+						header.assignment = true;
+					} else if (Character.isDigit(c)) {
+						while (pos + 1 < length && (Character.isJavaIdentifierPart(text.charAt(pos + 1)) || text.charAt(pos + 1) == '.')) {
+							pos++;
+						}
+					}
+					pos++;
+				}
+			}
+
+			if (frames.size() > 1) {
+				unbalanced = true;
+				while (frames.size() > 1) {
+					Frame frame = frames.removeLast();
+					if (frame.kind != null) {
+						add(frames.getLast().children, frame.kind, frame.name, 0, frame.start, length, frame.children);
+					}
+				}
+			}
+			return root.children;
+		}
+
+		private Frame openFrame(Frame parent, Header header) {
+			int start = header.start >= 0 ? header.start : pos;
+			if (header.parenDepth == 0 && header.typeName != null) {
+				Frame frame = new Frame(Kind.TYPE, header.typeKeyword + " " + header.typeName, start, header);
+				frame.enumConstants = header.typeKeyword.equals("enum");
+				return frame;
+			}
+			if (header.parenDepth == 0 && isMethod(parent, header)) {
+				return new Frame(Kind.METHOD, header.methodName + "()", start, header);
+			}
+			return new Frame(null, null, start, header);
+		}
+
+		private static boolean isMethod(Frame frame, Header header) {
+			return frame.kind == Kind.TYPE && !frame.enumConstants && header.typeName == null
+				&& header.methodName != null && !header.assignment && !STATEMENT_KEYWORDS.contains(header.methodName);
+		}
+
+		private void mark(Header header) {
+			if (header.start < 0) {
+				header.start = pos;
+			}
+		}
+
+		private String identifier() {
+			int start = pos;
+			while (pos < length && Character.isJavaIdentifierPart(text.charAt(pos))) {
+				pos++;
+			}
+			return text.subSequence(start, pos).toString();
+		}
+
+		private void skipJavaLiteral(char quote) {
+			if (quote == '"' && startsWith(pos, "\"\"\"")) {
+				pos = skipUntil(pos + 3, "\"\"\"");
+				return;
+			}
+			pos++;
+			while (pos < length) {
+				char c = text.charAt(pos);
+				if (c == '\\') {
+					pos += 2;
+				} else if (c == quote) {
+					pos++;
+					return;
+				} else if (c == '\n') {
+					return;
+				} else {
+					pos++;
+				}
+			}
+			pos = Math.min(pos, length);
+		}
+
+		private void skipParentheses() {
+			int depth = 0;
+			while (pos < length) {
+				char c = text.charAt(pos);
+				if (c == '"' || c == '\'') {
+					skipJavaLiteral(c);
+					continue;
+				}
+				if (c == '(') {
+					depth++;
+				} else if (c == ')' && --depth == 0) {
+					pos++;
+					return;
+				}
+				pos++;
+			}
+		}
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.util.Arrays;
+
+/**
+ * An immutable sequence of characters stored as a balanced tree of chunks.
+ * <p>
+ * {@link #insert} and {@link #remove} return a new rope that shares every untouched chunk with the
+ * old one, so an edit costs O(log n) time and space no matter how long the text is. Keeping an old
+ * rope around is therefore a free snapshot of the text, and since nothing is ever modified in place,
+ * a rope can be read from any thread without locking.
+ * </p>
+ * <p>
+ * The tree is an AVL tree whose leaves hold the characters. Small neighbouring leaves are merged
+ * whenever they are joined, so typing one character at a time does not fragment the text.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class Rope implements CharSequence {
+	/**
+	 * The maximum number of characters in one leaf.
+	 */
+	static final int CHUNK_SIZE = 2048;
+
+	public static final Rope EMPTY = new Rope(null);
+
+	private final Node root;
+
+	/**
+	 * The leaf last used by {@link #charAt}, so that sequential reads do not walk the tree. Racy by
+	 * design: a {@link Cursor} is immutable, so a thread sees either an old or a new one.
+	 */
+	private Cursor cursor;
+
+	private Rope(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Receives the characters of a rope one leaf at a time.
+	 */
+	@FunctionalInterface
+	public interface ChunkVisitor {
+		/**
+		 * @param chars The characters of the leaf; must not be modified
+		 * @param from  The first character of the leaf that is part of the visited range
+		 * @param to    The end of the visited part of the leaf, exclusive
+		 * @return Whether to continue with the next leaf
+		 */
+		boolean visit(char[] chars, int from, int to);
+	}
+
+	private static final class Node {
+		final Node left;
+		final Node right;
+		final char[] chars;
+		final int length;
+		final int height;
+
+		Node(char[] chars) {
+			this.left = null;
+			this.right = null;
+			this.chars = chars;
+			this.length = chars.length;
+			this.height = 0;
+		}
+
+		Node(Node left, Node right) {
+			this.left = left;
+			this.right = right;
+			this.chars = null;
+			this.length = left.length + right.length;
+			this.height = Math.max(left.height, right.height) + 1;
+		}
+
+		boolean isLeaf() {
+			return chars != null;
+		}
+	}
+
+	private record Cursor(char[] chars, int start) {
+	}
+
+	/**
+	 * Creates a rope holding a copy of the given text.
+	 *
+	 * @param text The text
+	 * @return The new rope
+	 */
+	public static Rope of(CharSequence text) {
+		return text.isEmpty() ? EMPTY : new Rope(build(text, 0, text.length()));
+	}
+
+	@Override
+	public int length() {
+		return root == null ? 0 : root.length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		Cursor current = cursor;
+		if (current != null && index >= current.start() && index - current.start() < current.chars().length) {
+			return current.chars()[index - current.start()];
+		}
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length());
+		}
+
+		Node node = root;
+		int start = 0;
+		while (!node.isLeaf()) {
+			if (index - start < node.left.length) {
+				node = node.left;
+			} else {
+				start += node.left.length;
+				node = node.right;
+			}
+		}
+		cursor = new Cursor(node.chars, start);
+		return node.chars[index - start];
+	}
+
+	/**
+	 * Returns a rope with {@code text} inserted at {@code offset}.
+	 *
+	 * @param offset The offset to insert at
+	 * @param text   The text to insert
+	 * @return The new rope; this rope is unchanged
+	 * @throws IndexOutOfBoundsException If the offset is outside the rope
+	 */
+	public Rope insert(int offset, CharSequence text) {
+		checkRange(offset, offset);
+		if (text.isEmpty()) {
+			return this;
+		}
+		Node inserted = build(text, 0, text.length());
+		return new Rope(join(join(slice(root, 0, offset), inserted), slice(root, offset, length())));
+	}
+
+	/**
+	 * Returns a rope with {@code other} appended, sharing the leaves of both.
+	 *
+	 * @param other The rope to append
+	 * @return The new rope; this rope is unchanged
+	 */
+	public Rope concat(Rope other) {
+		if (other.root == null) {
+			return this;
+		}
+		return root == null ? other : new Rope(join(root, other.root));
+	}
+
+	/**
+	 * Returns a rope without the characters in {@code [start, end)}.
+	 *
+	 * @param start The start of the range to remove
+	 * @param end   The end of the range to remove, exclusive
+	 * @return The new rope; this rope is unchanged
+	 * @throws IndexOutOfBoundsException If the range is not inside the rope
+	 */
+	public Rope remove(int start, int end) {
+		checkRange(start, end);
+		if (start == end) {
+			return this;
+		}
+		return new Rope(join(slice(root, 0, start), slice(root, end, length())));
+	}
+
+	/**
+	 * Returns the characters in {@code [start, end)} as a rope sharing the leaves of this one.
+	 */
+	@Override
+	public Rope subSequence(int start, int end) {
+		checkRange(start, end);
+		if (start == 0 && end == length()) {
+			return this;
+		}
+		Node sliced = slice(root, start, end);
+		return sliced == null ? EMPTY : new Rope(sliced);
+	}
+
+	/**
+	 * Copies the characters in {@code [start, end)} into an array.
+	 *
+	 * @param start    The start of the range to copy
+	 * @param end      The end of the range to copy, exclusive
+	 * @param dst      The array to copy into
+	 * @param dstBegin The index in {@code dst} of the first copied character
+	 * @throws IndexOutOfBoundsException If the range is not inside the rope or does not fit into {@code dst}
+	 */
+	public void getChars(int start, int end, char[] dst, int dstBegin) {
+		checkRange(start, end);
+		int[] position = {dstBegin};
+		forEachChunk(start, end, (chars, from, to) -> {
+			System.arraycopy(chars, from, dst, position[0], to - from);
+			position[0] += to - from;
+			return true;
+		});
+	}
+
+	/**
+	 * Visits the characters in {@code [start, end)} leaf by leaf, in order.
+	 *
+	 * @param start   The start of the range to visit
+	 * @param end     The end of the range to visit, exclusive
+	 * @param visitor Receives the characters
+	 * @return {@code false} if the visitor stopped early, otherwise {@code true}
+	 * @throws IndexOutOfBoundsException If the range is not inside the rope
+	 */
+	public boolean forEachChunk(int start, int end, ChunkVisitor visitor) {
+		checkRange(start, end);
+		return start == end || visit(root, start, end, visitor);
+	}
+
+	/**
+	 * Finds the first occurrence of {@code needle} that starts at or after {@code from}, without
+	 * copying the text. Candidates are found with {@link TextScanner} leaf by leaf, so only positions
+	 * matching the first character are compared in full.
+	 *
+	 * @param needle The text to find
+	 * @param from   The first index at which the occurrence may start
+	 * @return The index where the occurrence starts, or -1 if there is none
+	 */
+	public int indexOf(CharSequence needle, int from) {
+		from = Math.max(from, 0);
+		int last = length() - needle.length();
+		if (from > last) {
+			return -1;
+		}
+		if (needle.isEmpty()) {
+			return from;
+		}
+
+		char first = needle.charAt(0);
+		int[] found = {-1};
+		int[] chunkStart = {from};
+		forEachChunk(from, last + 1, (chars, start, end) -> {
+			for (int i = TextScanner.indexOf(chars, start, end, first); i >= 0; i = TextScanner.indexOf(chars, i + 1, end, first)) {
+				int candidate = chunkStart[0] + i - start;
+				if (regionMatches(candidate, needle)) {
+					found[0] = candidate;
+					return false;
+				}
+			}
+			chunkStart[0] += end - start;
+			return true;
+		});
+		return found[0];
+	}
+
+	private boolean regionMatches(int offset, CharSequence needle) {
+		for (int i = 1; i < needle.length(); i++) {
+			if (charAt(offset + i) != needle.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a copy of all characters.
+	 *
+	 * @return A new array holding the text
+	 */
+	public char[] toCharArray() {
+		char[] chars = new char[length()];
+		getChars(0, chars.length, chars, 0);
+		return chars;
+	}
+
+	@Override
+	public String toString() {
+		return new String(toCharArray());
+	}
+
+	private void checkRange(int start, int end) {
+		if (start < 0 || start > end || end > length()) {
+			throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length());
+		}
+	}
+
+	private static boolean visit(Node node, int start, int end, ChunkVisitor visitor) {
+		if (node.isLeaf()) {
+			return visitor.visit(node.chars, start, end);
+		}
+		int leftLength = node.left.length;
+		if (start < leftLength && !visit(node.left, start, Math.min(end, leftLength), visitor)) {
+			return false;
+		}
+		return end <= leftLength || visit(node.right, Math.max(start - leftLength, 0), end - leftLength, visitor);
+	}
+
+	/**
+	 * Builds a balanced tree of full leaves from {@code text[from, to)}.
+	 */
+	private static Node build(CharSequence text, int from, int to) {
+		if (from == to) {
+			return null;
+		}
+		int chunks = (to - from + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		if (chunks == 1) {
+			char[] chars = new char[to - from];
+			if (text instanceof String string) {
+				string.getChars(from, to, chars, 0);
+			} else {
+				for (int i = 0; i < chars.length; i++) {
+					chars[i] = text.charAt(from + i);
+				}
+			}
+			return new Node(chars);
+		}
+		int middle = from + chunks / 2 * CHUNK_SIZE;
+		return new Node(build(text, from, middle), build(text, middle, to));
+	}
+
+	/**
+	 * Returns the part {@code [start, end)} of a tree, sharing every subtree that lies entirely inside it.
+	 */
+	private static Node slice(Node node, int start, int end) {
+		if (node == null || start >= end) {
+			return null;
+		}
+		if (start == 0 && end == node.length) {
+			return node;
+		}
+		if (node.isLeaf()) {
+			return new Node(Arrays.copyOfRange(node.chars, start, end));
+		}
+		int leftLength = node.left.length;
+		if (end <= leftLength) {
+			return slice(node.left, start, end);
+		}
+		if (start >= leftLength) {
+			return slice(node.right, start - leftLength, end - leftLength);
+		}
+		return join(slice(node.left, start, leftLength), slice(node.right, 0, end - leftLength));
+	}
+
+	/**
+	 * Concatenates two trees, rebalancing along the spine where they meet.
+	 */
+	private static Node join(Node left, Node right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.isLeaf() && right.isLeaf() && left.length + right.length <= CHUNK_SIZE) {
+			char[] chars = Arrays.copyOf(left.chars, left.length + right.length);
+			System.arraycopy(right.chars, 0, chars, left.length, right.length);
+			return new Node(chars);
+		}
+		if (left.height > right.height + 1) {
+			return joinRight(left, right);
+		}
+		if (right.height > left.height + 1) {
+			return joinLeft(left, right);
+		}
+		return new Node(left, right);
+	}
+
+	private static Node joinRight(Node left, Node right) {
+		Node joined = left.right.height <= right.height + 1 ? join(left.right, right) : joinRight(left.right, right);
+		if (joined.height <= left.left.height + 1) {
+			return new Node(left.left, joined);
+		}
+		if (joined.left.height > joined.right.height) {
+			joined = rotateRight(joined);
+		}
+		return rotateLeft(new Node(left.left, joined));
+	}
+
+	private static Node joinLeft(Node left, Node right) {
+		Node joined = right.left.height <= left.height + 1 ? join(left, right.left) : joinLeft(left, right.left);
+		if (joined.height <= right.right.height + 1) {
+			return new Node(joined, right.right);
+		}
+		if (joined.right.height > joined.left.height) {
+			joined = rotateLeft(joined);
+		}
+		return rotateRight(new Node(joined, right.right));
+	}
+
+	private static Node rotateLeft(Node node) {
+		return new Node(new Node(node.left, node.right.left), node.right.right);
+	}
+
+	private static Node rotateRight(Node node) {
+		return new Node(node.left.left, new Node(node.left.right, node.right));
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.util.Arrays;
+
+/**
+ * Plain loop implementation of {@link ScanKernel}, used when the Vector API is not available and
+ * for the tails that do not fill a whole vector.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class ScalarScanKernel implements ScanKernel {
+
+	@Override
+	public int indexOf(byte[] a, int from, int to, byte value) {
+		for (int i = from; i < to; i++) {
+			if (a[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int count(byte[] a, int from, int to, byte value) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (a[i] == value) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int indexOfNonAscii(byte[] a, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (a[i] < 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int indexOf(byte[] a, int from, int to, byte[] needle) {
+		int n = needle.length;
+		for (int i = indexOf(a, from, to - n + 1, needle[0]); i >= 0; i = indexOf(a, i + 1, to - n + 1, needle[0])) {
+			if (Arrays.equals(a, i + 1, i + n, needle, 1, n)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int indexOf(char[] a, int from, int to, char value) {
+		for (int i = from; i < to; i++) {
+			if (a[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int count(char[] a, int from, int to, char value) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (a[i] == value) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int indexOfNonAscii(char[] a, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (a[i] > 0x7F) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int indexOf(char[] a, int from, int to, char[] needle) {
+		int n = needle.length;
+		for (int i = indexOf(a, from, to - n + 1, needle[0]); i >= 0; i = indexOf(a, i + 1, to - n + 1, needle[0])) {
+			if (Arrays.equals(a, i + 1, i + n, needle, 1, n)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
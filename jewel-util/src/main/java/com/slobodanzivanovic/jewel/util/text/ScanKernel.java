@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+/**
+ * The scanning primitives behind {@link TextScanner}. All ranges are {@code [from, to)} and have
+ * already been checked by the caller.
+ *
+ * @author Slobodan Zivanovic
+ */
+interface ScanKernel {
+
+	int indexOf(byte[] a, int from, int to, byte value);
+
+	int count(byte[] a, int from, int to, byte value);
+
+	int indexOfNonAscii(byte[] a, int from, int to);
+
+	int indexOf(byte[] a, int from, int to, byte[] needle);
+
+	int indexOf(char[] a, int from, int to, char value);
+
+	int count(char[] a, int from, int to, char value);
+
+	int indexOfNonAscii(char[] a, int from, int to);
+
+	int indexOf(char[] a, int from, int to, char[] needle);
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Decodes text files into editor content.
+ * <p>
+ * The charset is picked by {@link CharsetDetector} unless one is given. Line breaks are normalized
+ * to LF, the way Swing text components expect them, and the original style is reported as a
+ * {@link LineSeparator}. Files above {@link #PARALLEL_THRESHOLD} bytes are memory-mapped and, for
+ * charsets where that is safe, split into chunks that are decoded in parallel. Chunks end right
+ * after a newline when there is one nearby, and otherwise before a UTF-8 lead byte, so no character
+ * or CRLF pair is ever cut in half.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class TextDecoder {
+	/**
+	 * Files at least this large are decoded in parallel chunks.
+	 */
+	public static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final int NEWLINE_SEARCH_LIMIT = 64 * 1024;
+
+	private TextDecoder() {
+	}
+
+	/**
+	 * The decoded content of a file.
+	 *
+	 * @param text          The text with line breaks normalized to LF
+	 * @param charset       The charset that was used to decode the bytes
+	 * @param lineSeparator The original line ending style
+	 * @param byteCount     Number of bytes that were decoded, including a byte order mark
+	 */
+	public record DecodedText(String text, Charset charset, LineSeparator lineSeparator, long byteCount) {
+	}
+
+	/**
+	 * Reads and decodes a file, detecting its charset.
+	 *
+	 * @param path The file to read
+	 * @return The decoded text
+	 * @throws IOException If the file cannot be read or is too large to be held in memory
+	 */
+	public static DecodedText decode(Path path) throws IOException {
+		return decode(path, null);
+	}
+
+	/**
+	 * Reads and decodes a file.
+	 *
+	 * @param path    The file to read
+	 * @param charset The charset to use, or null to detect it
+	 * @return The decoded text
+	 * @throws IOException If the file cannot be read or is too large to be held in memory
+	 */
+	public static DecodedText decode(Path path, Charset charset) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File is too large to open as text: " + path);
+			}
+
+			ByteBuffer bytes = size >= PARALLEL_THRESHOLD
+				? channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+				: ByteBuffer.wrap(Files.readAllBytes(path));
+			return decode(bytes, charset);
+		}
+	}
+
+	/**
+	 * Decodes the remaining bytes of a buffer. A leading byte order mark is skipped, whether the
+	 * charset is detected or given.
+	 *
+	 * @param bytes   The encoded content
+	 * @param charset The charset to use, or null to detect it
+	 * @return The decoded text
+	 */
+	public static DecodedText decode(ByteBuffer bytes, Charset charset) {
+		ByteBuffer all = bytes.slice();
+		int bomLength = 0;
+		if (charset == null) {
+			CharsetDetector.Detection detection = CharsetDetector.detect(all);
+			charset = detection.charset();
+			bomLength = detection.bomLength();
+		} else {
+			bomLength = CharsetDetector.bomLength(all, charset);
+		}
+		ByteBuffer content = all.slice(bomLength, all.remaining() - bomLength);
+
+		List<Chunk> chunks;
+		if (content.remaining() >= PARALLEL_THRESHOLD && isSplittable(charset)) {
+			int[] bounds = splitPoints(content);
+			Charset chunkCharset = charset;
+			chunks = IntStream.range(0, bounds.length - 1)
+				.parallel()
+				.mapToObj(i -> decodeChunk(content.slice(bounds[i], bounds[i + 1] - bounds[i]), chunkCharset))
+				.toList();
+		} else {
+			chunks = List.of(decodeChunk(content, charset));
+		}
+
+		int length = 0;
+		long lf = 0, crlf = 0, cr = 0;
+		for (Chunk chunk : chunks) {
+			length += chunk.length();
+			lf += chunk.lf();
+			crlf += chunk.crlf();
+			cr += chunk.cr();
+		}
+
+		StringBuilder text = new StringBuilder(length);
+		for (Chunk chunk : chunks) {
+			text.append(chunk.chars(), 0, chunk.length());
+		}
+		return new DecodedText(text.toString(), charset, LineSeparator.fromCounts(lf, crlf, cr), all.remaining());
+	}
+
+	private record Chunk(char[] chars, int length, long lf, long crlf, long cr) {
+	}
+
+	/**
+	 * Only UTF-8 and ASCII-compatible single-byte charsets can be cut at arbitrary newline or
+	 * lead-byte boundaries and decoded independently.
+	 */
+	private static boolean isSplittable(Charset charset) {
+		if (charset.equals(StandardCharsets.UTF_8)) {
+			return true;
+		}
+		try {
+			return charset.newEncoder().maxBytesPerChar() == 1.0f && charset.newEncoder().canEncode('\n');
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	private static int[] splitPoints(ByteBuffer bytes) {
+		int size = bytes.remaining();
+		List<Integer> points = new ArrayList<>();
+		points.add(0);
+
+		int previous = 0;
+		while (size - previous > CHUNK_SIZE) {
+			int split = findSplit(bytes, previous + CHUNK_SIZE, size);
+			if (split >= size) {
+				break;
+			}
+			points.add(split);
+			previous = split;
+		}
+		points.add(size);
+
+		return points.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static int findSplit(ByteBuffer bytes, int target, int size) {
+		int newline = TextScanner.indexOf(bytes, target, Math.min(size, target + NEWLINE_SEARCH_LIMIT), (byte) '\n');
+		if (newline >= 0) {
+			return newline + 1;
+		}
+
+		int i = target;
+		while (i < size && ((bytes.get(i) & 0xC0) == 0x80 || bytes.get(i - 1) == '\r')) {
+			i++;
+		}
+		return i;
+	}
+
+	private static Chunk decodeChunk(ByteBuffer bytes, Charset charset) {
+		CharsetDecoder decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		CharBuffer decoded;
+		try {
+			decoded = decoder.decode(bytes);
+		} catch (CharacterCodingException e) {
+			// Malformed input is replaced, so this is never expected to happen.
+			throw new UncheckedIOException(e);
+		}
+
+		char[] chars = decoded.array();
+		int end = decoded.limit();
+
+		// Most files have no CR at all, so everything before the first one is counted in bulk
+		// and left in place.
+		int firstCr = TextScanner.indexOf(chars, 0, end, '\r');
+		int out = firstCr < 0 ? end : firstCr;
+		long lf = TextScanner.count(chars, 0, out, '\n');
+		long crlf = 0, cr = 0;
+		for (int i = out; i < end; i++) {
+			char c = chars[i];
+			if (c == '\r') {
+				if (i + 1 < end && chars[i + 1] == '\n') {
+					crlf++;
+					i++;
+				} else {
+					cr++;
+				}
+				chars[out++] = '\n';
+			} else {
+				if (c == '\n') {
+					lf++;
+				}
+				chars[out++] = c;
+			}
+		}
+		return new Chunk(chars, out, lf, crlf, cr);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the result of a "replace all" in a single pass.
+ * <p>
+ * Instead of one edit per match, the result is a single {@link Replacement} covering the span from
+ * the first match to the end of the last one. Applying it is one edit no matter how many matches
+ * there are, and text outside the span is never copied. Case-sensitive literal searches run on
+ * {@link TextScanner}.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class TextReplacer {
+
+	private TextReplacer() {
+	}
+
+	/**
+	 * The combined effect of replacing every match.
+	 *
+	 * @param start Start of the replaced span in the original text
+	 * @param end   End of the replaced span in the original text, exclusive
+	 * @param text  The new content of the span
+	 * @param count Number of replaced matches, 0 if there was nothing to replace
+	 */
+	public record Replacement(int start, int end, String text, int count) {
+	}
+
+	/**
+	 * Replaces every match of {@code search} in {@code text}.
+	 *
+	 * @param text        The text to search
+	 * @param search      The literal string or regular expression to find
+	 * @param replacement The replacement; for regular expressions it may refer to groups as {@code $n}
+	 * @param matchCase   Whether matching is case-sensitive
+	 * @param regex       Whether {@code search} is a regular expression
+	 * @return The replacement to apply
+	 * @throws java.util.regex.PatternSyntaxException If {@code regex} is set and the pattern is invalid
+	 */
+	public static Replacement replaceAll(CharSequence text, String search, String replacement, boolean matchCase, boolean regex) {
+		if (search.isEmpty()) {
+			return new Replacement(0, 0, "", 0);
+		}
+		if (!regex && matchCase) {
+			return replaceLiteral(text.toString().toCharArray(), search.toCharArray(), replacement);
+		}
+		return replacePattern(text, compile(search, matchCase, regex), quote(replacement, regex));
+	}
+
+	/**
+	 * Replaces every match of {@code search} in {@code text}, without copying the text for
+	 * literal searches.
+	 *
+	 * @param text        The text to search
+	 * @param search      The literal string or regular expression to find
+	 * @param replacement The replacement; for regular expressions it may refer to groups as {@code $n}
+	 * @param matchCase   Whether matching is case-sensitive
+	 * @param regex       Whether {@code search} is a regular expression
+	 * @return The replacement to apply
+	 * @throws java.util.regex.PatternSyntaxException If {@code regex} is set and the pattern is invalid
+	 */
+	public static Replacement replaceAll(char[] text, String search, String replacement, boolean matchCase, boolean regex) {
+		if (search.isEmpty()) {
+			return new Replacement(0, 0, "", 0);
+		}
+		if (!regex && matchCase) {
+			return replaceLiteral(text, search.toCharArray(), replacement);
+		}
+		return replacePattern(CharBuffer.wrap(text), compile(search, matchCase, regex), quote(replacement, regex));
+	}
+
+	private static Pattern compile(String search, boolean matchCase, boolean regex) {
+		int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+		if (!regex) {
+			flags |= Pattern.LITERAL;
+		}
+		return Pattern.compile(search, flags);
+	}
+
+	private static String quote(String replacement, boolean regex) {
+		return regex ? replacement : Matcher.quoteReplacement(replacement);
+	}
+
+	private static Replacement replaceLiteral(char[] text, char[] search, String replacement) {
+		int first = TextScanner.indexOf(text, 0, text.length, search);
+		if (first < 0) {
+			return new Replacement(0, 0, "", 0);
+		}
+
+		StringBuilder result = new StringBuilder();
+		int count = 0;
+		int previousEnd = first;
+		for (int match = first; match >= 0; match = TextScanner.indexOf(text, previousEnd, text.length, search)) {
+			result.append(text, previousEnd, match - previousEnd).append(replacement);
+			previousEnd = match + search.length;
+			count++;
+		}
+		return new Replacement(first, previousEnd, result.toString(), count);
+	}
+
+	private static Replacement replacePattern(CharSequence text, Pattern pattern, String replacement) {
+		Matcher matcher = pattern.matcher(text);
+		if (!matcher.find()) {
+			return new Replacement(0, 0, "", 0);
+		}
+
+		int first = matcher.start();
+		StringBuilder result = new StringBuilder();
+		int count = 0;
+		int end;
+		do {
+			matcher.appendReplacement(result, replacement);
+			end = matcher.end();
+			count++;
+		} while (matcher.find());
+
+		// appendReplacement copies everything before the first match too, drop it again.
+		result.delete(0, first);
+		return new Replacement(first, end, result.toString(), count);
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Fast scanning of text for single characters, substrings and non-ASCII content.
+ * <p>
+ * When the application runs with {@code --add-modules jdk.incubator.vector}, the scans use SIMD
+ * instructions through the Vector API; otherwise they fall back to plain loops with the same
+ * results. Buffers that are not backed by an accessible array, such as memory-mapped files, are
+ * copied through a small block buffer and scanned the same way.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class TextScanner {
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final String VECTOR_KERNEL = "com.slobodanzivanovic.jewel.util.text.VectorScanKernel";
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final ScanKernel KERNEL = createKernel();
+
+	private TextScanner() {
+	}
+
+	private interface BlockScan {
+		int scan(byte[] a, int from, int to);
+	}
+
+	private static ScanKernel createKernel() {
+		if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			try {
+				return (ScanKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+			} catch (InvocationTargetException e) {
+				// Vectors too narrow to pay off; anything else is worth reporting.
+				if (!(e.getCause() instanceof UnsupportedOperationException)) {
+					System.err.println("Vector API unavailable, using scalar text scanning: " + e.getCause());
+				}
+			} catch (ReflectiveOperationException | LinkageError e) {
+				System.err.println("Vector API unavailable, using scalar text scanning: " + e);
+			}
+		}
+		return new ScalarScanKernel();
+	}
+
+	/**
+	 * Returns whether scans run on the Vector API.
+	 *
+	 * @return True if SIMD scanning is in use
+	 */
+	public static boolean isVectorized() {
+		return !(KERNEL instanceof ScalarScanKernel);
+	}
+
+	/**
+	 * Finds the first occurrence of a byte.
+	 *
+	 * @param a     The bytes to scan
+	 * @param from  The first index to scan
+	 * @param to    The end of the scanned range, exclusive
+	 * @param value The byte to find
+	 * @return The index of the first occurrence, or -1 if there is none
+	 */
+	public static int indexOf(byte[] a, int from, int to, byte value) {
+		Objects.checkFromToIndex(from, to, a.length);
+		return KERNEL.indexOf(a, from, to, value);
+	}
+
+	/**
+	 * Counts the occurrences of a byte, e.g. the newlines of an encoded text.
+	 *
+	 * @param a     The bytes to scan
+	 * @param from  The first index to scan
+	 * @param to    The end of the scanned range, exclusive
+	 * @param value The byte to count
+	 * @return The number of occurrences
+	 */
+	public static int count(byte[] a, int from, int to, byte value) {
+		Objects.checkFromToIndex(from, to, a.length);
+		return KERNEL.count(a, from, to, value);
+	}
+
+	/**
+	 * Finds the first byte outside the ASCII range.
+	 *
+	 * @param a    The bytes to scan
+	 * @param from The first index to scan
+	 * @param to   The end of the scanned range, exclusive
+	 * @return The index of the first non-ASCII byte, or -1 if the range is pure ASCII
+	 */
+	public static int indexOfNonAscii(byte[] a, int from, int to) {
+		Objects.checkFromToIndex(from, to, a.length);
+		return KERNEL.indexOfNonAscii(a, from, to);
+	}
+
+	/**
+	 * Finds the first occurrence of a byte sequence that lies entirely within the range.
+	 *
+	 * @param a      The bytes to scan
+	 * @param from   The first index to scan
+	 * @param to     The end of the scanned range, exclusive
+	 * @param needle The sequence to find
+	 * @return The index where the first occurrence starts, or -1 if there is none
+	 */
+	public static int indexOf(byte[] a, int from, int to, byte[] needle) {
+		Objects.checkFromToIndex(from, to, a.length);
+		if (needle.length == 0) {
+			return from;
+		}
+		return KERNEL.indexOf(a, from, to, needle);
+	}
+
+	/**
+	 * Finds the first occurrence of a character.
+	 *
+	 * @param a     The characters to scan
+	 * @param from  The first index to scan
+	 * @param to    The end of the scanned range, exclusive
+	 * @param value The character to find
+	 * @return The index of the first occurrence, or -1 if there is none
+	 */
+	public static int indexOf(char[] a, int from, int to, char value) {
+		Objects.checkFromToIndex(from, to, a.length);
+		return KERNEL.indexOf(a, from, to, value);
+	}
+
+	/**
+	 * Counts the occurrences of a character, e.g. the newlines of a text.
+	 *
+	 * @param a     The characters to scan
+	 * @param from  The first index to scan
+	 * @param to    The end of the scanned range, exclusive
+	 * @param value The character to count
+	 * @return The number of occurrences
+	 */
+	public static int count(char[] a, int from, int to, char value) {
+		Objects.checkFromToIndex(from, to, a.length);
+		return KERNEL.count(a, from, to, value);
+	}
+
+	/**
+	 * Finds the first character outside the ASCII range.
+	 *
+	 * @param a    The characters to scan
+	 * @param from The first index to scan
+	 * @param to   The end of the scanned range, exclusive
+	 * @return The index of the first non-ASCII character, or -1 if the range is pure ASCII
+	 */
+	public static int indexOfNonAscii(char[] a, int from, int to) {
+		Objects.checkFromToIndex(from, to, a.length);
+		return KERNEL.indexOfNonAscii(a, from, to);
+	}
+
+	/**
+	 * Finds the first occurrence of a character sequence that lies entirely within the range.
+	 *
+	 * @param a      The characters to scan
+	 * @param from   The first index to scan
+	 * @param to     The end of the scanned range, exclusive
+	 * @param needle The sequence to find
+	 * @return The index where the first occurrence starts, or -1 if there is none
+	 */
+	public static int indexOf(char[] a, int from, int to, char[] needle) {
+		Objects.checkFromToIndex(from, to, a.length);
+		if (needle.length == 0) {
+			return from;
+		}
+		return KERNEL.indexOf(a, from, to, needle);
+	}
+
+	/**
+	 * Finds the first occurrence of a byte in a buffer. Indices are absolute and the buffer's
+	 * position is not changed.
+	 *
+	 * @param buffer The buffer to scan
+	 * @param from   The first index to scan
+	 * @param to     The end of the scanned range, exclusive, at most the buffer's limit
+	 * @param value  The byte to find
+	 * @return The index of the first occurrence, or -1 if there is none
+	 */
+	public static int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+		return scanBlocks(buffer, from, to, (a, blockFrom, blockTo) -> KERNEL.indexOf(a, blockFrom, blockTo, value));
+	}
+
+	/**
+	 * Counts the occurrences of a byte in a buffer. Indices are absolute and the buffer's position
+	 * is not changed.
+	 *
+	 * @param buffer The buffer to scan
+	 * @param from   The first index to scan
+	 * @param to     The end of the scanned range, exclusive, at most the buffer's limit
+	 * @param value  The byte to count
+	 * @return The number of occurrences
+	 */
+	public static int count(ByteBuffer buffer, int from, int to, byte value) {
+		Objects.checkFromToIndex(from, to, buffer.limit());
+		if (buffer.hasArray()) {
+			int base = buffer.arrayOffset();
+			return KERNEL.count(buffer.array(), base + from, base + to, value);
+		}
+
+		int count = 0;
+		byte[] block = new byte[Math.min(BLOCK_SIZE, to - from)];
+		for (int start = from; start < to; start += block.length) {
+			int length = Math.min(block.length, to - start);
+			buffer.get(start, block, 0, length);
+			count += KERNEL.count(block, 0, length, value);
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the first non-ASCII byte in a buffer. Indices are absolute and the buffer's position
+	 * is not changed.
+	 *
+	 * @param buffer The buffer to scan
+	 * @param from   The first index to scan
+	 * @param to     The end of the scanned range, exclusive, at most the buffer's limit
+	 * @return The index of the first non-ASCII byte, or -1 if the range is pure ASCII
+	 */
+	public static int indexOfNonAscii(ByteBuffer buffer, int from, int to) {
+		return scanBlocks(buffer, from, to, KERNEL::indexOfNonAscii);
+	}
+
+	private static int scanBlocks(ByteBuffer buffer, int from, int to, BlockScan scan) {
+		Objects.checkFromToIndex(from, to, buffer.limit());
+		if (buffer.hasArray()) {
+			int base = buffer.arrayOffset();
+			int index = scan.scan(buffer.array(), base + from, base + to);
+			return index < 0 ? -1 : index - base;
+		}
+
+		byte[] block = new byte[Math.min(BLOCK_SIZE, to - from)];
+		for (int start = from; start < to; start += block.length) {
+			int length = Math.min(block.length, to - start);
+			buffer.get(start, block, 0, length);
+			int index = scan.scan(block, 0, length);
+			if (index >= 0) {
+				return start + index;
+			}
+		}
+		return -1;
+	}
+}
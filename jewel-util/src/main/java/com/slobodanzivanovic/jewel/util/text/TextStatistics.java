@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+/**
+ * Counts words in a way that can be maintained incrementally.
+ * <p>
+ * A word is a maximal run of characters that are not whitespace, and it is counted at its first
+ * character. Whether a character starts a word depends only on itself and the character before it,
+ * so after an edit only the edited characters and the one following them need to be looked at
+ * again, no matter how large the text is.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class TextStatistics {
+
+	/**
+	 * The character assumed before the start of a text; it separates words like any whitespace.
+	 */
+	public static final char TEXT_START = '\n';
+
+	private TextStatistics() {
+	}
+
+	/**
+	 * Checks whether a character starts a word.
+	 *
+	 * @param previous The character before it, or {@link #TEXT_START} at the start of the text
+	 * @param c        The character to check
+	 * @return True if {@code c} is the first character of a word
+	 */
+	public static boolean isWordStart(char previous, char c) {
+		return !Character.isWhitespace(c) && Character.isWhitespace(previous);
+	}
+
+	/**
+	 * Counts the characters of a range that start a word.
+	 *
+	 * @param text     The text to scan
+	 * @param from     Start of the range
+	 * @param to       End of the range, exclusive
+	 * @param previous The character before {@code from}, or {@link #TEXT_START} to count a word
+	 *                 that begins before the range as well
+	 * @return The number of words starting in the range
+	 */
+	public static int countWordStarts(CharSequence text, int from, int to, char previous) {
+		int count = 0;
+		boolean afterSpace = Character.isWhitespace(previous);
+		for (int i = from; i < to; i++) {
+			boolean space = Character.isWhitespace(text.charAt(i));
+			if (afterSpace && !space) {
+				count++;
+			}
+			afterSpace = space;
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the words of a text.
+	 *
+	 * @param text The text to scan
+	 * @return The number of words
+	 */
+	public static int countWords(CharSequence text) {
+		return countWordStarts(text, 0, text.length(), TEXT_START);
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntervalTreeTest {
+	private static final Comparator<Interval> ORDER = Comparator.<Interval>comparingInt(interval -> interval.start)
+		.thenComparingInt(interval -> interval.end)
+		.thenComparingInt(interval -> interval.id);
+
+	@Test
+	void followsInsertions() {
+		IntervalTree<String> tree = new IntervalTree<>();
+		tree.add(0, 5, "around");
+		tree.add(5, 8, "after");
+		tree.add(0, 2, "before");
+
+		tree.insertUpdate(5, 3);
+
+		assertEquals(List.of("0-2 before", "0-8 around", "8-11 after"), visitAll(tree));
+	}
+
+	@Test
+	void followsRemovals() {
+		IntervalTree<String> tree = new IntervalTree<>();
+		tree.add(0, 4, "cut");
+		tree.add(2, 12, "spanning");
+		tree.add(5, 8, "inside");
+		tree.add(6, 14, "tail");
+		tree.add(12, 15, "after");
+
+		assertEquals(List.of("inside"), tree.removeUpdate(3, 7));
+
+		assertEquals(List.of("0-3 cut", "2-5 spanning", "3-7 tail", "5-8 after"), visitAll(tree));
+		assertEquals(4, tree.size());
+	}
+
+	@Test
+	void removesByIdentity() {
+		IntervalTree<String> tree = new IntervalTree<>();
+		String value = new String("x");
+		tree.add(3, 4, new String("x"));
+		tree.add(3, 5, value);
+
+		assertFalse(tree.remove(2, value));
+		assertTrue(tree.remove(3, value));
+		assertFalse(tree.remove(3, value));
+		assertEquals(List.of("3-4 x"), visitAll(tree));
+	}
+
+	@Test
+	void findsNeighbouringStarts() {
+		IntervalTree<String> tree = new IntervalTree<>();
+		tree.add(4, 6, "a");
+		tree.add(10, 10, "b");
+
+		assertEquals(4, tree.ceilingStart(0));
+		assertEquals(10, tree.ceilingStart(5));
+		assertEquals(-1, tree.ceilingStart(11));
+		assertEquals(-1, tree.floorStart(3));
+		assertEquals(4, tree.floorStart(9));
+		assertEquals(10, tree.floorStart(10));
+	}
+
+	@Test
+	void rejectsIntervalsEndingBeforeTheirStart() {
+		assertThrows(IllegalArgumentException.class, () -> new IntervalTree<String>().add(5, 4, "x"));
+	}
+
+	@Test
+	void agreesWithAListOfIntervals() {
+		Random random = new Random(17);
+		for (int round = 0; round < 100; round++) {
+			IntervalTree<Interval> tree = new IntervalTree<>();
+			List<Interval> intervals = new ArrayList<>();
+			int length = 1000;
+			int nextId = 0;
+
+			for (int step = 0; step < 300; step++) {
+				int operation = random.nextInt(10);
+				if (operation < 4) {
+					int start = random.nextInt(length + 1);
+					int end = Math.min(length, start + random.nextInt(30));
+					Interval interval = new Interval(start, end, nextId++);
+					intervals.add(interval);
+					tree.add(start, end, interval);
+				} else if (operation < 6) {
+					int offset = random.nextInt(length + 1);
+					int inserted = 1 + random.nextInt(20);
+					for (Interval interval : intervals) {
+						if (interval.start >= offset) {
+							interval.start += inserted;
+							interval.end += inserted;
+						} else if (interval.end >= offset) {
+							interval.end += inserted;
+						}
+					}
+					tree.insertUpdate(offset, inserted);
+					length += inserted;
+				} else if (operation < 8) {
+					int offset = random.nextInt(length + 1);
+					int removed = random.nextInt(Math.min(40, length - offset) + 1);
+					assertEquals(sorted(removeFrom(intervals, offset, removed)), sorted(tree.removeUpdate(offset, removed)));
+					length -= removed;
+				} else if (operation == 8 && !intervals.isEmpty()) {
+					Interval interval = intervals.remove(random.nextInt(intervals.size()));
+					assertTrue(tree.remove(interval.start, interval));
+				} else {
+					int from = random.nextInt(length + 1);
+					int to = from + random.nextInt(50);
+					assertEquals(expected(intervals, interval -> interval.start >= from && interval.start < to),
+						visit(visitor -> tree.forEachStartingIn(from, to, visitor)));
+					assertEquals(expected(intervals, interval -> interval.end >= from && interval.start <= to),
+						visit(visitor -> tree.forEachOverlapping(from, to, visitor)));
+					assertEquals(intervals.stream().mapToInt(interval -> interval.start).filter(start -> start >= from).min().orElse(-1),
+						tree.ceilingStart(from));
+					assertEquals(intervals.stream().mapToInt(interval -> interval.start).filter(start -> start <= from).max().orElse(-1),
+						tree.floorStart(from));
+				}
+
+				assertEquals(intervals.size(), tree.size());
+				assertEquals(expected(intervals, interval -> true), visit(tree::forEach), "round " + round + " step " + step);
+			}
+		}
+	}
+
+	private static List<Interval> removeFrom(List<Interval> intervals, int offset, int length) {
+		int removedEnd = offset + length;
+		List<Interval> dropped = new ArrayList<>();
+		for (int i = intervals.size() - 1; i >= 0; i--) {
+			Interval interval = intervals.get(i);
+			if (interval.start >= removedEnd) {
+				interval.start -= length;
+				interval.end -= length;
+			} else if (interval.start >= offset) {
+				if (interval.end < removedEnd) {
+					dropped.add(intervals.remove(i));
+				} else {
+					interval.start = offset;
+					interval.end -= length;
+				}
+			} else if (interval.end >= offset) {
+				interval.end = interval.end >= removedEnd ? interval.end - length : offset;
+			}
+		}
+		return dropped;
+	}
+
+	private static List<String> expected(List<Interval> intervals, Predicate<Interval> filter) {
+		return sorted(intervals.stream().filter(filter).toList());
+	}
+
+	private static List<String> sorted(List<Interval> intervals) {
+		return intervals.stream().sorted(ORDER).map(Interval::toString).toList();
+	}
+
+	/**
+	 * Collects visited intervals, checking they arrive in start order; equal starts are sorted.
+	 */
+	private static List<String> visit(Consumer<IntervalTree.Visitor<Interval>> traversal) {
+		List<Interval> visited = new ArrayList<>();
+		traversal.accept((start, end, value) -> {
+			assertEquals(value.start, start);
+			assertEquals(value.end, end);
+			assertTrue(visited.isEmpty() || visited.get(visited.size() - 1).start <= start);
+			visited.add(value);
+		});
+		return sorted(visited);
+	}
+
+	private static List<String> visitAll(IntervalTree<String> tree) {
+		List<String> visited = new ArrayList<>();
+		tree.forEach((start, end, value) -> visited.add(start + "-" + end + " " + value));
+		return visited;
+	}
+
+	private static final class Interval {
+		private final int id;
+		private int start;
+		private int end;
+
+		private Interval(int start, int end, int id) {
+			this.start = start;
+			this.end = end;
+			this.id = id;
+		}
+
+		@Override
+		public String toString() {
+			return start + "-" + end + " #" + id;
+		}
+	}
+}
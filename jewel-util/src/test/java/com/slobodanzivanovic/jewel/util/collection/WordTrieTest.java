@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WordTrieTest {
+	@Test
+	void countsWordsTakenFromRanges() {
+		WordTrie trie = new WordTrie();
+		String text = "foo bar foo";
+		trie.add(text, 0, 3, 1);
+		trie.add(text, 4, 7, 1);
+		trie.add(text, 8, 11, 1);
+
+		assertEquals(2, trie.count("foo"));
+		assertEquals(1, trie.count("bar"));
+		assertEquals(0, trie.count("fo"));
+		assertEquals(2, trie.size());
+	}
+
+	@Test
+	void completesMostFrequentWordsFirst() {
+		WordTrie trie = new WordTrie();
+		add(trie, "apple", 3);
+		add(trie, "apply", 5);
+		add(trie, "ape", 1);
+		add(trie, "ap", 2);
+		add(trie, "banana", 9);
+
+		assertEquals(List.of("apply", "apple", "ap", "ape"), trie.complete("ap", 10));
+		assertEquals(List.of("apply", "apple"), trie.complete("ap", 2));
+		assertEquals(List.of(), trie.complete("c", 10));
+	}
+
+	@Test
+	void doesNotSuggestWordsWithoutPositiveCount() {
+		WordTrie trie = new WordTrie();
+		add(trie, "zeta", -1);
+		assertEquals(List.of(), trie.complete("z", 10));
+		assertEquals(0, trie.size());
+
+		add(trie, "zeta", 1);
+		assertEquals(List.of(), trie.complete("z", 10));
+		add(trie, "zeta", 1);
+		assertEquals(List.of("zeta"), trie.complete("z", 10));
+	}
+
+	@Test
+	void recyclesNodesOfRemovedWords() {
+		WordTrie trie = new WordTrie();
+		int emptyNodes = trie.nodeCount();
+		for (int i = 0; i < 1000; i++) {
+			add(trie, "word" + i, 1);
+		}
+		for (int i = 0; i < 1000; i++) {
+			add(trie, "word" + i, -1);
+		}
+
+		assertEquals(0, trie.size());
+		assertEquals(emptyNodes, trie.nodeCount());
+	}
+
+	@Test
+	void addsAndSubtractsOtherTries() {
+		WordTrie words = new WordTrie();
+		add(words, "alpha", 2);
+		add(words, "beta", 1);
+		WordTrie trie = new WordTrie();
+		add(trie, "alpha", 1);
+
+		trie.addAll(words, 1);
+		assertEquals(3, trie.count("alpha"));
+		assertEquals(1, trie.count("beta"));
+
+		trie.addAll(words, -1);
+		assertEquals(1, trie.count("alpha"));
+		assertEquals(0, trie.count("beta"));
+		assertEquals(1, trie.size());
+	}
+
+	@Test
+	void agreesWithAMapOfCounts() {
+		Random random = new Random(5);
+		WordTrie trie = new WordTrie();
+		Map<String, Integer> counts = new HashMap<>();
+		for (int step = 0; step < 20_000; step++) {
+			String word = randomWord(random, 1 + random.nextInt(6));
+			int delta = random.nextInt(3) == 0 ? -1 : 1 + random.nextInt(3);
+			add(trie, word, delta);
+			counts.merge(word, delta, Integer::sum);
+
+			if (step % 100 == 0) {
+				String prefix = randomWord(random, random.nextInt(3));
+				int limit = 1 + random.nextInt(8);
+				assertCompletes(counts, prefix, limit, trie.complete(prefix, limit));
+				assertEquals(counts.values().stream().filter(count -> count > 0).count(), trie.size());
+			}
+		}
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			assertEquals((int) entry.getValue(), trie.count(entry.getKey()), entry.getKey());
+		}
+	}
+
+	/**
+	 * Checks a completion against the counts; words with equal counts may come in any order.
+	 */
+	private static void assertCompletes(Map<String, Integer> counts, String prefix, int limit, List<String> words) {
+		long candidates = counts.entrySet().stream()
+			.filter(entry -> entry.getKey().startsWith(prefix) && entry.getValue() > 0)
+			.count();
+		assertEquals(Math.min(limit, candidates), words.size(), "completions of " + prefix);
+		int previous = Integer.MAX_VALUE;
+		for (String word : words) {
+			int count = counts.getOrDefault(word, 0);
+			assertTrue(word.startsWith(prefix) && count > 0 && count <= previous, word + " completing " + prefix);
+			previous = count;
+		}
+		int lowest = previous;
+		counts.forEach((word, count) -> {
+			if (word.startsWith(prefix) && !words.contains(word)) {
+				assertTrue(count <= lowest, word + " is missing from the completions of " + prefix);
+			}
+		});
+	}
+
+	private static void add(WordTrie trie, String word, int delta) {
+		trie.add(word, 0, word.length(), delta);
+	}
+
+	private static String randomWord(Random random, int length) {
+		StringBuilder word = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			word.append((char) ('a' + random.nextInt(3)));
+		}
+		return word.toString();
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BracketIndexTest {
+	private static final String ALPHABET = "([{}])\"'/\\\nab ";
+
+	@Test
+	void matchesNestedBracketsBothWays() {
+		String text = "f(a[1], {b})";
+		BracketIndex index = BracketIndex.build(text);
+
+		assertEquals(6, index.size());
+		assertEquals(11, index.findMatch(1));
+		assertEquals(1, index.findMatch(11));
+		assertEquals(5, index.findMatch(3));
+		assertEquals(10, index.findMatch(8));
+		assertEquals(-1, index.findMatch(0));
+	}
+
+	@Test
+	void reportsUnbalancedBrackets() {
+		BracketIndex index = BracketIndex.build("(()");
+
+		assertEquals(-1, index.findMatch(0));
+		assertEquals(2, index.findMatch(1));
+	}
+
+	@Test
+	void ignoresBracketsInStringsAndLineComments() {
+		String text = "(\"(\\\")\" ')' // )\n)";
+		BracketIndex index = BracketIndex.build(text);
+
+		assertEquals(2, index.size());
+		assertEquals(text.length() - 1, index.findMatch(0));
+	}
+
+	@Test
+	void scansRopeLikeString() {
+		StringBuilder text = new StringBuilder();
+		Random random = new Random(1);
+		for (int i = 0; i < 20_000; i++) {
+			text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		BracketIndex fromString = BracketIndex.build(text);
+		BracketIndex fromRope = BracketIndex.build(Rope.of(text));
+
+		assertEquals(fromString.size(), fromRope.size());
+		for (int i = 0; i < text.length(); i++) {
+			assertEquals(fromString.findMatch(i), fromRope.findMatch(i), "offset " + i);
+		}
+	}
+
+	@Test
+	void followsEditsLikeAFreshBuild() {
+		Random random = new Random(7);
+		for (int round = 0; round < 300; round++) {
+			String text = randomText(random, 60);
+			BracketIndex index = BracketIndex.build(text);
+			for (int step = 0; step < 30; step++) {
+				int from;
+				int to;
+				if (text.isEmpty() || random.nextBoolean()) {
+					int offset = random.nextInt(text.length() + 1);
+					String inserted = randomText(random, 1 + random.nextInt(4));
+					text = text.substring(0, offset) + inserted + text.substring(offset);
+					index.insertUpdate(offset, inserted.length());
+					from = lineStart(text, offset);
+					to = lineEnd(text, offset + inserted.length());
+				} else {
+					int offset = random.nextInt(text.length());
+					int length = 1 + random.nextInt(Math.min(4, text.length() - offset));
+					text = text.substring(0, offset) + text.substring(offset + length);
+					index.removeUpdate(offset, length);
+					from = lineStart(text, offset);
+					to = lineEnd(text, offset);
+				}
+				index.rescan(from, to, text.substring(from, to));
+
+				BracketIndex expected = BracketIndex.build(text);
+				assertEquals(expected.size(), index.size());
+				for (int i = 0; i < text.length(); i++) {
+					assertEquals(expected.findMatch(i), index.findMatch(i), "round " + round + ", offset " + i);
+				}
+			}
+		}
+	}
+
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return text.toString();
+	}
+
+	private static int lineStart(String text, int offset) {
+		return text.lastIndexOf('\n', offset - 1) + 1;
+	}
+
+	private static int lineEnd(String text, int offset) {
+		int newline = text.indexOf('\n', offset);
+		return newline < 0 ? text.length() : newline + 1;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineDiffTest {
+	@Test
+	void findsNoHunksInEqualTexts() {
+		assertEquals(List.of(), diff("a\nb\nc\n", "a\nb\nc\n"));
+		assertEquals(List.of(), diff("", ""));
+	}
+
+	@Test
+	void reportsReplacedInsertedAndDeletedLines() {
+		assertEquals(List.of(new LineDiff.Hunk(1, 2, 1, 2)), diff("a\nb\nc\n", "a\nx\nc\n"));
+		assertEquals(List.of(new LineDiff.Hunk(2, 2, 2, 3)), diff("a\nb\n", "a\nb\nc\n"));
+		assertEquals(List.of(new LineDiff.Hunk(0, 1, 0, 0)), diff("a\nb\n", "b\n"));
+		assertEquals(List.of(new LineDiff.Hunk(0, 0, 0, 1), new LineDiff.Hunk(2, 3, 3, 3)), diff("a\nb\nc\n", "x\na\nb\n"));
+	}
+
+	@Test
+	void treatsAMissingFinalNewlineAsAChange() {
+		assertEquals(List.of(new LineDiff.Hunk(1, 2, 1, 2)), diff("a\nb", "a\nb\n"));
+	}
+
+	@Test
+	void findsMinimalDiffsOfRandomTexts() {
+		Random random = new Random(11);
+		for (int round = 0; round < 2000; round++) {
+			String[] oldLines = randomLines(random, random.nextInt(30));
+			String[] newLines = mutate(random, oldLines);
+			String oldText = String.join("", oldLines);
+			String newText = String.join("", newLines);
+			List<LineDiff.Hunk> hunks = diff(oldText, newText);
+
+			assertRebuilds(oldText, newText, hunks);
+			int expected = oldLines.length + newLines.length - 2 * longestCommonSubsequence(oldLines, newLines);
+			assertEquals(expected, changedLines(hunks), "round " + round);
+		}
+	}
+
+	@Test
+	void diffsLargeInputsInSegments() {
+		StringBuilder oldText = new StringBuilder();
+		StringBuilder newText = new StringBuilder();
+		int changes = 0;
+		for (int i = 0; i < 40_000; i++) {
+			oldText.append("line ").append(i).append('\n');
+			if (i % 3 == 0) {
+				newText.append("changed ").append(i).append('\n');
+				changes++;
+			} else {
+				newText.append("line ").append(i).append('\n');
+			}
+		}
+		List<LineDiff.Hunk> hunks = diff(oldText.toString(), newText.toString());
+
+		assertRebuilds(oldText.toString(), newText.toString(), hunks);
+		assertEquals(2 * changes, changedLines(hunks));
+	}
+
+	private static List<LineDiff.Hunk> diff(String oldText, String newText) {
+		return LineDiff.diff(LineDiff.split(oldText), LineDiff.split(newText));
+	}
+
+	/**
+	 * Checks that the hunks are ordered and that the lines between them are equal on both sides.
+	 */
+	private static void assertRebuilds(String oldText, String newText, List<LineDiff.Hunk> hunks) {
+		LineDiff.Lines oldLines = LineDiff.split(oldText);
+		LineDiff.Lines newLines = LineDiff.split(newText);
+		int oldLine = 0;
+		int newLine = 0;
+		for (LineDiff.Hunk hunk : hunks) {
+			assertTrue(hunk.oldStart() >= oldLine && hunk.newStart() >= newLine, "hunks out of order: " + hunk);
+			assertTrue(hunk.oldEnd() > hunk.oldStart() || hunk.newEnd() > hunk.newStart(), "empty hunk: " + hunk);
+			assertEquals(hunk.oldStart() - oldLine, hunk.newStart() - newLine, "unequal gap before " + hunk);
+			while (oldLine < hunk.oldStart()) {
+				assertEquals(oldLines.line(oldLine++).toString(), newLines.line(newLine++).toString());
+			}
+			oldLine = hunk.oldEnd();
+			newLine = hunk.newEnd();
+		}
+		assertEquals(oldLines.count() - oldLine, newLines.count() - newLine);
+		while (oldLine < oldLines.count()) {
+			assertEquals(oldLines.line(oldLine++).toString(), newLines.line(newLine++).toString());
+		}
+	}
+
+	private static int changedLines(List<LineDiff.Hunk> hunks) {
+		int changed = 0;
+		for (LineDiff.Hunk hunk : hunks) {
+			changed += hunk.oldEnd() - hunk.oldStart() + hunk.newEnd() - hunk.newStart();
+		}
+		return changed;
+	}
+
+	private static int longestCommonSubsequence(String[] a, String[] b) {
+		int[][] lengths = new int[a.length + 1][b.length + 1];
+		for (int i = a.length - 1; i >= 0; i--) {
+			for (int j = b.length - 1; j >= 0; j--) {
+				lengths[i][j] = a[i].equals(b[j]) ? lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+			}
+		}
+		return lengths[0][0];
+	}
+
+	private static String[] randomLines(Random random, int count) {
+		String[] lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			lines[i] = (char) ('a' + random.nextInt(4)) + "\n";
+		}
+		return lines;
+	}
+
+	private static String[] mutate(Random random, String[] lines) {
+		StringBuilder text = new StringBuilder();
+		for (String line : lines) {
+			int operation = random.nextInt(6);
+			if (operation == 0) {
+				continue;
+			}
+			if (operation == 1) {
+				text.append((char) ('a' + random.nextInt(4))).append('\n');
+			}
+			text.append(line);
+		}
+		String mutated = text.toString();
+		return mutated.isEmpty() ? new String[0] : mutated.split("(?<=\n)");
+	}
+}
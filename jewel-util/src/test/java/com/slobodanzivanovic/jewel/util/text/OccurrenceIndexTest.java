@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OccurrenceIndexTest {
+	private static final String[] WORDS = {"a", "ab", "aba", "b_1"};
+
+	@Test
+	void scansWholeWordsOnly() {
+		assertArrayEquals(new int[]{0, 17}, OccurrenceIndex.scan(Rope.of("foo foobar foo_ (foo)"), "foo"));
+		assertArrayEquals(new int[]{}, OccurrenceIndex.scan(Rope.of("foofoo"), "foo"));
+		assertArrayEquals(new int[]{}, OccurrenceIndex.scan(Rope.EMPTY, "foo"));
+	}
+
+	@Test
+	void scansLikeANaiveSearch() {
+		Random random = new Random(3);
+		for (int round = 0; round < 500; round++) {
+			String text = randomText(random, random.nextInt(6000));
+			for (String word : WORDS) {
+				assertArrayEquals(occurrences(text, word), OccurrenceIndex.scan(Rope.of(text), word), word);
+			}
+		}
+	}
+
+	@Test
+	void visitsOccurrencesStartingInARange() {
+		OccurrenceIndex index = new OccurrenceIndex(30);
+		index.put("x", new int[]{2, 5, 9, 20});
+
+		assertEquals(4, index.count("x"));
+		assertEquals(List.of(5, 9), visit(index, "x", 5, 20));
+		assertEquals(List.of(), visit(index, "x", 21, 30));
+		assertEquals(-1, index.count("y"));
+		assertEquals(List.of(), visit(index, "y", 0, 30));
+	}
+
+	@Test
+	void dropsTheLeastRecentlyUsedWord() {
+		OccurrenceIndex index = new OccurrenceIndex(0);
+		for (int i = 0; i < OccurrenceIndex.MAX_WORDS; i++) {
+			index.put("w" + i, new int[0]);
+		}
+		index.count("w0");
+		index.put("extra", new int[0]);
+
+		assertTrue(index.contains("w0"));
+		assertFalse(index.contains("w1"));
+		assertTrue(index.contains("extra"));
+		assertEquals(6, index.margin());
+
+		index.clear(0);
+		assertFalse(index.contains("w0"));
+		assertEquals(0, index.margin());
+	}
+
+	@Test
+	void followsEditsLikeAFullScan() {
+		Random random = new Random(9);
+		for (int round = 0; round < 50; round++) {
+			StringBuilder text = new StringBuilder(randomText(random, random.nextInt(3000)));
+			OccurrenceIndex index = new OccurrenceIndex(text.length());
+			for (String word : WORDS) {
+				index.put(word, OccurrenceIndex.scan(Rope.of(text), word));
+			}
+
+			for (int step = 0; step < 200; step++) {
+				int from;
+				int to;
+				if (text.length() > 0 && random.nextInt(3) == 0) {
+					from = random.nextInt(text.length());
+					int length = 1 + random.nextInt(Math.min(40, text.length() - from));
+					text.delete(from, from + length);
+					index.removeUpdate(from, length);
+					to = from;
+				} else {
+					from = random.nextInt(text.length() + 1);
+					String inserted = randomText(random, 1 + random.nextInt(random.nextInt(20) == 0 ? 500 : 8));
+					text.insert(from, inserted);
+					index.insertUpdate(from, inserted.length());
+					to = from + inserted.length();
+				}
+				int windowStart = Math.max(0, from - index.margin());
+				int windowEnd = Math.min(text.length(), to + index.margin());
+				index.rescan(from, to, text.subSequence(windowStart, windowEnd), windowStart);
+
+				for (String word : WORDS) {
+					int[] expected = occurrences(text.toString(), word);
+					assertEquals(expected.length, index.count(word), word);
+					assertEquals(toList(expected), visit(index, word, 0, text.length()), "round " + round + " step " + step);
+				}
+			}
+		}
+	}
+
+	private static List<Integer> visit(OccurrenceIndex index, String word, int from, int to) {
+		List<Integer> offsets = new ArrayList<>();
+		index.forEach(word, from, to, offsets::add);
+		return offsets;
+	}
+
+	private static List<Integer> toList(int[] values) {
+		List<Integer> list = new ArrayList<>(values.length);
+		for (int value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	private static int[] occurrences(String text, String word) {
+		List<Integer> offsets = new ArrayList<>();
+		for (int i = 0; i + word.length() <= text.length(); i++) {
+			if (text.startsWith(word, i)
+				&& (i == 0 || !OccurrenceIndex.isWordChar(text.charAt(i - 1)))
+				&& (i + word.length() == text.length() || !OccurrenceIndex.isWordChar(text.charAt(i + word.length())))) {
+				offsets.add(i);
+			}
+		}
+		return offsets.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static String randomText(Random random, int length) {
+		String alphabet = "aab_1 \n.";
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return text.toString();
+	}
+}
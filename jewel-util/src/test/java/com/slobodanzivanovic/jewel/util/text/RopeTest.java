@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RopeTest {
+	@Test
+	void leavesTheOriginalUnchanged() {
+		Rope rope = Rope.of("hello world");
+		Rope edited = rope.insert(5, ",").remove(0, 1);
+
+		assertEquals("hello world", rope.toString());
+		assertEquals("ello, world", edited.toString());
+		assertSame(rope, rope.insert(3, ""));
+		assertSame(rope, rope.remove(3, 3));
+		assertSame(Rope.EMPTY, Rope.of(""));
+	}
+
+	@Test
+	void rejectsRangesOutsideTheText() {
+		Rope rope = Rope.of("abc");
+
+		assertThrows(IndexOutOfBoundsException.class, () -> rope.charAt(3));
+		assertThrows(IndexOutOfBoundsException.class, () -> rope.charAt(-1));
+		assertThrows(IndexOutOfBoundsException.class, () -> rope.insert(4, "x"));
+		assertThrows(IndexOutOfBoundsException.class, () -> rope.remove(2, 1));
+		assertThrows(IndexOutOfBoundsException.class, () -> rope.subSequence(0, 4));
+	}
+
+	@Test
+	void concatenatesAcrossLeaves() {
+		String left = randomText(new Random(1), 3 * Rope.CHUNK_SIZE + 17);
+		String right = randomText(new Random(2), Rope.CHUNK_SIZE - 1);
+		Rope rope = Rope.of(left).concat(Rope.of(right));
+
+		assertEquals(left + right, rope.toString());
+		assertSame(rope, rope.concat(Rope.EMPTY));
+		assertEquals(right, Rope.EMPTY.concat(Rope.of(right)).toString());
+	}
+
+	@Test
+	void visitsChunksInOrderAndStopsEarly() {
+		String text = randomText(new Random(4), 5 * Rope.CHUNK_SIZE);
+		Rope rope = Rope.of(text);
+		int start = Rope.CHUNK_SIZE / 2;
+		int end = text.length() - 3;
+
+		StringBuilder visited = new StringBuilder();
+		assertTrue(rope.forEachChunk(start, end, (chars, from, to) -> {
+			assertTrue(to - from <= Rope.CHUNK_SIZE);
+			visited.append(chars, from, to - from);
+			return true;
+		}));
+		assertEquals(text.substring(start, end), visited.toString());
+
+		int[] calls = {0};
+		assertFalse(rope.forEachChunk(0, text.length(), (chars, from, to) -> ++calls[0] < 2));
+		assertEquals(2, calls[0]);
+	}
+
+	@Test
+	void findsTextAcrossLeafBoundaries() {
+		StringBuilder text = new StringBuilder("x".repeat(Rope.CHUNK_SIZE - 2)).append("needle");
+		text.append("y".repeat(Rope.CHUNK_SIZE)).append("needle");
+		Rope rope = Rope.of(text);
+
+		assertEquals(Rope.CHUNK_SIZE - 2, rope.indexOf("needle", 0));
+		assertEquals(text.lastIndexOf("needle"), rope.indexOf("needle", Rope.CHUNK_SIZE - 1));
+		assertEquals(-1, rope.indexOf("needles", 0));
+		assertEquals(5, rope.indexOf("", 5));
+		assertEquals(0, rope.indexOf("x", -3));
+	}
+
+	@Test
+	void agreesWithAStringBuilder() {
+		Random random = new Random(21);
+		for (int round = 0; round < 40; round++) {
+			StringBuilder expected = new StringBuilder(randomText(random, random.nextInt(4 * Rope.CHUNK_SIZE)));
+			Rope rope = Rope.of(expected);
+			for (int step = 0; step < 150; step++) {
+				if (expected.length() > 0 && random.nextInt(3) == 0) {
+					int start = random.nextInt(expected.length());
+					int end = start + random.nextInt(Math.min(expected.length() - start, 3 * Rope.CHUNK_SIZE) + 1);
+					expected.delete(start, end);
+					rope = rope.remove(start, end);
+				} else {
+					int offset = random.nextInt(expected.length() + 1);
+					String text = randomText(random, random.nextInt(random.nextInt(8) == 0 ? 3 * Rope.CHUNK_SIZE : 20));
+					expected.insert(offset, text);
+					rope = rope.insert(offset, text);
+				}
+				assertEquals(expected.length(), rope.length());
+				assertMatches(random, expected.toString(), rope, "round " + round + " step " + step);
+			}
+		}
+	}
+
+	private static void assertMatches(Random random, String expected, Rope rope, String message) {
+		assertEquals(expected, new String(rope.toCharArray()), message);
+		for (int i = 0; i < 20 && !expected.isEmpty(); i++) {
+			int index = random.nextInt(expected.length());
+			assertEquals(expected.charAt(index), rope.charAt(index), message);
+		}
+
+		int start = random.nextInt(expected.length() + 1);
+		int end = start + random.nextInt(expected.length() - start + 1);
+		assertEquals(expected.substring(start, end), rope.subSequence(start, end).toString(), message);
+		char[] copy = new char[end - start + 2];
+		rope.getChars(start, end, copy, 1);
+		assertEquals(expected.substring(start, end), new String(copy, 1, end - start), message);
+
+		String needle = expected.substring(start, Math.min(end, start + 1 + random.nextInt(4)));
+		int from = random.nextInt(expected.length() + 1);
+		assertEquals(expected.indexOf(needle, from), rope.indexOf(needle, from), message);
+	}
+
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append("abc \n".charAt(random.nextInt(5)));
+		}
+		return text.toString();
+	}
+}
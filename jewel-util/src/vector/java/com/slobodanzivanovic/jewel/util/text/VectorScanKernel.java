@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.text;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * SIMD implementation of {@link ScanKernel} on top of the incubating Vector API.
+ * <p>
+ * Each step compares a whole vector of bytes or chars at once and only inspects single elements
+ * once a lane matched. Substring search compares the first and the last character of the needle
+ * against two shifted loads, so only positions matching both are verified in full. Tails that do
+ * not fill a vector are handed to {@link ScalarScanKernel}.
+ * </p>
+ * <p>
+ * This class lives in its own source set, the only one compiled against {@code jdk.incubator.vector},
+ * and {@link TextScanner} loads it reflectively. The rest of the module therefore compiles and runs
+ * without the incubator module.
+ * </p>
+ *
+ * @author Slobodan Zivanovic
+ */
+final class VectorScanKernel implements ScanKernel {
+	private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED;
+
+	private final ScalarScanKernel scalar = new ScalarScanKernel();
+
+	/**
+	 * @throws UnsupportedOperationException If the platform's vectors are too narrow to be worth using
+	 */
+	VectorScanKernel() {
+		if (BYTES.vectorBitSize() < 128) {
+			throw new UnsupportedOperationException("Preferred vector size is " + BYTES.vectorBitSize() + " bits");
+		}
+	}
+
+	@Override
+	public int indexOf(byte[] a, int from, int to, byte value) {
+		int i = from;
+		for (int bound = from + BYTES.loopBound(to - from); i < bound; i += BYTES.length()) {
+			VectorMask<Byte> matches = ByteVector.fromArray(BYTES, a, i).eq(value);
+			if (matches.anyTrue()) {
+				return i + matches.firstTrue();
+			}
+		}
+		return scalar.indexOf(a, i, to, value);
+	}
+
+	@Override
+	public int count(byte[] a, int from, int to, byte value) {
+		int count = 0;
+		int i = from;
+		for (int bound = from + BYTES.loopBound(to - from); i < bound; i += BYTES.length()) {
+			count += ByteVector.fromArray(BYTES, a, i).eq(value).trueCount();
+		}
+		return count + scalar.count(a, i, to, value);
+	}
+
+	@Override
+	public int indexOfNonAscii(byte[] a, int from, int to) {
+		int i = from;
+		for (int bound = from + BYTES.loopBound(to - from); i < bound; i += BYTES.length()) {
+			VectorMask<Byte> matches = ByteVector.fromArray(BYTES, a, i).lt((byte) 0);
+			if (matches.anyTrue()) {
+				return i + matches.firstTrue();
+			}
+		}
+		return scalar.indexOfNonAscii(a, i, to);
+	}
+
+	@Override
+	public int indexOf(byte[] a, int from, int to, byte[] needle) {
+		int n = needle.length;
+		if (n == 1) {
+			return indexOf(a, from, to, needle[0]);
+		}
+
+		ByteVector first = ByteVector.broadcast(BYTES, needle[0]);
+		ByteVector last = ByteVector.broadcast(BYTES, needle[n - 1]);
+		int i = from;
+		for (int bound = to - n + 1 - BYTES.length(); i <= bound; i += BYTES.length()) {
+			long candidates = ByteVector.fromArray(BYTES, a, i).eq(first)
+				.and(ByteVector.fromArray(BYTES, a, i + n - 1).eq(last))
+				.toLong();
+			while (candidates != 0) {
+				int start = i + Long.numberOfTrailingZeros(candidates);
+				if (Arrays.equals(a, start + 1, start + n - 1, needle, 1, n - 1)) {
+					return start;
+				}
+				candidates &= candidates - 1;
+			}
+		}
+		return scalar.indexOf(a, i, to, needle);
+	}
+
+	@Override
+	public int indexOf(char[] a, int from, int to, char value) {
+		int i = from;
+		for (int bound = from + CHARS.loopBound(to - from); i < bound; i += CHARS.length()) {
+			VectorMask<Short> matches = ShortVector.fromCharArray(CHARS, a, i).eq((short) value);
+			if (matches.anyTrue()) {
+				return i + matches.firstTrue();
+			}
+		}
+		return scalar.indexOf(a, i, to, value);
+	}
+
+	@Override
+	public int count(char[] a, int from, int to, char value) {
+		int count = 0;
+		int i = from;
+		for (int bound = from + CHARS.loopBound(to - from); i < bound; i += CHARS.length()) {
+			count += ShortVector.fromCharArray(CHARS, a, i).eq((short) value).trueCount();
+		}
+		return count + scalar.count(a, i, to, value);
+	}
+
+	@Override
+	public int indexOfNonAscii(char[] a, int from, int to) {
+		int i = from;
+		for (int bound = from + CHARS.loopBound(to - from); i < bound; i += CHARS.length()) {
+			VectorMask<Short> matches = ShortVector.fromCharArray(CHARS, a, i)
+				.compare(VectorOperators.UNSIGNED_GT, (short) 0x7F);
+			if (matches.anyTrue()) {
+				return i + matches.firstTrue();
+			}
+		}
+		return scalar.indexOfNonAscii(a, i, to);
+	}
+
+	@Override
+	public int indexOf(char[] a, int from, int to, char[] needle) {
+		int n = needle.length;
+		if (n == 1) {
+			return indexOf(a, from, to, needle[0]);
+		}
+
+		ShortVector first = ShortVector.broadcast(CHARS, (short) needle[0]);
+		ShortVector last = ShortVector.broadcast(CHARS, (short) needle[n - 1]);
+		int i = from;
+		for (int bound = to - n + 1 - CHARS.length(); i <= bound; i += CHARS.length()) {
+			long candidates = ShortVector.fromCharArray(CHARS, a, i).eq(first)
+				.and(ShortVector.fromCharArray(CHARS, a, i + n - 1).eq(last))
+				.toLong();
+			while (candidates != 0) {
+				int start = i + Long.numberOfTrailingZeros(candidates);
+				if (Arrays.equals(a, start + 1, start + n - 1, needle, 1, n - 1)) {
+					return start;
+				}
+				candidates &= candidates - 1;
+			}
+		}
+		return scalar.indexOf(a, i, to, needle);
+	}
+}